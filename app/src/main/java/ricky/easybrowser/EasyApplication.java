@@ -1,24 +1,99 @@
 package ricky.easybrowser;
 
 import android.app.Application;
+import android.content.Context;
 import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
 
 import androidx.room.Room;
 
+import java.io.File;
+import java.io.IOException;
+
 import ricky.easybrowser.common.Const;
 import ricky.easybrowser.entity.dao.AppDatabase;
 import ricky.easybrowser.entity.dao.WebSite;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.page.browser.TabSessionJournal;
+import ricky.easybrowser.page.tab.TabStateStore;
+import ricky.easybrowser.page.tabpreview.TabThumbnailStore;
 import ricky.easybrowser.utils.SharedPreferencesUtils;
+import ricky.easybrowser.web.ContentBlockerManager;
+import ricky.easybrowser.web.HttpCacheInterceptor;
+import ricky.easybrowser.web.ImagePolicy;
+import ricky.easybrowser.web.WebCacheManager;
+import ricky.easybrowser.web.cache.HttpCache;
+import ricky.easybrowser.web.net.HttpClient;
 
 public class EasyApplication extends Application {
 
     AppDatabase db;
+    TabStateStore tabStateStore;
+    TabThumbnailStore tabThumbnailStore;
+    TabSessionJournal sessionJournal;
+    WebCacheManager webCacheManager;
+    HttpCacheInterceptor httpCacheInterceptor;
+    HttpClient httpClient;
+    ContentBlockerManager contentBlockerManager;
+    ImagePolicy imagePolicy;
+
+    private static final long HTTP_CACHE_MAX_BYTES = 100L * 1024 * 1024;
 
     @Override
     public void onCreate() {
         super.onCreate();
         initSetting();
         initDB();
+        tabStateStore = new TabStateStore(this);
+        tabThumbnailStore = new TabThumbnailStore(this);
+        webCacheManager = new WebCacheManager(this);
+        imagePolicy = new ImagePolicy(this);
+        httpClient = new HttpClient();
+        initHttpCache();
+        contentBlockerManager = new ContentBlockerManager(this, httpClient);
+        contentBlockerManager.init();
+        webCacheManager.scheduleCheck();
+    }
+
+    private void initHttpCache() {
+        final HttpCache httpCache;
+        try {
+            httpCache = new HttpCache(new File(getCacheDir(), "http"), HTTP_CACHE_MAX_BYTES, httpClient);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        httpCacheInterceptor = new HttpCacheInterceptor(httpCache, imagePolicy);
+        webCacheManager.setHttpCache(httpCache);
+
+        // 没有可用网络时进入离线模式，只从缓存加载
+        final ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return;
+        }
+        NetworkInfo activeInfo = cm.getActiveNetworkInfo();
+        httpCache.setOffline(activeInfo == null || !activeInfo.isConnected());
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        cm.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                httpCache.setOffline(false);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                NetworkInfo info = cm.getActiveNetworkInfo();
+                httpCache.setOffline(info == null || !info.isConnected());
+                // 原网络上的连接已不可用
+                httpCache.getClient().evictAll();
+            }
+        });
     }
 
     private void initSetting() {
@@ -46,4 +121,49 @@ public class EasyApplication extends Application {
     public AppDatabase getAppDatabase() {
         return db;
     }
+
+    public TabStateStore getTabStateStore() {
+        return tabStateStore;
+    }
+
+    public TabThumbnailStore getTabThumbnailStore() {
+        return tabThumbnailStore;
+    }
+
+    public WebCacheManager getWebCacheManager() {
+        return webCacheManager;
+    }
+
+    public ImagePolicy getImagePolicy() {
+        return imagePolicy;
+    }
+
+    public ContentBlockerManager getContentBlockerManager() {
+        return contentBlockerManager;
+    }
+
+    /**
+     * 缓存目录无法打开时返回null
+     */
+    public HttpCacheInterceptor getHttpCacheInterceptor() {
+        return httpCacheInterceptor;
+    }
+
+    /**
+     * 打开标签页会话日志。同一进程内复用已打开的日志
+     *
+     * @param sessionId 会话id，为 {@link TabInfo#NO_ID} 时打开最近一次会话
+     */
+    public TabSessionJournal openSessionJournal(long sessionId) {
+        if (sessionJournal != null
+                && (sessionId == TabInfo.NO_ID || sessionJournal.getSessionId() == sessionId)) {
+            return sessionJournal;
+        }
+        if (sessionId == TabInfo.NO_ID) {
+            sessionJournal = TabSessionJournal.openLatest(this);
+        } else {
+            sessionJournal = TabSessionJournal.open(this, sessionId);
+        }
+        return sessionJournal;
+    }
 }
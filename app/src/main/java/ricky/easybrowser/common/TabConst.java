@@ -3,8 +3,21 @@ package ricky.easybrowser.common;
 public class TabConst {
 
     public static final String ARG_TITLE = "param_title";
+    /**
+     * 旧版本使用的字符串tag，仅用于读取已保存的数据
+     */
     public static final String ARG_TAG = "param_tag";
+    public static final String ARG_TAB_ID = "param_tab_id";
     public static final String ARG_URI = "param_uri";
+    /**
+     * 创建标签页时尝试从休眠状态中恢复
+     */
+    public static final String ARG_RESTORE_STATE = "param_restore_state";
+    /**
+     * 标签页在后台创建并加载
+     */
+    public static final String ARG_BACKGROUND_LOAD = "param_background_load";
+    public static final String KEY_WEB_STATE = "web_state";
 
     public static final int TAB_OPEN_ACTION_BACKSTAGE = 0;
     public static final int TAB_OPEN_ACTION_FRONTSTAGE = 1;
@@ -7,6 +7,8 @@ import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
 import androidx.fragment.app.Fragment;
 
+import java.util.List;
+
 import ricky.easybrowser.entity.bo.TabInfo;
 import ricky.easybrowser.entity.dao.History;
 
@@ -32,6 +34,8 @@ public interface IBrowser {
 
         void showTabs();
 
+        void reopenClosedTab();
+
         void showAddress(String current);
 
         void showSetting();
@@ -58,20 +62,97 @@ public interface IBrowser {
 
         void onTabCreate(TabInfo tabInfo, boolean backstage);
 
+        /**
+         * 一次关闭多个标签页，所有页面变化在同一个事务中提交
+         */
+        void onTabsClose(List<TabInfo> tabs);
+
+        /**
+         * 一次新建多个标签页。前台打开时显示最后一个标签页，其余标签页在后台排队加载
+         */
+        void onTabsCreate(List<TabInfo> tabs, boolean backstage);
+
         void onTabGoHome();
 
         void onTabGoForward();
 
+        /**
+         * 当前标签页处理返回操作
+         *
+         * @return 已处理返回true
+         */
+        boolean onTabGoBack();
+
         void onTabLoadUrl(String url);
 
+        /**
+         * 标签页开始或结束加载，用于调度后台标签页的加载
+         */
+        void onTabLoadingChange(TabInfo tabInfo, boolean loading);
+
+        /**
+         * 当前标签页发生滚动
+         */
+        void onTabScrolled();
+
+        /**
+         * 固定或取消固定标签页，固定的标签页不会被缓存淘汰
+         */
+        void onTabPinned(TabInfo tabInfo, boolean pinned);
+
+        boolean isTabPinned(TabInfo tabInfo);
+
+        /**
+         * 标签页状态发生变化，状态在下一帧统一发布
+         */
+        void invalidateTabState(long tabId);
+
+        /**
+         * 标签页状态的发布入口，列表、导航栏及地址栏从中订阅
+         */
+        ITabStateStream getTabStateStream();
+
+        /**
+         * 按标题、地址及域名搜索标签页
+         *
+         * @return 按匹配程度排序的标签页，没有匹配时返回空列表
+         */
+        List<TabInfo> searchTabs(String query);
+
+        /**
+         * 重新打开最近关闭的标签页
+         *
+         * @return 没有可恢复的标签页时返回false
+         */
+        boolean onReopenClosedTab();
+
         void onRestoreTabCache(TabInfo infoCopy, @Nullable Fragment fragment);
 
         void onCloseAllTabs();
 
+        /**
+         * 关联会话日志，之后标签页的新建、关闭、标题、地址及切换事件都会写入日志
+         */
+        void attachSession(ISessionJournal journal);
+
         void onDestroy();
 
+        /**
+         * 系统内存不足时释放缓存的标签页
+         *
+         * @param level ComponentCallbacks2中的TRIM_MEMORY_*常量
+         */
+        void onTrimMemory(int level);
+
+        void onLowMemory();
+
         TabInfo getCurrentTab();
 
-        Bitmap getPreviewForTab(TabInfo tabInfo);
+        Bitmap getPreviewForTab(long tabId);
+
+        /**
+         * 内存中没有缩略图时从磁盘读取，读取完成后通知标签页列表刷新
+         */
+        void prefetchPreview(long tabId);
     }
 }
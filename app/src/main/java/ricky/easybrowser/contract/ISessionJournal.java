@@ -0,0 +1,23 @@
+package ricky.easybrowser.contract;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import ricky.easybrowser.entity.bo.TabInfo;
+
+/**
+ * 标签页会话日志，记录标签页的新建、关闭、标题、地址及切换事件，用于下次启动时恢复标签页列表
+ */
+public interface ISessionJournal {
+
+    void appendCreate(TabInfo info);
+
+    void appendClose(long tabId);
+
+    void appendTitle(long tabId, String title);
+
+    void appendUrl(long tabId, @Nullable Uri uri);
+
+    void appendSelect(long tabId);
+}
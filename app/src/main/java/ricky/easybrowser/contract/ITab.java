@@ -1,8 +1,14 @@
 package ricky.easybrowser.contract;
 
 import android.graphics.Bitmap;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
 
 import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
 
 public interface ITab {
     TabInfo provideTabInfo();
@@ -15,5 +21,39 @@ public interface ITab {
 
     void loadUrl(String url);
 
-    Bitmap getTabPreview();
+    /**
+     * 将标签页预览绘制到目标Bitmap中，由缩略图缓存在空闲时调用
+     *
+     * @return 没有可绘制的内容时返回false
+     */
+    boolean drawTabPreview(Bitmap target);
+
+    /**
+     * 标签页被缓存淘汰前保存状态，之后可通过Fragment参数
+     * {@link ricky.easybrowser.common.TabConst#ARG_RESTORE_STATE} 恢复
+     */
+    void saveHibernateState(Bundle outState);
+
+    /**
+     * 当前标签页的内存占用采样数据，用于缓存按占用大小淘汰
+     */
+    TabMemoryStats getMemoryStats();
+
+    /**
+     * 当前标签页的淘汰优先级信号，固定状态由缓存管理方填充
+     */
+    TabSignals getSignals();
+
+    /**
+     * 填充标签页的页面状态，由状态发布方在每帧统一读取
+     */
+    void fillState(TabState.Builder builder);
+
+    /**
+     * 标签页关闭时取下页面中的WebView，之后标签页销毁时不再销毁它
+     *
+     * @return 暂停后的WebView，没有打开网页时返回null
+     */
+    @Nullable
+    IWebView detachWebView();
 }
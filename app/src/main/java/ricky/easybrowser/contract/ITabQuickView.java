@@ -17,6 +17,14 @@ public interface ITabQuickView {
     }
 
     interface Observer {
+        /**
+         * 标签页增减或顺序变化
+         */
         void updateQuickView();
+
+        /**
+         * 某个标签页的缩略图变化
+         */
+        void updatePreview(long tabId);
     }
 }
@@ -0,0 +1,45 @@
+package ricky.easybrowser.contract;
+
+import androidx.annotation.Nullable;
+
+import io.reactivex.Observable;
+import ricky.easybrowser.entity.bo.TabState;
+
+/**
+ * 标签页状态的订阅接口。列表、导航栏及地址栏从中订阅，不关心状态如何合并及发布
+ */
+public interface ITabStateStream {
+
+    /**
+     * 订阅状态变化。订阅时立即收到最近一次发布的状态
+     */
+    Observable<Snapshot> observe();
+
+    @Nullable
+    TabState get(long tabId);
+
+    /**
+     * 某一次发布的标签页状态变化。状态随发布方更新，需在收到通知时同步读取
+     */
+    interface Snapshot {
+        @Nullable
+        TabState get(long tabId);
+
+        @Nullable
+        TabState getCurrent();
+
+        long getCurrentId();
+
+        /**
+         * 该标签页的状态在这一次发布中是否发生变化
+         */
+        boolean hasChanged(long tabId);
+
+        /**
+         * 这一次发布中状态发生变化(包括被移除)的标签页数量
+         */
+        int getChangedCount();
+
+        long getChangedId(int index);
+    }
+}
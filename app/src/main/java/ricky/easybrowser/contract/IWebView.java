@@ -1,9 +1,15 @@
 package ricky.easybrowser.contract;
 
 import android.graphics.Bitmap;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
 
 import ricky.easybrowser.entity.bo.ClickInfo;
 import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
 
 public interface IWebView {
 
@@ -23,18 +29,110 @@ public interface IWebView {
 
     void releaseSession();
 
+    /**
+     * 恢复当前WebView，不影响进程全局的脚本定时器
+     */
     void onResume();
 
+    /**
+     * 暂停当前WebView，不影响进程全局的脚本定时器
+     */
     void onPause();
 
+    /**
+     * 暂停页面中正在播放的音视频
+     */
+    void pauseMedia();
+
+    /**
+     * 暂停或恢复进程中所有WebView的脚本定时器，只由 {@link ricky.easybrowser.web.WebViewLifecycle} 调用
+     */
+    void setTimersPaused(boolean paused);
+
+    /**
+     * 清除进程中所有WebView共用的磁盘缓存，只由 {@link ricky.easybrowser.web.WebViewLifecycle} 调用
+     *
+     * @return 没有可用的WebView时返回false
+     */
+    boolean clearCache();
+
     void onDestroy();
 
-    Bitmap capturePreview();
+    /**
+     * 将当前页面缩放绘制到目标Bitmap中
+     *
+     * @return 没有可绘制的内容时返回false
+     */
+    boolean capturePreview(Bitmap target);
+
+    /**
+     * 保存页面状态(前进后退列表及滚动位置)，用于标签页休眠
+     */
+    void saveState(Bundle outState);
+
+    /**
+     * 从保存的状态中恢复页面
+     *
+     * @return 恢复成功返回true
+     */
+    boolean restoreState(Bundle savedState);
+
+    /**
+     * 填充内存估算所需的采样数据
+     */
+    void collectMemoryStats(TabMemoryStats stats);
+
+    /**
+     * 填充淘汰策略所需的页面状态：媒体播放、输入焦点、表单输入及最近操作时间
+     */
+    void collectSignals(TabSignals signals);
+
+    /**
+     * 后台加载的标签页降低渲染优先级，切换到前台时恢复
+     */
+    void setBackgroundPriority(boolean background);
 
+    String getTitle();
+
+    String getUrl();
+
+    int getProgress();
+
+    boolean isLoading();
+
+    @Nullable
+    Bitmap getFavicon();
+
+    /**
+     * 当前页面拦截的广告及跟踪请求数，页面开始加载时清零
+     */
+    int getBlockedCount();
+
+    /**
+     * 按发布的标签页状态刷新地址栏及导航栏
+     */
+    void renderState(TabState state);
 
     interface OnWebInteractListener {
+        /**
+         * 页面状态(进度、标题、地址、图标、前进后退)发生变化，只作通知，状态由接收方按需读取
+         *
+         * @param tabId 由WebView发出时为 {@link TabInfo#NO_ID}，由标签页补充
+         */
+        void onPageStateChange(long tabId);
+
         void onPageTitleChange(TabInfo tabInfo);
 
+        /**
+         * 页面开始或结束加载
+         */
+        void onPageLoadingChange(TabInfo tabInfo, boolean loading);
+
+        /**
+         * 页面发生滚动
+         */
+        void onPageScrolled();
+
         void onLongClick(ClickInfo clickInfo);
     }
 }
@@ -6,20 +6,41 @@ import android.os.Parcelable;
 
 import androidx.annotation.Nullable;
 
+import ricky.easybrowser.utils.TabIdGenerator;
+
 /**
  * 缓存中对应的页面信息
+ * <p>
+ * 以long型id作为标签页标识，tag为id的字符串形式，仅用于FragmentManager及兼容旧的保存数据
  */
 public class TabInfo implements Parcelable {
+
+    public static final long NO_ID = 0L;
+
+    private long id = NO_ID;
     private String tag;
     private String title;
     private Uri uri;
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+        this.tag = null;
+        TabIdGenerator.ensureAbove(id);
+    }
+
     public String getTag() {
+        if (tag == null && id != NO_ID) {
+            tag = Long.toString(id);
+        }
         return tag;
     }
 
     public void setTag(String tag) {
-        this.tag = tag;
+        setId(parseId(tag));
     }
 
     public String getTitle() {
@@ -38,27 +59,49 @@ public class TabInfo implements Parcelable {
         this.uri = uri;
     }
 
+    /**
+     * 将旧版本使用的字符串tag转换为id，无法解析时分配新的id
+     */
+    public static long parseId(@Nullable String tag) {
+        if (tag == null || tag.isEmpty()) {
+            return NO_ID;
+        }
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            return TabIdGenerator.next();
+        }
+    }
+
     @Override
     public boolean equals(@Nullable Object obj) {
-        if (tag == null || obj == null) {
+        if (id == NO_ID || obj == null) {
             return false;
         }
         if (obj instanceof TabInfo) {
             TabInfo target = (TabInfo) obj;
-            return tag.equals(target.tag);
+            return id == target.id;
         } else {
             return false;
         }
     }
 
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+
     @Override
     public int describeContents() {
         return 0;
     }
 
+    /**
+     * 与旧版本保持相同的写入格式，id以字符串形式写入
+     */
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeString(this.tag);
+        dest.writeString(getTag());
         dest.writeString(this.title);
         dest.writeParcelable(this.uri, flags);
     }
@@ -66,23 +109,34 @@ public class TabInfo implements Parcelable {
     public TabInfo() {
     }
 
-    public static TabInfo create(String tag, String title) {
-        TabInfo tabInfo = new TabInfo();
-        tabInfo.tag = tag;
-        tabInfo.title = title;
-        return tabInfo;
+    /**
+     * 创建新标签页信息，自动分配id
+     */
+    public static TabInfo create(String title) {
+        return create(TabIdGenerator.next(), title, null);
+    }
+
+    /**
+     * 创建新标签页信息，自动分配id
+     */
+    public static TabInfo create(String title, Uri uri) {
+        return create(TabIdGenerator.next(), title, uri);
+    }
+
+    public static TabInfo create(long id, String title) {
+        return create(id, title, null);
     }
 
-    public static TabInfo create(String tag, String title, Uri uri) {
+    public static TabInfo create(long id, String title, Uri uri) {
         TabInfo tabInfo = new TabInfo();
-        tabInfo.tag = tag;
+        tabInfo.setId(id);
         tabInfo.title = title;
         tabInfo.uri = uri;
         return tabInfo;
     }
 
     protected TabInfo(Parcel in) {
-        this.tag = in.readString();
+        setId(parseId(in.readString()));
         this.title = in.readString();
         this.uri = in.readParcelable(Uri.class.getClassLoader());
     }
@@ -98,4 +152,4 @@ public class TabInfo implements Parcelable {
             return new TabInfo[size];
         }
     };
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package ricky.easybrowser.entity.bo;
+
+/**
+ * 标签页内存占用相关的采样数据，由标签页填充后交给估算器计算
+ */
+public class TabMemoryStats {
+
+    public boolean hasWebView;
+    /**
+     * 网页内容尺寸(px)
+     */
+    public int contentWidth;
+    public int contentHeight;
+    /**
+     * 最近一次生成的预览图大小
+     */
+    public int previewBytes;
+    /**
+     * 前进后退列表中的页面数
+     */
+    public int historySize;
+    /**
+     * 当前页面加载的子资源数
+     */
+    public int resourceCount;
+
+    public void reset() {
+        hasWebView = false;
+        contentWidth = 0;
+        contentHeight = 0;
+        previewBytes = 0;
+        historySize = 0;
+        resourceCount = 0;
+    }
+}
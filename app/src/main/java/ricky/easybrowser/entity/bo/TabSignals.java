@@ -0,0 +1,36 @@
+package ricky.easybrowser.entity.bo;
+
+/**
+ * 标签页的淘汰优先级信号，由标签页及网页填充后交给淘汰策略判断
+ */
+public class TabSignals {
+
+    /**
+     * 用户固定的标签页
+     */
+    public boolean pinned;
+    /**
+     * 页面中有音视频正在播放
+     */
+    public boolean mediaPlaying;
+    /**
+     * 页面中的输入框处于焦点状态
+     */
+    public boolean inputFocused;
+    /**
+     * 页面中的表单输入过内容，尚未离开页面
+     */
+    public boolean formDirty;
+    /**
+     * 最近一次用户操作的时间，{@link android.os.SystemClock#uptimeMillis()}
+     */
+    public long lastInteractionTime;
+
+    public void reset() {
+        pinned = false;
+        mediaPlaying = false;
+        inputFocused = false;
+        formDirty = false;
+        lastInteractionTime = 0;
+    }
+}
@@ -0,0 +1,167 @@
+package ricky.easybrowser.entity.bo;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 标签页状态的不可变记录，由 {@link ricky.easybrowser.page.browser.TabStateHub} 统一发布。
+ * 标签页列表、底部导航栏及地址栏都从这里读取，不直接查询WebView
+ */
+public final class TabState {
+
+    private final long id;
+    private final String title;
+    private final String url;
+    private final int progress;
+    private final boolean canGoBack;
+    private final boolean canGoForward;
+    private final boolean loading;
+    @Nullable
+    private final Bitmap favicon;
+    private final int memoryEstimate;
+    private final int blockedCount;
+
+    private TabState(Builder builder) {
+        this.id = builder.id;
+        this.title = builder.title;
+        this.url = builder.url;
+        this.progress = builder.progress;
+        this.canGoBack = builder.canGoBack;
+        this.canGoForward = builder.canGoForward;
+        this.loading = builder.loading;
+        this.favicon = builder.favicon;
+        this.memoryEstimate = builder.memoryEstimate;
+        this.blockedCount = builder.blockedCount;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+
+    public boolean canGoBack() {
+        return canGoBack;
+    }
+
+    public boolean canGoForward() {
+        return canGoForward;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    @Nullable
+    public Bitmap getFavicon() {
+        return favicon;
+    }
+
+    /**
+     * 缓存估算的内存占用(字节)，未创建的标签页为0
+     */
+    public int getMemoryEstimate() {
+        return memoryEstimate;
+    }
+
+    /**
+     * 当前页面拦截的广告及跟踪请求数
+     */
+    public int getBlockedCount() {
+        return blockedCount;
+    }
+
+    /**
+     * 内容是否与另一状态一致，用于判断是否需要发布
+     */
+    public boolean sameAs(@Nullable TabState other) {
+        return other != null
+                && id == other.id
+                && progress == other.progress
+                && canGoBack == other.canGoBack
+                && canGoForward == other.canGoForward
+                && loading == other.loading
+                && favicon == other.favicon
+                && memoryEstimate == other.memoryEstimate
+                && blockedCount == other.blockedCount
+                && equals(title, other.title)
+                && equals(url, other.url);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public static class Builder {
+        private final long id;
+        private String title;
+        private String url;
+        private int progress;
+        private boolean canGoBack;
+        private boolean canGoForward;
+        private boolean loading;
+        private Bitmap favicon;
+        private int memoryEstimate;
+        private int blockedCount;
+
+        public Builder(long id) {
+            this.id = id;
+        }
+
+        public Builder title(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public Builder url(String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Builder progress(int progress) {
+            this.progress = progress;
+            return this;
+        }
+
+        public Builder navigation(boolean canGoBack, boolean canGoForward) {
+            this.canGoBack = canGoBack;
+            this.canGoForward = canGoForward;
+            return this;
+        }
+
+        public Builder loading(boolean loading) {
+            this.loading = loading;
+            return this;
+        }
+
+        public Builder favicon(@Nullable Bitmap favicon) {
+            this.favicon = favicon;
+            return this;
+        }
+
+        public Builder memoryEstimate(int memoryEstimate) {
+            this.memoryEstimate = memoryEstimate;
+            return this;
+        }
+
+        public Builder blockedCount(int blockedCount) {
+            this.blockedCount = blockedCount;
+            return this;
+        }
+
+        public TabState build() {
+            return new TabState(this);
+        }
+    }
+}
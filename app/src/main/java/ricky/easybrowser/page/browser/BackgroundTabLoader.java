@@ -0,0 +1,260 @@
+package ricky.easybrowser.page.browser;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.utils.LongIntMap;
+
+/**
+ * 后台标签页加载队列。
+ * <p>
+ * 后台打开的标签页先进入队列，按设定的并发数依次创建并加载。前台标签页正在加载或滚动时暂停出队，
+ * 前台空闲后继续。每个后台标签页加载完成或超时后释放名额。加载状态按标签页记录，切换前台标签页后
+ * 按新的前台标签页判断是否暂停。仅在UI线程中使用
+ */
+public class BackgroundTabLoader {
+
+    private static final String TAG = "BackgroundTabLoader";
+
+    public static final int DEFAULT_MAX_CONCURRENT = 1;
+    /**
+     * 前台最后一次滚动后，等待该时间再继续加载
+     */
+    private static final long SCROLL_QUIET_MS = 800;
+    /**
+     * 后台标签页迟迟没有加载完成时，超时释放名额
+     */
+    private static final long LOAD_TIMEOUT_MS = 15 * 1000L;
+
+    /**
+     * 创建并开始加载后台标签页
+     */
+    public interface Loader {
+        /**
+         * @return 已开始加载返回true，标签页不存在或已创建返回false
+         */
+        boolean startBackgroundLoad(long tabId);
+    }
+
+    /**
+     * 队列状态监控
+     */
+    public interface Monitor {
+        void onQueueChanged(int queueDepth, int activeCount);
+
+        void onLoadStarted(long tabId, long waitMs);
+    }
+
+    private static class Pending {
+        long tabId;
+        long enqueueTime;
+    }
+
+    private final Loader loader;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    /**
+     * 正在加载的后台标签页，值不使用
+     */
+    private final LongIntMap active = new LongIntMap(-1);
+    /**
+     * 正在加载的标签页(包括前台)，值不使用
+     */
+    private final LongIntMap loading = new LongIntMap(-1);
+
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private long foregroundTabId = -1;
+    private long lastScrollTime;
+    private boolean scheduled;
+
+    private int startedCount;
+    private long totalWaitMs;
+    private long lastWaitMs;
+
+    @Nullable
+    private Monitor monitor;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduled = false;
+            drain();
+        }
+    };
+
+    public BackgroundTabLoader(Loader loader) {
+        this.loader = loader;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        scheduleDrain(0);
+    }
+
+    public void setMonitor(@Nullable Monitor monitor) {
+        this.monitor = monitor;
+    }
+
+    public void enqueue(long tabId) {
+        Pending pending = new Pending();
+        pending.tabId = tabId;
+        pending.enqueueTime = SystemClock.uptimeMillis();
+        queue.addLast(pending);
+        notifyQueueChanged();
+        scheduleDrain(0);
+    }
+
+    /**
+     * 标签页被关闭或切换到前台时移出队列，正在加载的释放名额
+     */
+    public void remove(long tabId) {
+        loading.remove(tabId);
+        boolean changed = false;
+        Iterator<Pending> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().tabId == tabId) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+        if (active.remove(tabId) != -1) {
+            changed = true;
+            scheduleDrain(0);
+        }
+        if (changed) {
+            notifyQueueChanged();
+        }
+    }
+
+    public void clear() {
+        queue.clear();
+        active.clear();
+        loading.clear();
+        handler.removeCallbacksAndMessages(null);
+        scheduled = false;
+        notifyQueueChanged();
+    }
+
+    /**
+     * 当前显示的标签页变化
+     */
+    public void setForegroundTab(long tabId) {
+        if (foregroundTabId == tabId) {
+            return;
+        }
+        foregroundTabId = tabId;
+        scheduleDrain(0);
+    }
+
+    /**
+     * 标签页加载状态变化
+     */
+    public void onLoadingChange(long tabId, boolean isLoading) {
+        if (isLoading) {
+            loading.put(tabId, 0);
+            return;
+        }
+        loading.remove(tabId);
+        if (active.remove(tabId) != -1) {
+            EasyLog.i(TAG, "background tab loaded: " + tabId);
+            notifyQueueChanged();
+            scheduleDrain(0);
+        } else if (tabId == foregroundTabId) {
+            scheduleDrain(0);
+        }
+    }
+
+    public void onForegroundScroll() {
+        lastScrollTime = SystemClock.uptimeMillis();
+        if (!queue.isEmpty()) {
+            scheduleDrain(SCROLL_QUIET_MS);
+        }
+    }
+
+    private void drain() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        if (loading.containsKey(foregroundTabId)) {
+            // 前台加载完成时会重新调度
+            return;
+        }
+        long sinceScroll = SystemClock.uptimeMillis() - lastScrollTime;
+        if (sinceScroll < SCROLL_QUIET_MS) {
+            scheduleDrain(SCROLL_QUIET_MS - sinceScroll);
+            return;
+        }
+        while (active.size() < maxConcurrent && !queue.isEmpty()) {
+            Pending pending = queue.pollFirst();
+            if (!loader.startBackgroundLoad(pending.tabId)) {
+                continue;
+            }
+            final long tabId = pending.tabId;
+            long waitMs = SystemClock.uptimeMillis() - pending.enqueueTime;
+            active.put(tabId, 0);
+            startedCount++;
+            totalWaitMs += waitMs;
+            lastWaitMs = waitMs;
+            EasyLog.i(TAG, "start background load: " + tabId + ", waited " + waitMs + "ms, queue: " + queue.size());
+            if (monitor != null) {
+                monitor.onLoadStarted(tabId, waitMs);
+            }
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    if (active.remove(tabId) != -1) {
+                        EasyLog.w(TAG, "background load timeout: " + tabId);
+                        notifyQueueChanged();
+                        drain();
+                    }
+                }
+            }, LOAD_TIMEOUT_MS);
+        }
+        notifyQueueChanged();
+    }
+
+    private void scheduleDrain(long delayMs) {
+        if (scheduled) {
+            if (delayMs == 0) {
+                handler.removeCallbacks(drainTask);
+            } else {
+                return;
+            }
+        }
+        scheduled = true;
+        handler.postDelayed(drainTask, delayMs);
+    }
+
+    private void notifyQueueChanged() {
+        if (monitor != null) {
+            monitor.onQueueChanged(queue.size(), active.size());
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public int getStartedCount() {
+        return startedCount;
+    }
+
+    public long getLastWaitMs() {
+        return lastWaitMs;
+    }
+
+    public long getAverageWaitMs() {
+        return startedCount == 0 ? 0 : totalWaitMs / startedCount;
+    }
+}
@@ -3,9 +3,11 @@ package ricky.easybrowser.page.browser;
 import android.app.Activity;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.ViewGroup;
 import android.webkit.WebView;
 import android.widget.FrameLayout;
 
@@ -15,8 +17,8 @@ import androidx.annotation.UiThread;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import io.reactivex.Observable;
@@ -38,11 +40,15 @@ import ricky.easybrowser.entity.dao.History;
 import ricky.easybrowser.page.address.AddressDialog;
 import ricky.easybrowser.page.history.HistoryActivity;
 import ricky.easybrowser.page.setting.SettingDialogKt;
+import ricky.easybrowser.page.tab.NewTabFragmentV2;
 import ricky.easybrowser.contract.ITab;
 import ricky.easybrowser.page.tabpreview.TabDialogKt;
 import ricky.easybrowser.utils.FragmentBackHandleHelper;
+import ricky.easybrowser.utils.LongIntMap;
+import ricky.easybrowser.utils.SharedPreferencesUtils;
 import ricky.easybrowser.utils.TabHelper;
 import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.web.WebViewLifecycle;
 
 public class BrowserActivity extends AppCompatActivity implements IWebView.OnWebInteractListener,
         IBrowser {
@@ -53,6 +59,8 @@ public class BrowserActivity extends AppCompatActivity implements IWebView.OnWeb
     private static final String TAB_DIALOG_TAG = "tab_dialog";
     private static final String ADDRESS_DIALOG_TAG = "address_dialog";
 
+    private static final String KEY_SESSION_ID = "session_id";
+
     FrameLayout webContentFrame;
 
     IBrowser.INavController navController;
@@ -62,22 +70,42 @@ public class BrowserActivity extends AppCompatActivity implements IWebView.OnWeb
     IBrowser.IDownloadController downloadController;
     IBrowser.IComponent stubComponent;
 
+    TabSessionJournal sessionJournal;
+    BrowserViewModel viewModel;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_browser);
+        // 首帧之后预创建一个WebView，新标签页打开网页时直接使用
+        getWindow().getDecorView().post(new Runnable() {
+            @Override
+            public void run() {
+                getViewModel().getWebViewPool().prewarm(BrowserActivity.this);
+            }
+        });
 
         getTabController();
 
         webContentFrame = findViewById(R.id.web_content_frame);
 
+        EasyApplication application = (EasyApplication) getApplicationContext();
+        long sessionId = savedInstanceState == null
+                ? TabInfo.NO_ID : savedInstanceState.getLong(KEY_SESSION_ID, TabInfo.NO_ID);
+        sessionJournal = application.openSessionJournal(sessionId);
+        getTabController().attachSession(sessionJournal);
+
         if (savedInstanceState == null) {
-            // 默认添加一个新标签页
-            TabInfo tabInfo = TabInfo.create(
-                    System.currentTimeMillis() + "",
-                    getString(R.string.new_tab_welcome));
-            getTabController().onTabCreate(tabInfo, false);
+            if (!restoreSession()) {
+                // 没有可还原的标签页，之前休眠的标签页状态不再需要
+                application.getTabStateStore().clear();
+                application.getTabThumbnailStore().clear();
+                // 默认添加一个新标签页
+                TabInfo tabInfo = TabInfo.create(getString(R.string.new_tab_welcome));
+                getTabController().onTabCreate(tabInfo, false);
+            }
         } else {
+            restoreTabsFromState();
             Fragment prevDialog = getSupportFragmentManager().findFragmentByTag(TAB_DIALOG_TAG);
             if (prevDialog instanceof TabDialogKt) {
                 ((TabDialogKt) prevDialog).setTabViewSubject(getTabController());
@@ -86,61 +114,106 @@ public class BrowserActivity extends AppCompatActivity implements IWebView.OnWeb
         }
     }
 
-    @Override
-    protected void onRestoreInstanceState(Bundle savedInstanceState) {
-        super.onRestoreInstanceState(savedInstanceState);
-        if (savedInstanceState == null) {
-            return;
+    /**
+     * 冷启动时从会话日志中还原标签页列表，只创建最后显示的标签页
+     *
+     * @return 没有可还原的标签页时返回false
+     */
+    private boolean restoreSession() {
+        List<TabInfo> restoreList = sessionJournal.restoreTabs();
+        if (restoreList.isEmpty()) {
+            return false;
         }
-        ArrayList<TabInfo> restoreList = savedInstanceState.getParcelableArrayList("tablist");
-        if (restoreList == null) {
-            return;
+        TabInfo current = restoreList.get(restoreList.size() - 1);
+        for (TabInfo info : restoreList) {
+            getTabController().onRestoreTabCache(info, null);
+            if (info.getId() == sessionJournal.getCurrentId()) {
+                current = info;
+            }
         }
+        getTabController().onTabSelected(current);
+        return true;
+    }
 
-        // 当横竖屏切换后，将复原的Fragment重新推入cache
+    /**
+     * 横竖屏切换或进程重建后还原标签页。
+     * <p>
+     * Bundle中只保存会话id，标签页列表从会话日志中还原。FragmentManager重建的标签页Fragment全部保留：
+     * 配置变化时各标签页的WebView暂存在 {@link BrowserViewModel} 中，创建视图时直接取回，不重新加载；
+     * 进程被回收后重建的，页面状态从休眠存储中恢复，隐藏的标签页首次显示时才创建页面
+     */
+    private void restoreTabsFromState() {
+        List<TabInfo> restoreList = sessionJournal.restoreTabs();
         // 由于tablist可能超出cache的大小(即Activity销毁前Fragment数量)，这里首先还原tablist信息
-        getTabController().provideInfoList().addAll(restoreList);
-        List<Fragment> restoredFragmentList = getSupportFragmentManager().getFragments();
-        if (restoredFragmentList.size() > 0) {
-            for (Fragment target : restoredFragmentList) {
-                if (target instanceof ITab && target.getArguments() != null) {
-                    // 根据Fragment参数，还原TabInfo信息用于列表中查找
-                    TabInfo info = TabInfo.create(
-                            target.getArguments().getString(TabConst.ARG_TAG),
-                            target.getArguments().getString(TabConst.ARG_TITLE));
-                    getTabController().onRestoreTabCache(info, target);
-                }
+        for (TabInfo info : restoreList) {
+            getTabController().onRestoreTabCache(info, null);
+        }
+
+        LongIntMap keep = new LongIntMap(-1);
+        for (Fragment target : getSupportFragmentManager().getFragments()) {
+            if (!(target instanceof ITab) || target.getArguments() == null) {
+                continue;
             }
+            long tabId = NewTabFragmentV2.readTabId(target.getArguments());
+            // 根据Fragment参数，还原TabInfo信息用于列表中查找
+            TabInfo info = TabInfo.create(tabId, target.getArguments().getString(TabConst.ARG_TITLE));
+            getTabController().onRestoreTabCache(info, target);
+            keep.put(tabId, 1);
+        }
+        getViewModel().releaseParkedExcept(keep);
+
+        if (getTabController().getCurrentTab() == null && !restoreList.isEmpty()) {
+            restoreSession();
         }
     }
 
     @Override
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
-        ArrayList<TabInfo> storeList = new ArrayList<>();
-        storeList.addAll(getTabController().provideInfoList());
-        outState.putParcelableArrayList("tablist", storeList);
+        if (sessionJournal != null) {
+            outState.putLong(KEY_SESSION_ID, sessionJournal.getSessionId());
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         if (tabController != null) {
-            tabController.onCloseAllTabs();
+            if (!isChangingConfigurations()) {
+                tabController.onCloseAllTabs();
+            }
             tabController.detach();
             tabController.onDestroy();
             tabController = null;
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (tabController != null) {
+            tabController.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (tabController != null) {
+            tabController.onLowMemory();
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        WebViewLifecycle.getInstance().onHostResume();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        WebViewLifecycle.getInstance().onHostPause();
     }
 
     @Override
@@ -148,6 +221,21 @@ public class BrowserActivity extends AppCompatActivity implements IWebView.OnWeb
         getTabController().updateTabInfo(tabInfo);
     }
 
+    @Override
+    public void onPageStateChange(long tabId) {
+        getTabController().invalidateTabState(tabId);
+    }
+
+    @Override
+    public void onPageLoadingChange(TabInfo tabInfo, boolean loading) {
+        getTabController().onTabLoadingChange(tabInfo, loading);
+    }
+
+    @Override
+    public void onPageScrolled() {
+        getTabController().onTabScrolled();
+    }
+
     @Override
     public void onLongClick(ClickInfo clickInfo) {
         if (clickInfo == null) {
@@ -169,7 +257,7 @@ public class BrowserActivity extends AppCompatActivity implements IWebView.OnWeb
 
     @Override
     public void onBackPressed() {
-        if (FragmentBackHandleHelper.isFragmentBackHandled(getSupportFragmentManager())) {
+        if (FragmentBackHandleHelper.isFragmentBackHandled(getSupportFragmentManager(), getTabController())) {
             return;
         }
 
@@ -339,13 +427,33 @@ public class BrowserActivity extends AppCompatActivity implements IWebView.OnWeb
         return navController;
     }
 
+    /**
+     * 按设置创建标签页容器：默认使用Fragment实现的 {@link TabCacheManager}，也可以切换为直接管理视图的 {@link ViewTabHost}
+     */
     private IBrowser.ITabController getTabController() {
         if (tabController == null) {
-            tabController = new TabCacheManager(this, getSupportFragmentManager(), 3, R.id.web_content_frame);
+            SharedPreferences sp = SharedPreferencesUtils.getSettingSP(this);
+            String host = sp.getString(SharedPreferencesUtils.KEY_TAB_HOST, SharedPreferencesUtils.TAB_HOST_FRAGMENT);
+            if (SharedPreferencesUtils.TAB_HOST_VIEW.equals(host)) {
+                tabController = new ViewTabHost(this, (ViewGroup) findViewById(R.id.web_content_frame),
+                        TabCacheSizer.computeBaseline(this), getViewModel());
+                return tabController;
+            }
+            TabCacheManager manager = new TabCacheManager(this, getSupportFragmentManager(),
+                    TabCacheSizer.computeBaseline(this), R.id.web_content_frame);
+            manager.attachRetained(getViewModel());
+            tabController = manager;
         }
         return tabController;
     }
 
+    private BrowserViewModel getViewModel() {
+        if (viewModel == null) {
+            viewModel = new ViewModelProvider(this).get(BrowserViewModel.class);
+        }
+        return viewModel;
+    }
+
     class EasyNavController implements IBrowser.INavController {
         @Override
         public void goBack() {
@@ -367,6 +475,11 @@ public class BrowserActivity extends AppCompatActivity implements IWebView.OnWeb
             showTabDialog();
         }
 
+        @Override
+        public void reopenClosedTab() {
+            getTabController().onReopenClosedTab();
+        }
+
         @Override
         public void showAddress(String currentUrl) {
             showAddressDialog(currentUrl);
@@ -0,0 +1,149 @@
+package ricky.easybrowser.page.browser;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.util.LongSparseArray;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+
+import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.utils.LongIntMap;
+import ricky.easybrowser.web.WebViewPool;
+import ricky.easybrowser.web.webkit.PageNestedWebView;
+
+/**
+ * 浏览器页面在配置变化(如横竖屏切换)中保留的数据。
+ * <p>
+ * Activity因配置变化销毁时，标签页把WebView暂存到这里，WebView的Context切换为Application，不持有旧的Activity；
+ * 新的Activity创建标签页视图时取回WebView并切换回新的Activity，页面、前进后退记录及脚本状态都不受影响，
+ * 不需要重新创建WebView或重新加载。最近关闭的标签页及WebView实例池也保存在这里。
+ * <p>
+ * WebView需使用 {@link MutableContextWrapper} 创建，参见 {@link #wrap(Context)}。仅在UI线程中使用
+ */
+public class BrowserViewModel extends ViewModel {
+
+    private static final String TAG = "BrowserViewModel";
+
+    private final LongSparseArray<IWebView> parkedWebViews = new LongSparseArray<>();
+    private final ClosedTabBuffer closedTabs = new ClosedTabBuffer();
+    private final WebViewPool webViewPool = new WebViewPool(new WebViewPool.Factory() {
+        @Override
+        public IWebView create(Context context) {
+            return new PageNestedWebView(wrap(context));
+        }
+
+        @Override
+        public void rebind(IWebView webView, Context context) {
+            BrowserViewModel.rebind(webView, context);
+        }
+    });
+
+    private int parkCount;
+    private int reattachCount;
+
+    /**
+     * 创建WebView使用的Context，之后可以在Activity之间切换
+     */
+    public static Context wrap(Context context) {
+        return new MutableContextWrapper(context);
+    }
+
+    /**
+     * 暂存标签页的WebView，直到新的标签页视图取回
+     */
+    public void park(long tabId, IWebView webView, Context appContext) {
+        IWebView prev = parkedWebViews.get(tabId);
+        if (prev != null && prev != webView) {
+            prev.onDestroy();
+        }
+        webView.setOnWebInteractListener(null);
+        rebind(webView, appContext);
+        parkedWebViews.put(tabId, webView);
+        parkCount++;
+    }
+
+    /**
+     * 取回暂存的WebView并切换到新的Activity，没有时返回null
+     */
+    @Nullable
+    public IWebView unpark(long tabId, Context activity) {
+        IWebView webView = parkedWebViews.get(tabId);
+        if (webView == null) {
+            return null;
+        }
+        parkedWebViews.remove(tabId);
+        rebind(webView, activity);
+        reattachCount++;
+        return webView;
+    }
+
+    public boolean isParked(long tabId) {
+        return parkedWebViews.get(tabId) != null;
+    }
+
+    /**
+     * 销毁不会再被取回的WebView
+     *
+     * @param keep 保留的标签页id
+     */
+    public void releaseParkedExcept(LongIntMap keep) {
+        for (int i = parkedWebViews.size() - 1; i >= 0; i--) {
+            long tabId = parkedWebViews.keyAt(i);
+            if (!keep.containsKey(tabId)) {
+                parkedWebViews.valueAt(i).onDestroy();
+                parkedWebViews.remove(tabId);
+                EasyLog.i(TAG, "release parked webview: " + tabId);
+            }
+        }
+    }
+
+    public void releaseParked(long tabId) {
+        IWebView webView = parkedWebViews.get(tabId);
+        if (webView != null) {
+            webView.onDestroy();
+            parkedWebViews.remove(tabId);
+        }
+    }
+
+    public ClosedTabBuffer getClosedTabs() {
+        return closedTabs;
+    }
+
+    public WebViewPool getWebViewPool() {
+        return webViewPool;
+    }
+
+    public int getParkCount() {
+        return parkCount;
+    }
+
+    public int getReattachCount() {
+        return reattachCount;
+    }
+
+    /**
+     * 切换WebView使用的Context
+     */
+    public static void rebind(IWebView webView, Context context) {
+        Context current = ((View) webView).getContext();
+        if (current instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) current).setBaseContext(context);
+        } else {
+            EasyLog.w(TAG, "webview is not created with a MutableContextWrapper");
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        for (int i = 0; i < parkedWebViews.size(); i++) {
+            parkedWebViews.valueAt(i).onDestroy();
+        }
+        parkedWebViews.clear();
+        closedTabs.clear();
+        webViewPool.clear();
+    }
+}
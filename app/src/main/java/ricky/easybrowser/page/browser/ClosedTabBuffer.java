@@ -0,0 +1,273 @@
+package ricky.easybrowser.page.browser;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+import ricky.easybrowser.common.TabConst;
+import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * 最近关闭的标签页。
+ * <p>
+ * 按关闭顺序保存最近的若干个标签页，最早关闭的超出数量后丢弃。刚关闭的标签页保留从页面中取下的WebView，
+ * 重新打开时直接放回，不需要重新加载；超过保留时间后，WebView的页面状态(前进后退列表及滚动位置)
+ * 转存为与休眠状态相同格式的Bundle，随后销毁WebView，重新打开时从中恢复。
+ * <p>
+ * 保存数量、保留WebView的数量及保留时间随标签页缓存容量变化。仅在UI线程中使用
+ */
+public class ClosedTabBuffer {
+
+    private static final String TAG = "ClosedTabBuffer";
+
+    private static final int MAX_ENTRIES = 10;
+    private static final int MIN_ENTRIES = 3;
+    private static final int MAX_LIVE = 2;
+    private static final long MAX_GRACE_MS = 60 * 1000L;
+    private static final long MIN_GRACE_MS = 5 * 1000L;
+
+    /**
+     * 被关闭的标签页
+     */
+    public static final class ClosedTab {
+        private final TabInfo info;
+        private final long closedTime;
+        @Nullable
+        private IWebView webView;
+        @Nullable
+        private Bundle state;
+
+        ClosedTab(TabInfo info, @Nullable IWebView webView, @Nullable Bundle state) {
+            this.info = info;
+            this.webView = webView;
+            this.state = state;
+            this.closedTime = SystemClock.uptimeMillis();
+        }
+
+        public TabInfo getInfo() {
+            return info;
+        }
+
+        /**
+         * 仍保留的WebView，取出后由调用方负责显示或销毁
+         */
+        @Nullable
+        public IWebView getWebView() {
+            return webView;
+        }
+
+        /**
+         * 休眠格式的页面状态，可写入 {@link ricky.easybrowser.page.tab.TabStateStore} 后恢复
+         */
+        @Nullable
+        public Bundle getState() {
+            return state;
+        }
+
+        public long getClosedTime() {
+            return closedTime;
+        }
+
+        /**
+         * 关闭休眠中的标签页时，状态在后台读取完成后补上
+         */
+        void setState(@Nullable Bundle state) {
+            if (webView == null) {
+                this.state = state;
+            }
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * 最近关闭的在末尾
+     */
+    private final ArrayDeque<ClosedTab> entries = new ArrayDeque<>();
+
+    private int maxEntries = MAX_ENTRIES;
+    private int maxLive = MAX_LIVE;
+    private long graceMs = MAX_GRACE_MS;
+
+    private int reopenLiveCount;
+    private int reopenStateCount;
+
+    private final Runnable expireTask = new Runnable() {
+        @Override
+        public void run() {
+            expireLiveTabs();
+        }
+    };
+
+    /**
+     * 按标签页缓存的当前容量与基准容量调整保存数量及保留时间，内存紧张时不再保留WebView
+     */
+    public void onBudgetChanged(int capacity, int baseline) {
+        float ratio = baseline <= 0 ? 1f : Math.min(1f, (float) capacity / baseline);
+        maxEntries = Math.max(MIN_ENTRIES, Math.round(MAX_ENTRIES * ratio));
+        if (ratio >= 1f) {
+            maxLive = MAX_LIVE;
+        } else if (ratio >= 0.5f) {
+            maxLive = 1;
+        } else {
+            maxLive = 0;
+        }
+        graceMs = Math.max(MIN_GRACE_MS, (long) (MAX_GRACE_MS * ratio));
+        trim();
+        expireLiveTabs();
+    }
+
+    /**
+     * 当前是否还能保留WebView
+     */
+    public boolean acceptsLive() {
+        return maxLive > 0;
+    }
+
+    /**
+     * 记录被关闭的标签页
+     *
+     * @param webView 从页面中取下的WebView，为null时只保存页面状态
+     * @param state   休眠格式的页面状态，可以为null
+     * @return 新增的记录
+     */
+    public ClosedTab push(TabInfo info, @Nullable IWebView webView, @Nullable Bundle state) {
+        TabInfo copy = TabInfo.create(info.getId(), info.getTitle(), info.getUri());
+        if (webView != null && maxLive <= 0) {
+            state = saveAndDiscard(copy, webView);
+            webView = null;
+        }
+        ClosedTab closedTab = new ClosedTab(copy, webView, state);
+        entries.addLast(closedTab);
+        trim();
+        scheduleExpire();
+        return closedTab;
+    }
+
+    /**
+     * 取出最近关闭的标签页，没有时返回null
+     */
+    @Nullable
+    public ClosedTab pop() {
+        ClosedTab closedTab = entries.pollLast();
+        if (closedTab == null) {
+            return null;
+        }
+        if (closedTab.webView != null) {
+            reopenLiveCount++;
+        } else {
+            reopenStateCount++;
+        }
+        EasyLog.i(TAG, "reopen " + closedTab.info.getId() + (closedTab.webView != null ? " live" : " from state")
+                + ", closed " + (SystemClock.uptimeMillis() - closedTab.closedTime) + "ms ago");
+        scheduleExpire();
+        return closedTab;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        handler.removeCallbacks(expireTask);
+        for (ClosedTab closedTab : entries) {
+            if (closedTab.webView != null) {
+                closedTab.webView.onDestroy();
+                closedTab.webView = null;
+            }
+        }
+        entries.clear();
+    }
+
+    /**
+     * 超出数量时丢弃最早关闭的，保留的WebView超出数量时先转存较早关闭的
+     */
+    private void trim() {
+        while (entries.size() > maxEntries) {
+            ClosedTab dropped = entries.pollFirst();
+            if (dropped.webView != null) {
+                dropped.webView.onDestroy();
+                dropped.webView = null;
+            }
+        }
+        int live = 0;
+        for (ClosedTab closedTab : entries) {
+            if (closedTab.webView != null) {
+                live++;
+            }
+        }
+        for (ClosedTab closedTab : entries) {
+            if (live <= maxLive) {
+                break;
+            }
+            if (closedTab.webView != null) {
+                demote(closedTab);
+                live--;
+            }
+        }
+    }
+
+    private void expireLiveTabs() {
+        long now = SystemClock.uptimeMillis();
+        for (ClosedTab closedTab : entries) {
+            if (closedTab.webView != null && now - closedTab.closedTime >= graceMs) {
+                demote(closedTab);
+            }
+        }
+        scheduleExpire();
+    }
+
+    /**
+     * 到下一个保留的WebView到期时检查
+     */
+    private void scheduleExpire() {
+        handler.removeCallbacks(expireTask);
+        long earliest = Long.MAX_VALUE;
+        for (ClosedTab closedTab : entries) {
+            if (closedTab.webView != null) {
+                earliest = closedTab.closedTime;
+                break;
+            }
+        }
+        if (earliest == Long.MAX_VALUE) {
+            return;
+        }
+        long delay = Math.max(0, earliest + graceMs - SystemClock.uptimeMillis());
+        handler.postDelayed(expireTask, delay);
+    }
+
+    private void demote(ClosedTab closedTab) {
+        IWebView webView = closedTab.webView;
+        if (webView == null) {
+            return;
+        }
+        closedTab.webView = null;
+        closedTab.state = saveAndDiscard(closedTab.info, webView);
+        EasyLog.i(TAG, "release webview of closed tab " + closedTab.info.getId());
+    }
+
+    private Bundle saveAndDiscard(TabInfo info, IWebView webView) {
+        Bundle state = new Bundle();
+        state.putString(TabConst.ARG_TITLE, info.getTitle());
+        state.putParcelable(TabConst.ARG_URI, info.getUri());
+        Bundle webState = new Bundle();
+        webView.saveState(webState);
+        state.putBundle(TabConst.KEY_WEB_STATE, webState);
+        webView.onDestroy();
+        return state;
+    }
+
+    public int getReopenLiveCount() {
+        return reopenLiveCount;
+    }
+
+    public int getReopenStateCount() {
+        return reopenStateCount;
+    }
+}
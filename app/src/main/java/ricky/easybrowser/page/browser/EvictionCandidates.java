@@ -0,0 +1,44 @@
+package ricky.easybrowser.page.browser;
+
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.utils.LongLruCache;
+
+/**
+ * 标签页缓存选择淘汰对象的公共逻辑：跳过当前标签页及最近加入的标签页，其余交给淘汰策略选择
+ */
+final class EvictionCandidates {
+
+    private static final String TAG = "EvictionCandidates";
+
+    private EvictionCandidates() {
+    }
+
+    /**
+     * @return 被淘汰的标签页id，没有可淘汰的标签页时返回 {@link LongLruCache#NO_VICTIM}
+     */
+    static long selectVictim(LongLruCache<?> cache, long currentId,
+                             TabEvictionPolicy policy, TabEvictionPolicy.Host host) {
+        long[] keys = cache.keys();
+        int newest = keys.length - 1;
+        long[] candidates = new long[Math.max(0, newest)];
+        int count = 0;
+        for (int i = 0; i < newest; i++) {
+            if (keys[i] != currentId) {
+                candidates[count++] = keys[i];
+            }
+        }
+        if (count < candidates.length) {
+            long[] trimmed = new long[count];
+            System.arraycopy(candidates, 0, trimmed, 0, count);
+            candidates = trimmed;
+        }
+        long victim = policy.selectVictim(candidates, host);
+        if (victim == TabEvictionPolicy.NO_VICTIM) {
+            EasyLog.w(TAG, "nothing to evict [" + policy.getName() + "] "
+                    + policy.getLastReason() + ", size: " + cache.size() + "/" + cache.maxSize());
+            return LongLruCache.NO_VICTIM;
+        }
+        EasyLog.i(TAG, "evict tab " + victim + " [" + policy.getName() + "] " + policy.getLastReason());
+        return victim;
+    }
+}
@@ -0,0 +1,94 @@
+package ricky.easybrowser.page.browser;
+
+import ricky.easybrowser.utils.LongIntMap;
+
+/**
+ * 按使用频率淘汰(LFU)，参考ARC的思路保留最近淘汰标签页的频率记录。
+ * <ul>
+ * <li>每次切换到标签页计数加一，累计访问达到一定次数后所有计数减半，使过去的频率逐渐失效</li>
+ * <li>被淘汰的标签页进入幽灵列表并保留计数，再次访问时恢复，避免经常使用的标签页每次回来都从零计数</li>
+ * <li>选择 占用大小 / 访问次数 最大的标签页淘汰，相同时淘汰最久未使用的</li>
+ * </ul>
+ */
+public class FrequencyEvictionPolicy implements TabEvictionPolicy {
+
+    public static final String NAME = "lfu";
+
+    private static final int AGING_INTERVAL = 64;
+    private static final int GHOST_CAPACITY = 32;
+
+    private final LongIntMap frequency = new LongIntMap(0);
+    private final LongIntMap ghosts = new LongIntMap(0);
+    /**
+     * 幽灵列表的插入顺序，环形覆盖最早的记录
+     */
+    private final long[] ghostOrder = new long[GHOST_CAPACITY];
+    private int ghostCursor;
+    private int accessSinceAging;
+
+    private String lastReason = "";
+
+    public FrequencyEvictionPolicy() {
+        for (int i = 0; i < GHOST_CAPACITY; i++) {
+            ghostOrder[i] = LongIntMap.EMPTY_KEY;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void onAccess(long tabId) {
+        int count = frequency.get(tabId);
+        if (count == 0) {
+            count = ghosts.remove(tabId);
+        }
+        frequency.put(tabId, count + 1);
+        if (++accessSinceAging >= AGING_INTERVAL) {
+            accessSinceAging = 0;
+            for (long key : frequency.keys()) {
+                frequency.put(key, Math.max(1, frequency.get(key) / 2));
+            }
+        }
+    }
+
+    @Override
+    public void onRemoved(long tabId, boolean evicted) {
+        int count = frequency.remove(tabId);
+        if (!evicted || count == 0) {
+            ghosts.remove(tabId);
+            return;
+        }
+        long oldest = ghostOrder[ghostCursor];
+        if (oldest != LongIntMap.EMPTY_KEY) {
+            ghosts.remove(oldest);
+        }
+        ghostOrder[ghostCursor] = tabId;
+        ghostCursor = (ghostCursor + 1) % GHOST_CAPACITY;
+        ghosts.put(tabId, count);
+    }
+
+    @Override
+    public long selectVictim(long[] candidates, Host host) {
+        long victim = NO_VICTIM;
+        double maxScore = -1;
+        for (long id : candidates) {
+            double score = (double) host.sizeOf(id) / Math.max(1, frequency.get(id));
+            // 按由远到近遍历，得分相同时保留较早的
+            if (score > maxScore) {
+                maxScore = score;
+                victim = id;
+            }
+        }
+        lastReason = victim == NO_VICTIM ? "no candidate"
+                : "freq=" + Math.max(1, frequency.get(victim)) + ", size=" + host.sizeOf(victim);
+        return victim;
+    }
+
+    @Override
+    public String getLastReason() {
+        return lastReason;
+    }
+}
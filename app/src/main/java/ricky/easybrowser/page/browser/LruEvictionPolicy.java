@@ -0,0 +1,51 @@
+package ricky.easybrowser.page.browser;
+
+/**
+ * 按最近使用顺序淘汰，并按占用大小加权：得分为 占用大小 × 距最近使用的次序，得分最高者被淘汰，
+ * 即占用大且长时间未使用的标签页优先淘汰
+ */
+public class LruEvictionPolicy implements TabEvictionPolicy {
+
+    public static final String NAME = "lru";
+
+    private String lastReason = "";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void onAccess(long tabId) {
+        // 访问顺序由缓存维护
+    }
+
+    @Override
+    public void onRemoved(long tabId, boolean evicted) {
+
+    }
+
+    @Override
+    public long selectVictim(long[] candidates, Host host) {
+        long victim = NO_VICTIM;
+        long maxScore = -1;
+        int victimAge = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            int age = candidates.length - i;
+            long score = (long) host.sizeOf(candidates[i]) * age;
+            if (score > maxScore) {
+                maxScore = score;
+                victim = candidates[i];
+                victimAge = age;
+            }
+        }
+        lastReason = victim == NO_VICTIM ? "no candidate"
+                : "size=" + host.sizeOf(victim) + ", age=" + victimAge;
+        return victim;
+    }
+
+    @Override
+    public String getLastReason() {
+        return lastReason;
+    }
+}
@@ -0,0 +1,106 @@
+package ricky.easybrowser.page.browser;
+
+import android.os.SystemClock;
+
+import ricky.easybrowser.entity.bo.TabSignals;
+
+/**
+ * 按优先级分级淘汰，同一级别内交给内部策略选择。
+ * <p>
+ * 级别由低到高：普通、最近操作过、输入中或表单有未提交内容、正在播放媒体。只从最低的非空级别中淘汰；
+ * 固定的标签页不会被淘汰
+ */
+public class PriorityEvictionPolicy implements TabEvictionPolicy {
+
+    public static final String NAME = "priority";
+
+    /**
+     * 在该时间内操作过的标签页视为最近操作
+     */
+    private static final long RECENT_INTERACTION_MS = 60 * 1000L;
+
+    private static final int CLASS_NORMAL = 0;
+    private static final int CLASS_RECENT = 1;
+    private static final int CLASS_EDITING = 2;
+    private static final int CLASS_MEDIA = 3;
+    private static final int CLASS_PINNED = 4;
+    private static final String[] CLASS_NAMES = {"normal", "recent", "editing", "media", "pinned"};
+
+    private final TabEvictionPolicy inner;
+    private String lastReason = "";
+
+    public PriorityEvictionPolicy(TabEvictionPolicy inner) {
+        this.inner = inner;
+    }
+
+    @Override
+    public String getName() {
+        return NAME + "+" + inner.getName();
+    }
+
+    @Override
+    public void onAccess(long tabId) {
+        inner.onAccess(tabId);
+    }
+
+    @Override
+    public void onRemoved(long tabId, boolean evicted) {
+        inner.onRemoved(tabId, evicted);
+    }
+
+    @Override
+    public long selectVictim(long[] candidates, Host host) {
+        long now = SystemClock.uptimeMillis();
+        int[] classes = new int[candidates.length];
+        int lowest = CLASS_PINNED;
+        for (int i = 0; i < candidates.length; i++) {
+            classes[i] = classify(host.signalsOf(candidates[i]), now);
+            lowest = Math.min(lowest, classes[i]);
+        }
+        if (lowest == CLASS_PINNED) {
+            lastReason = "only pinned tabs left";
+            return NO_VICTIM;
+        }
+
+        int count = 0;
+        for (int c : classes) {
+            if (c == lowest) {
+                count++;
+            }
+        }
+        long[] sameClass = new long[count];
+        int index = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            if (classes[i] == lowest) {
+                sameClass[index++] = candidates[i];
+            }
+        }
+        long victim = inner.selectVictim(sameClass, host);
+        lastReason = "class=" + CLASS_NAMES[lowest] + ", " + inner.getLastReason();
+        return victim;
+    }
+
+    private static int classify(TabSignals signals, long now) {
+        if (signals == null) {
+            return CLASS_NORMAL;
+        }
+        if (signals.pinned) {
+            return CLASS_PINNED;
+        }
+        if (signals.mediaPlaying) {
+            return CLASS_MEDIA;
+        }
+        if (signals.inputFocused || signals.formDirty) {
+            return CLASS_EDITING;
+        }
+        if (signals.lastInteractionTime > 0 && now - signals.lastInteractionTime < RECENT_INTERACTION_MS) {
+            return CLASS_RECENT;
+        }
+        return CLASS_NORMAL;
+    }
+
+    @Override
+    public String getLastReason() {
+        return lastReason;
+    }
+}
@@ -2,365 +2,389 @@ package ricky.easybrowser.page.browser;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.util.LruCache;
 
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import ricky.easybrowser.R;
 import ricky.easybrowser.contract.IBrowser;
+import ricky.easybrowser.contract.ISessionJournal;
 import ricky.easybrowser.contract.ITab;
 import ricky.easybrowser.contract.ITabQuickView;
+import ricky.easybrowser.contract.ITabStateStream;
+import ricky.easybrowser.contract.IWebView;
 import ricky.easybrowser.entity.bo.TabInfo;
 import ricky.easybrowser.page.tab.NewTabFragmentV2;
+import ricky.easybrowser.page.tab.TabStateStore;
+import ricky.easybrowser.page.tabpreview.TabThumbnailCache;
 
 /**
- * LRU实现的标签页缓存。负责标签页的缓存及切换显示逻辑。
+ * 标签页缓存。负责标签页的缓存及切换显示逻辑。
+ * <p>
+ * 缓存以标签页id为键，查找时不产生装箱及字符串对象。每个标签页按 {@link TabMemoryEstimator} 估算的字节数计入缓存，
+ * 总容量由 {@link TabCacheSizer} 根据内存状况调整。超出容量时由构造时指定的 {@link TabEvictionPolicy} 选择淘汰对象，
+ * 当前显示的标签页及最近加入的标签页不会被淘汰。
+ * <p>
+ * 被淘汰的标签页进入休眠：页面状态写入 {@link TabStateStore}，再次切换到该标签页时从中恢复。
+ * <p>
+ * 后台打开的标签页交给 {@link BackgroundTabLoader} 排队，前台空闲时逐个创建并加载。
+ * <p>
+ * 所有页面变化都记录到同一个批处理事务中：一次操作(如关闭并切换、关闭全部后新建、批量打开)
+ * 无论涉及多少个标签页，只提交一个允许重排序的FragmentTransaction
+ * <p>
+ * 标签页的标题、地址、进度等状态由 {@link TabStateHub} 按帧合并后统一发布
+ * <p>
+ * 用户关闭的标签页进入 {@link ClosedTabBuffer}，可以在不重新加载的情况下重新打开
+ * <p>
+ * 以上规则由 {@link TabModel} 实现，与 {@link ViewTabHost} 共用，这里只负责Fragment的添加、显示隐藏及移除
  */
 public class TabCacheManager implements IBrowser.ITabController {
 
-    private final Context mContext;
+    private static final String TAG = "TabCacheManager";
+
     private final FragmentManager fm;
     private int browserLayoutId;
 
-    private ITabQuickView.Observer observer;
+    private final TabModel<Fragment> model;
 
-    private LruCache<TabInfo, Fragment> lruCache;
-    private final List<TabInfo> infoList = new ArrayList<>();
+    /**
+     * 当前批处理中累积的事务，批处理结束时统一提交
+     */
+    @Nullable
+    private FragmentTransaction batchTransaction;
+    private int batchDepth;
+
+    /**
+     * 使用默认的淘汰策略：按优先级分级，同级按占用大小加权的LRU
+     *
+     * @param maxBytes 缓存容量基准值(字节)
+     */
+    public TabCacheManager(Context context, FragmentManager manager, int maxBytes, int layoutId) {
+        this(context, manager, maxBytes, layoutId, new PriorityEvictionPolicy(new LruEvictionPolicy()));
+    }
 
-    public TabCacheManager(Context context, FragmentManager manager, int maxSize, int layoutId) {
-        this.mContext = context;
+    /**
+     * @param maxBytes 缓存容量基准值(字节)
+     * @param policy   淘汰策略
+     */
+    public TabCacheManager(Context context, FragmentManager manager, int maxBytes, int layoutId,
+                           TabEvictionPolicy policy) {
         this.fm = manager;
         this.browserLayoutId = layoutId;
-        lruCache = new LruCache<TabInfo, Fragment>(maxSize) {
+        this.model = new TabModel<>(context, TAG, maxBytes, policy, new TabModel.Host<Fragment>() {
+            @Nullable
             @Override
-            protected void entryRemoved(boolean evicted, TabInfo key, Fragment oldValue, Fragment newValue) {
-                /**
-                 * Tab页面被移除或替换后，进行remove操作
-                 */
-                if (fm == null || key == null) {
-                    return;
-                }
-
-                if (oldValue != null) {
-                    fm.beginTransaction().remove(oldValue).commitAllowingStateLoss();
-                }
+            public ITab asTab(Fragment page) {
+                return page instanceof ITab ? (ITab) page : null;
             }
-        };
-    }
 
-    /**
-     * 还原Tab页缓存，使用从Fragment中还原的参数生成TabInfo对象
-     * <p>
-     * 此方法仅还原一个标签页，上层可能需要在循环中调用
-     *
-     * @param infoCopy 由Fragment中的参数还原的TabInfo对象，与复原列表里的hash值不同，put时需判断
-     * @param fragment 目标Fragment
-     */
-    private void restoreTabCache(TabInfo infoCopy, @Nullable Fragment fragment) {
-        int prevIndex = -1;
-        for (int i = 0; i < infoList.size(); i++) {
-            if (infoCopy.equals(infoList.get(i))) {
-                prevIndex = i;
-                break;
+            @Override
+            public boolean canChangePages() {
+                return !fm.isStateSaved();
             }
-        }
-        if (prevIndex >= 0) {
-            // 之前有缓存，直接put进cache，不更新列表，需要从infoList中拿到真正的TabInfo
-            TabInfo info = infoList.get(prevIndex);
-            lruCache.put(info, fragment);
-        } else {
-            // 缓存列表里不存在此项
-            infoList.add(infoCopy);
-            lruCache.put(infoCopy, fragment);
-        }
-    }
 
-    private void addToCache(TabInfo info, Fragment fragment) {
-        int prevIndex = -1;
-        for (int i = 0; i < infoList.size(); i++) {
-            if (info.equals(infoList.get(i))) {
-                prevIndex = i;
-                break;
+            @Override
+            public Fragment createPage(TabInfo info, boolean hidden, boolean restore, @Nullable IWebView adopted) {
+                NewTabFragmentV2 fragment;
+                if (adopted != null) {
+                    fragment = NewTabFragmentV2.newReopenInstance(info.getTitle(), info.getId(), info.getUri(), adopted);
+                } else if (restore && hidden) {
+                    fragment = NewTabFragmentV2.newBackgroundInstance(info.getTitle(), info.getId(), info.getUri());
+                } else if (restore) {
+                    // 原页面被回收，重新创建Fragment并从休眠状态恢复，复用tag
+                    fragment = NewTabFragmentV2.newRestoreInstance(info.getTitle(), info.getId(), info.getUri());
+                } else {
+                    fragment = NewTabFragmentV2.newInstance(info.getTitle(), info.getId(), info.getUri());
+                }
+                transaction().add(browserLayoutId, fragment, info.getTag());
+                if (hidden) {
+                    transaction().hide(fragment);
+                }
+                return fragment;
             }
-        }
-        if (prevIndex >= 0) {
-            // 之前有缓存，直接put进cache，不更新列表
-            lruCache.put(info, fragment);
-        } else {
-            infoList.add(info);
-            lruCache.put(info, fragment);
-        }
-    }
 
-    private Fragment getFromCache(TabInfo info) {
-        return lruCache.get(info);
-    }
+            @Override
+            public void setPageHidden(Fragment page, boolean hidden) {
+                if (hidden) {
+                    transaction().hide(page);
+                } else {
+                    transaction().show(page);
+                }
+            }
 
-    private void removeFromCache(TabInfo info) {
-        lruCache.remove(info);  // throw error when tag is null
+            /**
+             * Tab页面被移除或替换后，进行remove操作
+             */
+            @Override
+            public void removePage(Fragment page) {
+                if (!fm.isStateSaved()) {
+                    beginBatch();
+                    transaction().remove(page);
+                    endBatch();
+                } else {
+                    // 状态保存之后的淘汰(如后台时的onTrimMemory)单独提交并允许丢失状态，不影响批处理中的其他操作。
+                    // 页面已休眠到状态存储，丢失的只是这次移除，重建后该页面按休眠状态恢复
+                    fm.beginTransaction().remove(page).commitAllowingStateLoss();
+                }
+            }
 
-        // 只有用户主动操作，才从recyclerview使用的列表中移除tag
-        for (int i = 0; i < infoList.size(); i++) {
-            if (info.equals(infoList.get(i))) {
-                infoList.remove(i);
-                break;
+            @Override
+            public void beginUpdate() {
+                beginBatch();
             }
-        }
-    }
 
-    private void closeAllTabs() {
-        lruCache.evictAll();
-        infoList.clear();
+            @Override
+            public void endUpdate() {
+                endBatch();
+            }
+        });
     }
 
     /**
-     * 用户点击标签页后，切换到目标页面
-     *
-     * @param info
+     * 开始批处理，可嵌套。最外层的 {@link #endBatch()} 提交期间累积的所有页面变化
      */
-    private void switchToTab(TabInfo info) {
-        Fragment current = findVisibleFragment(fm);
-        Fragment target = getFromCache(info);
-
-        if (current == null) {
-            // 当前没有显示任何Fragment，直接show，对应某一页面被关闭的情况
-            fm.beginTransaction().show(target).commit();
-            return;
-        }
-
-        if (target != null) {
-            // 点击的是缓存过的页面，替换显示新的Fragment
-            fm.beginTransaction().hide(current).show(target).commit();
-        } else {
-            // 没有缓存页，原页面被回收。重新创建Fragment，复用tag并放至缓存中
-            NewTabFragmentV2 fragmentToAdd = NewTabFragmentV2.newInstance();
-            TabInfo fragmentInfo = info;
-            fm.beginTransaction().hide(current).add(browserLayoutId, fragmentToAdd, info.getTag()).commit();
-            addToCache(fragmentInfo, fragmentToAdd);
-        }
-    }
-
-    private void addNewTab(TabInfo info, boolean backstage) {
-        if (fm == null || info == null) {
-            return;
-        }
-        Fragment current = findVisibleFragment(fm);
-        NewTabFragmentV2 fragmentToAdd = NewTabFragmentV2.newInstance(info.getTitle(), info.getTag(), info.getUri());
-        FragmentTransaction transaction = fm.beginTransaction();
-        transaction.add(browserLayoutId, fragmentToAdd);
-        if (current != null && !backstage) {
-            transaction.hide(current);
-        } else if (current != null) {
-            transaction.hide(fragmentToAdd);
-        }
-        transaction.commit();
-        addToCache(info, fragmentToAdd);
-        if (observer != null) {
-            observer.updateQuickView();
-        }
+    private void beginBatch() {
+        batchDepth++;
     }
 
-    /**
-     * 关闭标签页
-     * <ul>
-     * <li>如果所有标签页都被关闭，则新建一个标签页</li>
-     * <li>如果关闭了第一个标签页，显示新的第一个标签页</li>
-     * <li>如果关闭中间位置得标签页，显示前一位置的标签页</li>
-     * </ul>
-     *
-     * @param info
-     */
-    private void closeTab(TabInfo info) {
-        int orgIndex = findTabIndex(info);
-        removeFromCache(info);
-        if (observer != null) {
-            observer.updateQuickView();
-        }
-
-        if (infoList.size() <= 0 && observer != null) {
-            TabInfo tabInfo = TabInfo.create(
-                    System.currentTimeMillis() + "",
-                    mContext.getString(R.string.new_tab_welcome));
-            onTabCreate(tabInfo, false);
+    private void endBatch() {
+        if (--batchDepth > 0) {
             return;
         }
-
-        if (orgIndex <= 0) {
-            switchToTab(infoList.get(0));
-        } else {
-            switchToTab(infoList.get(orgIndex - 1));
-        }
-    }
-
-    private int findTabIndex(TabInfo info) {
-        int index = -1;
-        for (int i = 0; i < infoList.size(); i++) {
-            if (info.equals(infoList.get(i))) {
-                index = i;
-                break;
-            }
-        }
-        return index;
-    }
-
-    private int findTabByTag(String tag) {
-        int index = -1;
-        for (int i = 0; i < infoList.size(); i++) {
-            if (tag.equals(infoList.get(i).getTag())) {
-                index = i;
-                break;
-            }
+        batchDepth = 0;
+        FragmentTransaction transaction = batchTransaction;
+        batchTransaction = null;
+        if (transaction != null) {
+            transaction.commit();
         }
-        return index;
     }
 
     /**
-     * 在当前的FragmentManager中寻找可见页面
-     *
-     * @param fm
-     * @return
+     * 当前批处理的事务，需在 {@link #beginBatch()} 与 {@link #endBatch()} 之间调用
      */
-    private Fragment findVisibleFragment(FragmentManager fm) {
-        if (fm == null) {
-            return null;
-        }
-        Fragment current = null;
-        List<Fragment> fragments = fm.getFragments();
-        for (int i = 0; i < fragments.size(); i++) {
-            final Fragment tmp = fragments.get(i);
-            if ((!tmp.isHidden()) && (tmp instanceof ITab)) {
-                current = fragments.get(i);
-            }
+    private FragmentTransaction transaction() {
+        if (batchTransaction == null) {
+            batchTransaction = fm.beginTransaction().setReorderingAllowed(true);
         }
-        return current;
+        return batchTransaction;
     }
 
     @Override
     public void attach(ITabQuickView.Observer observer) {
-        this.observer = observer;
+        model.attach(observer);
     }
 
     @Override
     public void detach() {
-        this.observer = null;
+        model.detach();
     }
 
     @Override
     public List<TabInfo> provideInfoList() {
-        return this.infoList;
+        return model.provideInfoList();
     }
 
     @Override
     public void updateTabInfo(TabInfo tabInfo) {
-        try {
-            int i = findTabIndex(tabInfo);
-            if (i < 0) {
-                return;
-            }
-            String nTitle = tabInfo.getTitle();
+        model.updateTabInfo(tabInfo);
+    }
 
-            infoList.get(i).setTitle(nTitle);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    @Override
+    public void invalidateTabState(long tabId) {
+        model.invalidateTabState(tabId);
+    }
 
-        if (observer != null) {
-            observer.updateQuickView();
-        }
+    @Override
+    public ITabStateStream getTabStateStream() {
+        return model.getTabStateStream();
+    }
+
+    @Override
+    public List<TabInfo> searchTabs(String query) {
+        return model.searchTabs(query);
     }
 
     @Override
     public void onTabSelected(TabInfo tabInfo) {
-        switchToTab(tabInfo);
+        model.switchToTab(tabInfo);
     }
 
     @Override
     public void onTabClose(TabInfo tabInfo) {
-        closeTab(tabInfo);
+        model.closeTabs(Collections.singletonList(tabInfo));
     }
 
     @Override
     public void onTabCreate(TabInfo tabInfo, boolean backstage) {
-        addNewTab(tabInfo, backstage);
+        model.addNewTab(tabInfo, backstage);
     }
 
     @Override
-    public void onTabGoHome() {
-        Fragment target = findVisibleFragment(fm);
-        if (target == null) {
-            return;
-        }
+    public void onTabsClose(List<TabInfo> tabs) {
+        model.closeTabs(tabs);
+    }
 
-        if (target instanceof ITab) {
-            ((ITab) target).gotoHomePage();
-        }
+    @Override
+    public void onTabsCreate(List<TabInfo> tabs, boolean backstage) {
+        model.addNewTabs(tabs, backstage);
     }
 
     @Override
-    public void onTabGoForward() {
-        Fragment target = findVisibleFragment(fm);
-        if (target == null) {
-            return;
+    public void onTabGoHome() {
+        ITab target = model.findVisibleTab();
+        if (target != null) {
+            target.gotoHomePage();
         }
+    }
 
-        if (target instanceof ITab) {
-            ((ITab) target).goForward();
+    @Override
+    public void onTabGoForward() {
+        ITab target = model.findVisibleTab();
+        if (target != null) {
+            target.goForward();
         }
     }
 
     @Override
     public void onTabLoadUrl(String url) {
-        Fragment target = findVisibleFragment(fm);
-        if (target == null) {
-            return;
+        ITab target = model.findVisibleTab();
+        if (target != null) {
+            target.loadUrl(url);
         }
+    }
 
-        if (target instanceof ITab) {
-            ((ITab) target).loadUrl(url);
-        }
+    @Override
+    public boolean onTabGoBack() {
+        ITab target = model.findVisibleTab();
+        return target != null && target.onBackPressed();
+    }
+
+    @Override
+    public void onTabLoadingChange(TabInfo tabInfo, boolean loading) {
+        model.onTabLoadingChange(tabInfo, loading);
+    }
+
+    @Override
+    public void onTabScrolled() {
+        model.onTabScrolled();
+    }
+
+    @Override
+    public boolean onReopenClosedTab() {
+        return model.reopenClosedTab();
+    }
+
+    @Override
+    public void onTabPinned(TabInfo tabInfo, boolean pinned) {
+        model.onTabPinned(tabInfo, pinned);
     }
 
+    @Override
+    public boolean isTabPinned(TabInfo tabInfo) {
+        return model.isTabPinned(tabInfo);
+    }
+
+    /**
+     * 还原Tab页缓存，使用从Fragment中还原的参数生成TabInfo对象
+     *
+     * @param fragment 目标Fragment，为null时仅还原列表信息
+     */
     @Override
     public void onRestoreTabCache(TabInfo infoCopy, @Nullable Fragment fragment) {
-        restoreTabCache(infoCopy, fragment);
+        model.restoreTab(infoCopy, fragment, fragment != null && !fragment.isHidden());
     }
 
     @Override
     public void onCloseAllTabs() {
-        closeAllTabs();
+        model.closeAllTabs();
+    }
+
+    @Override
+    public void attachSession(ISessionJournal journal) {
+        model.attachSession(journal);
+    }
+
+    /**
+     * 使用在配置变化中保留的最近关闭列表及WebView实例池，两者随缓存容量调整。需在打开或关闭标签页之前调用
+     */
+    public void attachRetained(BrowserViewModel viewModel) {
+        model.attachRetained(viewModel);
     }
 
     @Override
     public void onDestroy() {
+        model.onDestroy();
+    }
 
+    @Override
+    public void onTrimMemory(int level) {
+        model.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        model.onLowMemory();
+    }
+
+    /**
+     * 缓存容量控制对象，用于监控当前容量及添加容量变化监听
+     */
+    public TabCacheSizer getCacheSizer() {
+        return model.getCacheSizer();
+    }
+
+    /**
+     * 后台标签页加载队列，用于监控队列深度及等待时间
+     */
+    public BackgroundTabLoader getBackgroundLoader() {
+        return model.getBackgroundLoader();
+    }
+
+    public TabThumbnailCache getThumbnailCache() {
+        return model.getThumbnailCache();
+    }
+
+    /**
+     * 标签页切换耗时统计，用于与 {@link ViewTabHost} 比较
+     */
+    public TabSwitchTracer getSwitchTracer() {
+        return model.getSwitchTracer();
+    }
+
+    public TabEvictionPolicy getEvictionPolicy() {
+        return model.getEvictionPolicy();
+    }
+
+    /**
+     * 当前缓存中的标签页数量
+     */
+    public int getCachedTabCount() {
+        return model.getCachedTabCount();
+    }
+
+    /**
+     * 当前缓存中标签页的估算占用(字节)
+     */
+    public int getCachedBytes() {
+        return model.getCachedBytes();
     }
 
     @Override
     public TabInfo getCurrentTab() {
-        if (this.fm == null) {
-            return null;
-        }
+        return model.getCurrentTab();
+    }
 
-        Fragment fragment = findVisibleFragment(this.fm);
-        if (fragment instanceof ITab) {
-            TabInfo info = ((ITab) fragment).provideTabInfo();
-            return info;
-        }
-        return null;
+    @Override
+    public Bitmap getPreviewForTab(long tabId) {
+        return model.getPreviewForTab(tabId);
     }
 
     @Override
-    public Bitmap getPreviewForTab(TabInfo tabInfo) {
-        Fragment fragment = getFromCache(tabInfo);
-        if (fragment instanceof ITab) {
-            return ((ITab) fragment).getTabPreview();
-        }
-        return null;
+    public void prefetchPreview(long tabId) {
+        model.prefetchPreview(tabId);
     }
 }
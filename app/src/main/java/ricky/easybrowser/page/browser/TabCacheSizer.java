@@ -0,0 +1,192 @@
+package ricky.easybrowser.page.browser;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * 标签页缓存容量控制，容量以字节为单位，与 {@link TabMemoryEstimator} 的估算值对应。
+ * <p>
+ * 启动时根据设备的内存等级及低内存标记计算基准容量；运行时根据onTrimMemory/onLowMemory回调收缩容量，
+ * 内存压力解除一段时间后再逐步恢复到基准容量。每次容量变化都会通知所有登记的 {@link OnResizeListener}
+ */
+public class TabCacheSizer {
+
+    private static final String TAG = "TabCacheSizer";
+
+    private static final int MB = 1024 * 1024;
+
+    /**
+     * 内存等级每MB对应的缓存容量
+     */
+    private static final int BYTES_PER_MEMORY_CLASS_MB = MB;
+    /**
+     * 最小容量。缓存不会淘汰当前显示的标签页，容量降到最小时只保留当前标签页
+     */
+    private static final int MIN_CAPACITY = 1;
+    private static final int MIN_BASELINE = 64 * MB;
+    private static final int MAX_BASELINE = 1024 * MB;
+    private static final int LOW_RAM_BASELINE = 64 * MB;
+
+    /**
+     * 最近一次收缩后，至少经过该时间才尝试恢复容量
+     */
+    private static final long RECOVER_INTERVAL_MS = 30 * 1000L;
+    private static final int RECOVER_STEPS = 4;
+
+    public static final String REASON_TRIM = "trim";
+    public static final String REASON_LOW_MEMORY = "low_memory";
+    public static final String REASON_RECOVER = "recover";
+
+    /**
+     * 缓存容量变化监听
+     */
+    public interface OnResizeListener {
+        void onCacheResized(int oldCapacity, int newCapacity, String reason);
+    }
+
+    @Nullable
+    private final ActivityManager activityManager;
+    private final int baseline;
+    private int capacity;
+    private long lastTrimTime;
+    private int resizeCount;
+
+    /**
+     * 标签页缓存自身的监听也登记在这里，外部添加的监听不会替换掉它
+     */
+    private final List<OnResizeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public TabCacheSizer(Context context, int baseline) {
+        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.baseline = Math.max(MIN_CAPACITY, baseline);
+        this.capacity = this.baseline;
+        EasyLog.i(TAG, "baseline capacity: " + this.baseline);
+    }
+
+    /**
+     * 根据内存等级计算基准容量(字节)
+     */
+    public static int computeBaseline(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null) {
+            return MIN_BASELINE;
+        }
+        long byClass = (long) am.getMemoryClass() * BYTES_PER_MEMORY_CLASS_MB;
+        int result = (int) Math.max(MIN_BASELINE, Math.min(MAX_BASELINE, byClass));
+        if (am.isLowRamDevice()) {
+            result = Math.min(result, LOW_RAM_BASELINE);
+        }
+        return result;
+    }
+
+    public void addOnResizeListener(OnResizeListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeOnResizeListener(OnResizeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 根据系统回调的内存等级收缩容量，只会变小不会变大
+     *
+     * @param level {@link ComponentCallbacks2} 中的TRIM_MEMORY_*常量
+     */
+    public void onTrimMemory(int level) {
+        int target;
+        switch (level) {
+            case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+                target = MIN_CAPACITY;
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+                target = baseline / 2;
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+                target = baseline / 4 * 3;
+                break;
+            default:
+                // TRIM_MEMORY_UI_HIDDEN等只表示界面不可见，不需要释放标签页
+                return;
+        }
+        lastTrimTime = SystemClock.elapsedRealtime();
+        shrinkTo(target, REASON_TRIM + ":" + level);
+    }
+
+    public void onLowMemory() {
+        lastTrimTime = SystemClock.elapsedRealtime();
+        shrinkTo(MIN_CAPACITY, REASON_LOW_MEMORY);
+    }
+
+    /**
+     * 尝试恢复容量。距离上次收缩足够久且系统不处于低内存状态时，容量增加基准容量的1/4
+     * <p>
+     * 系统不会通知内存压力解除，由上层在打开、切换标签页或回到前台时调用
+     */
+    public void maybeRecover() {
+        if (capacity >= baseline) {
+            return;
+        }
+        if (SystemClock.elapsedRealtime() - lastTrimTime < RECOVER_INTERVAL_MS) {
+            return;
+        }
+        if (isSystemLowOnMemory()) {
+            lastTrimTime = SystemClock.elapsedRealtime();
+            return;
+        }
+        int step = Math.max(MIN_CAPACITY, baseline / RECOVER_STEPS);
+        applyCapacity(Math.min(baseline, capacity + step), REASON_RECOVER);
+    }
+
+    private boolean isSystemLowOnMemory() {
+        if (activityManager == null) {
+            return false;
+        }
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        return memoryInfo.lowMemory;
+    }
+
+    private void shrinkTo(int target, String reason) {
+        target = Math.max(MIN_CAPACITY, target);
+        if (target >= capacity) {
+            return;
+        }
+        applyCapacity(target, reason);
+    }
+
+    private void applyCapacity(int newCapacity, String reason) {
+        int oldCapacity = capacity;
+        capacity = newCapacity;
+        resizeCount++;
+        EasyLog.i(TAG, "resize " + oldCapacity + " -> " + newCapacity + ", reason: " + reason);
+        for (OnResizeListener listener : listeners) {
+            listener.onCacheResized(oldCapacity, newCapacity, reason);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBaseline() {
+        return baseline;
+    }
+
+    public int getResizeCount() {
+        return resizeCount;
+    }
+}
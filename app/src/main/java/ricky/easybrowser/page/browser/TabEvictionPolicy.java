@@ -0,0 +1,59 @@
+package ricky.easybrowser.page.browser;
+
+import androidx.annotation.Nullable;
+
+import ricky.easybrowser.entity.bo.TabSignals;
+
+/**
+ * 标签页缓存的淘汰策略。
+ * <p>
+ * 缓存超出容量时，由 {@link TabCacheManager} 排除当前标签页及最近加入的标签页后，将其余标签页交给策略选择淘汰对象。
+ * 策略在创建缓存时指定，每次选择的原因通过 {@link #getLastReason()} 输出到日志
+ */
+public interface TabEvictionPolicy {
+
+    long NO_VICTIM = Long.MIN_VALUE;
+
+    /**
+     * 策略查询标签页信息的入口
+     */
+    interface Host {
+        /**
+         * 标签页在缓存中的估算占用(字节)
+         */
+        int sizeOf(long tabId);
+
+        /**
+         * 标签页当前的优先级信号，标签页不在缓存中时返回null。返回的对象可能被复用，不要保存
+         */
+        @Nullable
+        TabSignals signalsOf(long tabId);
+    }
+
+    String getName();
+
+    /**
+     * 标签页被加入缓存或切换到前台
+     */
+    void onAccess(long tabId);
+
+    /**
+     * 标签页离开缓存
+     *
+     * @param evicted 是否因淘汰离开
+     */
+    void onRemoved(long tabId, boolean evicted);
+
+    /**
+     * 选择淘汰对象
+     *
+     * @param candidates 可淘汰的标签页，按最近使用时间由远到近排列
+     * @return 淘汰对象，不应淘汰任何标签页时返回 {@link #NO_VICTIM}
+     */
+    long selectVictim(long[] candidates, Host host);
+
+    /**
+     * 最近一次选择的原因，用于日志
+     */
+    String getLastReason();
+}
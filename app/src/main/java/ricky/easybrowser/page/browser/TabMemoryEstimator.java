@@ -0,0 +1,54 @@
+package ricky.easybrowser.page.browser;
+
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+
+/**
+ * 标签页内存占用估算。
+ * <p>
+ * 数值为经验值，只用于缓存内标签页之间的相对比较：仅显示快捷方式的页面占用极小，
+ * 打开网页后按WebView基础开销、内容面积、历史页面及子资源数量累加
+ */
+public class TabMemoryEstimator {
+
+    private static final int KB = 1024;
+    private static final int MB = 1024 * KB;
+
+    /**
+     * Fragment及快捷方式页面
+     */
+    private static final int FRONT_PAGE_BYTES = 256 * KB;
+    /**
+     * WebView及渲染进程的基础开销
+     */
+    private static final int WEB_VIEW_BASE_BYTES = 20 * MB;
+    /**
+     * 合成图层按每像素4字节计算，超出部分不会被同时绘制
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final long MAX_SURFACE_BYTES = 64L * MB;
+    private static final int HISTORY_ENTRY_BYTES = 512 * KB;
+    private static final int MAX_HISTORY_ENTRIES = 16;
+    private static final int RESOURCE_BYTES = 64 * KB;
+    private static final int MAX_RESOURCES = 2000;
+
+    private static final int MAX_ESTIMATE = 512 * MB;
+
+    private TabMemoryEstimator() {
+    }
+
+    public static int estimate(TabMemoryStats stats) {
+        if (stats == null) {
+            return FRONT_PAGE_BYTES;
+        }
+        long total = FRONT_PAGE_BYTES + Math.max(0, stats.previewBytes);
+        if (stats.hasWebView) {
+            long surface = (long) Math.max(0, stats.contentWidth)
+                    * Math.max(0, stats.contentHeight) * BYTES_PER_PIXEL;
+            total += WEB_VIEW_BASE_BYTES;
+            total += Math.min(surface, MAX_SURFACE_BYTES);
+            total += (long) Math.min(Math.max(0, stats.historySize), MAX_HISTORY_ENTRIES) * HISTORY_ENTRY_BYTES;
+            total += (long) Math.min(Math.max(0, stats.resourceCount), MAX_RESOURCES) * RESOURCE_BYTES;
+        }
+        return (int) Math.min(total, MAX_ESTIMATE);
+    }
+}
@@ -0,0 +1,766 @@
+package ricky.easybrowser.page.browser;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ricky.easybrowser.EasyApplication;
+import ricky.easybrowser.R;
+import ricky.easybrowser.contract.ISessionJournal;
+import ricky.easybrowser.contract.ITab;
+import ricky.easybrowser.contract.ITabQuickView;
+import ricky.easybrowser.contract.ITabStateStream;
+import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
+import ricky.easybrowser.page.tab.TabStateStore;
+import ricky.easybrowser.page.tabpreview.TabThumbnailCache;
+import ricky.easybrowser.utils.LongIntMap;
+import ricky.easybrowser.utils.LongLruCache;
+import ricky.easybrowser.web.WebViewPool;
+
+/**
+ * {@link TabCacheManager} 与 {@link ViewTabHost} 共用的标签页模型。
+ * <p>
+ * 负责登记表、按占用大小计算的页面缓存及淘汰、休眠恢复、后台加载、缩略图、状态发布、搜索、固定标签页
+ * 及最近关闭列表，以及新建、切换、关闭、重新打开标签页的规则。页面的创建、显示隐藏及移除交给 {@link Host}，
+ * 页面可以是Fragment也可以是直接管理的视图。仅在UI线程中使用
+ *
+ * @param <P> 页面类型
+ */
+class TabModel<P> implements BackgroundTabLoader.Loader {
+
+    private static final int THUMBNAIL_CACHE_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * 页面的具体操作，由标签页容器实现
+     */
+    interface Host<P> {
+        /**
+         * @return 页面对应的标签页，页面不是标签页时返回null
+         */
+        @Nullable
+        ITab asTab(P page);
+
+        /**
+         * @return 容器已销毁或状态已保存，不能再改变页面时返回false
+         */
+        boolean canChangePages();
+
+        /**
+         * 创建页面并添加到容器中
+         *
+         * @param hidden  是否隐藏，隐藏创建的页面在后台加载
+         * @param restore 是否从休眠状态恢复
+         * @param adopted 重新打开时放回的WebView，可以为null
+         */
+        P createPage(TabInfo info, boolean hidden, boolean restore, @Nullable IWebView adopted);
+
+        void setPageHidden(P page, boolean hidden);
+
+        /**
+         * 页面被淘汰或关闭后，从容器中移除并释放
+         */
+        void removePage(P page);
+
+        /**
+         * 开始一组页面变化，可嵌套。最外层的 {@link #endUpdate()} 统一提交
+         */
+        void beginUpdate();
+
+        void endUpdate();
+    }
+
+    private final Context mContext;
+    private final Host<P> host;
+
+    private ITabQuickView.Observer observer;
+
+    private final LongLruCache<P> lruCache;
+    private final TabRegistry registry = new TabRegistry();
+    private final TabCacheSizer cacheSizer;
+    private final TabStateStore stateStore;
+    private final BackgroundTabLoader backgroundLoader;
+    private final TabThumbnailCache thumbnailCache;
+    private final TabEvictionPolicy evictionPolicy;
+    private final TabEvictionPolicy.Host evictionHost;
+    private final TabStateHub stateHub;
+    private final TabSearchIndex searchIndex = new TabSearchIndex();
+    private final TabSwitchTracer switchTracer;
+    private ClosedTabBuffer closedTabs = new ClosedTabBuffer();
+    @Nullable
+    private WebViewPool webViewPool;
+    /**
+     * 固定的标签页，值不使用
+     */
+    private final LongIntMap pinnedTabs = new LongIntMap(-1);
+    /**
+     * 关闭所有标签页时不需要休眠
+     */
+    private boolean closingAll;
+
+    @Nullable
+    private ISessionJournal journal;
+
+    /**
+     * @param tag      切换耗时统计使用的标记
+     * @param maxBytes 缓存容量基准值(字节)
+     * @param policy   淘汰策略
+     */
+    TabModel(Context context, String tag, int maxBytes, TabEvictionPolicy policy, Host<P> host) {
+        this.mContext = context;
+        this.host = host;
+        this.switchTracer = new TabSwitchTracer(tag);
+        this.stateStore = ((EasyApplication) context.getApplicationContext()).getTabStateStore();
+        this.cacheSizer = new TabCacheSizer(context, maxBytes);
+        this.cacheSizer.addOnResizeListener(new TabCacheSizer.OnResizeListener() {
+            @Override
+            public void onCacheResized(int oldCapacity, int newCapacity, String reason) {
+                lruCache.resize(newCapacity);
+                closedTabs.onBudgetChanged(newCapacity, cacheSizer.getBaseline());
+                if (webViewPool != null) {
+                    webViewPool.onBudgetChanged(newCapacity, cacheSizer.getBaseline());
+                }
+            }
+        });
+        this.backgroundLoader = new BackgroundTabLoader(this);
+        this.thumbnailCache = new TabThumbnailCache(context, THUMBNAIL_CACHE_BYTES,
+                ((EasyApplication) context.getApplicationContext()).getTabThumbnailStore(),
+                new TabThumbnailCache.Source() {
+            @Nullable
+            @Override
+            public ITab findTab(long tabId) {
+                return tabOf(lruCache.peek(tabId));
+            }
+        });
+        this.thumbnailCache.setOnThumbnailChangeListener(new TabThumbnailCache.OnThumbnailChangeListener() {
+            @Override
+            public void onThumbnailChanged(long tabId) {
+                if (observer != null) {
+                    observer.updatePreview(tabId);
+                }
+            }
+        });
+        this.evictionPolicy = policy;
+        this.evictionHost = new TabEvictionPolicy.Host() {
+            @Override
+            public int sizeOf(long tabId) {
+                return lruCache.entrySize(tabId);
+            }
+
+            @Nullable
+            @Override
+            public TabSignals signalsOf(long tabId) {
+                ITab tab = tabOf(lruCache.peek(tabId));
+                if (tab == null) {
+                    return null;
+                }
+                TabSignals signals = tab.getSignals();
+                signals.pinned = pinnedTabs.containsKey(tabId);
+                return signals;
+            }
+        };
+        this.stateHub = new TabStateHub(new TabStateHub.Source() {
+            @Nullable
+            @Override
+            public TabState buildState(long tabId) {
+                return buildTabState(tabId);
+            }
+        });
+        this.lruCache = new LongLruCache<P>(cacheSizer.getCapacity()) {
+            @Override
+            protected int sizeOf(long key, P value) {
+                ITab tab = tabOf(value);
+                return TabMemoryEstimator.estimate(tab == null ? null : tab.getMemoryStats());
+            }
+
+            /**
+             * 跳过当前标签页及最近加入的标签页，其余交给淘汰策略选择
+             */
+            @Override
+            protected long selectVictim() {
+                TabInfo current = registry.getCurrent();
+                return EvictionCandidates.selectVictim(this,
+                        current == null ? TabInfo.NO_ID : current.getId(), evictionPolicy, evictionHost);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, long key, P oldValue, P newValue) {
+                if (oldValue != newValue) {
+                    evictionPolicy.onRemoved(key, evicted);
+                }
+                if (oldValue != null && oldValue != newValue) {
+                    if (evicted && !closingAll) {
+                        hibernate(key, oldValue);
+                    }
+                    TabModel.this.host.removePage(oldValue);
+                }
+            }
+        };
+    }
+
+    @Nullable
+    private ITab tabOf(@Nullable P page) {
+        return page == null ? null : host.asTab(page);
+    }
+
+    /**
+     * 使用在配置变化中保留的最近关闭列表及WebView实例池，两者随缓存容量调整。需在打开或关闭标签页之前调用
+     */
+    void attachRetained(BrowserViewModel viewModel) {
+        this.closedTabs.clear();
+        this.closedTabs = viewModel.getClosedTabs();
+        this.closedTabs.onBudgetChanged(cacheSizer.getCapacity(), cacheSizer.getBaseline());
+        this.webViewPool = viewModel.getWebViewPool();
+        this.webViewPool.onBudgetChanged(cacheSizer.getCapacity(), cacheSizer.getBaseline());
+    }
+
+    /**
+     * 创建页面并放入缓存
+     */
+    P createPage(TabInfo info, boolean hidden, boolean restore, @Nullable IWebView adopted) {
+        P page = host.createPage(info, hidden, restore, adopted);
+        lruCache.put(info.getId(), page);
+        evictionPolicy.onAccess(info.getId());
+        return page;
+    }
+
+    /**
+     * 还原标签页，使用由页面参数还原的TabInfo对象登记
+     * <p>
+     * 此方法仅还原一个标签页，上层可能需要在循环中调用
+     *
+     * @param infoCopy 由页面参数还原的TabInfo对象，需通过id换取登记表中的实例
+     * @param page     重建后的页面，为null时仅还原列表信息
+     * @param visible  页面是否正在显示
+     * @return 登记表中的TabInfo
+     */
+    TabInfo restoreTab(TabInfo infoCopy, @Nullable P page, boolean visible) {
+        // 之前有缓存时，需要从登记表中拿到真正的TabInfo
+        TabInfo info = registry.add(infoCopy);
+        onTabInfoChanged(info);
+        if (page == null) {
+            return info;
+        }
+        lruCache.put(info.getId(), page);
+        evictionPolicy.onAccess(info.getId());
+        if (visible) {
+            registry.setCurrent(info);
+            stateHub.setCurrentId(info.getId());
+            backgroundLoader.setForegroundTab(info.getId());
+        }
+        return info;
+    }
+
+    /**
+     * 标签页登记或标题、地址变化后，更新搜索索引并标记状态待发布
+     */
+    private void onTabInfoChanged(TabInfo info) {
+        searchIndex.put(info.getId(), info.getTitle(), info.getUri() == null ? null : info.getUri().toString());
+        stateHub.invalidate(info.getId());
+    }
+
+    /**
+     * 由登记表中的信息及缓存中的页面生成标签页状态，标签页已关闭时返回null
+     */
+    @Nullable
+    private TabState buildTabState(long tabId) {
+        TabInfo info = registry.get(tabId);
+        if (info == null) {
+            return null;
+        }
+        TabState.Builder builder = new TabState.Builder(tabId)
+                .title(info.getTitle())
+                .url(info.getUri() == null ? null : info.getUri().toString());
+        ITab tab = tabOf(lruCache.peek(tabId));
+        if (tab != null) {
+            tab.fillState(builder);
+            builder.memoryEstimate(lruCache.entrySize(tabId));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 保存被淘汰标签页的状态，用于之后恢复
+     */
+    private void hibernate(long tabId, P page) {
+        ITab tab = tabOf(page);
+        if (tab == null || registry.get(tabId) == null) {
+            return;
+        }
+        Bundle state = new Bundle();
+        tab.saveHibernateState(state);
+        stateStore.save(tabId, state);
+    }
+
+    /**
+     * 移除缓存及休眠状态，登记表由调用方批量移除
+     */
+    private void removeFromCache(TabInfo info) {
+        lruCache.remove(info.getId());
+        thumbnailCache.remove(info.getId());
+        stateStore.remove(info.getId());
+        pinnedTabs.remove(info.getId());
+        stateHub.remove(info.getId());
+        searchIndex.remove(info.getId());
+    }
+
+    void closeAllTabs() {
+        backgroundLoader.clear();
+        host.beginUpdate();
+        closingAll = true;
+        lruCache.evictAll();
+        closingAll = false;
+        thumbnailCache.clear();
+        stateHub.clear();
+        searchIndex.clear();
+        registry.clear();
+        pinnedTabs.clear();
+        host.endUpdate();
+    }
+
+    /**
+     * 隐藏当前标签页：先截图，再记录切换离开时的占用
+     */
+    private void hideCurrent() {
+        P current = findVisiblePage();
+        if (current != null) {
+            captureCurrentThumbnail();
+            host.setPageHidden(current, true);
+            refreshCurrentSize();
+        }
+    }
+
+    /**
+     * 用户点击标签页后，切换到目标页面
+     */
+    void switchToTab(TabInfo info) {
+        info = registry.get(info.getId());
+        if (info == null) {
+            return;
+        }
+        switchTracer.begin(info.getId());
+        backgroundLoader.remove(info.getId());
+        cacheSizer.maybeRecover();
+        P current = findVisiblePage();
+        P target = lruCache.get(info.getId());
+
+        if (target == current && target != null) {
+            setCurrentTab(info);
+            return;
+        }
+
+        host.beginUpdate();
+        hideCurrent();
+        if (target != null) {
+            host.setPageHidden(target, false);
+        } else {
+            // 页面已被淘汰，重新创建并从休眠状态恢复
+            createPage(info, false, true, null);
+        }
+        setCurrentTab(info);
+        host.endUpdate();
+    }
+
+    private void setCurrentTab(TabInfo info) {
+        registry.setCurrent(info);
+        stateHub.setCurrentId(info.getId());
+        backgroundLoader.setForegroundTab(info.getId());
+        searchIndex.touch(info.getId());
+        evictionPolicy.onAccess(info.getId());
+        if (journal != null) {
+            journal.appendSelect(info.getId());
+        }
+    }
+
+    /**
+     * 新建标签页。后台打开的标签页先登记到列表中并进入加载队列，由 {@link BackgroundTabLoader} 在前台空闲时创建
+     */
+    void addNewTab(TabInfo info, boolean backstage) {
+        if (info == null || !host.canChangePages()) {
+            return;
+        }
+        TabInfo added = registry.add(info);
+        onTabInfoChanged(added);
+        if (journal != null) {
+            journal.appendCreate(added);
+        }
+        if (backstage && findVisiblePage() != null) {
+            backgroundLoader.enqueue(added.getId());
+        } else {
+            switchTracer.begin(added.getId());
+            cacheSizer.maybeRecover();
+            host.beginUpdate();
+            hideCurrent();
+            createPage(added, false, false, null);
+            setCurrentTab(added);
+            host.endUpdate();
+        }
+        if (observer != null) {
+            observer.updateQuickView();
+        }
+    }
+
+    /**
+     * 批量新建标签页。后台打开时全部进入加载队列；前台打开时显示最后一个，其余进入加载队列
+     */
+    void addNewTabs(List<TabInfo> tabs, boolean backstage) {
+        if (tabs == null || tabs.isEmpty()) {
+            return;
+        }
+        host.beginUpdate();
+        int last = tabs.size() - 1;
+        for (int i = 0; i < last; i++) {
+            addNewTab(tabs.get(i), true);
+        }
+        addNewTab(tabs.get(last), backstage);
+        host.endUpdate();
+    }
+
+    /**
+     * 关闭标签页，所有页面变化一起提交
+     * <ul>
+     * <li>如果所有标签页都被关闭，则新建一个标签页</li>
+     * <li>以被关闭的当前标签页(当前标签页未关闭时为第一个被关闭的标签页)的位置为基准：
+     * 如果该位置是第一个，显示新的第一个标签页；否则显示前一位置的标签页</li>
+     * </ul>
+     */
+    void closeTabs(List<TabInfo> tabs) {
+        TabInfo current = registry.getCurrent();
+        List<TabInfo> targets = new ArrayList<>(tabs.size());
+        LongIntMap seen = new LongIntMap(-1);
+        boolean currentClosed = false;
+        for (TabInfo copy : tabs) {
+            TabInfo info = registry.get(copy.getId());
+            if (info == null || seen.containsKey(info.getId())) {
+                continue;
+            }
+            seen.put(info.getId(), 1);
+            targets.add(info);
+            if (info == current) {
+                currentClosed = true;
+            }
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+        TabInfo anchor = currentClosed ? current : targets.get(0);
+
+        host.beginUpdate();
+        for (TabInfo info : targets) {
+            backgroundLoader.remove(info.getId());
+            recordClosedTab(info);
+            removeFromCache(info);
+            if (journal != null) {
+                journal.appendClose(info.getId());
+            }
+        }
+        // 只有用户主动操作，才从recyclerview使用的列表中移除；相邻的标签页直接从槽位查找，不整理列表
+        TabInfo next = registry.removeAll(targets, anchor);
+
+        if (registry.isEmpty()) {
+            if (observer != null) {
+                addNewTab(TabInfo.create(mContext.getString(R.string.new_tab_welcome)), false);
+            }
+            host.endUpdate();
+            return;
+        }
+
+        switchToTab(next);
+        host.endUpdate();
+        if (observer != null) {
+            observer.updateQuickView();
+        }
+    }
+
+    /**
+     * 用户关闭标签页前记录到最近关闭列表：已创建的页面取下WebView或保存页面状态，休眠中的取出休眠状态
+     */
+    private void recordClosedTab(TabInfo info) {
+        ITab tab = tabOf(lruCache.peek(info.getId()));
+        if (tab == null) {
+            // 休眠中的标签页，状态读取完成后补到记录中
+            final ClosedTabBuffer.ClosedTab closedTab = closedTabs.push(info, null, null);
+            stateStore.take(info.getId(), new TabStateStore.OnStateLoadedListener() {
+                @Override
+                public void onStateLoaded(@Nullable Bundle savedState) {
+                    closedTab.setState(savedState);
+                }
+            });
+            return;
+        }
+        IWebView webView = null;
+        Bundle state = null;
+        if (closedTabs.acceptsLive()) {
+            webView = tab.detachWebView();
+        }
+        if (webView != null) {
+            // 最近关闭列表可能比当前Activity存活更久
+            BrowserViewModel.rebind(webView, mContext.getApplicationContext());
+        } else {
+            state = new Bundle();
+            tab.saveHibernateState(state);
+        }
+        closedTabs.push(info, webView, state);
+    }
+
+    /**
+     * 重新打开最近关闭的标签页并切换过去。保留了WebView时直接放回，否则交给休眠恢复流程
+     */
+    boolean reopenClosedTab() {
+        if (!host.canChangePages()) {
+            return false;
+        }
+        ClosedTabBuffer.ClosedTab closedTab = closedTabs.pop();
+        if (closedTab == null) {
+            return false;
+        }
+        TabInfo info = closedTab.getInfo();
+        IWebView webView = closedTab.getWebView();
+        if (registry.get(info.getId()) != null) {
+            // id已被占用，不应出现
+            if (webView != null) {
+                webView.onDestroy();
+            }
+            return false;
+        }
+        if (webView != null) {
+            BrowserViewModel.rebind(webView, mContext);
+        } else if (closedTab.getState() != null) {
+            stateStore.save(info.getId(), closedTab.getState());
+        }
+
+        switchTracer.begin(info.getId());
+        cacheSizer.maybeRecover();
+        TabInfo added = registry.add(info);
+        onTabInfoChanged(added);
+        if (journal != null) {
+            journal.appendCreate(added);
+        }
+        host.beginUpdate();
+        hideCurrent();
+        createPage(added, false, webView == null, webView);
+        setCurrentTab(added);
+        host.endUpdate();
+        if (observer != null) {
+            observer.updateQuickView();
+        }
+        return true;
+    }
+
+    /**
+     * 当前标签页切换到后台时截图，隐藏前调用
+     */
+    private void captureCurrentThumbnail() {
+        TabInfo current = registry.getCurrent();
+        if (current != null) {
+            thumbnailCache.captureNow(current.getId());
+        }
+    }
+
+    /**
+     * 重新估算当前标签页的占用，在页面内容变化或切换离开时调用
+     */
+    private void refreshCurrentSize() {
+        TabInfo current = registry.getCurrent();
+        if (current != null) {
+            lruCache.refreshSize(current.getId());
+        }
+    }
+
+    /**
+     * 当前显示的页面，由登记表中的当前标签页指针直接定位
+     */
+    @Nullable
+    P findVisiblePage() {
+        TabInfo current = registry.getCurrent();
+        if (current == null) {
+            return null;
+        }
+        return lruCache.get(current.getId());
+    }
+
+    @Nullable
+    ITab findVisibleTab() {
+        return tabOf(findVisiblePage());
+    }
+
+    void attach(ITabQuickView.Observer observer) {
+        this.observer = observer;
+    }
+
+    void detach() {
+        this.observer = null;
+    }
+
+    List<TabInfo> provideInfoList() {
+        return registry.asList();
+    }
+
+    void updateTabInfo(TabInfo tabInfo) {
+        TabInfo target = registry.get(tabInfo.getId());
+        if (target == null) {
+            return;
+        }
+        target.setTitle(tabInfo.getTitle());
+        if (tabInfo.getUri() != null) {
+            target.setUri(tabInfo.getUri());
+        }
+        lruCache.refreshSize(target.getId());
+        if (journal != null) {
+            journal.appendTitle(target.getId(), target.getTitle());
+            journal.appendUrl(target.getId(), tabInfo.getUri());
+        }
+        // 标签页列表通过状态发布刷新标题
+        onTabInfoChanged(target);
+    }
+
+    void invalidateTabState(long tabId) {
+        stateHub.invalidate(tabId);
+    }
+
+    ITabStateStream getTabStateStream() {
+        return stateHub;
+    }
+
+    List<TabInfo> searchTabs(String query) {
+        long[] ids = searchIndex.query(query, 0);
+        List<TabInfo> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            TabInfo info = registry.get(id);
+            if (info != null) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    void onTabLoadingChange(TabInfo tabInfo, boolean loading) {
+        if (loading) {
+            thumbnailCache.invalidate(tabInfo.getId());
+        } else {
+            thumbnailCache.requestCapture(tabInfo.getId());
+        }
+        backgroundLoader.onLoadingChange(tabInfo.getId(), loading);
+    }
+
+    void onTabScrolled() {
+        backgroundLoader.onForegroundScroll();
+    }
+
+    /**
+     * 创建后台标签页并开始加载，标签页已关闭、已创建或不能改变页面时跳过
+     */
+    @Override
+    public boolean startBackgroundLoad(long tabId) {
+        TabInfo info = registry.get(tabId);
+        if (info == null || !host.canChangePages() || lruCache.containsKey(tabId)) {
+            return false;
+        }
+        host.beginUpdate();
+        createPage(info, true, true, null);
+        host.endUpdate();
+        return true;
+    }
+
+    void onTabPinned(TabInfo tabInfo, boolean pinned) {
+        if (registry.get(tabInfo.getId()) == null) {
+            return;
+        }
+        if (pinned) {
+            pinnedTabs.put(tabInfo.getId(), 1);
+        } else {
+            pinnedTabs.remove(tabInfo.getId());
+        }
+    }
+
+    boolean isTabPinned(TabInfo tabInfo) {
+        return pinnedTabs.containsKey(tabInfo.getId());
+    }
+
+    void attachSession(ISessionJournal journal) {
+        this.journal = journal;
+    }
+
+    void onDestroy() {
+        backgroundLoader.clear();
+        stateHub.clear();
+    }
+
+    void onTrimMemory(int level) {
+        thumbnailCache.onTrimMemory(level);
+        host.beginUpdate();
+        cacheSizer.onTrimMemory(level);
+        host.endUpdate();
+    }
+
+    void onLowMemory() {
+        thumbnailCache.clear();
+        host.beginUpdate();
+        cacheSizer.onLowMemory();
+        host.endUpdate();
+    }
+
+    boolean isCached(long tabId) {
+        return lruCache.containsKey(tabId);
+    }
+
+    /**
+     * 缓存中的页面，不影响访问顺序
+     */
+    @Nullable
+    P peekPage(long tabId) {
+        return lruCache.peek(tabId);
+    }
+
+    long[] getCachedTabIds() {
+        return lruCache.keys();
+    }
+
+    TabCacheSizer getCacheSizer() {
+        return cacheSizer;
+    }
+
+    BackgroundTabLoader getBackgroundLoader() {
+        return backgroundLoader;
+    }
+
+    TabThumbnailCache getThumbnailCache() {
+        return thumbnailCache;
+    }
+
+    TabSwitchTracer getSwitchTracer() {
+        return switchTracer;
+    }
+
+    TabEvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    int getCachedTabCount() {
+        return lruCache.count();
+    }
+
+    int getCachedBytes() {
+        return lruCache.size();
+    }
+
+    TabInfo getCurrentTab() {
+        return registry.getCurrent();
+    }
+
+    Bitmap getPreviewForTab(long tabId) {
+        // 直接返回已生成的缩略图，不做绘制；尚未截图的标签页没有预览
+        return thumbnailCache.get(tabId);
+    }
+
+    void prefetchPreview(long tabId) {
+        thumbnailCache.prefetch(tabId);
+    }
+}
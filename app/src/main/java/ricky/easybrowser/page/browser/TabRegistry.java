@@ -0,0 +1,207 @@
+package ricky.easybrowser.page.browser;
+
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.utils.LongIntMap;
+
+/**
+ * 标签页登记表。按显示顺序保存所有标签页，并维护 id -> 槽位 的哈希索引及当前标签页指针。
+ * <p>
+ * 移除时只把槽位置空，不移动后面的标签页，按id查找和移除都是常数时间。按位置读取(indexOf、getAt、asList)
+ * 前若有空槽位，先整理一次并更新索引，耗时与标签页数成正比，连续关闭多个标签页只需整理一次。
+ * 关闭标签页时通过 {@link #removeAll(List, TabInfo)} 从槽位直接找出相邻的标签页，不需要按位置读取。
+ * <p>
+ * 表中保存的TabInfo为唯一实例，外部传入的副本需通过id换取表中的实例后再使用。
+ */
+public class TabRegistry {
+
+    /**
+     * 按添加顺序排列的槽位，已移除的为null
+     */
+    private final List<TabInfo> slots = new ArrayList<>();
+    private final List<TabInfo> readOnlyList = new OrderedView();
+    private final LongIntMap slotIndex = new LongIntMap(-1);
+    private int removedSlots;
+
+    private TabInfo current;
+
+    /**
+     * 追加标签页，id已存在时返回表中已有的实例
+     */
+    public TabInfo add(TabInfo info) {
+        TabInfo prev = get(info.getId());
+        if (prev != null) {
+            return prev;
+        }
+        slotIndex.put(info.getId(), slots.size());
+        slots.add(info);
+        return info;
+    }
+
+    /**
+     * 移除标签页
+     *
+     * @return 标签页不存在时返回false
+     */
+    public boolean remove(@Nullable TabInfo info) {
+        if (info == null || info.getId() == TabInfo.NO_ID) {
+            return false;
+        }
+        int slot = slotIndex.remove(info.getId());
+        if (slot < 0) {
+            return false;
+        }
+        TabInfo removed = slots.set(slot, null);
+        removedSlots++;
+        if (removed == current) {
+            current = null;
+        }
+        return true;
+    }
+
+    /**
+     * 批量移除标签页
+     *
+     * @return 实际移除的数量
+     */
+    public int removeAll(List<TabInfo> targets) {
+        int count = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            if (remove(targets.get(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 批量移除标签页，并找出锚点原位置之前最近的剩余标签页，之前没有剩余时取之后最近的一个。
+     * 从锚点的槽位向两侧跳过空槽位查找，不整理槽位
+     *
+     * @param anchor 被移除的标签页之一，通常为被关闭的当前标签页
+     * @return 全部移除后返回null
+     */
+    @Nullable
+    public TabInfo removeAll(List<TabInfo> targets, TabInfo anchor) {
+        int anchorSlot = slotIndex.get(anchor.getId());
+        removeAll(targets);
+        if (isEmpty()) {
+            return null;
+        }
+        if (anchorSlot < 0) {
+            return getAt(0);
+        }
+        for (int slot = anchorSlot - 1; slot >= 0; slot--) {
+            if (slots.get(slot) != null) {
+                return slots.get(slot);
+            }
+        }
+        for (int slot = anchorSlot + 1; slot < slots.size(); slot++) {
+            if (slots.get(slot) != null) {
+                return slots.get(slot);
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        slots.clear();
+        slotIndex.clear();
+        removedSlots = 0;
+        current = null;
+    }
+
+    /**
+     * 去掉空槽位并更新被移动的标签页的索引
+     */
+    private void compact() {
+        if (removedSlots == 0) {
+            return;
+        }
+        int write = 0;
+        for (int read = 0; read < slots.size(); read++) {
+            TabInfo info = slots.get(read);
+            if (info == null) {
+                continue;
+            }
+            if (write != read) {
+                slots.set(write, info);
+                slotIndex.put(info.getId(), write);
+            }
+            write++;
+        }
+        slots.subList(write, slots.size()).clear();
+        removedSlots = 0;
+    }
+
+    public int indexOf(@Nullable TabInfo info) {
+        if (info == null) {
+            return -1;
+        }
+        return indexOf(info.getId());
+    }
+
+    public int indexOf(long id) {
+        if (id == TabInfo.NO_ID) {
+            return -1;
+        }
+        compact();
+        return slotIndex.get(id);
+    }
+
+    @Nullable
+    public TabInfo get(long id) {
+        if (id == TabInfo.NO_ID) {
+            return null;
+        }
+        int slot = slotIndex.get(id);
+        return slot < 0 ? null : slots.get(slot);
+    }
+
+    public TabInfo getAt(int index) {
+        compact();
+        return slots.get(index);
+    }
+
+    public int size() {
+        return slots.size() - removedSlots;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 只读的有序列表，供快捷列表直接按位置读取，内容随登记表变化
+     */
+    public List<TabInfo> asList() {
+        return readOnlyList;
+    }
+
+    @Nullable
+    public TabInfo getCurrent() {
+        return current;
+    }
+
+    public void setCurrent(@Nullable TabInfo info) {
+        this.current = info == null ? null : get(info.getId());
+    }
+
+    private final class OrderedView extends AbstractList<TabInfo> {
+
+        @Override
+        public TabInfo get(int index) {
+            return getAt(index);
+        }
+
+        @Override
+        public int size() {
+            return TabRegistry.this.size();
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package ricky.easybrowser.page.browser;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ricky.easybrowser.utils.LongIntMap;
+
+/**
+ * 标签页搜索索引。
+ * <p>
+ * 标题、地址按非字母数字字符切分为词，连同完整域名一起登记到有序词表中，每个词记录包含它的标签页及所在字段。
+ * 每个词从第二个字符起、长度不小于 {@link #MIN_INFIX_LENGTH} 的后缀另外登记到后缀表中，用于词内的子串匹配。
+ * 标签页新建、标题或地址变化、关闭时增量更新，不需要重建。
+ * <p>
+ * 查询按空白切分为多个关键词，所有关键词都匹配的标签页才会返回。每个关键词在词表中按前缀查找，
+ * 在后缀表中按前缀查找得到子串匹配，两者都只访问命中的标签页。不论字段，完整匹配高于前缀匹配，
+ * 前缀匹配高于子串匹配；同一级别中标题高于域名，域名高于地址。得分相同时最近使用的标签页在前。仅在UI线程中使用
+ */
+public class TabSearchIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_HOST = 1 << 1;
+    private static final int FIELD_URL = 1 << 2;
+
+    private static final int LEVEL_EXACT = 0;
+    private static final int LEVEL_PREFIX = 1;
+    private static final int LEVEL_SUBSTRING = 2;
+
+    /**
+     * 每一级的最低分高于下一级的最高分
+     */
+    private static final int SCORE_EXACT_TITLE = 60;
+    private static final int SCORE_EXACT_HOST = 55;
+    private static final int SCORE_EXACT_URL = 50;
+    private static final int SCORE_PREFIX_TITLE = 40;
+    private static final int SCORE_PREFIX_HOST = 35;
+    private static final int SCORE_PREFIX_URL = 30;
+    private static final int SCORE_SUBSTRING_TITLE = 20;
+    private static final int SCORE_SUBSTRING_HOST = 15;
+    private static final int SCORE_SUBSTRING_URL = 10;
+
+    /**
+     * 登记到后缀表的最短后缀，更短的关键词只做前缀匹配
+     */
+    private static final int MIN_INFIX_LENGTH = 2;
+
+    /**
+     * 地址中出现频率过高、没有区分度的词
+     */
+    private static final List<String> URL_STOP_WORDS = Arrays.asList("http", "https", "www", "html", "htm");
+
+    private static class Doc {
+        long id;
+        String title;
+        String url;
+        String[] titleTokens;
+        String[] urlTokens;
+        String host;
+        long lastAccess;
+        int score;
+    }
+
+    private static final Comparator<Doc> RANK_COMPARATOR = new Comparator<Doc>() {
+        @Override
+        public int compare(Doc o1, Doc o2) {
+            if (o1.score != o2.score) {
+                return o1.score > o2.score ? -1 : 1;
+            }
+            if (o1.lastAccess != o2.lastAccess) {
+                return o1.lastAccess > o2.lastAccess ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    /**
+     * 词 -> (标签页id -> 所在字段的位标记)
+     */
+    private final TreeMap<String, LongIntMap> postings = new TreeMap<>();
+    /**
+     * 词的后缀 -> (标签页id -> 所在字段的位标记)
+     */
+    private final TreeMap<String, LongIntMap> infixes = new TreeMap<>();
+    private final List<Doc> docs = new ArrayList<>();
+    /**
+     * 标签页id -> docs中的下标
+     */
+    private final LongIntMap slots = new LongIntMap(-1);
+    private long accessSequence;
+
+    /**
+     * 新建或更新标签页的标题及地址，内容未变化时不做任何操作
+     */
+    public void put(long tabId, @Nullable String title, @Nullable String url) {
+        String normalizedTitle = normalize(title);
+        String normalizedUrl = normalize(url);
+        int slot = slots.get(tabId);
+        Doc doc;
+        if (slot >= 0) {
+            doc = docs.get(slot);
+            if (doc.title.equals(normalizedTitle) && doc.url.equals(normalizedUrl)) {
+                return;
+            }
+            unindex(doc);
+        } else {
+            doc = new Doc();
+            doc.id = tabId;
+            doc.lastAccess = ++accessSequence;
+            slots.put(tabId, docs.size());
+            docs.add(doc);
+        }
+        doc.title = normalizedTitle;
+        doc.url = normalizedUrl;
+        doc.host = parseHost(normalizedUrl);
+        doc.titleTokens = tokenize(normalizedTitle, false);
+        doc.urlTokens = tokenize(normalizedUrl, true);
+        index(doc);
+    }
+
+    /**
+     * 记录标签页被使用，用于同分时排序
+     */
+    public void touch(long tabId) {
+        int slot = slots.get(tabId);
+        if (slot >= 0) {
+            docs.get(slot).lastAccess = ++accessSequence;
+        }
+    }
+
+    public void remove(long tabId) {
+        int slot = slots.remove(tabId);
+        if (slot < 0) {
+            return;
+        }
+        unindex(docs.get(slot));
+        // 末尾元素移到空出的位置
+        int last = docs.size() - 1;
+        Doc moved = docs.remove(last);
+        if (slot != last) {
+            docs.set(slot, moved);
+            slots.put(moved.id, slot);
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        infixes.clear();
+        docs.clear();
+        slots.clear();
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * 查询匹配的标签页
+     *
+     * @param limit 最多返回的数量，小于等于0时不限制
+     * @return 按得分排序的标签页id，没有匹配时返回空数组
+     */
+    public long[] query(@Nullable String query, int limit) {
+        String[] terms = splitQuery(normalize(query));
+        if (terms.length == 0 || docs.isEmpty()) {
+            return EMPTY;
+        }
+        int count = docs.size();
+        int[] totals = new int[count];
+        int[] termScores = new int[count];
+        for (String term : terms) {
+            Arrays.fill(termScores, 0);
+            match(postings, term, true, termScores);
+            if (term.length() >= MIN_INFIX_LENGTH) {
+                match(infixes, term, false, termScores);
+            }
+            for (int i = 0; i < count; i++) {
+                if (totals[i] < 0) {
+                    continue;
+                }
+                int score = termScores[i];
+                // 任一关键词不匹配即排除
+                totals[i] = score == 0 ? -1 : totals[i] + score;
+            }
+        }
+
+        List<Doc> matched = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (totals[i] > 0) {
+                Doc doc = docs.get(i);
+                doc.score = totals[i];
+                matched.add(doc);
+            }
+        }
+        Collections.sort(matched, RANK_COMPARATOR);
+        int size = limit > 0 ? Math.min(limit, matched.size()) : matched.size();
+        long[] result = new long[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = matched.get(i).id;
+        }
+        return result;
+    }
+
+    /**
+     * 在词表或后缀表中按前缀查找，记录每个标签页的最高分
+     *
+     * @param tokens 为true时查找词表，完整匹配及前缀匹配；否则查找后缀表，为子串匹配
+     */
+    private void match(TreeMap<String, LongIntMap> table, String term, boolean tokens, int[] termScores) {
+        Map<String, LongIntMap> range = table.subMap(term, true, term + Character.MAX_VALUE, false);
+        for (Map.Entry<String, LongIntMap> entry : range.entrySet()) {
+            int level = !tokens ? LEVEL_SUBSTRING
+                    : entry.getKey().length() == term.length() ? LEVEL_EXACT : LEVEL_PREFIX;
+            LongIntMap ids = entry.getValue();
+            for (int i = 0; i < ids.capacity(); i++) {
+                long id = ids.keyAt(i);
+                if (id == LongIntMap.EMPTY_KEY) {
+                    continue;
+                }
+                int slot = slots.get(id);
+                if (slot < 0) {
+                    continue;
+                }
+                int score = fieldScore(ids.valueAt(i), level);
+                if (score > termScores[slot]) {
+                    termScores[slot] = score;
+                }
+            }
+        }
+    }
+
+    private static int fieldScore(int fields, int level) {
+        if ((fields & FIELD_TITLE) != 0) {
+            return level == LEVEL_EXACT ? SCORE_EXACT_TITLE
+                    : level == LEVEL_PREFIX ? SCORE_PREFIX_TITLE : SCORE_SUBSTRING_TITLE;
+        }
+        if ((fields & FIELD_HOST) != 0) {
+            return level == LEVEL_EXACT ? SCORE_EXACT_HOST
+                    : level == LEVEL_PREFIX ? SCORE_PREFIX_HOST : SCORE_SUBSTRING_HOST;
+        }
+        return level == LEVEL_EXACT ? SCORE_EXACT_URL
+                : level == LEVEL_PREFIX ? SCORE_PREFIX_URL : SCORE_SUBSTRING_URL;
+    }
+
+    private void index(Doc doc) {
+        for (String token : doc.titleTokens) {
+            addPosting(token, doc.id, FIELD_TITLE);
+        }
+        for (String token : doc.urlTokens) {
+            addPosting(token, doc.id, FIELD_URL);
+        }
+        if (!doc.host.isEmpty()) {
+            addPosting(doc.host, doc.id, FIELD_HOST);
+            for (String token : tokenize(doc.host, true)) {
+                addPosting(token, doc.id, FIELD_HOST);
+            }
+        }
+    }
+
+    private void unindex(Doc doc) {
+        for (String token : doc.titleTokens) {
+            removePosting(token, doc.id);
+        }
+        for (String token : doc.urlTokens) {
+            removePosting(token, doc.id);
+        }
+        if (!doc.host.isEmpty()) {
+            removePosting(doc.host, doc.id);
+            for (String token : tokenize(doc.host, true)) {
+                removePosting(token, doc.id);
+            }
+        }
+    }
+
+    private void addPosting(String token, long tabId, int field) {
+        addEntry(postings, token, tabId, field);
+        for (int i = 1; i + MIN_INFIX_LENGTH <= token.length(); i++) {
+            addEntry(infixes, token.substring(i), tabId, field);
+        }
+    }
+
+    private void removePosting(String token, long tabId) {
+        removeEntry(postings, token, tabId);
+        for (int i = 1; i + MIN_INFIX_LENGTH <= token.length(); i++) {
+            removeEntry(infixes, token.substring(i), tabId);
+        }
+    }
+
+    private static void addEntry(TreeMap<String, LongIntMap> table, String key, long tabId, int field) {
+        LongIntMap ids = table.get(key);
+        if (ids == null) {
+            ids = new LongIntMap(4, 0);
+            table.put(key, ids);
+        }
+        ids.put(tabId, ids.get(tabId) | field);
+    }
+
+    private static void removeEntry(TreeMap<String, LongIntMap> table, String key, long tabId) {
+        LongIntMap ids = table.get(key);
+        if (ids == null) {
+            return;
+        }
+        ids.remove(tabId);
+        if (ids.size() == 0) {
+            table.remove(key);
+        }
+    }
+
+    private static String normalize(@Nullable String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String[] splitQuery(String query) {
+        if (query.isEmpty()) {
+            return new String[0];
+        }
+        return query.split("\\s+");
+    }
+
+    /**
+     * 按非字母数字字符切分，去掉重复的词
+     */
+    private static String[] tokenize(String text, boolean url) {
+        List<String> tokens = new ArrayList<>();
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean letter = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String token = text.substring(start, i);
+                if (!tokens.contains(token) && !(url && URL_STOP_WORDS.contains(token))) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * 从小写地址中取出域名，去掉开头的www.
+     */
+    private static String parseHost(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = url.length();
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#' || c == ':') {
+                end = i;
+                break;
+            }
+        }
+        String host = url.substring(start, end);
+        int at = host.lastIndexOf('@');
+        if (at >= 0) {
+            host = host.substring(at + 1);
+        }
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        }
+        return host;
+    }
+}
@@ -0,0 +1,574 @@
+package ricky.easybrowser.page.browser;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import ricky.easybrowser.contract.ISessionJournal;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * 标签页会话日志。
+ * <p>
+ * 以追加方式记录标签页的新建、关闭、标题、地址及切换事件，冷启动时重放日志即可还原标签页列表，不依赖Bundle。
+ * 每条记录带有长度及CRC校验，进程在写入过程中被杀死时，重放会在第一条不完整的记录处停止，
+ * 并按已重放的内容重写文件；文件头无效时重写为空日志，之后的记录不会追加在无效内容之后。
+ * 记录数超过存活标签页数的若干倍后，在后台用当前列表的快照替换日志文件。
+ * <p>
+ * UI线程只更新内存中的列表，记录的编码及写文件在单一后台线程中顺序执行。内存中的列表
+ * 同一进程内(如横竖屏切换)直接使用，无需读文件
+ */
+public class TabSessionJournal implements ISessionJournal {
+
+    private static final String TAG = "TabSessionJournal";
+
+    private static final String DIR_NAME = "session";
+    private static final String FILE_SUFFIX = ".journal";
+
+    private static final int MAGIC = 0x45424a4c;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+
+    private static final byte TYPE_CREATE = 1;
+    private static final byte TYPE_CLOSE = 2;
+    private static final byte TYPE_TITLE = 3;
+    private static final byte TYPE_URL = 4;
+    private static final byte TYPE_SELECT = 5;
+
+    private static final int MAX_RECORD_LENGTH = 256 * 1024;
+    /**
+     * writeUTF最多写入65535字节，超长的标题或地址截断
+     */
+    private static final int MAX_STRING_LENGTH = 8 * 1024;
+    private static final int MIN_COMPACT_RECORDS = 64;
+    private static final int COMPACT_FACTOR = 4;
+
+    private static class Entry {
+        String title;
+        String url;
+    }
+
+    private final File dir;
+    private final File file;
+    private final long sessionId;
+
+    /**
+     * 当前列表，按标签页新建顺序排列。仅在UI线程中访问
+     */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    private long currentId = TabInfo.NO_ID;
+    private int recordCount;
+
+    /**
+     * 仅在写线程中访问
+     */
+    private FileOutputStream appendStream;
+
+    TabSessionJournal(File dir, long sessionId) {
+        this.dir = dir;
+        this.sessionId = sessionId;
+        this.file = new File(dir, sessionId + FILE_SUFFIX);
+    }
+
+    /**
+     * 打开指定会话的日志并重放已有记录
+     */
+    public static TabSessionJournal open(Context context, long sessionId) {
+        return open(dirOf(context), sessionId);
+    }
+
+    static TabSessionJournal open(File dir, long sessionId) {
+        TabSessionJournal journal = new TabSessionJournal(dir, sessionId);
+        journal.replay();
+        return journal;
+    }
+
+    /**
+     * 打开最近一次会话的日志，没有时新建会话
+     */
+    public static TabSessionJournal openLatest(Context context) {
+        File dir = dirOf(context);
+        long latest = TabInfo.NO_ID;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (!name.endsWith(FILE_SUFFIX)) {
+                    continue;
+                }
+                try {
+                    long id = Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length()));
+                    if (id > latest) {
+                        latest = id;
+                    }
+                } catch (NumberFormatException e) {
+                    // 忽略无关文件
+                }
+            }
+        }
+        if (latest == TabInfo.NO_ID) {
+            latest = System.currentTimeMillis();
+        }
+        TabSessionJournal journal = open(context, latest);
+        journal.deleteOtherSessions();
+        return journal;
+    }
+
+    private static File dirOf(Context context) {
+        return new File(context.getFilesDir(), DIR_NAME);
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * 日志中记录的标签页列表，每次调用返回新的TabInfo对象
+     */
+    public List<TabInfo> restoreTabs() {
+        List<TabInfo> result = new ArrayList<>(entries.size());
+        for (Map.Entry<Long, Entry> item : entries.entrySet()) {
+            Entry entry = item.getValue();
+            Uri uri = entry.url == null ? null : Uri.parse(entry.url);
+            result.add(TabInfo.create(item.getKey(), entry.title, uri));
+        }
+        return result;
+    }
+
+    /**
+     * 日志中最后显示的标签页id
+     */
+    public long getCurrentId() {
+        return currentId;
+    }
+
+    /**
+     * 按新建顺序排列的标签页id
+     */
+    List<Long> getTabIds() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    @Nullable
+    String getTitle(long tabId) {
+        Entry entry = entries.get(tabId);
+        return entry == null ? null : entry.title;
+    }
+
+    @Nullable
+    String getUrl(long tabId) {
+        Entry entry = entries.get(tabId);
+        return entry == null ? null : entry.url;
+    }
+
+    @Override
+    public void appendCreate(TabInfo info) {
+        Entry entry = new Entry();
+        entry.title = info.getTitle();
+        entry.url = info.getUri() == null ? null : info.getUri().toString();
+        entries.put(info.getId(), entry);
+        append(TYPE_CREATE, info.getId(), entry.title, entry.url);
+    }
+
+    @Override
+    public void appendClose(long tabId) {
+        if (entries.remove(tabId) == null) {
+            return;
+        }
+        if (currentId == tabId) {
+            currentId = TabInfo.NO_ID;
+        }
+        append(TYPE_CLOSE, tabId, null, null);
+    }
+
+    @Override
+    public void appendTitle(long tabId, String title) {
+        Entry entry = entries.get(tabId);
+        if (entry == null || equals(entry.title, title)) {
+            return;
+        }
+        entry.title = title;
+        append(TYPE_TITLE, tabId, title, null);
+    }
+
+    @Override
+    public void appendUrl(long tabId, @Nullable Uri uri) {
+        appendUrl(tabId, uri == null ? null : uri.toString());
+    }
+
+    void appendUrl(long tabId, @Nullable String url) {
+        Entry entry = entries.get(tabId);
+        if (entry == null || url == null || equals(entry.url, url)) {
+            return;
+        }
+        entry.url = url;
+        append(TYPE_URL, tabId, null, url);
+    }
+
+    @Override
+    public void appendSelect(long tabId) {
+        if (currentId == tabId || !entries.containsKey(tabId)) {
+            return;
+        }
+        currentId = tabId;
+        append(TYPE_SELECT, tabId, null, null);
+    }
+
+    /**
+     * 记录在写线程中编码并追加，当前线程只更新内存中的列表
+     */
+    private void append(final byte type, final long tabId, @Nullable final String first,
+                        @Nullable final String second) {
+        recordCount++;
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] record = encode(type, tabId, first, second);
+                if (record != null) {
+                    writeRecord(record);
+                }
+            }
+        });
+        if (recordCount > Math.max(MIN_COMPACT_RECORDS, entries.size() * COMPACT_FACTOR)) {
+            compact();
+        }
+    }
+
+    /**
+     * 用当前列表的快照替换日志文件。当前线程只复制各标签页的标题及地址，编码及替换在写线程中进行，
+     * 保证与追加的记录顺序一致
+     */
+    private void compact() {
+        final int count = entries.size();
+        final long[] ids = new long[count];
+        final String[] titles = new String[count];
+        final String[] urls = new String[count];
+        int index = 0;
+        for (Map.Entry<Long, Entry> item : entries.entrySet()) {
+            ids[index] = item.getKey();
+            titles[index] = item.getValue().title;
+            urls[index] = item.getValue().url;
+            index++;
+        }
+        final long selectedId = currentId;
+        recordCount = count + (selectedId != TabInfo.NO_ID ? 1 : 0);
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                List<byte[]> snapshot = new ArrayList<>(count + 1);
+                for (int i = 0; i < count; i++) {
+                    snapshot.add(encode(TYPE_CREATE, ids[i], titles[i], urls[i]));
+                }
+                if (selectedId != TabInfo.NO_ID) {
+                    snapshot.add(encode(TYPE_SELECT, selectedId, null, null));
+                }
+                writeSnapshot(snapshot);
+            }
+        });
+    }
+
+    private void replay() {
+        entries.clear();
+        currentId = TabInfo.NO_ID;
+        recordCount = 0;
+        if (!file.exists()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long validLength = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != sessionId) {
+                EasyLog.w(TAG, "invalid journal header: " + file);
+            } else {
+                validLength = HEADER_LENGTH + readRecords(in);
+            }
+        } catch (EOFException e) {
+            // 文件头不完整
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(in);
+        }
+        if (validLength != file.length()) {
+            // 文件头无效或末尾有不完整的记录，按已重放的内容重写文件，
+            // 否则之后追加的记录会接在无效内容之后，下次启动时同样被丢弃
+            compact();
+        }
+        EasyLog.i(TAG, "replay " + recordCount + " records, " + entries.size() + " tabs in "
+                + (System.nanoTime() - start) / 1000 + "us");
+    }
+
+    /**
+     * 重放文件头之后的记录，在文件末尾或第一条不完整、校验失败的记录处停止
+     *
+     * @return 已重放记录的总长度
+     */
+    private long readRecords(DataInputStream in) throws IOException {
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                int checksum = in.readInt();
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    EasyLog.w(TAG, "corrupted record, stop replay");
+                    break;
+                }
+                apply(payload);
+                recordCount++;
+                validLength += length + 8;
+            }
+        } catch (EOFException e) {
+            // 正常结束或末尾记录不完整
+        }
+        return validLength;
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        long tabId = in.readLong();
+        Entry entry;
+        switch (type) {
+            case TYPE_CREATE:
+                entry = new Entry();
+                entry.title = readString(in);
+                entry.url = readString(in);
+                entries.put(tabId, entry);
+                break;
+            case TYPE_CLOSE:
+                entries.remove(tabId);
+                if (currentId == tabId) {
+                    currentId = TabInfo.NO_ID;
+                }
+                break;
+            case TYPE_TITLE:
+                entry = entries.get(tabId);
+                if (entry != null) {
+                    entry.title = readString(in);
+                }
+                break;
+            case TYPE_URL:
+                entry = entries.get(tabId);
+                if (entry != null) {
+                    readString(in);
+                    entry.url = readString(in);
+                }
+                break;
+            case TYPE_SELECT:
+                if (entries.containsKey(tabId)) {
+                    currentId = tabId;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 编码一条记录：长度、负载(类型、标签页id、两个可选字符串)、CRC32
+     */
+    @Nullable
+    private static byte[] encode(byte type, long tabId, @Nullable String first, @Nullable String second) {
+        try {
+            ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+            DataOutputStream payload = new DataOutputStream(payloadBytes);
+            payload.writeByte(type);
+            payload.writeLong(tabId);
+            if (type == TYPE_CREATE || type == TYPE_TITLE || type == TYPE_URL) {
+                writeString(payload, first);
+                writeString(payload, second);
+            }
+            payload.flush();
+            byte[] body = payloadBytes.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(body.length + 8);
+            DataOutputStream record = new DataOutputStream(recordBytes);
+            record.writeInt(body.length);
+            record.write(body);
+            record.writeInt((int) crc.getValue());
+            record.flush();
+            return recordBytes.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeUTF(value.length() > MAX_STRING_LENGTH ? value.substring(0, MAX_STRING_LENGTH) : value);
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return in.readUTF();
+    }
+
+    private static byte[] encodeHeader(long sessionId) {
+        byte[] header = new byte[HEADER_LENGTH];
+        writeInt(header, 0, MAGIC);
+        writeInt(header, 4, VERSION);
+        writeInt(header, 8, (int) (sessionId >>> 32));
+        writeInt(header, 12, (int) sessionId);
+        return header;
+    }
+
+    private static void writeInt(byte[] dest, int offset, int value) {
+        dest[offset] = (byte) (value >>> 24);
+        dest[offset + 1] = (byte) (value >>> 16);
+        dest[offset + 2] = (byte) (value >>> 8);
+        dest[offset + 3] = (byte) value;
+    }
+
+    private void writeRecord(byte[] record) {
+        try {
+            if (appendStream == null) {
+                openAppendStream();
+            }
+            // 每条记录一次写入，不经过缓冲区
+            appendStream.write(record);
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeQuietly(appendStream);
+            appendStream = null;
+        }
+    }
+
+    private void openAppendStream() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can not create dir: " + dir);
+        }
+        boolean isNew = !file.exists() || file.length() == 0;
+        appendStream = new FileOutputStream(file, true);
+        if (isNew) {
+            appendStream.write(encodeHeader(sessionId));
+        }
+    }
+
+    private void writeSnapshot(List<byte[]> snapshot) {
+        closeQuietly(appendStream);
+        appendStream = null;
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File temp = new File(dir, sessionId + FILE_SUFFIX + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(encodeHeader(sessionId));
+            for (byte[] record : snapshot) {
+                if (record != null) {
+                    out.write(record);
+                }
+            }
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                EasyLog.w(TAG, "rename failed: " + file);
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private void deleteOtherSessions() {
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = dir.listFiles();
+                if (files == null) {
+                    return;
+                }
+                for (File f : files) {
+                    if (!f.getName().startsWith(sessionId + FILE_SUFFIX)) {
+                        f.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    private void runOnDiskThread(final Runnable task) {
+        Observable.create(new ObservableOnSubscribe<Boolean>() {
+            @Override
+            public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
+                task.run();
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.single())
+                .subscribe(new Consumer<Boolean>() {
+                    @Override
+                    public void accept(Boolean ignored) throws Exception {
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        // 单次写入失败只丢失这一条记录，下次压缩时按内存中的列表重写
+                        throwable.printStackTrace();
+                    }
+                });
+    }
+
+    private static boolean equals(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
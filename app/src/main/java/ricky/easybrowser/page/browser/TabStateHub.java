@@ -0,0 +1,220 @@
+package ricky.easybrowser.page.browser;
+
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.BehaviorSubject;
+import ricky.easybrowser.contract.ITabStateStream;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabState;
+import ricky.easybrowser.utils.LongIntMap;
+
+/**
+ * 标签页状态的统一发布入口。
+ * <p>
+ * 页面事件(进度、标题、图标、前进后退等)只标记对应标签页需要更新，不做任何计算。下一帧统一从 {@link Source}
+ * 生成新的 {@link TabState}，与旧状态比较后，只把有变化的标签页id作为一个 {@link Snapshot} 发布，
+ * 未变化的状态不复制。因此一帧内无论收到多少事件，订阅方最多收到一次通知。仅在UI线程中使用
+ */
+public class TabStateHub implements ITabStateStream {
+
+    /**
+     * 按标签页id生成最新状态
+     */
+    public interface Source {
+        /**
+         * @return 标签页已不存在时返回null
+         */
+        @Nullable
+        TabState buildState(long tabId);
+    }
+
+    /**
+     * 某一帧发布的变化。状态从发布方的状态表中读取，订阅方需在收到通知时同步处理
+     */
+    public static final class Snapshot implements ITabStateStream.Snapshot {
+        private final Map<Long, TabState> states;
+        private final long currentId;
+        private final long[] changedIds;
+
+        Snapshot(Map<Long, TabState> states, long currentId, long[] changedIds) {
+            this.states = states;
+            this.currentId = currentId;
+            this.changedIds = changedIds;
+        }
+
+        @Nullable
+        @Override
+        public TabState get(long tabId) {
+            return states.get(tabId);
+        }
+
+        @Nullable
+        @Override
+        public TabState getCurrent() {
+            return states.get(currentId);
+        }
+
+        @Override
+        public long getCurrentId() {
+            return currentId;
+        }
+
+        @Override
+        public boolean hasChanged(long tabId) {
+            for (long id : changedIds) {
+                if (id == tabId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int getChangedCount() {
+            return changedIds.length;
+        }
+
+        @Override
+        public long getChangedId(int index) {
+            return changedIds[index];
+        }
+    }
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final Source source;
+    private final Map<Long, TabState> states = new HashMap<>();
+    private final Map<Long, TabState> readOnlyStates = Collections.unmodifiableMap(states);
+    /**
+     * 等待下一帧更新的标签页，值为在dirtyIds中的位置
+     */
+    private final LongIntMap dirty = new LongIntMap(-1);
+    private long[] dirtyIds = new long[16];
+    private int dirtyCount;
+    /**
+     * 构建变化列表时复用的缓冲区
+     */
+    private long[] changedBuffer = new long[16];
+    private long currentId = TabInfo.NO_ID;
+    private boolean currentDirty;
+
+    private final BehaviorSubject<ITabStateStream.Snapshot> subject = BehaviorSubject.create();
+    private boolean frameScheduled;
+
+    private final Choreographer.FrameCallback flushTask = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameScheduled = false;
+            flush();
+        }
+    };
+
+    public TabStateHub(Source source) {
+        this.source = source;
+    }
+
+    @Override
+    public Observable<ITabStateStream.Snapshot> observe() {
+        return subject.hide();
+    }
+
+    @Nullable
+    @Override
+    public TabState get(long tabId) {
+        return states.get(tabId);
+    }
+
+    /**
+     * 标记标签页状态需要更新，实际更新在下一帧进行
+     */
+    public void invalidate(long tabId) {
+        if (tabId == TabInfo.NO_ID) {
+            return;
+        }
+        if (!dirty.containsKey(tabId)) {
+            if (dirtyCount == dirtyIds.length) {
+                dirtyIds = Arrays.copyOf(dirtyIds, dirtyCount * 2);
+            }
+            dirty.put(tabId, dirtyCount);
+            dirtyIds[dirtyCount++] = tabId;
+        }
+        scheduleFlush();
+    }
+
+    public void setCurrentId(long tabId) {
+        if (currentId == tabId) {
+            return;
+        }
+        currentId = tabId;
+        currentDirty = true;
+        invalidate(tabId);
+    }
+
+    public void remove(long tabId) {
+        // dirtyIds中的旧位置在发布时按dirty跳过
+        dirty.remove(tabId);
+        if (states.remove(tabId) != null) {
+            currentDirty = true;
+            scheduleFlush();
+        }
+    }
+
+    public void clear() {
+        dirty.clear();
+        dirtyCount = 0;
+        states.clear();
+        currentId = TabInfo.NO_ID;
+        currentDirty = true;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (frameScheduled) {
+            return;
+        }
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(flushTask);
+    }
+
+    private void flush() {
+        int changedCount = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            long tabId = dirtyIds[i];
+            if (dirty.get(tabId) != i) {
+                continue;
+            }
+            TabState state = source.buildState(tabId);
+            boolean changed;
+            if (state == null) {
+                changed = states.remove(tabId) != null;
+            } else {
+                changed = !state.sameAs(states.get(tabId));
+                if (changed) {
+                    states.put(tabId, state);
+                }
+            }
+            if (changed) {
+                if (changedCount == changedBuffer.length) {
+                    changedBuffer = Arrays.copyOf(changedBuffer, changedCount * 2);
+                }
+                changedBuffer[changedCount++] = tabId;
+            }
+        }
+        dirty.clear();
+        dirtyCount = 0;
+        if (changedCount == 0 && !currentDirty) {
+            return;
+        }
+        currentDirty = false;
+        long[] changedIds = changedCount == 0 ? NO_IDS : Arrays.copyOf(changedBuffer, changedCount);
+        subject.onNext(new Snapshot(readOnlyStates, currentId, changedIds));
+    }
+}
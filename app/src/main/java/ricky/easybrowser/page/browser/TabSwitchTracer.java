@@ -0,0 +1,90 @@
+package ricky.easybrowser.page.browser;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * 标签页切换耗时统计，用于比较不同标签页容器的切换性能。
+ * <p>
+ * 从切换开始计时，到下一帧回调时结束，包含页面创建、显示及布局前的全部主线程耗时；同时记录期间Java堆已用内存的变化，
+ * 作为分配量的近似值(期间发生GC时偏小)。仅在UI线程中使用
+ */
+public class TabSwitchTracer {
+
+    private final String name;
+
+    private boolean tracing;
+    private long startNanos;
+    private long startHeap;
+    private long tabId;
+
+    private int count;
+    private long totalNanos;
+    private long lastNanos;
+    private long lastHeapDelta;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            finish();
+        }
+    };
+
+    /**
+     * @param name 容器名称，输出到日志中
+     */
+    TabSwitchTracer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 开始一次切换，上一次切换尚未结束时以本次为准
+     */
+    void begin(long tabId) {
+        if (tracing) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+        }
+        this.tracing = true;
+        this.tabId = tabId;
+        this.startHeap = usedHeap();
+        this.startNanos = SystemClock.elapsedRealtimeNanos();
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private void finish() {
+        if (!tracing) {
+            return;
+        }
+        tracing = false;
+        lastNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+        lastHeapDelta = usedHeap() - startHeap;
+        totalNanos += lastNanos;
+        count++;
+        EasyLog.i("TabSwitch", name + " switch to " + tabId + " in " + lastNanos / 1000 + "us, heap "
+                + (lastHeapDelta >= 0 ? "+" : "") + lastHeapDelta / 1024 + "KB, avg "
+                + totalNanos / count / 1000 + "us of " + count);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getAverageNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    public long getLastHeapDelta() {
+        return lastHeapDelta;
+    }
+}
@@ -0,0 +1,288 @@
+package ricky.easybrowser.page.browser;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.ViewGroup;
+
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import java.util.Collections;
+import java.util.List;
+
+import ricky.easybrowser.contract.IBrowser;
+import ricky.easybrowser.contract.ISessionJournal;
+import ricky.easybrowser.contract.ITabQuickView;
+import ricky.easybrowser.contract.ITabStateStream;
+import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.web.WebViewLifecycle;
+
+/**
+ * 不使用Fragment的标签页容器，可以替代 {@link TabCacheManager}。
+ * <p>
+ * 每个标签页是一个 {@link ViewTabPage}，根视图直接添加到标签页容器中，切换时只改变可见性，
+ * 不经过FragmentTransaction及Fragment生命周期；WebView的暂停恢复由 {@link WebViewLifecycle} 按页面可见状态
+ * 及Activity前后台状态统一处理。
+ * <p>
+ * 缓存容量、淘汰策略、休眠恢复、后台加载、状态发布、搜索及最近关闭列表由与 {@link TabCacheManager} 共用的
+ * {@link TabModel} 实现，两者的切换耗时都由 {@link TabSwitchTracer} 统计，便于比较。仅在UI线程中使用
+ */
+public class ViewTabHost implements IBrowser.ITabController {
+
+    private static final String TAG = "ViewTabHost";
+
+    private final Context mContext;
+    private final ViewGroup container;
+    private final IWebView.OnWebInteractListener webInteractParent;
+    private final BrowserViewModel viewModel;
+
+    private final TabModel<ViewTabPage> model;
+    private boolean destroyed;
+
+    /**
+     * @param context   浏览器Activity，需实现 {@link IWebView.OnWebInteractListener}
+     * @param container 标签页容器
+     * @param maxBytes  缓存容量基准值(字节)
+     * @param viewModel 提供最近关闭列表、WebView实例池及配置变化时暂存的WebView
+     */
+    public ViewTabHost(Context context, ViewGroup container, int maxBytes, BrowserViewModel viewModel) {
+        this.mContext = context;
+        this.container = container;
+        this.webInteractParent = (IWebView.OnWebInteractListener) context;
+        this.viewModel = viewModel;
+        this.model = new TabModel<>(context, TAG, maxBytes, new PriorityEvictionPolicy(new LruEvictionPolicy()),
+                new TabModel.Host<ViewTabPage>() {
+            @Override
+            public ViewTabPage asTab(ViewTabPage page) {
+                return page;
+            }
+
+            @Override
+            public boolean canChangePages() {
+                return !destroyed;
+            }
+
+            @Override
+            public ViewTabPage createPage(TabInfo info, boolean hidden, boolean restore, @Nullable IWebView adopted) {
+                ViewTabPage page = new ViewTabPage(mContext, ViewTabHost.this.viewModel, webInteractParent,
+                        info.getId(), info.getTitle(), info.getUri());
+                page.create(ViewTabHost.this.container, hidden, restore, adopted);
+                page.subscribe(model.getTabStateStream());
+                return page;
+            }
+
+            @Override
+            public void setPageHidden(ViewTabPage page, boolean hidden) {
+                page.setHidden(hidden);
+            }
+
+            @Override
+            public void removePage(ViewTabPage page) {
+                page.destroy(false);
+            }
+
+            @Override
+            public void beginUpdate() {
+                // 视图的变化立即生效，不需要合并
+            }
+
+            @Override
+            public void endUpdate() {
+            }
+        });
+        this.model.attachRetained(viewModel);
+    }
+
+    @Override
+    public void attach(ITabQuickView.Observer observer) {
+        model.attach(observer);
+    }
+
+    @Override
+    public void detach() {
+        model.detach();
+    }
+
+    @Override
+    public List<TabInfo> provideInfoList() {
+        return model.provideInfoList();
+    }
+
+    @Override
+    public void updateTabInfo(TabInfo tabInfo) {
+        model.updateTabInfo(tabInfo);
+    }
+
+    @Override
+    public void invalidateTabState(long tabId) {
+        model.invalidateTabState(tabId);
+    }
+
+    @Override
+    public ITabStateStream getTabStateStream() {
+        return model.getTabStateStream();
+    }
+
+    @Override
+    public List<TabInfo> searchTabs(String query) {
+        return model.searchTabs(query);
+    }
+
+    @Override
+    public void onTabSelected(TabInfo tabInfo) {
+        model.switchToTab(tabInfo);
+    }
+
+    @Override
+    public void onTabClose(TabInfo tabInfo) {
+        model.closeTabs(Collections.singletonList(tabInfo));
+    }
+
+    @Override
+    public void onTabCreate(TabInfo tabInfo, boolean backstage) {
+        model.addNewTab(tabInfo, backstage);
+    }
+
+    @Override
+    public void onTabsClose(List<TabInfo> tabs) {
+        model.closeTabs(tabs);
+    }
+
+    @Override
+    public void onTabsCreate(List<TabInfo> tabs, boolean backstage) {
+        model.addNewTabs(tabs, backstage);
+    }
+
+    @Override
+    public void onTabGoHome() {
+        ViewTabPage target = model.findVisiblePage();
+        if (target != null) {
+            target.gotoHomePage();
+        }
+    }
+
+    @Override
+    public void onTabGoForward() {
+        ViewTabPage target = model.findVisiblePage();
+        if (target != null) {
+            target.goForward();
+        }
+    }
+
+    @Override
+    public boolean onTabGoBack() {
+        ViewTabPage target = model.findVisiblePage();
+        return target != null && target.onBackPressed();
+    }
+
+    @Override
+    public void onTabLoadUrl(String url) {
+        ViewTabPage target = model.findVisiblePage();
+        if (target != null) {
+            target.loadUrl(url);
+        }
+    }
+
+    @Override
+    public void onTabLoadingChange(TabInfo tabInfo, boolean loading) {
+        model.onTabLoadingChange(tabInfo, loading);
+    }
+
+    @Override
+    public void onTabScrolled() {
+        model.onTabScrolled();
+    }
+
+    @Override
+    public void onTabPinned(TabInfo tabInfo, boolean pinned) {
+        model.onTabPinned(tabInfo, pinned);
+    }
+
+    @Override
+    public boolean isTabPinned(TabInfo tabInfo) {
+        return model.isTabPinned(tabInfo);
+    }
+
+    @Override
+    public boolean onReopenClosedTab() {
+        return model.reopenClosedTab();
+    }
+
+    /**
+     * 不使用Fragment，只登记标签页。配置变化前暂存了WebView的标签页立即创建，取回WebView，其余在切换时创建
+     */
+    @Override
+    public void onRestoreTabCache(TabInfo infoCopy, @Nullable Fragment fragment) {
+        TabInfo info = model.restoreTab(infoCopy, null, false);
+        if (!model.isCached(info.getId()) && viewModel.isParked(info.getId())) {
+            model.createPage(info, true, false, null);
+        }
+    }
+
+    @Override
+    public void onCloseAllTabs() {
+        model.closeAllTabs();
+    }
+
+    @Override
+    public void attachSession(ISessionJournal journal) {
+        model.attachSession(journal);
+    }
+
+    /**
+     * 销毁所有页面。Activity因配置变化重建时，WebView暂存到 {@link BrowserViewModel}，由新的容器取回
+     */
+    @Override
+    public void onDestroy() {
+        destroyed = true;
+        boolean park = mContext instanceof Activity && ((Activity) mContext).isChangingConfigurations();
+        for (long tabId : model.getCachedTabIds()) {
+            ViewTabPage page = model.peekPage(tabId);
+            if (page != null) {
+                page.destroy(park);
+            }
+        }
+        EasyLog.i(TAG, "destroy " + model.getCachedTabCount() + " pages, park: " + park);
+        model.onDestroy();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        model.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        model.onLowMemory();
+    }
+
+    public TabCacheSizer getCacheSizer() {
+        return model.getCacheSizer();
+    }
+
+    public TabSwitchTracer getSwitchTracer() {
+        return model.getSwitchTracer();
+    }
+
+    public int getCachedTabCount() {
+        return model.getCachedTabCount();
+    }
+
+    @Override
+    public TabInfo getCurrentTab() {
+        return model.getCurrentTab();
+    }
+
+    @Override
+    public Bitmap getPreviewForTab(long tabId) {
+        return model.getPreviewForTab(tabId);
+    }
+
+    @Override
+    public void prefetchPreview(long tabId) {
+        model.prefetchPreview(tabId);
+    }
+}
@@ -0,0 +1,167 @@
+package ricky.easybrowser.page.browser;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.annotation.Nullable;
+
+import ricky.easybrowser.contract.ITab;
+import ricky.easybrowser.contract.ITabStateStream;
+import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
+import ricky.easybrowser.page.tab.TabContent;
+import ricky.easybrowser.web.WebViewLifecycle;
+
+/**
+ * {@link ViewTabHost} 中的一个标签页，页面内容与 {@link ricky.easybrowser.page.tab.NewTabFragmentV2} 共用
+ * {@link TabContent}，但不经过Fragment：根视图直接添加到标签页容器中，显示隐藏只切换可见性，
+ * WebView的暂停恢复由 {@link WebViewLifecycle} 按可见状态处理
+ */
+class ViewTabPage implements ITab {
+
+    private final FrameLayout frameLayout;
+    private final TabContent content;
+    private boolean hidden;
+
+    /**
+     * @param parent 接收页面事件的上层，通常为Activity
+     */
+    ViewTabPage(Context context, BrowserViewModel viewModel, final IWebView.OnWebInteractListener parent,
+                long tabId, String title, @Nullable Uri uri) {
+        this.frameLayout = new FrameLayout(context);
+        this.content = new TabContent(context, viewModel, new TabContent.Host() {
+            @Override
+            public boolean isHidden() {
+                return hidden;
+            }
+
+            @Override
+            public IWebView.OnWebInteractListener getWebInteractParent() {
+                return parent;
+            }
+
+            @Override
+            public void onTitleChanged(String title) {
+            }
+        }, tabId, title, uri);
+    }
+
+    /**
+     * 创建页面内容并添加到容器中。优先使用传入或配置变化前暂存的WebView，其次从休眠状态恢复，最后按地址加载
+     *
+     * @param restore 是否从 {@link ricky.easybrowser.page.tab.TabStateStore} 中恢复休眠状态
+     * @param adopted 重新打开已关闭的标签页时放回的WebView，可以为null
+     */
+    void create(ViewGroup container, boolean hidden, boolean restore, @Nullable IWebView adopted) {
+        this.hidden = hidden;
+        frameLayout.setVisibility(hidden ? View.GONE : View.VISIBLE);
+        container.addView(frameLayout, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        if (restore) {
+            content.takeHibernateState();
+        }
+        content.attachFrame(frameLayout, adopted, false);
+    }
+
+    /**
+     * 页面状态由统一发布的标签页状态刷新
+     */
+    void subscribe(ITabStateStream stateStream) {
+        content.subscribe(stateStream);
+    }
+
+    long getTabId() {
+        return content.getTabId();
+    }
+
+    boolean isHidden() {
+        return hidden;
+    }
+
+    void setHidden(boolean hidden) {
+        if (this.hidden == hidden) {
+            return;
+        }
+        this.hidden = hidden;
+        frameLayout.setVisibility(hidden ? View.GONE : View.VISIBLE);
+        content.onHiddenChanged(hidden);
+    }
+
+    /**
+     * 从容器中移除并释放页面
+     *
+     * @param park 是否把WebView暂存到 {@link BrowserViewModel}，用于Activity因配置变化重建
+     */
+    void destroy(boolean park) {
+        content.cancelHibernateState();
+        content.destroyContent(park);
+        ViewGroup parent = (ViewGroup) frameLayout.getParent();
+        if (parent != null) {
+            parent.removeView(frameLayout);
+        }
+    }
+
+    @Override
+    public TabInfo provideTabInfo() {
+        return content.provideTabInfo();
+    }
+
+    @Override
+    public boolean onBackPressed() {
+        return content.onBackPressed();
+    }
+
+    @Override
+    public void goForward() {
+        content.goForward();
+    }
+
+    @Override
+    public void gotoHomePage() {
+        content.gotoHomePage();
+    }
+
+    @Override
+    public void loadUrl(String url) {
+        content.loadUrl(url);
+    }
+
+    @Override
+    public boolean drawTabPreview(Bitmap target) {
+        return content.drawTabPreview(target);
+    }
+
+    @Override
+    public void saveHibernateState(Bundle outState) {
+        content.saveHibernateState(outState);
+    }
+
+    @Override
+    public TabMemoryStats getMemoryStats() {
+        return content.getMemoryStats();
+    }
+
+    @Override
+    public TabSignals getSignals() {
+        return content.getSignals();
+    }
+
+    @Override
+    public void fillState(TabState.Builder builder) {
+        content.fillState(builder);
+    }
+
+    @Nullable
+    @Override
+    public IWebView detachWebView() {
+        return content.detachWebView();
+    }
+}
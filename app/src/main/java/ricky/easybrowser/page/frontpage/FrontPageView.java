@@ -120,6 +120,17 @@ public class FrontPageView extends FrameLayout implements IFrontPage.View {
                     break;
             }
         }
+
+        @Override
+        public boolean onItemLongClick(View itemView) {
+            if (!(_context instanceof IBrowser) || itemView.getId() != R.id.nav_show_tabs) {
+                return false;
+            }
+            IBrowser.INavController navController = (IBrowser.INavController)
+                    ((IBrowser) _context).provideBrowserComponent(BrowserConst.NAVIGATION_COMPONENT);
+            navController.reopenClosedTab();
+            return true;
+        }
     }
 
 }
@@ -82,10 +82,7 @@ public class HistoryFragment extends Fragment implements IHistory.View {
                 if (uri == null) {
                     return;
                 }
-                TabInfo info = TabInfo.create(
-                        System.currentTimeMillis() + "",
-                        entity.title,
-                        uri);
+                TabInfo info = TabInfo.create(entity.title, uri);
                 Intent resultData = new Intent();
                 resultData.putExtra(Const.Key.TAB_INFO, info);
 
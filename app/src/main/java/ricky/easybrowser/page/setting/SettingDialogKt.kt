@@ -6,7 +6,9 @@ import android.view.*
 import android.widget.CheckBox
 import android.widget.ImageView
 import android.widget.TextView
+import android.widget.Toast
 import androidx.fragment.app.DialogFragment
+import ricky.easybrowser.EasyApplication
 import ricky.easybrowser.R
 import ricky.easybrowser.common.BrowserConst
 import ricky.easybrowser.contract.IBrowser
@@ -15,8 +17,11 @@ import ricky.easybrowser.utils.SharedPreferencesUtils
 class SettingDialogKt : DialogFragment() {
 
     private lateinit var noPictureMode: CheckBox
+    private lateinit var adBlock: CheckBox
+    private lateinit var viewTabHost: CheckBox
     private lateinit var exitApp: TextView
     private lateinit var history: TextView
+    private lateinit var clearWebCache: TextView
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -41,17 +46,36 @@ class SettingDialogKt : DialogFragment() {
         }
 
         noPictureMode = dialogView.findViewById(R.id.no_picture_mode)
+        // 无图模式由ImagePolicy保存并立即通知所有打开的标签页
         noPictureMode.setOnCheckedChangeListener { buttonView, isChecked ->
+            val application = context?.applicationContext as? EasyApplication
+            application?.imagePolicy?.isNoPicMode = isChecked
+        }
+
+        adBlock = dialogView.findViewById(R.id.ad_block)
+        adBlock.setOnCheckedChangeListener { buttonView, isChecked ->
             val sp: SharedPreferences? = SharedPreferencesUtils.getSettingSP(context)
-            sp?.let {
-                val editor: SharedPreferences.Editor = it.edit()
-                if (isChecked) {
-                    editor.putBoolean(SharedPreferencesUtils.KEY_NO_PIC_MODE, true)
-                } else {
-                    editor.putBoolean(SharedPreferencesUtils.KEY_NO_PIC_MODE, false)
-                }
-                editor.apply()
-            }
+            sp?.edit()?.putBoolean(SharedPreferencesUtils.KEY_AD_BLOCK, isChecked)?.apply()
+            val application = context?.applicationContext as? EasyApplication
+            application?.contentBlockerManager?.isEnabled = isChecked
+        }
+
+        // 标签页容器在Activity创建时确定，下次启动生效
+        viewTabHost = dialogView.findViewById(R.id.view_tab_host)
+        viewTabHost.setOnCheckedChangeListener { buttonView, isChecked ->
+            val sp: SharedPreferences? = SharedPreferencesUtils.getSettingSP(context)
+            sp?.edit()?.putString(SharedPreferencesUtils.KEY_TAB_HOST,
+                    if (isChecked) SharedPreferencesUtils.TAB_HOST_VIEW else SharedPreferencesUtils.TAB_HOST_FRAGMENT)
+                    ?.apply()
+        }
+
+        clearWebCache = dialogView.findViewById(R.id.clear_web_cache)
+        clearWebCache.setOnClickListener {
+            val application = context?.applicationContext as? EasyApplication
+            val cleared = application?.webCacheManager?.clearNow("user") ?: return@setOnClickListener
+            // 没有打开的网页时，缓存在下一个页面加载完成时清除
+            Toast.makeText(context, if (cleared) R.string.web_cache_cleared else R.string.web_cache_clear_pending,
+                    Toast.LENGTH_SHORT).show()
         }
 
         history = dialogView.findViewById(R.id.history)
@@ -78,6 +102,9 @@ class SettingDialogKt : DialogFragment() {
         val sp: SharedPreferences? = SharedPreferencesUtils.getSettingSP(context)
         sp?.let {
             noPictureMode.isChecked = it.getBoolean(SharedPreferencesUtils.KEY_NO_PIC_MODE, false)
+            adBlock.isChecked = it.getBoolean(SharedPreferencesUtils.KEY_AD_BLOCK, true)
+            viewTabHost.isChecked = SharedPreferencesUtils.TAB_HOST_VIEW ==
+                    it.getString(SharedPreferencesUtils.KEY_TAB_HOST, SharedPreferencesUtils.TAB_HOST_FRAGMENT)
         }
     }
 }
\ No newline at end of file
@@ -10,34 +10,41 @@ import android.view.ViewGroup;
 import android.widget.FrameLayout;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 
+import ricky.easybrowser.EasyApplication;
 import ricky.easybrowser.R;
+import ricky.easybrowser.common.BrowserConst;
 import ricky.easybrowser.common.TabConst;
+import ricky.easybrowser.contract.IBrowser;
 import ricky.easybrowser.contract.ITab;
-import ricky.easybrowser.entity.bo.ClickInfo;
 import ricky.easybrowser.entity.bo.TabInfo;
-import ricky.easybrowser.entity.dao.WebSite;
-import ricky.easybrowser.page.frontpage.FrontPageView;
-import ricky.easybrowser.page.frontpage.SiteAdapterV2;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
+import ricky.easybrowser.page.browser.BrowserViewModel;
 import ricky.easybrowser.utils.EasyLog;
-import ricky.easybrowser.utils.StringUtils;
+import ricky.easybrowser.utils.TabIdGenerator;
 import ricky.easybrowser.contract.IWebView;
-import ricky.easybrowser.web.webkit.PageNestedWebView;
+import ricky.easybrowser.web.WebViewLifecycle;
 
 /**
  * 新标签页Fragment。显示收藏站点快捷按钮
  */
-public class NewTabFragmentV2 extends Fragment implements ITab, IWebView.OnWebInteractListener {
-
-    private String mTitle;
-    private String mTag;
-    private Uri loadUri;
-
-    private FrameLayout frameLayout;
-    private FrontPageView frontPageView;
-    private IWebView pageWebView;
+public class NewTabFragmentV2 extends Fragment implements ITab {
 
+    private long mTabId = TabInfo.NO_ID;
+    /**
+     * 页面内容，与 {@link ricky.easybrowser.page.browser.ViewTabHost} 中的标签页共用
+     */
+    private TabContent content;
+    /**
+     * 重新打开已关闭的标签页时放回的WebView，创建视图时使用
+     */
+    @Nullable
+    private IWebView adoptedWebView;
 
     private IWebView.OnWebInteractListener webInteractParent;
 
@@ -59,89 +66,164 @@ public class NewTabFragmentV2 extends Fragment implements ITab, IWebView.OnWebIn
     }
 
     /**
-     * 创建新标签页，并指定标题与Tag
+     * 创建新标签页，并指定标题与id
      *
      * @param title 页面标题，在快捷列表中显示
-     * @param tag   页面tag，用于缓存
+     * @param tabId 标签页id，用于缓存
      * @return
      */
-    public static NewTabFragmentV2 newInstance(String title, String tag) {
+    public static NewTabFragmentV2 newInstance(String title, long tabId) {
         NewTabFragmentV2 fragment = new NewTabFragmentV2();
         Bundle args = new Bundle();
         args.putString(TabConst.ARG_TITLE, title);
-        args.putString(TabConst.ARG_TAG, tag);
+        args.putLong(TabConst.ARG_TAB_ID, tabId);
         fragment.setArguments(args);
         return fragment;
     }
 
-    public static NewTabFragmentV2 newInstance(String title, String tag, Uri uri) {
+    public static NewTabFragmentV2 newInstance(String title, long tabId, Uri uri) {
         NewTabFragmentV2 fragment = new NewTabFragmentV2();
         Bundle args = new Bundle();
         args.putString(TabConst.ARG_TITLE, title);
-        args.putString(TabConst.ARG_TAG, tag);
+        args.putLong(TabConst.ARG_TAB_ID, tabId);
         args.putParcelable(TabConst.ARG_URI, uri);
         fragment.setArguments(args);
         return fragment;
     }
 
+    /**
+     * 重新创建被缓存淘汰的标签页，优先从休眠状态中恢复页面及前进后退记录
+     */
+    public static NewTabFragmentV2 newRestoreInstance(String title, long tabId, Uri uri) {
+        NewTabFragmentV2 fragment = newInstance(title, tabId, uri);
+        fragment.getArguments().putBoolean(TabConst.ARG_RESTORE_STATE, true);
+        return fragment;
+    }
+
+    /**
+     * 重新打开已关闭的标签页，直接使用关闭时保留的WebView，页面及前进后退记录不需要重新加载
+     */
+    public static NewTabFragmentV2 newReopenInstance(String title, long tabId, Uri uri, IWebView webView) {
+        NewTabFragmentV2 fragment = newInstance(title, tabId, uri);
+        fragment.adoptedWebView = webView;
+        return fragment;
+    }
+
+    /**
+     * 创建在后台加载的标签页，页面以较低的优先级加载，切换到前台后恢复
+     */
+    public static NewTabFragmentV2 newBackgroundInstance(String title, long tabId, Uri uri) {
+        NewTabFragmentV2 fragment = newRestoreInstance(title, tabId, uri);
+        fragment.getArguments().putBoolean(TabConst.ARG_BACKGROUND_LOAD, true);
+        return fragment;
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        String title = null;
+        Uri uri = null;
+        boolean restore = false;
         if (savedInstanceState != null) {
-            mTitle = savedInstanceState.getString(TabConst.ARG_TITLE);
-            mTag = savedInstanceState.getString(TabConst.ARG_TAG);
+            title = savedInstanceState.getString(TabConst.ARG_TITLE);
+            mTabId = readTabId(savedInstanceState);
             Bundle resArg = new Bundle();
-            resArg.putString(TabConst.ARG_TITLE, mTitle);
-            resArg.putString(TabConst.ARG_TAG, mTag);
+            resArg.putString(TabConst.ARG_TITLE, title);
+            resArg.putLong(TabConst.ARG_TAB_ID, mTabId);
             setArguments(resArg);
 
-            loadUri = savedInstanceState.getParcelable(TabConst.ARG_URI);
+            uri = savedInstanceState.getParcelable(TabConst.ARG_URI);
+            // 进程被回收后重建，页面状态在保存时已写入休眠存储
+            restore = savedInstanceState.getBoolean(TabConst.ARG_RESTORE_STATE, false);
         } else if (getArguments() != null) {
-            mTitle = getArguments().getString(TabConst.ARG_TITLE);
-            mTag = getArguments().getString(TabConst.ARG_TAG);
-            loadUri = getArguments().getParcelable(TabConst.ARG_URI);
-        } else {
-            mTag = "" + System.currentTimeMillis();
+            title = getArguments().getString(TabConst.ARG_TITLE);
+            mTabId = readTabId(getArguments());
+            uri = getArguments().getParcelable(TabConst.ARG_URI);
         }
+        if (mTabId == TabInfo.NO_ID) {
+            mTabId = TabIdGenerator.next();
+        }
+        if (getArguments() != null && getArguments().getBoolean(TabConst.ARG_RESTORE_STATE, false)) {
+            // 只恢复一次，之后的重建由Fragment自身的状态负责
+            getArguments().putBoolean(TabConst.ARG_RESTORE_STATE, false);
+            restore = true;
+        }
+        content = new TabContent(requireContext(), obtainViewModel(), new TabContent.Host() {
+            @Override
+            public boolean isHidden() {
+                return NewTabFragmentV2.this.isHidden();
+            }
+
+            @Nullable
+            @Override
+            public IWebView.OnWebInteractListener getWebInteractParent() {
+                return webInteractParent;
+            }
 
-        EasyLog.i("test", "title: " + mTitle);
-        EasyLog.i("test", "tag: " + mTag);
+            @Override
+            public void onTitleChanged(String title) {
+                if (getArguments() != null) {
+                    getArguments().putString(TabConst.ARG_TITLE, title);
+                }
+            }
+        }, mTabId, title, uri);
+        if (restore) {
+            content.takeHibernateState();
+        }
+
+        EasyLog.i("test", "title: " + title);
+        EasyLog.i("test", "id: " + mTabId);
+    }
+
+    /**
+     * 读取标签页id，兼容旧版本保存的字符串tag
+     */
+    public static long readTabId(Bundle bundle) {
+        if (bundle == null) {
+            return TabInfo.NO_ID;
+        }
+        long id = bundle.getLong(TabConst.ARG_TAB_ID, TabInfo.NO_ID);
+        if (id == TabInfo.NO_ID) {
+            id = TabInfo.parseId(bundle.getString(TabConst.ARG_TAG));
+        }
+        return id;
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         View rootView = inflater.inflate(R.layout.fragment_new_tab_v2, container, false);
-        frameLayout = rootView.findViewById(R.id.new_tab_v2_frame);
-
-        frontPageView = new FrontPageView(getContext());
-        frontPageView.setTabTitle(mTitle);
+        FrameLayout frameLayout = rootView.findViewById(R.id.new_tab_v2_frame);
+        // 重建时处于隐藏状态的标签页，首次显示时才创建页面
+        content.attachFrame(frameLayout, adoptedWebView, savedInstanceState != null && isHidden());
+        adoptedWebView = null;
+        subscribeTabState();
 
-        frontPageView.setSiteListener(new SiteAdapterV2.OnSiteItemClickListener() {
-            @Override
-            public void onSiteItemClick(WebSite webSite) {
-                // TODO
-                Uri siteUri = Uri.parse(webSite.siteUrl);
-                loadUri = siteUri;
+        return rootView;
+    }
 
-                addWebView(loadUri);
-            }
-        });
-        if (loadUri == null) {
-            frameLayout.addView(frontPageView);
-        } else {
-            addWebView(loadUri);
+    /**
+     * 地址栏及导航栏按统一发布的标签页状态刷新
+     */
+    private void subscribeTabState() {
+        IBrowser.ITabController tabController = findTabController();
+        if (tabController == null) {
+            return;
         }
+        content.subscribe(tabController.getTabStateStream());
+    }
 
-        return rootView;
+    @Nullable
+    private IBrowser.ITabController findTabController() {
+        if (!(getContext() instanceof IBrowser)) {
+            return null;
+        }
+        return (IBrowser.ITabController) ((IBrowser) getContext())
+                .provideBrowserComponent(BrowserConst.TAB_COMPONENT);
     }
 
-    private void addWebView(Uri uri) {
-        frameLayout.removeAllViews();
-        pageWebView = new PageNestedWebView(getContext());
-        pageWebView.setOnWebInteractListener(this);
-        frameLayout.addView((View) pageWebView);
-        pageWebView.loadUrl(uri.toString());
+    private BrowserViewModel obtainViewModel() {
+        return new ViewModelProvider(requireActivity()).get(BrowserViewModel.class);
     }
 
     @Override
@@ -163,195 +245,98 @@ public class NewTabFragmentV2 extends Fragment implements ITab, IWebView.OnWebIn
 
     @Override
     public boolean onBackPressed() {
-        if (frameLayout.getChildCount() <= 0) {
-            return false;
-        }
-
-        View view = frameLayout.getChildAt(0);
-        // 已经在网站快捷方式 不能返回
-        if (view instanceof FrontPageView) {
-            return false;
-        }
-
-        // 不是IWebView 不能返回
-        if (!(view instanceof IWebView)) {
-            return false;
-        }
-
-        if (pageWebView.canGoBack()) {
-            // 网页可返回，执行网页的返回逻辑
-            pageWebView.goBack();
-            return true;
-        } else {
-            // 网页不能返回，将WebView移除，替换成网站快捷方式
-            frameLayout.removeAllViews();
-            destroyWebView();
-            frameLayout.addView(frontPageView);
-            try {
-                mTitle = getContext().getString(R.string.new_tab_welcome);
-                loadUri = null;
-                updateTitle(provideTabInfo());
-            } catch (Exception e) {
-
-            }
-            return true;
-        }
-    }
-
-    @Override
-    public void onPageTitleChange(TabInfo tabInfo) {
-        tabInfo.setTag(mTag);
-        updateTitle(tabInfo);
-    }
-
-    @Override
-    public void onLongClick(ClickInfo clickInfo) {
-        if (webInteractParent != null) {
-            webInteractParent.onLongClick(clickInfo);
-        }
+        return content.onBackPressed();
     }
 
     @Override
     public TabInfo provideTabInfo() {
-        return TabInfo.create(this.mTag, this.mTitle, this.loadUri);
+        return content.provideTabInfo();
     }
 
     @Override
     public void goForward() {
-        if (frameLayout.getChildCount() <= 0) {
-            return;
-        }
-
-        View view = frameLayout.getChildAt(0);
-        if (view instanceof FrontPageView) {
-            return;
-        }
-
-        if (view instanceof IWebView) {
-            IWebView iWebView = (IWebView) view;
-            if (iWebView.canGoForward()) {
-                iWebView.goForward();
-            }
-        }
+        content.goForward();
     }
 
     @Override
     public void gotoHomePage() {
-        if (frameLayout.getChildCount() <= 0) {
-            return;
-        }
-
-        View view = frameLayout.getChildAt(0);
-        if (view instanceof FrontPageView) {
-            return;
-        }
-
-        if (view instanceof IWebView) {
-            frameLayout.removeAllViews();
-            destroyWebView();
-            frameLayout.addView(frontPageView);
-            try {
-                mTitle = getContext().getString(R.string.new_tab_welcome);
-                loadUri = null;
-                updateTitle(provideTabInfo());
-            } catch (Exception e) {
-
-            }
-        }
+        content.gotoHomePage();
     }
 
     @Override
     public void loadUrl(String url) {
-        if (frameLayout.getChildCount() <= 0 || StringUtils.isEmpty(url)) {
-            return;
-        }
-
-        View view = frameLayout.getChildAt(0);
-        if (view instanceof IWebView) {
-            ((IWebView) view).loadUrl(url);
-        } else {
-            addWebView(Uri.parse(url));
-        }
+        content.loadUrl(url);
     }
 
     @Override
-    public Bitmap getTabPreview() {
-        if (pageWebView != null) {
-            return pageWebView.capturePreview();
-        }
+    public boolean drawTabPreview(Bitmap target) {
         // TODO preview for shortcut
-        return null;
+        return content.drawTabPreview(target);
     }
 
     @Override
-    public void onDestroyView() {
-        super.onDestroyView();
-        destroyWebView();
-        frameLayout.removeAllViews();
+    public void saveHibernateState(Bundle outState) {
+        content.saveHibernateState(outState);
     }
 
     @Override
-    public void onHiddenChanged(boolean hidden) {
-        super.onHiddenChanged(hidden);
-        if (hidden) {
-            pauseWebView();
-        } else {
-            resumeWebView();
-        }
+    public TabMemoryStats getMemoryStats() {
+        return content.getMemoryStats();
     }
 
     @Override
-    public void onResume() {
-        super.onResume();
-        resumeWebView();
+    public TabSignals getSignals() {
+        return content.getSignals();
     }
 
     @Override
-    public void onPause() {
-        super.onPause();
-        pauseWebView();
-    }
-
-    private void resumeWebView() {
-        if (pageWebView != null) {
-            pageWebView.onResume();
-        }
+    public void fillState(TabState.Builder builder) {
+        content.fillState(builder);
     }
 
-    private void pauseWebView() {
-        if (pageWebView != null) {
-            pageWebView.onPause();
-        }
+    @Nullable
+    @Override
+    public IWebView detachWebView() {
+        return content.detachWebView();
     }
 
-    private void destroyWebView() {
-        if (pageWebView != null) {
-            pageWebView.onDestroy();
-            pageWebView = null;
-        }
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Activity因配置变化重建，WebView暂存后由新的标签页视图取回
+        content.destroyContent(getActivity() != null && getActivity().isChangingConfigurations());
     }
 
-    private void updateTitle(TabInfo tabInfo) {
-        mTitle = tabInfo.getTitle();
-        if (getArguments() != null) {
-            getArguments().putString(TabConst.ARG_TITLE, mTitle);
-        }
-        if (webInteractParent != null) {
-            webInteractParent.onPageTitleChange(tabInfo);
-        }
+    /**
+     * WebView的暂停恢复、定时器及渲染优先级由 {@link WebViewLifecycle} 按可见状态统一处理
+     */
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        content.onHiddenChanged(hidden);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
+        content.cancelHibernateState();
     }
 
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putString(TabConst.ARG_TITLE, mTitle);
-        outState.putString(TabConst.ARG_TAG, mTag);
-        outState.putParcelable(TabConst.ARG_URI, loadUri);
+        outState.putString(TabConst.ARG_TITLE, content.getTitle());
+        outState.putLong(TabConst.ARG_TAB_ID, mTabId);
+        outState.putParcelable(TabConst.ARG_URI, content.getUri());
+        if (content.hasWebView() && getContext() != null
+                && (getActivity() == null || !getActivity().isChangingConfigurations())) {
+            // 配置变化时WebView暂存在ViewModel中；其他情况进程可能在后台被回收，页面状态写入休眠存储，
+            // 重建时从中恢复，不放进Bundle以免超出Binder事务的大小限制
+            Bundle state = new Bundle();
+            saveHibernateState(state);
+            ((EasyApplication) getContext().getApplicationContext()).getTabStateStore().save(mTabId, state);
+            outState.putBoolean(TabConst.ARG_RESTORE_STATE, true);
+        }
         EasyLog.i("test", "newtabfragment onsaveinstancestate: " + this.hashCode());
     }
 }
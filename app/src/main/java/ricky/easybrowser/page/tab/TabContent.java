@@ -0,0 +1,530 @@
+package ricky.easybrowser.page.tab;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.annotation.Nullable;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import ricky.easybrowser.EasyApplication;
+import ricky.easybrowser.R;
+import ricky.easybrowser.common.TabConst;
+import ricky.easybrowser.contract.ITabStateStream;
+import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.entity.bo.ClickInfo;
+import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
+import ricky.easybrowser.entity.dao.WebSite;
+import ricky.easybrowser.page.browser.BrowserViewModel;
+import ricky.easybrowser.page.frontpage.FrontPageView;
+import ricky.easybrowser.page.frontpage.SiteAdapterV2;
+import ricky.easybrowser.utils.StringUtils;
+import ricky.easybrowser.web.WebViewLifecycle;
+
+/**
+ * {@link NewTabFragmentV2} 与不使用Fragment的ViewTabPage共用的标签页内容。
+ * <p>
+ * 负责首页与WebView的切换、页面标题地址及加载状态的变化通知、休眠状态的保存及恢复、关闭时取下WebView，
+ * 以及淘汰所需的内存及优先级信号。页面容器的创建及显示隐藏由 {@link Host} 负责。仅在UI线程中使用
+ */
+public final class TabContent implements IWebView.OnWebInteractListener {
+
+    /**
+     * 持有标签页内容的页面
+     */
+    public interface Host {
+        boolean isHidden();
+
+        /**
+         * @return 接收页面事件的上层，页面已分离时返回null
+         */
+        @Nullable
+        IWebView.OnWebInteractListener getWebInteractParent();
+
+        /**
+         * 标签页标题变化，页面可以记录到自身的参数中
+         */
+        void onTitleChanged(String title);
+    }
+
+    private final Context context;
+    private final BrowserViewModel viewModel;
+    private final Host host;
+    private final long tabId;
+
+    private String mTitle;
+    private Uri loadUri;
+
+    @Nullable
+    private FrameLayout frameLayout;
+    @Nullable
+    private FrontPageView frontPageView;
+    @Nullable
+    private IWebView pageWebView;
+    @Nullable
+    private Disposable stateDisposable;
+
+    /**
+     * 重新打开已关闭的标签页或配置变化后放回的WebView，显示内容时使用
+     */
+    @Nullable
+    private IWebView adoptedWebView;
+    /**
+     * 从休眠状态中取出的WebView状态，显示内容时恢复
+     */
+    @Nullable
+    private Bundle hibernatedWebState;
+    private boolean awaitingHibernateState;
+    @Nullable
+    private Disposable hibernateDisposable;
+    /**
+     * 处于隐藏状态的标签页，首次显示时才创建页面
+     */
+    private boolean contentDeferred;
+
+    private final TabMemoryStats memoryStats = new TabMemoryStats();
+    private final TabSignals signals = new TabSignals();
+    /**
+     * 最近一次切换显示状态的时间，作为最近操作时间的下限
+     */
+    private long lastShownTime;
+    private int lastPreviewBytes;
+
+    /**
+     * 最近一次通知上层的页面标题、地址及加载状态，变化时才通知
+     */
+    private String lastPageTitle;
+    private String lastPageUrl;
+    private boolean lastPageLoading;
+
+    public TabContent(Context context, BrowserViewModel viewModel, Host host,
+                      long tabId, String title, @Nullable Uri uri) {
+        this.context = context;
+        this.viewModel = viewModel;
+        this.host = host;
+        this.tabId = tabId;
+        this.mTitle = title;
+        this.loadUri = uri;
+    }
+
+    public long getTabId() {
+        return tabId;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    @Nullable
+    public Uri getUri() {
+        return loadUri;
+    }
+
+    public boolean hasWebView() {
+        return pageWebView != null;
+    }
+
+    /**
+     * 在后台读取休眠状态，读取完成前不创建页面内容
+     */
+    public void takeHibernateState() {
+        EasyApplication application = (EasyApplication) context.getApplicationContext();
+        awaitingHibernateState = true;
+        hibernateDisposable = application.getTabStateStore().take(tabId, new TabStateStore.OnStateLoadedListener() {
+            @Override
+            public void onStateLoaded(@Nullable Bundle state) {
+                awaitingHibernateState = false;
+                hibernateDisposable = null;
+                applyHibernateState(state);
+                if (frameLayout != null && pageWebView == null && !contentDeferred) {
+                    showInitialContent();
+                }
+            }
+        });
+    }
+
+    private void applyHibernateState(@Nullable Bundle state) {
+        if (state == null) {
+            return;
+        }
+        String title = state.getString(TabConst.ARG_TITLE);
+        if (!StringUtils.isEmpty(title)) {
+            mTitle = title;
+        }
+        Uri uri = state.getParcelable(TabConst.ARG_URI);
+        if (uri != null) {
+            loadUri = uri;
+        }
+        hibernatedWebState = state.getBundle(TabConst.KEY_WEB_STATE);
+    }
+
+    public void cancelHibernateState() {
+        if (hibernateDisposable != null) {
+            hibernateDisposable.dispose();
+            hibernateDisposable = null;
+        }
+        awaitingHibernateState = false;
+    }
+
+    /**
+     * 在页面容器中显示内容。优先使用传入或配置变化前暂存的WebView，其次从休眠状态恢复，最后按地址加载
+     *
+     * @param adopted 重新打开已关闭的标签页时放回的WebView，可以为null
+     * @param defer   没有可放回的WebView时，是否等到首次显示再创建页面
+     */
+    public void attachFrame(FrameLayout frame, @Nullable IWebView adopted, boolean defer) {
+        this.frameLayout = frame;
+        if (adopted == null) {
+            // 配置变化前暂存的WebView
+            adopted = viewModel.unpark(tabId, context);
+        }
+        adoptedWebView = adopted;
+        if (adopted == null && defer) {
+            contentDeferred = true;
+        } else {
+            showInitialContent();
+        }
+    }
+
+    private void showInitialContent() {
+        if (adoptedWebView != null) {
+            attachWebView(adoptedWebView);
+            adoptedWebView = null;
+            hibernatedWebState = null;
+        } else if (hibernatedWebState != null) {
+            restoreWebView(hibernatedWebState);
+            hibernatedWebState = null;
+        } else if (awaitingHibernateState) {
+            // 休眠状态读取完成后再创建
+        } else if (loadUri == null) {
+            showFrontPage();
+        } else {
+            addWebView(loadUri);
+        }
+    }
+
+    /**
+     * 地址栏及导航栏按统一发布的标签页状态刷新
+     */
+    public void subscribe(ITabStateStream stateStream) {
+        stateDisposable = stateStream.observe().subscribe(new Consumer<ITabStateStream.Snapshot>() {
+            @Override
+            public void accept(ITabStateStream.Snapshot snapshot) throws Exception {
+                TabState state = snapshot.get(tabId);
+                if (state != null && pageWebView != null && snapshot.hasChanged(tabId)) {
+                    pageWebView.renderState(state);
+                }
+            }
+        });
+    }
+
+    /**
+     * 页面显示或隐藏后调用，WebView的暂停恢复、定时器及渲染优先级由 {@link WebViewLifecycle} 统一处理
+     */
+    public void onHiddenChanged(boolean hidden) {
+        lastShownTime = SystemClock.uptimeMillis();
+        if (!hidden && contentDeferred && frameLayout != null) {
+            contentDeferred = false;
+            showInitialContent();
+        }
+        if (pageWebView != null) {
+            WebViewLifecycle.getInstance().setVisible(pageWebView, !hidden);
+        }
+    }
+
+    /**
+     * 移除页面内容
+     *
+     * @param park 是否把WebView暂存到 {@link BrowserViewModel}，用于Activity因配置变化重建
+     */
+    public void destroyContent(boolean park) {
+        if (stateDisposable != null) {
+            stateDisposable.dispose();
+            stateDisposable = null;
+        }
+        if (park && pageWebView != null && frameLayout != null) {
+            frameLayout.removeView((View) pageWebView);
+            viewModel.park(tabId, pageWebView, context.getApplicationContext());
+            pageWebView = null;
+        }
+        destroyWebView();
+        if (frameLayout != null) {
+            frameLayout.removeAllViews();
+        }
+    }
+
+    /**
+     * 首页视图第一次显示时才创建
+     */
+    private void showFrontPage() {
+        if (frontPageView == null) {
+            frontPageView = new FrontPageView(context);
+            frontPageView.setTabTitle(mTitle);
+            frontPageView.setSiteListener(new SiteAdapterV2.OnSiteItemClickListener() {
+                @Override
+                public void onSiteItemClick(WebSite webSite) {
+                    loadUri = Uri.parse(webSite.siteUrl);
+                    addWebView(loadUri);
+                }
+            });
+        }
+        frameLayout.removeAllViews();
+        frameLayout.addView(frontPageView);
+    }
+
+    private void showWebView(IWebView webView) {
+        frameLayout.removeAllViews();
+        pageWebView = webView;
+        pageWebView.setOnWebInteractListener(this);
+        WebViewLifecycle.getInstance().setVisible(pageWebView, !host.isHidden());
+        frameLayout.addView((View) pageWebView);
+    }
+
+    /**
+     * 从实例池取出WebView并加载地址，池为空时新建
+     */
+    private void addWebView(Uri uri) {
+        showWebView(viewModel.getWebViewPool().acquire(context));
+        pageWebView.loadUrl(uri.toString());
+    }
+
+    private void attachWebView(IWebView webView) {
+        showWebView(webView);
+        // 同步标题、地址等页面状态
+        onPageStateChange(tabId);
+    }
+
+    private void restoreWebView(Bundle webState) {
+        showWebView(viewModel.getWebViewPool().acquire(context));
+        if (!pageWebView.restoreState(webState) && loadUri != null) {
+            pageWebView.loadUrl(loadUri.toString());
+        }
+    }
+
+    /**
+     * 销毁不再使用的WebView，打开过网页的实例不再复用
+     */
+    private void destroyWebView() {
+        if (pageWebView != null) {
+            if (frameLayout != null) {
+                frameLayout.removeView((View) pageWebView);
+            }
+            viewModel.getWebViewPool().release(pageWebView);
+            pageWebView = null;
+        }
+        lastPageTitle = null;
+        lastPageUrl = null;
+        lastPageLoading = false;
+        lastPreviewBytes = 0;
+    }
+
+    /**
+     * 网页替换为首页
+     */
+    private void backToFrontPage() {
+        destroyWebView();
+        showFrontPage();
+        mTitle = context.getString(R.string.new_tab_welcome);
+        loadUri = null;
+        updateTitle(provideTabInfo());
+    }
+
+    private void updateTitle(TabInfo tabInfo) {
+        mTitle = tabInfo.getTitle();
+        host.onTitleChanged(mTitle);
+        IWebView.OnWebInteractListener parent = host.getWebInteractParent();
+        if (parent != null) {
+            parent.onPageTitleChange(tabInfo);
+        }
+    }
+
+    /**
+     * WebView只通知状态变化，这里读取标题、地址及加载状态，只在变化时通知上层，并标记标签页状态待发布
+     */
+    @Override
+    public void onPageStateChange(long ignored) {
+        if (pageWebView != null) {
+            String url = pageWebView.getUrl();
+            String title = pageWebView.getTitle();
+            boolean loading = pageWebView.isLoading();
+            if (loading != lastPageLoading) {
+                lastPageLoading = loading;
+                onPageLoadingChange(TabInfo.create(tabId, title, parseUri(url)), loading);
+            }
+            if (!TextUtils.equals(title, lastPageTitle) || !TextUtils.equals(url, lastPageUrl)) {
+                lastPageTitle = title;
+                lastPageUrl = url;
+                onPageTitleChange(TabInfo.create(tabId, StringUtils.isEmpty(title) ? url : title, parseUri(url)));
+            }
+        }
+        IWebView.OnWebInteractListener parent = host.getWebInteractParent();
+        if (parent != null) {
+            parent.onPageStateChange(tabId);
+        }
+    }
+
+    @Nullable
+    private static Uri parseUri(@Nullable String url) {
+        return StringUtils.isEmpty(url) ? null : Uri.parse(url);
+    }
+
+    @Override
+    public void onPageTitleChange(TabInfo tabInfo) {
+        tabInfo.setId(tabId);
+        if (tabInfo.getUri() != null) {
+            // 记录当前页面地址，重建或休眠恢复失败时加载
+            loadUri = tabInfo.getUri();
+        }
+        updateTitle(tabInfo);
+    }
+
+    @Override
+    public void onPageLoadingChange(TabInfo tabInfo, boolean loading) {
+        tabInfo.setId(tabId);
+        IWebView.OnWebInteractListener parent = host.getWebInteractParent();
+        if (parent != null) {
+            parent.onPageLoadingChange(tabInfo, loading);
+        }
+    }
+
+    @Override
+    public void onPageScrolled() {
+        IWebView.OnWebInteractListener parent = host.getWebInteractParent();
+        if (parent != null && !host.isHidden()) {
+            parent.onPageScrolled();
+        }
+    }
+
+    @Override
+    public void onLongClick(ClickInfo clickInfo) {
+        IWebView.OnWebInteractListener parent = host.getWebInteractParent();
+        if (parent != null) {
+            parent.onLongClick(clickInfo);
+        }
+    }
+
+    public TabInfo provideTabInfo() {
+        return TabInfo.create(tabId, mTitle, loadUri);
+    }
+
+    /**
+     * 网页可返回时执行网页的返回逻辑，否则将WebView替换成网站快捷方式
+     *
+     * @return 已经在网站快捷方式，不能返回时返回false
+     */
+    public boolean onBackPressed() {
+        if (pageWebView == null) {
+            return false;
+        }
+        if (pageWebView.canGoBack()) {
+            pageWebView.goBack();
+        } else {
+            backToFrontPage();
+        }
+        return true;
+    }
+
+    public void goForward() {
+        if (pageWebView != null && pageWebView.canGoForward()) {
+            pageWebView.goForward();
+        }
+    }
+
+    public void gotoHomePage() {
+        if (pageWebView != null) {
+            backToFrontPage();
+        }
+    }
+
+    public void loadUrl(String url) {
+        if (frameLayout == null || StringUtils.isEmpty(url)) {
+            return;
+        }
+        if (pageWebView != null) {
+            pageWebView.loadUrl(url);
+        } else {
+            addWebView(Uri.parse(url));
+        }
+    }
+
+    public boolean drawTabPreview(Bitmap target) {
+        if (pageWebView != null && pageWebView.capturePreview(target)) {
+            lastPreviewBytes = target.getByteCount();
+            return true;
+        }
+        return false;
+    }
+
+    public void saveHibernateState(Bundle outState) {
+        outState.putString(TabConst.ARG_TITLE, mTitle);
+        outState.putParcelable(TabConst.ARG_URI, loadUri);
+        if (pageWebView != null) {
+            Bundle webState = new Bundle();
+            pageWebView.saveState(webState);
+            outState.putBundle(TabConst.KEY_WEB_STATE, webState);
+        }
+    }
+
+    public TabMemoryStats getMemoryStats() {
+        memoryStats.reset();
+        memoryStats.previewBytes = lastPreviewBytes;
+        if (pageWebView != null) {
+            pageWebView.collectMemoryStats(memoryStats);
+        }
+        return memoryStats;
+    }
+
+    public TabSignals getSignals() {
+        signals.reset();
+        signals.lastInteractionTime = host.isHidden() ? lastShownTime : SystemClock.uptimeMillis();
+        if (pageWebView != null) {
+            pageWebView.collectSignals(signals);
+        }
+        return signals;
+    }
+
+    public void fillState(TabState.Builder builder) {
+        builder.title(mTitle).url(loadUri == null ? null : loadUri.toString());
+        if (pageWebView != null) {
+            String url = pageWebView.getUrl();
+            if (!StringUtils.isEmpty(url)) {
+                builder.url(url);
+            }
+            // 网页不能后退时返回键回到网站快捷方式，因此显示网页时总能返回
+            builder.progress(pageWebView.getProgress())
+                    .navigation(true, pageWebView.canGoForward())
+                    .loading(pageWebView.isLoading())
+                    .favicon(pageWebView.getFavicon())
+                    .blockedCount(pageWebView.getBlockedCount());
+        }
+    }
+
+    /**
+     * 标签页关闭时取下页面中的WebView，之后销毁内容时不再销毁它
+     *
+     * @return 暂停后的WebView，没有打开网页时返回null
+     */
+    @Nullable
+    public IWebView detachWebView() {
+        IWebView target = pageWebView;
+        if (target == null) {
+            return null;
+        }
+        pageWebView = null;
+        if (frameLayout != null) {
+            frameLayout.removeView((View) target);
+        }
+        target.setOnWebInteractListener(null);
+        WebViewLifecycle.getInstance().detach(target);
+        return target;
+    }
+}
@@ -0,0 +1,454 @@
+package ricky.easybrowser.page.tab;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * 休眠标签页的状态存储。
+ * <p>
+ * 标签页被缓存淘汰时，将WebView状态、滚动位置、标题及地址写入磁盘，每个标签页一个文件，以标签页id命名。
+ * 文件内容为压缩后的键值数据，按自定义的类型标记逐项写入，不依赖Parcel的内部格式，系统升级后仍可读取；
+ * 不支持的值类型不写入，版本号不一致或数据损坏时按没有保存过处理。
+ * <p>
+ * 写入、读取及删除在单一后台线程中顺序执行；写入完成前的数据保存在内存中，读取时优先返回
+ */
+public class TabStateStore {
+
+    private static final String TAG = "TabStateStore";
+
+    private static final String DIR_NAME = "tab_state";
+    private static final String FILE_SUFFIX = ".state";
+    private static final int MAGIC = 0x54425354;
+    private static final int VERSION = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_DOUBLE = 6;
+    private static final byte TYPE_BYTES = 7;
+    private static final byte TYPE_BUNDLE = 8;
+    private static final byte TYPE_URI = 9;
+
+    /**
+     * 读取完成后在UI线程回调
+     */
+    public interface OnStateLoadedListener {
+        /**
+         * @param state 没有保存过或无法读取时为null
+         */
+        void onStateLoaded(@Nullable Bundle state);
+    }
+
+    private final File dir;
+    /**
+     * 尚未写入磁盘的数据，需持锁访问
+     */
+    private final Map<Long, byte[]> pendingWrites = new HashMap<>();
+
+    public TabStateStore(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR_NAME);
+    }
+
+    /**
+     * 保存标签页状态。需在创建Bundle的线程中调用，序列化在当前线程完成
+     */
+    public void save(final long tabId, Bundle state) {
+        final byte[] data = encode(state);
+        if (data == null) {
+            return;
+        }
+        synchronized (pendingWrites) {
+            pendingWrites.put(tabId, data);
+        }
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(tabId, data);
+                synchronized (pendingWrites) {
+                    if (pendingWrites.get(tabId) == data) {
+                        pendingWrites.remove(tabId);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 取出并删除标签页状态。尚未写入磁盘时直接回调，否则在后台线程读取后回调
+     *
+     * @return 用于在回调前取消，取消后不再回调，状态仍会被删除
+     */
+    public Disposable take(final long tabId, final OnStateLoadedListener listener) {
+        byte[] pending;
+        synchronized (pendingWrites) {
+            pending = pendingWrites.remove(tabId);
+        }
+        if (pending != null) {
+            remove(tabId);
+            listener.onStateLoaded(decode(pending));
+            return Disposables.disposed();
+        }
+        return Observable.create(new ObservableOnSubscribe<Bundle>() {
+            @Override
+            public void subscribe(ObservableEmitter<Bundle> emitter) throws Exception {
+                byte[] data = readFile(tabId);
+                deleteFile(tabId);
+                Bundle state = data == null ? null : decode(data);
+                // 不能发送null，用空Bundle表示没有状态
+                emitter.onNext(state == null ? Bundle.EMPTY : state);
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.single())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Consumer<Bundle>() {
+                    @Override
+                    public void accept(Bundle state) throws Exception {
+                        listener.onStateLoaded(state == Bundle.EMPTY ? null : state);
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        throwable.printStackTrace();
+                        listener.onStateLoaded(null);
+                    }
+                });
+    }
+
+    public void remove(final long tabId) {
+        synchronized (pendingWrites) {
+            pendingWrites.remove(tabId);
+        }
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                deleteFile(tabId);
+            }
+        });
+    }
+
+    public void clear() {
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+        }
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = dir.listFiles();
+                if (files == null) {
+                    return;
+                }
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    private File fileOf(long tabId) {
+        return new File(dir, tabId + FILE_SUFFIX);
+    }
+
+    private void deleteFile(long tabId) {
+        File file = fileOf(tabId);
+        if (file.exists() && !file.delete()) {
+            EasyLog.w(TAG, "delete failed: " + file);
+        }
+    }
+
+    private void runOnDiskThread(final Runnable task) {
+        Observable.create(new ObservableOnSubscribe<Boolean>() {
+            @Override
+            public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
+                task.run();
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.single())
+                .subscribe(new Consumer<Boolean>() {
+                    @Override
+                    public void accept(Boolean ignored) throws Exception {
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        // 单个文件写入失败时丢弃该标签页的状态，不影响其他任务
+                        throwable.printStackTrace();
+                    }
+                });
+    }
+
+    private void writeFile(long tabId, byte[] data) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            EasyLog.w(TAG, "can not create dir: " + dir);
+            return;
+        }
+        File target = fileOf(tabId);
+        File temp = new File(dir, tabId + FILE_SUFFIX + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new DeflaterOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(data.length);
+            out.write(data);
+            out.close();
+            out = null;
+            if (!temp.renameTo(target)) {
+                EasyLog.w(TAG, "rename failed: " + target);
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    @Nullable
+    private byte[] readFile(long tabId) {
+        File file = fileOf(tabId);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new InflaterInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int length = in.readInt();
+            if (length <= 0) {
+                return null;
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            return data;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Nullable
+    private static byte[] encode(Bundle state) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            writeBundle(out, state);
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Bundle decode(byte[] data) {
+        try {
+            return readBundle(new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException | RuntimeException e) {
+            // 数据损坏时按没有保存过处理
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void writeBundle(DataOutputStream out, Bundle bundle) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String key : bundle.keySet()) {
+            if (typeOf(bundle.get(key)) >= 0) {
+                keys.add(key);
+            } else {
+                EasyLog.w(TAG, "skip unsupported value: " + key);
+            }
+        }
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            writeString(out, key);
+            writeValue(out, bundle.get(key));
+        }
+    }
+
+    private static Bundle readBundle(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("bad entry count: " + count);
+        }
+        Bundle bundle = new Bundle();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    bundle.putString(key, null);
+                    break;
+                case TYPE_STRING:
+                    bundle.putString(key, readString(in));
+                    break;
+                case TYPE_INT:
+                    bundle.putInt(key, in.readInt());
+                    break;
+                case TYPE_LONG:
+                    bundle.putLong(key, in.readLong());
+                    break;
+                case TYPE_BOOLEAN:
+                    bundle.putBoolean(key, in.readBoolean());
+                    break;
+                case TYPE_FLOAT:
+                    bundle.putFloat(key, in.readFloat());
+                    break;
+                case TYPE_DOUBLE:
+                    bundle.putDouble(key, in.readDouble());
+                    break;
+                case TYPE_BYTES:
+                    bundle.putByteArray(key, readBytes(in));
+                    break;
+                case TYPE_BUNDLE:
+                    bundle.putBundle(key, readBundle(in));
+                    break;
+                case TYPE_URI:
+                    bundle.putParcelable(key, Uri.parse(readString(in)));
+                    break;
+                default:
+                    throw new IOException("unknown type: " + type);
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * 值对应的类型标记，不支持的类型返回-1
+     */
+    private static int typeOf(@Nullable Object value) {
+        if (value == null) {
+            return TYPE_NULL;
+        } else if (value instanceof String) {
+            return TYPE_STRING;
+        } else if (value instanceof Integer) {
+            return TYPE_INT;
+        } else if (value instanceof Long) {
+            return TYPE_LONG;
+        } else if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        } else if (value instanceof Float) {
+            return TYPE_FLOAT;
+        } else if (value instanceof Double) {
+            return TYPE_DOUBLE;
+        } else if (value instanceof byte[]) {
+            return TYPE_BYTES;
+        } else if (value instanceof Bundle) {
+            return TYPE_BUNDLE;
+        } else if (value instanceof Uri) {
+            return TYPE_URI;
+        }
+        return -1;
+    }
+
+    private static void writeValue(DataOutputStream out, @Nullable Object value) throws IOException {
+        int type = typeOf(value);
+        out.writeByte(type);
+        switch (type) {
+            case TYPE_STRING:
+                writeString(out, (String) value);
+                break;
+            case TYPE_INT:
+                out.writeInt((Integer) value);
+                break;
+            case TYPE_LONG:
+                out.writeLong((Long) value);
+                break;
+            case TYPE_BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case TYPE_FLOAT:
+                out.writeFloat((Float) value);
+                break;
+            case TYPE_DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case TYPE_BYTES:
+                byte[] bytes = (byte[]) value;
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                break;
+            case TYPE_BUNDLE:
+                writeBundle(out, (Bundle) value);
+                break;
+            case TYPE_URI:
+                writeString(out, value.toString());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 地址可能超过writeUTF的64KB限制，按长度加UTF-8字节写入
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("bad length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
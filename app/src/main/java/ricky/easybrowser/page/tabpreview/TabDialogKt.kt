@@ -1,7 +1,10 @@
 package ricky.easybrowser.page.tabpreview
 
 import android.os.Bundle
+import android.text.Editable
+import android.text.TextWatcher
 import android.view.*
+import android.widget.EditText
 import android.widget.ImageView
 import androidx.fragment.app.DialogFragment
 import androidx.recyclerview.widget.LinearLayoutManager
@@ -67,9 +70,7 @@ class TabDialogKt : DialogFragment() {
             }
 
             override fun onAddTab() {
-                var info = TabInfo()
-                info.title = context?.resources?.getString(R.string.new_tab_welcome)
-                info.tag = "" + System.currentTimeMillis()
+                val info = TabInfo.create(context?.resources?.getString(R.string.new_tab_welcome))
                 val tabController = browser?.provideBrowserComponent(BrowserConst.TAB_COMPONENT)
                         as? IBrowser.ITabController
                 tabController?.onTabCreate(info, false)
@@ -78,13 +79,28 @@ class TabDialogKt : DialogFragment() {
         }
         tabRecyclerView.adapter = tabQuickViewAdapter
 
+        // 输入时实时过滤标签页，结果回到列表开头
+        val searchEdit: EditText = dialogView.findViewById(R.id.tab_search_edit)
+        searchEdit.addTextChangedListener(object : TextWatcher {
+            override fun beforeTextChanged(s: CharSequence?, start: Int, count: Int, after: Int) {
+            }
+
+            override fun onTextChanged(s: CharSequence?, start: Int, before: Int, count: Int) {
+            }
+
+            override fun afterTextChanged(s: Editable?) {
+                tabQuickViewAdapter?.setQuery(s?.toString())
+                tabRecyclerView.scrollToPosition(0)
+            }
+        })
+
         return dialogView
     }
 
     override fun onResume() {
         super.onResume()
 
-        tabQuickViewAdapter?.notifyDataSetChanged()
+        tabQuickViewAdapter?.updateQuickView()
     }
 
     override fun onDestroyView() {
@@ -2,6 +2,7 @@ package ricky.easybrowser.page.tabpreview;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,26 +10,102 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
 import ricky.easybrowser.R;
 import ricky.easybrowser.common.BrowserConst;
 import ricky.easybrowser.contract.ITabQuickView;
+import ricky.easybrowser.contract.ITabStateStream;
 import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabState;
 import ricky.easybrowser.contract.IBrowser;
+import ricky.easybrowser.utils.LongIntMap;
 import ricky.easybrowser.utils.StringUtils;
 
+/**
+ * 标签页列表。
+ * <p>
+ * 列表数据为 {@link TabSnapshot} 组成的不可变快照，以标签页id作为稳定id。数据变化的通知在同一帧内合并，
+ * 下一帧生成新列表并交给 {@link AsyncListDiffer} 在后台计算差异，只刷新变化的卡片，
+ * 并通过payload区分只刷新标题、预览或当前标记。
+ * <p>
+ * 卡片的标题来自 {@link ITabStateStream} 发布的标签页状态。只有状态发布中变化的标签页、缩略图变化的标签页及
+ * 当前标记变化的两个标签页会重新生成卡片，其余沿用上一次的卡片；只有标签页增减或搜索关键词变化时才重新读取标签页列表。
+ * <p>
+ * 设置了搜索关键词时，只显示匹配的标签页，按匹配程度排序
+ */
 public class TabQuickViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> implements ITabQuickView.Observer {
 
     private static final int VIEW_ADD = 100;
     private static final int VIEW_TAB = 101;
 
+    private static final long ADD_ITEM_ID = -1L;
+    /**
+     * 绑定卡片时预读前后若干个卡片的缩略图
+     */
+    private static final int PREFETCH_MARGIN = 4;
+
+    private static final DiffUtil.ItemCallback<TabSnapshot> DIFF_CALLBACK = new DiffUtil.ItemCallback<TabSnapshot>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TabSnapshot oldItem, @NonNull TabSnapshot newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TabSnapshot oldItem, @NonNull TabSnapshot newItem) {
+            return oldItem == newItem || newItem.diff(oldItem) == 0;
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(@NonNull TabSnapshot oldItem, @NonNull TabSnapshot newItem) {
+            return newItem.diff(oldItem);
+        }
+    };
+
     private Context context;
     private ITabQuickView.Subject tabLruCache;
     private OnTabClickListener listener;
+    @Nullable
+    private Disposable stateDisposable;
+    @Nullable
+    private String query;
+
+    private final AsyncListDiffer<TabSnapshot> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    /**
+     * 最近一次提交的列表，差异可能还在后台计算
+     */
+    private List<TabSnapshot> submitted = Collections.emptyList();
+    private final Map<Long, TabSnapshot> submittedById = new HashMap<>();
+    /**
+     * 需要重新生成卡片的标签页，值不使用
+     */
+    private final LongIntMap staleIds = new LongIntMap(-1);
+    private boolean structureChanged;
+    private long currentId = TabInfo.NO_ID;
+    private boolean frameScheduled;
+    private final Choreographer.FrameCallback submitTask = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameScheduled = false;
+            submitSnapshot();
+        }
+    };
 
     public TabQuickViewAdapter(Context context) {
         this.context = context;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -46,19 +123,60 @@ public class TabQuickViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, final int position) {
-        if (tabLruCache == null || tabLruCache.provideInfoList() == null) {
-            return;
-        }
-
         if (holder instanceof TabAddViewHolder) {
             bindAddView((TabAddViewHolder) holder);
             return;
         }
 
         if (holder instanceof TabQuickViewHolder) {
-            bindQuickView((TabQuickViewHolder) holder, position);
+            bindQuickView((TabQuickViewHolder) holder, differ.getCurrentList().get(position));
+            prefetchAround(position);
+        }
+
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || !(holder instanceof TabQuickViewHolder)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (payload instanceof Integer) {
+                changes |= (Integer) payload;
+            }
+        }
+        TabQuickViewHolder quickViewHolder = (TabQuickViewHolder) holder;
+        TabSnapshot snapshot = differ.getCurrentList().get(position);
+        quickViewHolder.snapshot = snapshot;
+        if ((changes & TabSnapshot.PAYLOAD_TITLE) != 0) {
+            quickViewHolder.siteTitle.setText(snapshot.getTitle());
         }
+        if ((changes & TabSnapshot.PAYLOAD_PREVIEW) != 0) {
+            quickViewHolder.preview.setImageBitmap(snapshot.getPreview());
+        }
+        if ((changes & TabSnapshot.PAYLOAD_CURRENT) != 0) {
+            quickViewHolder.indicator.setVisibility(snapshot.isCurrent() ? View.VISIBLE : View.INVISIBLE);
+        }
+    }
 
+    /**
+     * 只为正在显示的卡片及前后少量卡片读取缩略图，RecyclerView只绑定可见范围内的卡片
+     */
+    private void prefetchAround(int position) {
+        IBrowser.ITabController tabController = findTabController();
+        if (tabController == null) {
+            return;
+        }
+        List<TabSnapshot> list = differ.getCurrentList();
+        int end = Math.min(list.size(), position + PREFETCH_MARGIN + 1);
+        for (int i = Math.max(0, position - PREFETCH_MARGIN); i < end; i++) {
+            TabSnapshot snapshot = list.get(i);
+            if (snapshot.getPreview() == null) {
+                tabController.prefetchPreview(snapshot.getId());
+            }
+        }
     }
 
     private void bindAddView(TabAddViewHolder holder) {
@@ -72,34 +190,18 @@ public class TabQuickViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         });
     }
 
-    private void bindQuickView(TabQuickViewHolder holder, final int position) {
-        final TabInfo info = tabLruCache.provideInfoList().get(position);
-
-        if (context instanceof IBrowser) {
-            IBrowser.ITabController tabController = (IBrowser.ITabController)
-                    ((IBrowser) context).provideBrowserComponent(BrowserConst.TAB_COMPONENT);
-            TabInfo currentTab = tabController.getCurrentTab();
-            if (info != null && info.equals(currentTab)) {
-                holder.indicator.setVisibility(View.VISIBLE);
-            } else {
-                holder.indicator.setVisibility(View.INVISIBLE);
-            }
-            Bitmap bitmap = tabController.getPreviewForTab(info);
-            holder.preview.setImageBitmap(bitmap);
-        }
-
-        if (info != null) {
-            holder.siteTitle.setText(info.getTitle());
-        }
+    private void bindQuickView(final TabQuickViewHolder holder, TabSnapshot snapshot) {
+        holder.snapshot = snapshot;
+        holder.indicator.setVisibility(snapshot.isCurrent() ? View.VISIBLE : View.INVISIBLE);
+        holder.preview.setImageBitmap(snapshot.getPreview());
+        holder.siteTitle.setText(snapshot.getTitle());
 
         holder.closeButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (tabLruCache == null || tabLruCache.provideInfoList() == null) {
-                    return;
-                }
-                if (!StringUtils.isEmpty(info.getTag()) && listener != null) {
-                    listener.onTabClose(info);
+                TabSnapshot target = holder.snapshot;
+                if (target != null && target.getId() != TabInfo.NO_ID && listener != null) {
+                    listener.onTabClose(TabInfo.create(target.getId(), target.getTitle()));
                 }
 
             }
@@ -108,8 +210,9 @@ public class TabQuickViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         holder.itemView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (listener != null) {
-                    listener.onTabClick(info);
+                TabSnapshot target = holder.snapshot;
+                if (target != null && listener != null) {
+                    listener.onTabClick(TabInfo.create(target.getId(), target.getTitle()));
                 }
             }
         });
@@ -118,36 +221,184 @@ public class TabQuickViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     public void attachToSubject(ITabQuickView.Subject target) {
         tabLruCache = target;
         tabLruCache.attach(this);
+        IBrowser.ITabController tabController = findTabController();
+        structureChanged = true;
+        if (tabController != null) {
+            TabInfo currentTab = tabController.getCurrentTab();
+            currentId = currentTab == null ? TabInfo.NO_ID : currentTab.getId();
+            // 状态每帧最多发布一次，直接生成新列表
+            stateDisposable = tabController.getTabStateStream().observe()
+                    .subscribe(new Consumer<ITabStateStream.Snapshot>() {
+                        @Override
+                        public void accept(ITabStateStream.Snapshot snapshot) throws Exception {
+                            onStateChanged(snapshot);
+                        }
+                    });
+        }
+        submitSnapshot();
+    }
+
+    @Nullable
+    private IBrowser.ITabController findTabController() {
+        if (!(context instanceof IBrowser)) {
+            return null;
+        }
+        return (IBrowser.ITabController)
+                ((IBrowser) context).provideBrowserComponent(BrowserConst.TAB_COMPONENT);
     }
 
     public void detachSubject() {
+        if (stateDisposable != null) {
+            stateDisposable.dispose();
+            stateDisposable = null;
+        }
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(submitTask);
+            frameScheduled = false;
+        }
         if (tabLruCache != null) {
             tabLruCache.detach();
         }
+        staleIds.clear();
+        submittedById.clear();
         tabLruCache = null;
         context = null;
     }
 
+    /**
+     * 设置搜索关键词，为空时显示全部标签页
+     */
+    public void setQuery(@Nullable String query) {
+        String target = query == null ? null : query.trim();
+        if (StringUtils.isEmpty(target)) {
+            target = null;
+        }
+        if (target == null ? this.query == null : target.equals(this.query)) {
+            return;
+        }
+        this.query = target;
+        updateQuickView();
+    }
+
+    /**
+     * 标签页增减的通知，同一帧内的多次通知合并为一次
+     */
     @Override
     public void updateQuickView() {
-        this.notifyDataSetChanged();
+        structureChanged = true;
+        scheduleSubmit();
     }
 
     @Override
-    public int getItemCount() {
+    public void updatePreview(long tabId) {
+        staleIds.put(tabId, 0);
+        scheduleSubmit();
+    }
+
+    private void scheduleSubmit() {
+        if (frameScheduled) {
+            return;
+        }
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(submitTask);
+    }
+
+    private void onStateChanged(ITabStateStream.Snapshot snapshot) {
+        for (int i = 0; i < snapshot.getChangedCount(); i++) {
+            staleIds.put(snapshot.getChangedId(i), 0);
+        }
+        long newCurrentId = snapshot.getCurrentId();
+        if (newCurrentId != currentId) {
+            if (currentId != TabInfo.NO_ID) {
+                staleIds.put(currentId, 0);
+            }
+            if (newCurrentId != TabInfo.NO_ID) {
+                staleIds.put(newCurrentId, 0);
+            }
+            currentId = newCurrentId;
+        }
+        submitSnapshot();
+    }
+
+    /**
+     * 重新生成变化的卡片并提交比较，标签页增减时才重新读取标签页列表
+     */
+    private void submitSnapshot() {
         if (tabLruCache == null || tabLruCache.provideInfoList() == null) {
-            return 1;
+            return;
         }
-        return tabLruCache.provideInfoList().size() + 1;
+        if (!structureChanged && staleIds.size() == 0) {
+            return;
+        }
+        IBrowser.ITabController tabController = findTabController();
+        List<TabSnapshot> snapshots;
+        if (structureChanged) {
+            List<TabInfo> infoList = query == null || tabController == null
+                    ? tabLruCache.provideInfoList() : tabController.searchTabs(query);
+            snapshots = new ArrayList<>(infoList.size());
+            for (TabInfo info : infoList) {
+                TabSnapshot snapshot = staleIds.containsKey(info.getId()) ? null : submittedById.get(info.getId());
+                if (snapshot == null) {
+                    snapshot = buildSnapshot(tabController, info.getId(), info.getTitle());
+                }
+                snapshots.add(snapshot);
+            }
+            submittedById.clear();
+            for (TabSnapshot snapshot : snapshots) {
+                submittedById.put(snapshot.getId(), snapshot);
+            }
+        } else {
+            snapshots = null;
+            for (int i = 0; i < submitted.size(); i++) {
+                TabSnapshot old = submitted.get(i);
+                if (!staleIds.containsKey(old.getId())) {
+                    continue;
+                }
+                if (snapshots == null) {
+                    snapshots = new ArrayList<>(submitted);
+                }
+                TabSnapshot snapshot = buildSnapshot(tabController, old.getId(), old.getTitle());
+                snapshots.set(i, snapshot);
+                submittedById.put(snapshot.getId(), snapshot);
+            }
+        }
+        structureChanged = false;
+        staleIds.clear();
+        if (snapshots == null) {
+            // 变化的标签页不在列表中(如被搜索过滤)
+            return;
+        }
+        submitted = snapshots;
+        differ.submitList(snapshots);
+    }
+
+    /**
+     * 按标签页状态生成卡片，状态尚未发布时使用传入的标题
+     */
+    private TabSnapshot buildSnapshot(@Nullable IBrowser.ITabController tabController, long tabId, String fallbackTitle) {
+        TabState state = tabController == null ? null : tabController.getTabStateStream().get(tabId);
+        String title = state == null || state.getTitle() == null ? fallbackTitle : state.getTitle();
+        Bitmap preview = tabController == null ? null : tabController.getPreviewForTab(tabId);
+        return new TabSnapshot(tabId, title, preview, tabId == currentId);
     }
 
     @Override
-    public int getItemViewType(int position) {
-        if (getItemCount() == 1) {
-            return VIEW_ADD;
+    public int getItemCount() {
+        return differ.getCurrentList().size() + 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        List<TabSnapshot> list = differ.getCurrentList();
+        if (position < list.size()) {
+            return list.get(position).getId();
         }
+        return ADD_ITEM_ID;
+    }
 
-        if (position < (getItemCount() - 1)) {
+    @Override
+    public int getItemViewType(int position) {
+        if (position < differ.getCurrentList().size()) {
             return VIEW_TAB;
         } else {
             return VIEW_ADD;
@@ -170,6 +421,8 @@ public class TabQuickViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
 
         ImageView preview;
 
+        TabSnapshot snapshot;
+
         public TabQuickViewHolder(@NonNull View itemView) {
             super(itemView);
 
@@ -0,0 +1,67 @@
+package ricky.easybrowser.page.tabpreview;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 标签页列表中一张卡片的不可变快照，用于在后台线程比较新旧列表
+ */
+public final class TabSnapshot {
+
+    public static final int PAYLOAD_TITLE = 1;
+    public static final int PAYLOAD_PREVIEW = 1 << 1;
+    public static final int PAYLOAD_CURRENT = 1 << 2;
+
+    private final long id;
+    private final String title;
+    @Nullable
+    private final Bitmap preview;
+    /**
+     * 缩略图被复用或重绘后生成号会变化，与引用一起判断预览是否变化
+     */
+    private final int previewGeneration;
+    private final boolean current;
+
+    public TabSnapshot(long id, String title, @Nullable Bitmap preview, boolean current) {
+        this.id = id;
+        this.title = title;
+        this.preview = preview;
+        this.previewGeneration = preview == null ? 0 : preview.getGenerationId();
+        this.current = current;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    @Nullable
+    public Bitmap getPreview() {
+        return preview;
+    }
+
+    public boolean isCurrent() {
+        return current;
+    }
+
+    /**
+     * 与旧快照相比发生变化的部分，由PAYLOAD_*组合而成，没有变化时返回0
+     */
+    public int diff(TabSnapshot old) {
+        int changes = 0;
+        if (title == null ? old.title != null : !title.equals(old.title)) {
+            changes |= PAYLOAD_TITLE;
+        }
+        if (preview != old.preview || previewGeneration != old.previewGeneration) {
+            changes |= PAYLOAD_PREVIEW;
+        }
+        if (current != old.current) {
+            changes |= PAYLOAD_CURRENT;
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,247 @@
+package ricky.easybrowser.page.tabpreview;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import androidx.annotation.Nullable;
+
+import ricky.easybrowser.contract.ITab;
+import ricky.easybrowser.utils.BitmapPool;
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.utils.EasyViewUtils;
+import ricky.easybrowser.utils.LongIntMap;
+import ricky.easybrowser.utils.LongLruCache;
+
+/**
+ * 标签页缩略图缓存，以标签页id为键。
+ * <p>
+ * 标签页切换到后台时在隐藏前立即截图；加载完成时请求截图，在主线程空闲时逐个进行，每次空闲只绘制一个标签页，
+ * 不阻塞列表滑动。页面开始跳转时旧缩略图失效。列表绑定时直接取出已生成的缩略图，不做任何绘制。
+ * <p>
+ * 写入缓存的缩略图可能正被列表显示，缓存不再修改、回收或复用它，离开缓存后交给GC回收。
+ * {@link BitmapPool} 只保存从未显示过的Bitmap(截图失败的目标、读取后被丢弃的结果)。
+ * <p>
+ * 截图同时写入 {@link TabThumbnailStore}。内存中没有的缩略图(标签页被淘汰或进程重建)从磁盘异步解码，
+ * 完成后通知列表刷新
+ */
+public class TabThumbnailCache {
+
+    private static final String TAG = "TabThumbnailCache";
+
+    private static final int THUMBNAIL_WIDTH_DP = 90;
+    private static final int THUMBNAIL_HEIGHT_DP = 160;
+    private static final int POOL_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * 按id查找可截图的标签页
+     */
+    public interface Source {
+        @Nullable
+        ITab findTab(long tabId);
+    }
+
+    public interface OnThumbnailChangeListener {
+        void onThumbnailChanged(long tabId);
+    }
+
+    private final Source source;
+    private final TabThumbnailStore store;
+    private final BitmapPool pool = new BitmapPool(POOL_BYTES);
+    private final LongLruCache<Bitmap> cache;
+    /**
+     * 等待截图的标签页，值不使用
+     */
+    private final LongIntMap pending = new LongIntMap(-1);
+    /**
+     * 正在从磁盘读取的标签页，值不使用
+     */
+    private final LongIntMap loading = new LongIntMap(-1);
+    /**
+     * 磁盘上也没有缩略图的标签页，截图前不再重复读取，值不使用
+     */
+    private final LongIntMap missing = new LongIntMap(-1);
+    private final int width;
+    private final int height;
+    private boolean idleScheduled;
+
+    @Nullable
+    private OnThumbnailChangeListener listener;
+
+    private final MessageQueue.IdleHandler captureTask = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            captureNext();
+            idleScheduled = pending.size() > 0;
+            return idleScheduled;
+        }
+    };
+
+    /**
+     * @param maxBytes 缓存中缩略图的总占用上限(字节)
+     */
+    public TabThumbnailCache(Context context, int maxBytes, TabThumbnailStore store, Source source) {
+        this.source = source;
+        this.store = store;
+        this.width = (int) EasyViewUtils.dp2px(context, THUMBNAIL_WIDTH_DP);
+        this.height = (int) EasyViewUtils.dp2px(context, THUMBNAIL_HEIGHT_DP);
+        this.cache = new LongLruCache<Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(long key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+        };
+    }
+
+    public void setOnThumbnailChangeListener(@Nullable OnThumbnailChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 已生成的缩略图，不改变缓存顺序。内存中没有时返回null，不读取磁盘
+     */
+    @Nullable
+    public Bitmap get(long tabId) {
+        return cache.peek(tabId);
+    }
+
+    /**
+     * 内存中没有该缩略图时在后台从磁盘读取，由标签页列表按可见范围调用
+     */
+    public void prefetch(long tabId) {
+        if (!cache.containsKey(tabId)) {
+            loadFromDisk(tabId);
+        }
+    }
+
+    private void loadFromDisk(long tabId) {
+        if (loading.containsKey(tabId) || missing.containsKey(tabId) || pending.containsKey(tabId)) {
+            return;
+        }
+        loading.put(tabId, 0);
+        store.load(tabId, width, height, new TabThumbnailStore.OnLoadListener() {
+            @Override
+            public void onThumbnailLoaded(long tabId, @Nullable Bitmap bitmap) {
+                // 读取期间已失效或已重新截图时丢弃结果
+                if (loading.remove(tabId) == -1 || cache.containsKey(tabId)) {
+                    pool.put(bitmap);
+                    return;
+                }
+                if (bitmap == null) {
+                    missing.put(tabId, 0);
+                    return;
+                }
+                cache.put(tabId, bitmap);
+                if (listener != null) {
+                    listener.onThumbnailChanged(tabId);
+                }
+            }
+        });
+    }
+
+    /**
+     * 立即为标签页截图，需在标签页隐藏前调用
+     */
+    public void captureNow(long tabId) {
+        pending.remove(tabId);
+        capture(tabId);
+    }
+
+    /**
+     * 请求在主线程空闲时为标签页截图，重复请求只截一次
+     */
+    public void requestCapture(long tabId) {
+        pending.put(tabId, 0);
+        if (!idleScheduled) {
+            idleScheduled = true;
+            Looper.myQueue().addIdleHandler(captureTask);
+        }
+    }
+
+    /**
+     * 页面跳转时旧缩略图失效
+     */
+    public void invalidate(long tabId) {
+        pending.remove(tabId);
+        loading.remove(tabId);
+        missing.put(tabId, 0);
+        store.remove(tabId);
+        if (cache.remove(tabId) != null && listener != null) {
+            listener.onThumbnailChanged(tabId);
+        }
+    }
+
+    /**
+     * 标签页关闭时删除内存及磁盘中的缩略图
+     */
+    public void remove(long tabId) {
+        pending.remove(tabId);
+        loading.remove(tabId);
+        missing.remove(tabId);
+        cache.remove(tabId);
+        store.remove(tabId);
+    }
+
+    /**
+     * 清空内存中的缩略图，磁盘中的保留，用于之后恢复
+     */
+    public void clear() {
+        pending.clear();
+        loading.clear();
+        missing.clear();
+        cache.evictAll();
+        pool.clear();
+    }
+
+    /**
+     * 内存不足时先清空复用池，内存紧张时清空所有缩略图
+     */
+    public void onTrimMemory(int level) {
+        pool.clear();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        }
+    }
+
+    private void captureNext() {
+        long tabId = pending.anyKey();
+        if (tabId == LongIntMap.EMPTY_KEY) {
+            return;
+        }
+        pending.remove(tabId);
+        capture(tabId);
+    }
+
+    private void capture(long tabId) {
+        ITab tab = source.findTab(tabId);
+        if (tab == null) {
+            return;
+        }
+        Bitmap target = pool.get(width, height, Bitmap.Config.RGB_565);
+        if (!tab.drawTabPreview(target)) {
+            pool.put(target);
+            return;
+        }
+        cache.put(tabId, target);
+        loading.remove(tabId);
+        missing.remove(tabId);
+        store.save(tabId, target);
+        EasyLog.i(TAG, "captured " + tabId + ", cached: " + cache.count() + ", pool hit/miss: "
+                + pool.getHitCount() + "/" + pool.getMissCount());
+        if (listener != null) {
+            listener.onThumbnailChanged(tabId);
+        }
+    }
+
+    public int getCachedCount() {
+        return cache.count();
+    }
+
+    public BitmapPool getPool() {
+        return pool;
+    }
+}
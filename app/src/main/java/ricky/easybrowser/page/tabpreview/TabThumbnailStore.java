@@ -0,0 +1,251 @@
+package ricky.easybrowser.page.tabpreview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * 标签页缩略图的磁盘存储，每个标签页一个压缩文件，以标签页id命名。
+ * <p>
+ * 写入及删除在单一后台线程中顺序执行，写入后按最近修改时间淘汰最旧的文件，使总大小不超过上限；
+ * 读取在IO线程池中并行解码，并按卡片尺寸降采样，结果回到主线程。标签页被淘汰或进程重建后，
+ * 标签页列表仍可直接显示缩略图，不需要创建WebView
+ */
+public class TabThumbnailStore {
+
+    private static final String TAG = "TabThumbnailStore";
+
+    private static final String DIR_NAME = "tab_thumbnail";
+    private static final String FILE_SUFFIX = ".thumb";
+    private static final int QUALITY = 75;
+    private static final long MAX_DISK_BYTES = 8 * 1024 * 1024L;
+
+    public interface OnLoadListener {
+        /**
+         * @param bitmap 没有保存过或解码失败时为null
+         */
+        void onThumbnailLoaded(long tabId, @Nullable Bitmap bitmap);
+    }
+
+    private final File dir;
+
+    public TabThumbnailStore(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR_NAME);
+    }
+
+    /**
+     * 保存缩略图，在后台线程压缩。传入的Bitmap写入缓存后不再修改或回收，可直接在后台读取
+     */
+    public void save(final long tabId, final Bitmap bitmap) {
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(tabId, bitmap);
+                trimToSize();
+            }
+        });
+    }
+
+    /**
+     * 在后台解码缩略图，按目标尺寸降采样，结果在主线程回调
+     */
+    public void load(final long tabId, final int reqWidth, final int reqHeight, final OnLoadListener listener) {
+        // RxJava不允许发送null，用数组带回可能为空的结果
+        final Bitmap[] result = new Bitmap[1];
+        Observable.create(new ObservableOnSubscribe<Boolean>() {
+            @Override
+            public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
+                result[0] = decodeFile(tabId, reqWidth, reqHeight);
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Consumer<Boolean>() {
+                    @Override
+                    public void accept(Boolean ignored) throws Exception {
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        throwable.printStackTrace();
+                        listener.onThumbnailLoaded(tabId, null);
+                    }
+                }, new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        listener.onThumbnailLoaded(tabId, result[0]);
+                    }
+                });
+    }
+
+    public boolean contains(long tabId) {
+        return fileOf(tabId).exists();
+    }
+
+    public void remove(final long tabId) {
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                File file = fileOf(tabId);
+                if (file.exists() && !file.delete()) {
+                    EasyLog.w(TAG, "delete failed: " + file);
+                }
+            }
+        });
+    }
+
+    public void clear() {
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = dir.listFiles();
+                if (files == null) {
+                    return;
+                }
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    private File fileOf(long tabId) {
+        return new File(dir, tabId + FILE_SUFFIX);
+    }
+
+    private void runOnDiskThread(final Runnable task) {
+        Observable.create(new ObservableOnSubscribe<Boolean>() {
+            @Override
+            public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
+                task.run();
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.single())
+                .subscribe(new Consumer<Boolean>() {
+                    @Override
+                    public void accept(Boolean ignored) throws Exception {
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        // 缩略图写入失败时只是少一张磁盘缓存
+                        throwable.printStackTrace();
+                    }
+                });
+    }
+
+    private void writeFile(long tabId, Bitmap bitmap) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            EasyLog.w(TAG, "can not create dir: " + dir);
+            return;
+        }
+        File target = fileOf(tabId);
+        File temp = new File(dir, tabId + FILE_SUFFIX + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            bitmap.compress(Bitmap.CompressFormat.WEBP, QUALITY, out);
+            out.close();
+            out = null;
+            if (!temp.renameTo(target)) {
+                EasyLog.w(TAG, "rename failed: " + target);
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按最近修改时间删除最旧的文件，直到总大小不超过上限
+     */
+    private void trimToSize() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (total <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    @Nullable
+    private Bitmap decodeFile(long tabId, int reqWidth, int reqHeight) {
+        File file = fileOf(tabId);
+        if (!file.exists()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        // 解码结果可放回复用池
+        options.inMutable = true;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap != null) {
+            // 读取也算作使用，避免经常查看的缩略图被淘汰
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    private static int computeSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+}
@@ -0,0 +1,147 @@
+package ricky.easybrowser.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+/**
+ * 按占用字节数分桶的Bitmap复用池。
+ * <p>
+ * 第i个桶保存占用在 (2^(i-1), 2^i] 字节之间的Bitmap。取出时从满足大小的最小桶开始查找，
+ * 通过 {@link Bitmap#reconfigure(int, int, Bitmap.Config)} 调整为目标尺寸，避免重复分配。
+ * 池中Bitmap总占用超过上限时丢弃最先放入的。仅在UI线程中使用
+ */
+public class BitmapPool {
+
+    private static final String TAG = "BitmapPool";
+
+    private static final int BUCKET_COUNT = 32;
+    /**
+     * 向上查找的桶数，避免用过大的Bitmap承载小图
+     */
+    private static final int MAX_BUCKET_STEP = 1;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Bitmap>[] buckets = new ArrayDeque[BUCKET_COUNT];
+    /**
+     * 所有桶中Bitmap的放入顺序，用于超出上限时丢弃最早的
+     */
+    private final ArrayDeque<Bitmap> order = new ArrayDeque<>();
+    private int maxBytes;
+    private int currentBytes;
+
+    private int hitCount;
+    private int missCount;
+
+    public BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * 取出可写入的Bitmap，内容已清空。池中没有合适的Bitmap时新建
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        int bytes = width * height * bytesPerPixel(config);
+        int bucket = bucketOf(bytes);
+        int last = Math.min(BUCKET_COUNT - 1, bucket + MAX_BUCKET_STEP);
+        for (int i = bucket; i <= last; i++) {
+            Bitmap candidate = pollFit(buckets[i], bytes);
+            if (candidate == null) {
+                continue;
+            }
+            try {
+                candidate.reconfigure(width, height, config);
+                candidate.eraseColor(0);
+                hitCount++;
+                return candidate;
+            } catch (IllegalArgumentException e) {
+                EasyLog.w(TAG, "reconfigure failed: " + e.getMessage());
+                candidate.recycle();
+            }
+        }
+        missCount++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * 放回不再使用的Bitmap。不可修改或已回收的Bitmap直接丢弃
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        buckets[bucketOf(bytes)].addLast(bitmap);
+        order.addLast(bitmap);
+        currentBytes += bytes;
+        trimToSize(maxBytes);
+    }
+
+    public void trimToSize(int size) {
+        while (currentBytes > size && !order.isEmpty()) {
+            Bitmap eldest = order.pollFirst();
+            int bytes = eldest.getAllocationByteCount();
+            buckets[bucketOf(bytes)].remove(eldest);
+            currentBytes -= bytes;
+            eldest.recycle();
+        }
+    }
+
+    public void clear() {
+        trimToSize(0);
+    }
+
+    public void setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    private Bitmap pollFit(ArrayDeque<Bitmap> bucket, int bytes) {
+        for (Bitmap bitmap : bucket) {
+            int size = bitmap.getAllocationByteCount();
+            if (size >= bytes) {
+                bucket.remove(bitmap);
+                order.remove(bitmap);
+                currentBytes -= size;
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private static int bucketOf(int bytes) {
+        if (bytes <= 1) {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, 32 - Integer.numberOfLeadingZeros(bytes - 1));
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+
+    public int getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,32 @@
+package ricky.easybrowser.utils;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import androidx.annotation.Nullable;
+
+import ricky.easybrowser.contract.IBrowser;
+
+public class ContextUtils {
+
+    /**
+     * 查找Context所属的浏览器页面。WebView使用可切换的ContextWrapper创建，需逐层向内查找
+     */
+    @Nullable
+    public static IBrowser findBrowser(@Nullable Context context) {
+        while (context != null) {
+            if (context instanceof IBrowser) {
+                return (IBrowser) context;
+            }
+            if (!(context instanceof ContextWrapper)) {
+                return null;
+            }
+            Context base = ((ContextWrapper) context).getBaseContext();
+            if (base == context) {
+                return null;
+            }
+            context = base;
+        }
+        return null;
+    }
+}
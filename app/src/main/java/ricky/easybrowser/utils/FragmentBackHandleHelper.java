@@ -1,39 +1,24 @@
 package ricky.easybrowser.utils;
 
-import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 
-import java.util.List;
-
-import ricky.easybrowser.contract.ITab;
+import ricky.easybrowser.contract.IBrowser;
 
 public class FragmentBackHandleHelper {
 
-    public static boolean isFragmentBackHandled(FragmentManager fragmentManager) {
-        List<Fragment> fragments = fragmentManager.getFragments();
-        if (CollectionUtils.isEmpty(fragments)) {
-            return false;
+    /**
+     * 返回事件优先交给当前标签页处理，由标签页控制器直接定位当前页面，无需遍历Fragment列表
+     */
+    public static boolean isFragmentBackHandled(FragmentManager fragmentManager,
+                                                IBrowser.ITabController tabController) {
+        if (tabController != null && tabController.onTabGoBack()) {
+            return true;
         }
-
-        for (int i = 0; i < fragments.size(); i++) {
-            Fragment fragment = fragments.get(i);
-            if (isFragmentBackable(fragment)) {
-                return true;
-            }
-            if (fragmentManager.getBackStackEntryCount() > 0) {
-                fragmentManager.popBackStack();
-                return true;
-            }
+        if (fragmentManager.getBackStackEntryCount() > 0) {
+            fragmentManager.popBackStack();
+            return true;
         }
 
         return false;
     }
-
-    public static boolean isFragmentBackable(Fragment fragment) {
-        return fragment.isVisible()
-                && fragment.getUserVisibleHint()
-                && fragment instanceof ITab
-                && ((ITab) fragment).onBackPressed();
-
-    }
 }
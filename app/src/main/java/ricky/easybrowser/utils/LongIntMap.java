@@ -0,0 +1,196 @@
+package ricky.easybrowser.utils;
+
+import java.util.Arrays;
+
+/**
+ * long -> int 的开放寻址哈希表，键值均为基本类型，查找过程不产生装箱对象
+ * <p>
+ * 键不能为 {@link #EMPTY_KEY}，删除时使用后移方式填补空位，不留墓碑
+ */
+public class LongIntMap {
+
+    public static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntMap(int missingValue) {
+        this(16, missingValue);
+    }
+
+    public LongIntMap(int initialCapacity, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = 4;
+        while (capacity * LOAD_FACTOR < initialCapacity) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public int get(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("key can not be EMPTY_KEY");
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    public int remove(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                int prev = values[slot];
+                shiftKeys(slot);
+                size--;
+                return prev;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * 删除后将同一探测链上的后续元素前移，保证查找不被空位截断
+     */
+    private void shiftKeys(int slot) {
+        int last;
+        while (true) {
+            last = slot;
+            slot = (slot + 1) & mask;
+            while (true) {
+                long current = keys[slot];
+                if (current == EMPTY_KEY) {
+                    keys[last] = EMPTY_KEY;
+                    return;
+                }
+                int ideal = hash(current) & mask;
+                if (last <= slot ? (last >= ideal || ideal > slot) : (last >= ideal && ideal > slot)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[last] = keys[slot];
+            values[last] = values[slot];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 任意一个键，不分配内存，表为空时返回 {@link #EMPTY_KEY}
+     */
+    public long anyKey() {
+        if (size == 0) {
+            return EMPTY_KEY;
+        }
+        for (long key : keys) {
+            if (key != EMPTY_KEY) {
+                return key;
+            }
+        }
+        return EMPTY_KEY;
+    }
+
+    /**
+     * 内部槽位数。与 {@link #keyAt(int)}、{@link #valueAt(int)} 一起遍历，不分配内存，遍历期间不能修改
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return 空槽位返回 {@link #EMPTY_KEY}
+     */
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * 所有键的副本，顺序不固定
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int index = 0;
+        for (long key : keys) {
+            if (key != EMPTY_KEY) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+}
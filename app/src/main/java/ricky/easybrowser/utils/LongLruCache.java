@@ -0,0 +1,317 @@
+package ricky.easybrowser.utils;
+
+/**
+ * 以long为键的LRU缓存，接口与 {@link android.util.LruCache} 保持一致
+ * <p>
+ * 查找过程不装箱、不分配对象，仅在新增条目时分配一个节点。非线程安全，需在UI线程中使用
+ *
+ * @param <V> 缓存值类型
+ */
+public class LongLruCache<V> {
+
+    /**
+     * {@link #selectVictim()} 返回该值时停止淘汰
+     */
+    public static final long NO_VICTIM = Long.MIN_VALUE;
+
+    private static final class Node<V> {
+        long key;
+        V value;
+        int size;
+        Node<V> next;
+        Node<V> before;
+        Node<V> after;
+    }
+
+    private Node<V>[] table;
+    private final Node<V> head;
+
+    private int count;
+    private int size;
+    private int maxSize;
+
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    @SuppressWarnings("unchecked")
+    public LongLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        this.table = (Node<V>[]) new Node[16];
+        this.head = new Node<>();
+        head.before = head;
+        head.after = head;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private Node<V> findNode(long key) {
+        Node<V> node = table[hash(key) & (table.length - 1)];
+        while (node != null) {
+            if (node.key == key) {
+                return node;
+            }
+            node = node.next;
+        }
+        return null;
+    }
+
+    public final V get(long key) {
+        Node<V> node = findNode(key);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        moveToTail(node);
+        return node.value;
+    }
+
+    /**
+     * 查询但不改变访问顺序
+     */
+    public final V peek(long key) {
+        Node<V> node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    public final boolean containsKey(long key) {
+        return findNode(key) != null;
+    }
+
+    public final V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+        V previous = null;
+        Node<V> node = findNode(key);
+        if (node != null) {
+            previous = node.value;
+            size -= node.size;
+            node.value = value;
+            node.size = safeSizeOf(key, value);
+            size += node.size;
+            moveToTail(node);
+        } else {
+            node = new Node<>();
+            node.key = key;
+            node.value = value;
+            node.size = safeSizeOf(key, value);
+            int index = hash(key) & (table.length - 1);
+            node.next = table[index];
+            table[index] = node;
+            linkLast(node);
+            count++;
+            size += node.size;
+            if (count > table.length * 3 / 4) {
+                growTable();
+            }
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+        trimToSize(maxSize);
+        return previous;
+    }
+
+    public final V remove(long key) {
+        Node<V> node = unlinkNode(key);
+        if (node == null) {
+            return null;
+        }
+        entryRemoved(false, key, node.value, null);
+        return node.value;
+    }
+
+    /**
+     * 重新计算条目大小，用于条目占用随时间变化的场景
+     */
+    public final void refreshSize(long key) {
+        Node<V> node = findNode(key);
+        if (node == null) {
+            return;
+        }
+        size -= node.size;
+        node.size = safeSizeOf(key, node.value);
+        size += node.size;
+        trimToSize(maxSize);
+    }
+
+    public void trimToSize(int maxSize) {
+        while (size > maxSize && head.after != head) {
+            long key = selectVictim();
+            if (key == NO_VICTIM) {
+                break;
+            }
+            Node<V> victim = unlinkNode(key);
+            if (victim == null) {
+                break;
+            }
+            evictionCount++;
+            entryRemoved(true, victim.key, victim.value, null);
+        }
+    }
+
+    /**
+     * 选择下一个被淘汰的键，默认淘汰最久未使用的条目。
+     * <p>
+     * 子类可根据条目大小等信息选择其他条目，返回 {@link #NO_VICTIM} 表示剩余条目都不能淘汰
+     */
+    protected long selectVictim() {
+        return head.after.key;
+    }
+
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * 移除所有条目，不经过 {@link #selectVictim()}
+     */
+    public final void evictAll() {
+        while (head.after != head) {
+            Node<V> eldest = head.after;
+            unlinkNode(eldest.key);
+            evictionCount++;
+            entryRemoved(true, eldest.key, eldest.value, null);
+        }
+    }
+
+    /**
+     * 由旧到新排列的键
+     */
+    public final long[] keys() {
+        long[] keys = new long[count];
+        int i = 0;
+        for (Node<V> node = head.after; node != head; node = node.after) {
+            keys[i++] = node.key;
+        }
+        return keys;
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * 单个条目的大小，不存在时返回0
+     */
+    public final int entrySize(long key) {
+        Node<V> node = findNode(key);
+        return node == null ? 0 : node.size;
+    }
+
+    public final int count() {
+        return count;
+    }
+
+    public final int maxSize() {
+        return maxSize;
+    }
+
+    public final int hitCount() {
+        return hitCount;
+    }
+
+    public final int missCount() {
+        return missCount;
+    }
+
+    public final int evictionCount() {
+        return evictionCount;
+    }
+
+    protected void entryRemoved(boolean evicted, long key, V oldValue, V newValue) {
+    }
+
+    protected int sizeOf(long key, V value) {
+        return 1;
+    }
+
+    private int safeSizeOf(long key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    private Node<V> unlinkNode(long key) {
+        int index = hash(key) & (table.length - 1);
+        Node<V> prev = null;
+        Node<V> node = table[index];
+        while (node != null) {
+            if (node.key == key) {
+                if (prev == null) {
+                    table[index] = node.next;
+                } else {
+                    prev.next = node.next;
+                }
+                node.next = null;
+                node.before.after = node.after;
+                node.after.before = node.before;
+                node.before = null;
+                node.after = null;
+                count--;
+                size -= node.size;
+                return node;
+            }
+            prev = node;
+            node = node.next;
+        }
+        return null;
+    }
+
+    private void linkLast(Node<V> node) {
+        node.before = head.before;
+        node.after = head;
+        head.before.after = node;
+        head.before = node;
+    }
+
+    private void moveToTail(Node<V> node) {
+        if (head.before == node) {
+            return;
+        }
+        node.before.after = node.after;
+        node.after.before = node.before;
+        linkLast(node);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void growTable() {
+        Node<V>[] oldTable = table;
+        Node<V>[] newTable = (Node<V>[]) new Node[oldTable.length << 1];
+        int mask = newTable.length - 1;
+        for (Node<V> bucket : oldTable) {
+            Node<V> node = bucket;
+            while (node != null) {
+                Node<V> next = node.next;
+                int index = hash(node.key) & mask;
+                node.next = newTable[index];
+                newTable[index] = node;
+                node = next;
+            }
+        }
+        table = newTable;
+    }
+
+    @Override
+    public final String toString() {
+        int accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format("LongLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                maxSize, hitCount, missCount, hitPercent);
+    }
+}
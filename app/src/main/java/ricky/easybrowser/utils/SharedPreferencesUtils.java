@@ -8,6 +8,20 @@ public class SharedPreferencesUtils {
     public static final String KEY_NO_PIC_MODE = "no_pic_mode";
     public static final String KEY_FIRST_BOOT = "first_boot";
     public static final String KEY_SITE_LIST_CREATED = "site_list_created";
+    /**
+     * 标签页容器，取值为 {@link #TAB_HOST_FRAGMENT} 或 {@link #TAB_HOST_VIEW}
+     */
+    public static final String KEY_TAB_HOST = "tab_host";
+    public static final String TAB_HOST_FRAGMENT = "fragment";
+    public static final String TAB_HOST_VIEW = "view";
+    /**
+     * 上次清理WebView磁盘缓存的时间
+     */
+    public static final String KEY_WEB_CACHE_CLEAR_TIME = "web_cache_clear_time";
+    /**
+     * 是否拦截广告及跟踪请求，默认开启
+     */
+    public static final String KEY_AD_BLOCK = "ad_block";
 
     public static SharedPreferences getSettingSP(Context context) {
         if (context == null) {
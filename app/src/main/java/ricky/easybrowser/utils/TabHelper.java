@@ -40,10 +40,7 @@ public class TabHelper {
         if (uri == null) {
             return;
         }
-        TabInfo tabInfo = TabInfo.create(
-                System.currentTimeMillis() + "",
-                title,
-                uri);
+        TabInfo tabInfo = TabInfo.create(title, uri);
         tabController.onTabCreate(tabInfo, backStage);
     }
 }
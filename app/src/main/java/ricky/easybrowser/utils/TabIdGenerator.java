@@ -0,0 +1,31 @@
+package ricky.easybrowser.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 标签页id生成器。以进程启动时间为起点单调递增，同一毫秒内创建的标签页也不会重复
+ */
+public class TabIdGenerator {
+
+    private static final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    private TabIdGenerator() {
+    }
+
+    public static long next() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * 还原旧标签页后调用，保证之后生成的id大于已存在的id
+     */
+    public static void ensureAbove(long id) {
+        long current;
+        do {
+            current = sequence.get();
+            if (current >= id) {
+                return;
+            }
+        } while (!sequence.compareAndSet(current, id));
+    }
+}
@@ -0,0 +1,224 @@
+package ricky.easybrowser.web;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.utils.SharedPreferencesUtils;
+import ricky.easybrowser.web.block.ContentBlocker;
+import ricky.easybrowser.web.block.FilterCompiler;
+import ricky.easybrowser.web.block.ResourceType;
+import ricky.easybrowser.web.net.HttpClient;
+
+/**
+ * 广告及跟踪请求拦截。
+ * <p>
+ * 过滤列表(EasyList)下载后编译为二进制文件保存在应用目录，启动时直接映射，不再解析文本。
+ * 文件不存在、格式不对或超过更新间隔时在后台重新下载编译，完成后替换当前使用的规则，
+ * 更新期间仍用旧规则匹配。主文档请求不拦截
+ */
+public class ContentBlockerManager {
+
+    private static final String TAG = "ContentBlockerManager";
+
+    public static final String FILTER_LIST_URL = "https://easylist.to/easylist/easylist.txt";
+    private static final String FILTER_FILE_NAME = "easylist.bin";
+    private static final long UPDATE_INTERVAL_MS = 4L * 24 * 60 * 60 * 1000;
+    private static final int MAX_REDIRECTS = 3;
+
+    private final Context appContext;
+    private final HttpClient client;
+    private final File filterFile;
+
+    @Nullable
+    private volatile ContentBlocker blocker;
+    private volatile boolean enabled;
+    private volatile boolean updating;
+
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong matchNanos = new AtomicLong();
+    private final AtomicLong matchCount = new AtomicLong();
+
+    public ContentBlockerManager(Context context, HttpClient client) {
+        this.appContext = context.getApplicationContext();
+        this.client = client;
+        this.filterFile = new File(appContext.getFilesDir(), FILTER_FILE_NAME);
+    }
+
+    /**
+     * 读取开关，在后台加载规则，需要时更新
+     */
+    public void init() {
+        SharedPreferences sp = SharedPreferencesUtils.getSettingSP(appContext);
+        enabled = sp == null || sp.getBoolean(SharedPreferencesUtils.KEY_AD_BLOCK, true);
+        Observable.create(new ObservableOnSubscribe<Boolean>() {
+            @Override
+            public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
+                load();
+                emitter.onNext(blocker == null
+                        || System.currentTimeMillis() - filterFile.lastModified() > UPDATE_INTERVAL_MS);
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.io())
+                .subscribe(new Consumer<Boolean>() {
+                    @Override
+                    public void accept(Boolean outdated) throws Exception {
+                        if (outdated) {
+                            update();
+                        }
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        throwable.printStackTrace();
+                    }
+                });
+    }
+
+    private void load() {
+        if (!filterFile.exists()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            ContentBlocker loaded = ContentBlocker.open(filterFile);
+            blocker = loaded;
+            EasyLog.d(TAG, "loaded " + loaded.getRuleCount() + " rules in "
+                    + (System.nanoTime() - start) / 1000 + "us");
+        } catch (IOException e) {
+            e.printStackTrace();
+            filterFile.delete();
+        }
+    }
+
+    /**
+     * 在后台下载并编译过滤列表，已在更新时忽略
+     */
+    public void update() {
+        if (updating) {
+            return;
+        }
+        updating = true;
+        Observable.create(new ObservableOnSubscribe<FilterCompiler.Stats>() {
+            @Override
+            public void subscribe(ObservableEmitter<FilterCompiler.Stats> emitter) throws Exception {
+                try {
+                    emitter.onNext(download());
+                    emitter.onComplete();
+                } finally {
+                    updating = false;
+                }
+            }
+        }).subscribeOn(Schedulers.io())
+                .subscribe(new Consumer<FilterCompiler.Stats>() {
+                    @Override
+                    public void accept(FilterCompiler.Stats stats) throws Exception {
+                        EasyLog.d(TAG, "filter list updated, " + stats);
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        throwable.printStackTrace();
+                    }
+                });
+    }
+
+    private FilterCompiler.Stats download() throws IOException {
+        String url = FILTER_LIST_URL;
+        Map<String, String> headers = Collections.emptyMap();
+        for (int i = 0; i <= MAX_REDIRECTS; i++) {
+            HttpClient.Response response = client.execute("GET", url, headers);
+            try {
+                int status = response.getStatus();
+                String location = response.getHeader("location");
+                if (status >= 300 && status < 400 && location != null) {
+                    url = URI.create(url).resolve(location).toString();
+                    continue;
+                }
+                if (status != 200) {
+                    throw new IOException("filter list download failed: " + status);
+                }
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+                FilterCompiler.Stats stats = FilterCompiler.compile(reader, filterFile);
+                load();
+                return stats;
+            } finally {
+                response.close();
+            }
+        }
+        throw new IOException("too many redirects");
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在WebView的IO线程调用
+     *
+     * @param pageUrl 请求所在页面的地址，请求没有Referer时用于判断第三方请求，可以为null
+     */
+    public boolean shouldBlock(WebResourceRequest request, @Nullable String pageUrl) {
+        ContentBlocker current = blocker;
+        if (!enabled || current == null || request.isForMainFrame()) {
+            return false;
+        }
+        String url = request.getUrl().toString();
+        Map<String, String> headers = request.getRequestHeaders();
+        String referer = WebHeaders.get(headers, "Referer");
+        int type = ResourceType.detect(url, WebHeaders.get(headers, "Sec-Fetch-Dest"),
+                WebHeaders.get(headers, "Accept"), false);
+        long start = System.nanoTime();
+        boolean blocked = current.match(url, referer != null ? referer : pageUrl, type) == ContentBlocker.BLOCK;
+        matchNanos.addAndGet(System.nanoTime() - start);
+        matchCount.incrementAndGet();
+        if (blocked) {
+            blockedCount.incrementAndGet();
+        }
+        return blocked;
+    }
+
+    /**
+     * 拦截的请求返回空响应
+     */
+    public static WebResourceResponse blockedResponse() {
+        return new WebResourceResponse("text/plain", "utf-8", new ByteArrayInputStream(new byte[0]));
+    }
+
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * 平均每次匹配耗时(纳秒)
+     */
+    public long getAverageMatchNanos() {
+        long count = matchCount.get();
+        return count == 0 ? 0 : matchNanos.get() / count;
+    }
+}
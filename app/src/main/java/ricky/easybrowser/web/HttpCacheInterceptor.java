@@ -0,0 +1,171 @@
+package ricky.easybrowser.web;
+
+import android.net.Uri;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.web.cache.HttpCache;
+import ricky.easybrowser.web.net.HttpClient;
+import ricky.easybrowser.web.net.PreconnectPredictor;
+
+/**
+ * 在 {@link android.webkit.WebViewClient#shouldInterceptRequest} 中通过 {@link HttpCache} 加载请求。
+ * <p>
+ * 拦截后WebView不再处理Cookie，请求前从CookieManager读取Cookie，收到响应后写回Set-Cookie。
+ * 由于这里无法执行SameSite及第三方Cookie策略，只拦截与页面同源的请求时才带上及写回Cookie：
+ * 主文档请求不拦截；跨源且会带上Cookie的请求交给WebView；跨源请求返回的Set-Cookie不写回，与默认不接受第三方Cookie一致。
+ * <p>
+ * 同时记录各站点用到的其他来源，页面开始加载时提前连接，子资源请求可以直接使用连接池中的连接。
+ * 响应再交给 {@link ImagePolicy} 按MIME类型过滤，并带上响应来源，只有来自网络的图片才计入流量统计
+ */
+public class HttpCacheInterceptor {
+
+    private static final String TAG = "HttpCacheInterceptor";
+
+    /**
+     * 每处理多少个请求输出一次统计
+     */
+    private static final int LOG_INTERVAL = 100;
+
+    private final HttpCache cache;
+    private final ImagePolicy imagePolicy;
+    private final PreconnectPredictor predictor = new PreconnectPredictor();
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    public HttpCacheInterceptor(HttpCache cache, ImagePolicy imagePolicy) {
+        this.cache = cache;
+        this.imagePolicy = imagePolicy;
+    }
+
+    /**
+     * 在WebView的IO线程调用
+     *
+     * @param pageUrl 当前页面地址，用于判断请求是否跨源，未知时为null
+     * @return 不处理时返回null，由WebView自行加载
+     */
+    @Nullable
+    public WebResourceResponse intercept(WebResourceRequest request, @Nullable String pageUrl) {
+        if (request.isForMainFrame()) {
+            // 主文档的重定向、地址栏及Cookie策略都由WebView处理
+            return null;
+        }
+        String url = request.getUrl().toString();
+        Map<String, String> headers = new HashMap<>();
+        if (request.getRequestHeaders() != null) {
+            headers.putAll(request.getRequestHeaders());
+        }
+        String referer = WebHeaders.get(headers, "Referer");
+        String origin = originOf(url);
+        boolean sameOrigin = origin != null && origin.equals(originOf(pageUrl))
+                && (referer == null || origin.equals(originOf(referer)));
+        CookieManager cookieManager = CookieManager.getInstance();
+        String cookie = cookieManager.getCookie(url);
+        if (cookie != null) {
+            if (!sameOrigin) {
+                // 跨源的带Cookie请求需要按SameSite及第三方Cookie设置处理，交给WebView
+                return null;
+            }
+            headers.put("Cookie", cookie);
+        }
+        predictor.record(referer, url);
+        HttpCache.Response response = cache.fetch(request.getMethod(), url, headers);
+        if (requestCount.incrementAndGet() % LOG_INTERVAL == 0) {
+            logStats();
+        }
+        if (response == null) {
+            return null;
+        }
+        if (sameOrigin) {
+            for (String setCookie : response.getSetCookies()) {
+                cookieManager.setCookie(url, setCookie);
+            }
+        }
+        WebResourceResponse webResponse = new WebResourceResponse(response.getMimeType(), response.getCharset(),
+                response.getStatus(), response.getReason(), response.getHeaders(), response.getBody());
+        return imagePolicy.filterResponse(webResponse, response.getSource() == HttpCache.Source.NETWORK);
+    }
+
+    /**
+     * 页面开始加载时，在后台预连接该站点上次用到的其他来源
+     */
+    public void onPageStarted(String url) {
+        if (cache.isOffline()) {
+            return;
+        }
+        final List<String> origins = predictor.predict(url);
+        if (origins.isEmpty()) {
+            return;
+        }
+        final HttpClient client = cache.getClient();
+        for (final String origin : origins) {
+            Observable.create(new ObservableOnSubscribe<Boolean>() {
+                @Override
+                public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
+                    emitter.onNext(client.preconnect(origin));
+                    emitter.onComplete();
+                }
+            }).subscribeOn(Schedulers.io())
+                    .subscribe(new Consumer<Boolean>() {
+                        @Override
+                        public void accept(Boolean connected) throws Exception {
+                            // 结果体现在连接池的统计中
+                        }
+                    }, new Consumer<Throwable>() {
+                        @Override
+                        public void accept(Throwable throwable) throws Exception {
+                            throwable.printStackTrace();
+                        }
+                    });
+        }
+    }
+
+    private void logStats() {
+        HttpClient client = cache.getClient();
+        EasyLog.d(TAG, "hit: " + cache.getHitCount() + ", revalidated: " + cache.getRevalidatedCount()
+                + ", stale: " + cache.getStaleHitCount() + ", miss: " + cache.getMissCount()
+                + ", bypass: " + cache.getBypassCount() + ", network: " + cache.getNetworkBytes() / 1024
+                + "KB, from cache: " + cache.getCacheBytes() / 1024 + "KB, size: " + cache.getSize() / 1024 + "KB");
+        EasyLog.d(TAG, "requests: " + client.getRequestCount() + ", connections: " + client.getConnectionCount()
+                + ", reused: " + client.getReuseCount() + ", retried: " + client.getRetryCount()
+                + ", busy: " + client.getBusyCount() + ", preconnect: " + client.getPreconnectHitCount()
+                + "/" + client.getPreconnectCount() + ", avg ttfb: " + client.getAverageTtfbNanos() / 1000000
+                + "ms, avg connect: " + client.getAverageConnectNanos() / 1000000 + "ms");
+    }
+
+    /**
+     * @return scheme://host[:port]，不是http或https地址时返回null
+     */
+    @Nullable
+    private static String originOf(@Nullable String url) {
+        if (url == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        if (uri.getHost() == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+            return null;
+        }
+        int port = uri.getPort();
+        return scheme.toLowerCase(Locale.ROOT) + "://" + uri.getHost().toLowerCase(Locale.ROOT)
+                + (port == -1 ? "" : ":" + port);
+    }
+
+    public HttpCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,248 @@
+package ricky.easybrowser.web;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.utils.SharedPreferencesUtils;
+import ricky.easybrowser.web.block.ResourceType;
+
+/**
+ * 无图模式的统一实现，所有WebView在 shouldInterceptRequest 中调用。
+ * <p>
+ * 请求阶段按Sec-Fetch-Dest、Accept及扩展名(含webp、avif、svg)判断是否为图片，响应阶段再按MIME类型判断一次，
+ * 命中时返回内存中的占位图，不再加载原图。占位图只从assets读取一次。
+ * <p>
+ * 开关保存在内存中，切换后立即对所有打开的标签页生效，不需要重新加载页面：开启后新的图片请求返回占位图，
+ * 关闭时通知各WebView重新加载已替换为占位图的图片。
+ * <p>
+ * 节省的流量：响应阶段拦截的按Content-Length累计；请求阶段拦截的无法得知原图大小，按关闭无图模式时观察到的平均图片大小估算。
+ * 从磁盘缓存读取的响应不消耗流量，既不计入节省的流量，也不参与平均图片大小的估算
+ */
+public class ImagePolicy {
+
+    private static final String TAG = "ImagePolicy";
+
+    private static final String PLACEHOLDER_ASSET = "emptyplaceholder.png";
+    /**
+     * 还没有观察到图片大小时，估算每张图片的大小
+     */
+    private static final long DEFAULT_IMAGE_BYTES = 20 * 1024;
+
+    /**
+     * 重新加载页面中的图片。占位图不缓存，替换过的图片会重新请求，原本就已显示的图片从缓存读取
+     */
+    public static final String RELOAD_IMAGES_SCRIPT = "(function(){var m=document.images;"
+            + "for(var i=0;i<m.length;i++){var g=m[i];if(g.currentSrc){"
+            + "var s=g.src,ss=g.srcset;g.removeAttribute('srcset');g.src='about:blank';"
+            + "if(ss){g.srcset=ss;}g.src=s;}}})();";
+
+    /**
+     * 无图模式切换时在UI线程回调
+     */
+    public interface OnNoPicModeChangeListener {
+        void onNoPicModeChange(boolean noPicMode);
+    }
+
+    private final Context appContext;
+    private volatile boolean noPicMode;
+    @Nullable
+    private volatile byte[] placeholder;
+
+    /**
+     * 登记的监听，WebView销毁时移除，遗漏时随GC回收。仅在UI线程中访问
+     */
+    private final Map<OnNoPicModeChangeListener, Boolean> listeners = new WeakHashMap<>();
+
+    private final AtomicLong replacedCount = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+    private final AtomicLong observedImages = new AtomicLong();
+    private final AtomicLong observedBytes = new AtomicLong();
+
+    public ImagePolicy(Context context) {
+        this.appContext = context.getApplicationContext();
+        SharedPreferences sp = SharedPreferencesUtils.getSettingSP(appContext);
+        noPicMode = sp != null && sp.getBoolean(SharedPreferencesUtils.KEY_NO_PIC_MODE, false);
+    }
+
+    public boolean isNoPicMode() {
+        return noPicMode;
+    }
+
+    /**
+     * 保存开关并通知所有登记的WebView，仅在UI线程调用
+     */
+    public void setNoPicMode(boolean noPicMode) {
+        if (this.noPicMode == noPicMode) {
+            return;
+        }
+        this.noPicMode = noPicMode;
+        SharedPreferences sp = SharedPreferencesUtils.getSettingSP(appContext);
+        if (sp != null) {
+            sp.edit().putBoolean(SharedPreferencesUtils.KEY_NO_PIC_MODE, noPicMode).apply();
+        }
+        List<OnNoPicModeChangeListener> targets = new ArrayList<>(listeners.keySet());
+        for (OnNoPicModeChangeListener listener : targets) {
+            listener.onNoPicModeChange(noPicMode);
+        }
+        EasyLog.d(TAG, "no pic mode: " + noPicMode + ", replaced: " + replacedCount.get()
+                + ", saved: " + savedBytes.get() / 1024 + "KB");
+    }
+
+    public void addListener(OnNoPicModeChangeListener listener) {
+        listeners.put(listener, Boolean.TRUE);
+    }
+
+    public void removeListener(OnNoPicModeChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 请求阶段判断，在WebView的IO线程调用
+     *
+     * @return 无图模式下的图片请求返回占位图，否则返回null
+     */
+    @Nullable
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!noPicMode || request.isForMainFrame()) {
+            return null;
+        }
+        Map<String, String> headers = request.getRequestHeaders();
+        int type = ResourceType.detect(request.getUrl().toString(),
+                WebHeaders.get(headers, "Sec-Fetch-Dest"), WebHeaders.get(headers, "Accept"), false);
+        if (type != ResourceType.IMAGE) {
+            return null;
+        }
+        replacedCount.incrementAndGet();
+        savedBytes.addAndGet(averageImageBytes());
+        return placeholderResponse();
+    }
+
+    /**
+     * 响应阶段按MIME类型判断，用于请求阶段无法识别的图片(如没有扩展名的图片接口)。
+     * 未开启无图模式时记录图片大小，用于估算请求阶段节省的流量
+     *
+     * @param fromNetwork 响应是否来自网络，从缓存读取(含304后从缓存读取)的不计入流量统计
+     * @return 需要替换时返回占位图并关闭原响应，否则返回原响应
+     */
+    public WebResourceResponse filterResponse(WebResourceResponse response, boolean fromNetwork) {
+        String mimeType = response.getMimeType();
+        if (mimeType == null || !mimeType.startsWith("image/")) {
+            return response;
+        }
+        long length = fromNetwork ? contentLength(response.getResponseHeaders()) : 0;
+        if (!noPicMode) {
+            if (length > 0) {
+                observedImages.incrementAndGet();
+                observedBytes.addAndGet(length);
+            }
+            return response;
+        }
+        InputStream data = response.getData();
+        if (data != null) {
+            try {
+                // 未读取的响应体不再下载
+                data.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        replacedCount.incrementAndGet();
+        if (fromNetwork) {
+            savedBytes.addAndGet(length > 0 ? length : averageImageBytes());
+        }
+        return placeholderResponse();
+    }
+
+    private WebResourceResponse placeholderResponse() {
+        // 禁止缓存占位图，关闭无图模式后重新请求时能拿到原图
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "no-store");
+        return new WebResourceResponse("image/png", null, 200, "OK", headers,
+                new ByteArrayInputStream(placeholder()));
+    }
+
+    private byte[] placeholder() {
+        byte[] bytes = placeholder;
+        if (bytes != null) {
+            return bytes;
+        }
+        synchronized (this) {
+            if (placeholder == null) {
+                placeholder = loadPlaceholder();
+            }
+            return placeholder;
+        }
+    }
+
+    private byte[] loadPlaceholder() {
+        InputStream in = null;
+        try {
+            in = appContext.getAssets().open(PLACEHOLDER_ASSET);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new byte[0];
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private long averageImageBytes() {
+        long images = observedImages.get();
+        return images == 0 ? DEFAULT_IMAGE_BYTES : observedBytes.get() / images;
+    }
+
+    private static long contentLength(@Nullable Map<String, String> headers) {
+        String value = WebHeaders.get(headers, "Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 替换为占位图的图片数
+     */
+    public long getReplacedCount() {
+        return replacedCount.get();
+    }
+
+    /**
+     * 节省的流量(字节)，部分为估算值
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+}
@@ -0,0 +1,187 @@
+package ricky.easybrowser.web;
+
+import android.annotation.SuppressLint;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.webkit.ValueCallback;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
+import android.webkit.WebView;
+
+import androidx.annotation.Nullable;
+
+import java.security.SecureRandom;
+
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * 采集网页中的媒体播放、输入焦点及表单输入状态，供标签页淘汰策略使用。
+ * <p>
+ * 页面加载完成后向主frame注入脚本，在document上以捕获方式监听play/pause、focusin/focusout及input事件。
+ * 不向页面暴露JavascriptInterface：每次注入时新建消息通道，通过postWebMessage只把端口发给当前页面来源的主frame，
+ * 脚本凭本次注入生成的随机口令领取端口，之后经该端口回传状态。子frame及其他来源的页面拿不到端口。
+ * 回调在UI线程中执行
+ */
+public class PageSignalBridge {
+
+    private static final String TAG = "PageSignalBridge";
+
+    private static final String MSG_MEDIA_ON = "m1";
+    private static final String MSG_MEDIA_OFF = "m0";
+    private static final String MSG_FOCUS_ON = "f1";
+    private static final String MSG_FOCUS_OFF = "f0";
+    private static final String MSG_INPUT = "i";
+
+    /**
+     * 参数为本次注入的口令
+     */
+    private static final String SCRIPT = "(function(t){"
+            + "var w=window,g=w.__easySignals;"
+            + "if(!g){g=w.__easySignals={p:null};"
+            + "var s=function(m){if(g.p)g.p.postMessage(m);};"
+            + "var playing=function(){var m=document.querySelectorAll('video,audio');"
+            + "for(var i=0;i<m.length;i++){if(!m[i].paused&&!m[i].ended)return true;}return false;};"
+            + "['play','pause','ended'].forEach(function(e){document.addEventListener(e,function(){s(playing()?'" + MSG_MEDIA_ON + "':'" + MSG_MEDIA_OFF + "');},true);});"
+            + "var editable=function(e){return e&&(e.tagName=='INPUT'||e.tagName=='TEXTAREA'||e.isContentEditable);};"
+            + "document.addEventListener('focusin',function(e){if(editable(e.target))s('" + MSG_FOCUS_ON + "');},true);"
+            + "document.addEventListener('focusout',function(e){if(editable(e.target))s('" + MSG_FOCUS_OFF + "');},true);"
+            + "document.addEventListener('input',function(e){if(editable(e.target))s('" + MSG_INPUT + "');},true);}"
+            + "var h=function(e){if(e.data===t&&e.ports&&e.ports.length){w.removeEventListener('message',h,true);"
+            + "e.stopImmediatePropagation();g.p=e.ports[0];}};"
+            + "w.addEventListener('message',h,true);"
+            + "})('%s');";
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Nullable
+    private WebMessagePort port;
+
+    private volatile boolean mediaPlaying;
+    private volatile boolean inputFocused;
+    private volatile boolean formDirty;
+    private volatile long lastInteractionTime;
+
+    @SuppressLint("ClickableViewAccessibility")
+    public void attach(WebView webView) {
+        webView.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                    markInteraction();
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 页面开始加载时清空上一个页面的状态，并关闭上一个页面的消息通道
+     */
+    public void reset() {
+        closePort();
+        mediaPlaying = false;
+        inputFocused = false;
+        formDirty = false;
+    }
+
+    /**
+     * 页面加载完成后注入监听脚本，仅对http(s)页面生效
+     */
+    public void inject(final WebView webView) {
+        if (!webView.getSettings().getJavaScriptEnabled()) {
+            return;
+        }
+        final Uri origin = originOf(webView.getUrl());
+        if (origin == null) {
+            return;
+        }
+        closePort();
+        final WebMessagePort[] ports = webView.createWebMessageChannel();
+        final String token = newToken();
+        port = ports[0];
+        ports[0].setWebMessageCallback(new WebMessagePort.WebMessageCallback() {
+            @Override
+            public void onMessage(WebMessagePort p, WebMessage message) {
+                if (p == port) {
+                    onSignal(message.getData());
+                }
+            }
+        });
+        webView.evaluateJavascript(String.format(SCRIPT, token), new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                if (port != ports[0]) {
+                    // 脚本执行期间页面已切换
+                    ports[1].close();
+                    return;
+                }
+                // 只投递给该来源的主frame，脚本在监听器中校验口令
+                webView.postWebMessage(new WebMessage(token, new WebMessagePort[]{ports[1]}), origin);
+            }
+        });
+    }
+
+    public void markInteraction() {
+        lastInteractionTime = SystemClock.uptimeMillis();
+    }
+
+    public void collect(TabSignals signals) {
+        signals.mediaPlaying = mediaPlaying;
+        signals.inputFocused = inputFocused;
+        signals.formDirty = formDirty;
+        signals.lastInteractionTime = Math.max(signals.lastInteractionTime, lastInteractionTime);
+    }
+
+    private void onSignal(@Nullable String data) {
+        if (MSG_MEDIA_ON.equals(data)) {
+            mediaPlaying = true;
+        } else if (MSG_MEDIA_OFF.equals(data)) {
+            mediaPlaying = false;
+        } else if (MSG_FOCUS_ON.equals(data)) {
+            inputFocused = true;
+            markInteraction();
+        } else if (MSG_FOCUS_OFF.equals(data)) {
+            inputFocused = false;
+            markInteraction();
+        } else if (MSG_INPUT.equals(data)) {
+            formDirty = true;
+            markInteraction();
+        } else {
+            EasyLog.w(TAG, "unknown signal: " + data);
+        }
+    }
+
+    private void closePort() {
+        if (port != null) {
+            port.close();
+            port = null;
+        }
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    @Nullable
+    private static Uri originOf(@Nullable String url) {
+        if (url == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            return null;
+        }
+        return Uri.parse(scheme + "://" + uri.getEncodedAuthority());
+    }
+}
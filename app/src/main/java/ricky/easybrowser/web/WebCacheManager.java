@@ -0,0 +1,398 @@
+package ricky.easybrowser.web;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import ricky.easybrowser.utils.EasyLog;
+import ricky.easybrowser.utils.SharedPreferencesUtils;
+import ricky.easybrowser.web.cache.HttpCache;
+
+/**
+ * WebView磁盘缓存管理。
+ * <p>
+ * WebView的HTTP缓存由进程中所有WebView共享，标签页关闭或被淘汰时不再清除，只按以下策略清理：
+ * <ul>
+ * <li>缓存目录超过容量上限</li>
+ * <li>距上次清理超过保留时间(WebView不提供按条目过期的接口，到期后整体清理)</li>
+ * <li>用户在设置中主动清除</li>
+ * </ul>
+ * 策略在启动后及每加载一定数量的页面后，于后台线程统计目录大小，需要清理时由下一个加载完成的页面的WebView执行，
+ * 不为清理单独创建WebView。用户主动清除时立即通过已打开的WebView执行，没有打开的WebView时同样等下一个页面。
+ * <p>
+ * 页面加载完成后通过Resource Timing统计主文档及子资源中从缓存读取的比例，按首次访问与重复访问分别累计，
+ * 用于衡量缓存对重复访问的效果。跨域且未允许Timing-Allow-Origin的资源无法判断，不计入统计
+ * <p>
+ * 应用层的 {@link HttpCache} 自行按容量淘汰，只在整体清理时一并清空
+ */
+public class WebCacheManager {
+
+    private static final String TAG = "WebCacheManager";
+
+    public static final long DEFAULT_MAX_BYTES = 200L * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MS = 14L * 24 * 60 * 60 * 1000;
+
+    /**
+     * 每加载多少个页面重新检查一次
+     */
+    private static final int CHECK_INTERVAL_PAGES = 50;
+    /**
+     * 记录访问过的页面数量上限，超出后丢弃最早访问的
+     */
+    private static final int MAX_VISITED_PAGES = 500;
+
+    /**
+     * Chromium在应用缓存目录下使用的目录，随WebView版本不同
+     */
+    private static final String[] CACHE_DIR_NAMES = {"WebView", "org.chromium.android_webview"};
+
+    /**
+     * 返回"资源数,缓存命中数,网络传输字节数,缓存读取字节数"
+     */
+    private static final String PROBE_SCRIPT = "(function(){if(!window.performance||!performance.getEntriesByType)return '';"
+            + "var e=performance.getEntriesByType('navigation').concat(performance.getEntriesByType('resource'));"
+            + "var t=0,c=0,tb=0,cb=0;for(var i=0;i<e.length;i++){var x=e[i];if(!x.decodedBodySize)continue;t++;"
+            + "if(x.transferSize===0){c++;cb+=x.decodedBodySize;}else{tb+=x.transferSize;}}"
+            + "return t+','+c+','+tb+','+cb;})();";
+
+    /**
+     * 首次访问或重复访问的累计数据
+     */
+    public static final class HitStats {
+        private int pages;
+        private long resources;
+        private long hits;
+        private long networkBytes;
+        private long cachedBytes;
+
+        public int getPages() {
+            return pages;
+        }
+
+        public long getResources() {
+            return resources;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getNetworkBytes() {
+            return networkBytes;
+        }
+
+        public long getCachedBytes() {
+            return cachedBytes;
+        }
+
+        /**
+         * 资源的缓存命中率，没有数据时返回0
+         */
+        public float getHitRate() {
+            return resources == 0 ? 0f : (float) hits / resources;
+        }
+    }
+
+    private final Context appContext;
+    private HttpCache httpCache;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long maxAgeMs = DEFAULT_MAX_AGE_MS;
+
+    private final Map<String, Boolean> visitedPages = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_VISITED_PAGES;
+        }
+    };
+    private final HitStats firstVisit = new HitStats();
+    private final HitStats repeatVisit = new HitStats();
+
+    private int pagesSinceCheck;
+    private boolean checking;
+    /**
+     * 等待中的清理原因，没有等待中的清理时为null
+     */
+    @Nullable
+    private String pendingClearReason;
+    private long lastMeasuredBytes = -1;
+    private int clearCount;
+
+    public WebCacheManager(Context context) {
+        this.appContext = context.getApplicationContext();
+    }
+
+    /**
+     * 设置缓存容量上限及保留时间，之后的检查按新设置执行
+     */
+    public void setPolicy(long maxBytes, long maxAgeMs) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    public void setHttpCache(@Nullable HttpCache httpCache) {
+        this.httpCache = httpCache;
+    }
+
+    /**
+     * 在后台线程统计缓存目录大小，超出容量或超过保留时间时清理
+     */
+    public void scheduleCheck() {
+        if (checking) {
+            return;
+        }
+        checking = true;
+        pagesSinceCheck = 0;
+        Observable.create(new ObservableOnSubscribe<Long>() {
+            @Override
+            public void subscribe(ObservableEmitter<Long> emitter) throws Exception {
+                emitter.onNext(measureCacheBytes());
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Consumer<Long>() {
+                    @Override
+                    public void accept(Long bytes) throws Exception {
+                        checking = false;
+                        onCacheMeasured(bytes);
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        checking = false;
+                        throwable.printStackTrace();
+                    }
+                });
+    }
+
+    private void onCacheMeasured(long bytes) {
+        lastMeasuredBytes = bytes;
+        long lastClear = getLastClearTime();
+        long now = System.currentTimeMillis();
+        if (lastClear <= 0) {
+            // 首次运行，从现在开始计算保留时间
+            saveLastClearTime(now);
+            lastClear = now;
+        }
+        EasyLog.i(TAG, "cache size: " + bytes / 1024 + "KB / " + maxBytes / 1024 + "KB, age: "
+                + (now - lastClear) / 1000 + "s");
+        if (bytes > maxBytes) {
+            requestClear("size " + bytes);
+        } else if (now - lastClear > maxAgeMs) {
+            requestClear("age " + (now - lastClear));
+        }
+    }
+
+    /**
+     * 请求清理缓存。
+     * <p>
+     * WebView的磁盘缓存只能通过WebView实例清除，主线程上新建WebView需要加载Chromium，启动阶段尤其耗时，
+     * 因此不专门创建实例，而是等下一个页面加载完成时使用该页面的WebView清除；应用层HTTP缓存在后台线程清除
+     *
+     * @param reason 清理原因，输出到日志中
+     */
+    public void requestClear(String reason) {
+        if (pendingClearReason != null) {
+            return;
+        }
+        pendingClearReason = reason;
+        clearHttpCache();
+    }
+
+    /**
+     * 用户主动清除缓存，需在主线程调用。不受等待中的清理影响，有已打开的WebView时立即清除，
+     * 否则与 {@link #requestClear(String)} 相同，等下一个页面加载完成时清除
+     *
+     * @return 已清除时返回true，等待下一个页面时返回false
+     */
+    public boolean clearNow(String reason) {
+        clearHttpCache();
+        if (!WebViewLifecycle.getInstance().clearCache()) {
+            pendingClearReason = reason;
+            return false;
+        }
+        pendingClearReason = null;
+        onCleared(reason);
+        return true;
+    }
+
+    private void clearHttpCache() {
+        final HttpCache target = httpCache;
+        if (target == null) {
+            return;
+        }
+        Observable.create(new ObservableOnSubscribe<Boolean>() {
+            @Override
+            public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
+                target.clear();
+                emitter.onNext(Boolean.TRUE);
+                emitter.onComplete();
+            }
+        }).subscribeOn(Schedulers.io())
+                .subscribe(new Consumer<Boolean>() {
+                    @Override
+                    public void accept(Boolean cleared) throws Exception {
+                        EasyLog.i(TAG, "http cache cleared");
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        throwable.printStackTrace();
+                    }
+                });
+    }
+
+    /**
+     * 使用已有的WebView执行等待中的清理，需在主线程调用
+     */
+    private void clearPending(WebView webView) {
+        String reason = pendingClearReason;
+        pendingClearReason = null;
+        webView.clearCache(true);
+        onCleared(reason);
+    }
+
+    private void onCleared(String reason) {
+        saveLastClearTime(System.currentTimeMillis());
+        lastMeasuredBytes = 0;
+        clearCount++;
+        EasyLog.i(TAG, "cache cleared: " + reason);
+    }
+
+    /**
+     * 页面加载完成后统计缓存命中情况，有等待中的清理时先用该WebView执行
+     */
+    public void probe(WebView webView, @Nullable final String url) {
+        if (pendingClearReason != null) {
+            clearPending(webView);
+        }
+        if (url == null || !url.startsWith("http") || !webView.getSettings().getJavaScriptEnabled()) {
+            return;
+        }
+        webView.evaluateJavascript(PROBE_SCRIPT, new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                recordProbe(url, value);
+            }
+        });
+        if (++pagesSinceCheck >= CHECK_INTERVAL_PAGES) {
+            scheduleCheck();
+        }
+    }
+
+    private void recordProbe(String url, @Nullable String value) {
+        if (value == null) {
+            return;
+        }
+        // evaluateJavascript返回JSON字符串，去掉两端的引号
+        String raw = value.replace("\"", "");
+        String[] parts = raw.split(",");
+        if (parts.length != 4) {
+            return;
+        }
+        long resources;
+        long hits;
+        long networkBytes;
+        long cachedBytes;
+        try {
+            resources = Long.parseLong(parts[0]);
+            hits = Long.parseLong(parts[1]);
+            networkBytes = Long.parseLong(parts[2]);
+            cachedBytes = Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (resources <= 0) {
+            return;
+        }
+        String key = pageKey(url);
+        boolean repeat = visitedPages.containsKey(key);
+        visitedPages.put(key, Boolean.TRUE);
+        HitStats stats = repeat ? repeatVisit : firstVisit;
+        stats.pages++;
+        stats.resources += resources;
+        stats.hits += hits;
+        stats.networkBytes += networkBytes;
+        stats.cachedBytes += cachedBytes;
+        EasyLog.d(TAG, (repeat ? "repeat" : "first") + " visit " + hits + "/" + resources
+                + " from cache, repeat hit rate: " + repeatVisit.getHitRate()
+                + ", first hit rate: " + firstVisit.getHitRate());
+    }
+
+    /**
+     * 去掉地址中的片段，同一页面的不同锚点视为同一页面
+     */
+    private static String pageKey(String url) {
+        int hash = url.indexOf('#');
+        return hash < 0 ? url : url.substring(0, hash);
+    }
+
+    private long measureCacheBytes() {
+        long total = 0;
+        File cacheDir = appContext.getCacheDir();
+        for (String name : CACHE_DIR_NAMES) {
+            total += sizeOf(new File(cacheDir, name));
+        }
+        return total;
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        File[] children = file.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        long total = 0;
+        for (File child : children) {
+            total += sizeOf(child);
+        }
+        return total;
+    }
+
+    private long getLastClearTime() {
+        SharedPreferences sp = SharedPreferencesUtils.getSettingSP(appContext);
+        return sp == null ? 0 : sp.getLong(SharedPreferencesUtils.KEY_WEB_CACHE_CLEAR_TIME, 0);
+    }
+
+    private void saveLastClearTime(long time) {
+        SharedPreferences sp = SharedPreferencesUtils.getSettingSP(appContext);
+        if (sp != null) {
+            sp.edit().putLong(SharedPreferencesUtils.KEY_WEB_CACHE_CLEAR_TIME, time).apply();
+        }
+    }
+
+    public HitStats getFirstVisitStats() {
+        return firstVisit;
+    }
+
+    public HitStats getRepeatVisitStats() {
+        return repeatVisit;
+    }
+
+    /**
+     * 最近一次统计的缓存目录大小，尚未统计时返回-1
+     */
+    public long getLastMeasuredBytes() {
+        return lastMeasuredBytes;
+    }
+
+    public int getClearCount() {
+        return clearCount;
+    }
+}
@@ -0,0 +1,27 @@
+package ricky.easybrowser.web;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * WebView请求及响应头的读取。WebView传入的头名称大小写不固定，按名称忽略大小写查找
+ */
+final class WebHeaders {
+
+    private WebHeaders() {
+    }
+
+    @Nullable
+    static String get(@Nullable Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+package ricky.easybrowser.web;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.webkit.WebBackForwardList;
+import android.webkit.WebView;
+
+import androidx.annotation.Nullable;
+
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+
+/**
+ * PageWebView与PageNestedWebView共用的页面状态处理：保存及恢复页面状态(含滚动位置)、渲染进程优先级、
+ * 内存统计，以及滚动事件的节流。每个页面视图持有一个实例，仅在UI线程中使用
+ */
+public final class WebPageStateHelper {
+
+    private static final String KEY_SCROLL_X = "scroll_x";
+    private static final String KEY_SCROLL_Y = "scroll_y";
+    /**
+     * 滚动事件最多按该间隔向上层报告一次，上层只关心最近是否在滚动
+     */
+    private static final long SCROLL_REPORT_INTERVAL_MS = 200;
+
+    /**
+     * 从休眠状态恢复后，等待页面加载完成再恢复的滚动位置
+     */
+    private boolean hasPendingScroll;
+    private int pendingScrollX;
+    private int pendingScrollY;
+    private long lastScrollReportTime;
+
+    public void saveState(@Nullable WebView webView, Bundle outState) {
+        if (webView == null) {
+            return;
+        }
+        webView.saveState(outState);
+        outState.putInt(KEY_SCROLL_X, webView.getScrollX());
+        outState.putInt(KEY_SCROLL_Y, webView.getScrollY());
+    }
+
+    /**
+     * @return WebView无法恢复该状态时返回false，由调用方按地址重新加载
+     */
+    public boolean restoreState(@Nullable WebView webView, @Nullable Bundle savedState) {
+        if (webView == null || savedState == null) {
+            return false;
+        }
+        if (webView.restoreState(savedState) == null) {
+            return false;
+        }
+        // 滚动位置需在页面加载完成后恢复
+        pendingScrollX = savedState.getInt(KEY_SCROLL_X, 0);
+        pendingScrollY = savedState.getInt(KEY_SCROLL_Y, 0);
+        hasPendingScroll = pendingScrollX != 0 || pendingScrollY != 0;
+        return true;
+    }
+
+    /**
+     * 页面加载完成时调用，恢复等待中的滚动位置
+     */
+    public void onPageFinished(WebView view) {
+        if (hasPendingScroll) {
+            hasPendingScroll = false;
+            view.scrollTo(pendingScrollX, pendingScrollY);
+        }
+    }
+
+    /**
+     * 页面滚动时调用
+     *
+     * @return 距离上次报告已超过间隔，需要通知上层时返回true
+     */
+    public boolean onScrolled() {
+        long now = SystemClock.uptimeMillis();
+        if (now - lastScrollReportTime < SCROLL_REPORT_INTERVAL_MS) {
+            return false;
+        }
+        lastScrollReportTime = now;
+        return true;
+    }
+
+    public static void setBackgroundPriority(@Nullable WebView webView, boolean background) {
+        if (webView == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        webView.setRendererPriorityPolicy(background
+                ? WebView.RENDERER_PRIORITY_WAIVED : WebView.RENDERER_PRIORITY_IMPORTANT, true);
+    }
+
+    public static void collectMemoryStats(@Nullable WebView webView, int resourceCount, TabMemoryStats stats) {
+        if (webView == null) {
+            return;
+        }
+        stats.hasWebView = true;
+        stats.contentWidth = webView.getWidth();
+        stats.contentHeight = (int) (webView.getContentHeight() * webView.getScale());
+        WebBackForwardList historyList = webView.copyBackForwardList();
+        stats.historySize = historyList == null ? 0 : historyList.getSize();
+        stats.resourceCount = resourceCount;
+    }
+}
@@ -0,0 +1,196 @@
+package ricky.easybrowser.web;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.utils.EasyLog;
+
+/**
+ * WebView生命周期的统一调度。
+ * <p>
+ * 脚本定时器的暂停恢复作用于进程中所有WebView，不能由各个标签页分别调用：切换标签页时隐藏与显示的回调顺序不固定，
+ * 后到的暂停会让前台标签页的脚本停止。这里只按浏览器页面是否在前台决定定时器状态，标签页只登记自己的WebView是否可见。
+ * <p>
+ * 每个WebView的实际状态由"是否可见"与"浏览器页面是否在前台"两项共同决定，与事件到达的顺序无关：
+ * <ul>
+ * <li>可见且页面在前台：恢复运行，渲染进程优先级为IMPORTANT</li>
+ * <li>其余情况：暂停页面中的音视频并暂停WebView(动画、地理位置等)；不可见的WebView渲染进程优先级降为WAIVED</li>
+ * </ul>
+ * 仅在UI线程中使用
+ */
+public class WebViewLifecycle {
+
+    private static final String TAG = "WebViewLifecycle";
+
+    /**
+     * 暂停页面中所有音视频元素，WebView暂停后媒体不一定停止播放
+     */
+    public static final String PAUSE_MEDIA_SCRIPT = "(function(){var m=document.querySelectorAll('video,audio');"
+            + "for(var i=0;i<m.length;i++){if(!m[i].paused){m[i].pause();}}})();";
+
+    private static WebViewLifecycle instance;
+
+    public static WebViewLifecycle getInstance() {
+        if (instance == null) {
+            instance = new WebViewLifecycle();
+        }
+        return instance;
+    }
+
+    private static final class Entry {
+        boolean visible;
+        /**
+         * 已生效的运行状态，null表示尚未设置
+         */
+        @Nullable
+        Boolean active;
+        @Nullable
+        Boolean background;
+    }
+
+    /**
+     * 登记的WebView，WebView销毁后由 {@link #forget(IWebView)} 移除，遗漏时随GC回收
+     */
+    private final Map<IWebView, Entry> entries = new WeakHashMap<>();
+    private int resumedHosts;
+    /**
+     * 已生效的定时器状态，WebView默认不暂停
+     */
+    private boolean timersPaused;
+
+    private int timerPauseCount;
+    private int timerResumeCount;
+
+    private WebViewLifecycle() {
+    }
+
+    /**
+     * 浏览器页面恢复到前台
+     */
+    public void onHostResume() {
+        resumedHosts++;
+        applyAll();
+    }
+
+    /**
+     * 浏览器页面进入后台
+     */
+    public void onHostPause() {
+        resumedHosts = Math.max(0, resumedHosts - 1);
+        applyAll();
+    }
+
+    public boolean isHostResumed() {
+        return resumedHosts > 0;
+    }
+
+    /**
+     * 登记WebView是否显示在前台标签页中，重复设置相同的值不做任何操作
+     */
+    public void setVisible(IWebView webView, boolean visible) {
+        Entry entry = entries.get(webView);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(webView, entry);
+        }
+        entry.visible = visible;
+        apply(webView, entry);
+        applyTimers(webView);
+    }
+
+    /**
+     * WebView从标签页中取出(交给其他标签页，或关闭标签页后暂存以便重新打开)时调用：只暂停该WebView自身并取消登记，
+     * 不调用进程全局的定时器接口，其余WebView不受影响。重新显示时由 {@link #setVisible(IWebView, boolean)} 再次登记
+     */
+    public void detach(IWebView webView) {
+        Entry entry = entries.remove(webView);
+        if (entry == null || entry.active == null || entry.active) {
+            webView.pauseMedia();
+            webView.onPause();
+        }
+        if (entry == null || entry.background == null || !entry.background) {
+            webView.setBackgroundPriority(true);
+        }
+    }
+
+    /**
+     * WebView销毁前取消登记
+     */
+    public void forget(IWebView webView) {
+        entries.remove(webView);
+    }
+
+    /**
+     * 通过任意一个登记的WebView清除进程共用的磁盘缓存
+     *
+     * @return 没有登记的WebView时返回false
+     */
+    public boolean clearCache() {
+        for (IWebView webView : entries.keySet()) {
+            if (webView.clearCache()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void applyAll() {
+        IWebView any = null;
+        for (Map.Entry<IWebView, Entry> entry : entries.entrySet()) {
+            apply(entry.getKey(), entry.getValue());
+            any = entry.getKey();
+        }
+        if (any != null) {
+            applyTimers(any);
+        }
+    }
+
+    private void apply(IWebView webView, Entry entry) {
+        boolean active = entry.visible && isHostResumed();
+        if (entry.active == null || entry.active != active) {
+            entry.active = active;
+            if (active) {
+                webView.onResume();
+            } else {
+                webView.pauseMedia();
+                webView.onPause();
+            }
+        }
+        boolean background = !entry.visible;
+        if (entry.background == null || entry.background != background) {
+            entry.background = background;
+            webView.setBackgroundPriority(background);
+        }
+    }
+
+    /**
+     * 定时器只跟随浏览器页面的前后台状态，保证前台标签页始终运行
+     *
+     * @param webView 任意一个存活的WebView，用于调用进程全局的定时器接口
+     */
+    private void applyTimers(IWebView webView) {
+        boolean paused = !isHostResumed();
+        if (paused == timersPaused) {
+            return;
+        }
+        timersPaused = paused;
+        webView.setTimersPaused(paused);
+        if (paused) {
+            timerPauseCount++;
+        } else {
+            timerResumeCount++;
+        }
+        EasyLog.i(TAG, "timers " + (paused ? "paused" : "resumed") + ", webviews: " + entries.size());
+    }
+
+    public int getTimerPauseCount() {
+        return timerPauseCount;
+    }
+
+    public int getTimerResumeCount() {
+        return timerResumeCount;
+    }
+}
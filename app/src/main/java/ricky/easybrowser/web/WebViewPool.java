@@ -0,0 +1,169 @@
+package ricky.easybrowser.web;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ContextThemeWrapper;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+import ricky.easybrowser.contract.IWebView;
+
+/**
+ * WebView实例池。
+ * <p>
+ * 新标签页打开网页时优先从池中取出备用的WebView，省去布局加载及WebView构造的耗时；进程中第一个WebView
+ * 还需要加载Chromium内核，由 {@link #prewarm(Context)} 在首帧之后的空闲时间预先创建备用实例，
+ * 每次取出后再于空闲时间补足到池容量，每个空闲时段只创建一个，避免连续构造造成卡顿。
+ * 池中只保存预创建、从未打开过网页的实例。打开过网页的WebView不论清理得多彻底，仍可能残留页面的脚本状态、
+ * 缓存及前进后退记录，关闭标签页后直接销毁，不放回池中。
+ * <p>
+ * 备用实例使用带应用主题的Application Context创建，不持有Activity；取出时再切换为调用方的Activity。
+ * 池容量跟随标签页缓存容量，内存紧张时不保留也不预创建备用实例。仅在UI线程中使用
+ */
+public class WebViewPool {
+
+    public static final int DEFAULT_MAX_SIZE = 2;
+
+    /**
+     * 创建及切换WebView的Context
+     */
+    public interface Factory {
+        IWebView create(Context context);
+
+        void rebind(IWebView webView, Context context);
+    }
+
+    private final Factory factory;
+    private final ArrayDeque<IWebView> spares = new ArrayDeque<>();
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private int configuredMaxSize = DEFAULT_MAX_SIZE;
+    /**
+     * 等待执行的预创建任务
+     */
+    @Nullable
+    private MessageQueue.IdleHandler prewarmTask;
+
+    private int hitCount;
+    private int missCount;
+
+    public WebViewPool(Factory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * 设置池容量，内存压力解除后恢复到该值
+     */
+    public void setMaxSize(int maxSize) {
+        this.configuredMaxSize = Math.max(0, maxSize);
+        this.maxSize = configuredMaxSize;
+        trimTo(this.maxSize);
+    }
+
+    /**
+     * 主线程空闲时创建备用WebView直到池容量，每次空闲只创建一个。只使用传入Context的Application Context
+     */
+    public void prewarm(Context context) {
+        if (prewarmTask != null || spares.size() >= maxSize) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        prewarmTask = new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (spares.size() >= maxSize) {
+                    prewarmTask = null;
+                    return false;
+                }
+                // 布局中的控件需要应用主题
+                spares.addLast(factory.create(
+                        new ContextThemeWrapper(appContext, appContext.getApplicationInfo().theme)));
+                boolean more = spares.size() < maxSize;
+                if (!more) {
+                    prewarmTask = null;
+                }
+                return more;
+            }
+        };
+        Looper.myQueue().addIdleHandler(prewarmTask);
+    }
+
+    /**
+     * 取出一个WebView，池为空时新建，之后在空闲时间补足备用实例
+     *
+     * @param context 使用WebView的Activity
+     */
+    public IWebView acquire(Context context) {
+        IWebView webView = spares.pollFirst();
+        if (webView != null) {
+            hitCount++;
+            factory.rebind(webView, context);
+        } else {
+            missCount++;
+            webView = factory.create(context);
+        }
+        prewarm(context);
+        return webView;
+    }
+
+    /**
+     * 销毁不再使用的WebView。打开过网页的实例不放回池中
+     */
+    public void release(@Nullable IWebView webView) {
+        if (webView == null || spares.contains(webView)) {
+            return;
+        }
+        webView.onDestroy();
+    }
+
+    /**
+     * 按标签页缓存的当前容量与基准容量调整池容量：容量因内存压力收缩一半以上时不再保留备用实例，
+     * 恢复到基准容量后回到设置值
+     */
+    public void onBudgetChanged(int capacity, int baseline) {
+        float ratio = baseline <= 0 ? 1f : (float) capacity / baseline;
+        if (ratio >= 1f) {
+            maxSize = configuredMaxSize;
+        } else if (ratio >= 0.5f) {
+            maxSize = Math.min(1, configuredMaxSize);
+        } else {
+            maxSize = 0;
+        }
+        trimTo(maxSize);
+    }
+
+    public void clear() {
+        if (prewarmTask != null) {
+            Looper.myQueue().removeIdleHandler(prewarmTask);
+            prewarmTask = null;
+        }
+        trimTo(0);
+    }
+
+    private void trimTo(int size) {
+        while (spares.size() > size) {
+            spares.pollLast().onDestroy();
+        }
+    }
+
+    public int getSize() {
+        return spares.size();
+    }
+
+    /**
+     * 取出时池中有备用实例的次数
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 取出时池为空、需要新建的次数
+     */
+    public int getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,451 @@
+package ricky.easybrowser.web.block;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static ricky.easybrowser.web.block.FilterCompiler.BUCKET_SIZE;
+import static ricky.easybrowser.web.block.FilterCompiler.DOMAIN_SIZE;
+import static ricky.easybrowser.web.block.FilterCompiler.NODE_SIZE;
+import static ricky.easybrowser.web.block.FilterCompiler.RULE_SIZE;
+
+/**
+ * 按 {@link FilterCompiler} 编译的规则文件判断请求是否拦截。
+ * <p>
+ * 规则文件只读映射到内存，匹配时直接读取映射区，不在Java堆上建立规则对象，加载几乎不耗时。
+ * 先沿域名树查找请求域名及其上级域名的规则，再按URL中的每个词查找分词桶，最后检查通用规则。
+ * 命中例外规则时放行，否则命中任意拦截规则即拦截。只读，可以在多个线程同时调用
+ */
+public final class ContentBlocker {
+
+    public static final int NO_MATCH = 0;
+    public static final int BLOCK = 1;
+    public static final int ALLOW = 2;
+
+    /**
+     * 一次匹配最多去重的桶数，超过后重复的桶会被再次检查，只影响耗时
+     */
+    private static final int MAX_VISITED_BUCKETS = 64;
+
+    private final ByteBuffer buffer;
+    private final int ruleCount;
+    private final int rulesOffset;
+    private final int stringsOffset;
+    private final int domainsOffset;
+    private final int trieOffset;
+    private final int hostIdsOffset;
+    private final int bucketsOffset;
+    private final int bucketMask;
+    private final int bucketIdsOffset;
+    private final int genericOffset;
+    private final int genericCount;
+    private final int skippedCount;
+
+    ContentBlocker(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < FilterCompiler.HEADER_SIZE
+                || buffer.getInt(FilterCompiler.H_MAGIC) != FilterCompiler.MAGIC
+                || buffer.getInt(FilterCompiler.H_VERSION) != FilterCompiler.VERSION
+                || buffer.getInt(FilterCompiler.H_FILE_SIZE) != buffer.capacity()) {
+            throw new IOException("invalid filter file");
+        }
+        this.buffer = buffer;
+        ruleCount = buffer.getInt(FilterCompiler.H_RULE_COUNT);
+        rulesOffset = buffer.getInt(FilterCompiler.H_RULES);
+        stringsOffset = buffer.getInt(FilterCompiler.H_STRINGS);
+        domainsOffset = buffer.getInt(FilterCompiler.H_DOMAINS);
+        trieOffset = buffer.getInt(FilterCompiler.H_TRIE);
+        hostIdsOffset = buffer.getInt(FilterCompiler.H_HOST_IDS);
+        bucketsOffset = buffer.getInt(FilterCompiler.H_BUCKETS);
+        bucketMask = buffer.getInt(FilterCompiler.H_BUCKET_COUNT) - 1;
+        bucketIdsOffset = buffer.getInt(FilterCompiler.H_BUCKET_IDS);
+        genericOffset = buffer.getInt(FilterCompiler.H_GENERIC);
+        genericCount = buffer.getInt(FilterCompiler.H_GENERIC_COUNT);
+        skippedCount = buffer.getInt(FilterCompiler.H_SKIPPED);
+    }
+
+    /**
+     * 映射编译好的规则文件
+     *
+     * @throws IOException 文件不存在或格式不对
+     */
+    public static ContentBlocker open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // 关闭文件后映射仍然有效
+            return new ContentBlocker(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * @param url         请求地址
+     * @param documentUrl 发起请求的页面地址，用于判断第三方请求和domain=选项，未知时为null
+     * @param type        {@link ResourceType} 中的类型
+     * @return {@link #BLOCK}、{@link #ALLOW} 或 {@link #NO_MATCH}
+     */
+    public int match(String url, String documentUrl, int type) {
+        Request request = Request.parse(url, documentUrl);
+        if (request == null) {
+            return NO_MATCH;
+        }
+        boolean blocked = false;
+
+        // 域名树，从顶级域名开始逐级向下
+        String host = request.host;
+        int node = 0;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            node = findChild(node, Domains.hash64(host, dot + 1, end));
+            if (node < 0) {
+                break;
+            }
+            int base = trieOffset + node * NODE_SIZE;
+            int result = matchRules(hostIdsOffset, buffer.getInt(base + 16), buffer.getInt(base + 20), request, type);
+            if (result == ALLOW) {
+                return ALLOW;
+            }
+            blocked |= result == BLOCK;
+            end = dot;
+        }
+
+        // 分词桶
+        byte[] lower = request.lower;
+        int[] visited = new int[MAX_VISITED_BUCKETS];
+        int visitedCount = 0;
+        int i = 0;
+        while (i < lower.length) {
+            if (!Domains.isTokenChar(lower[i])) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < lower.length && Domains.isTokenChar(lower[i])) {
+                i++;
+            }
+            if (i - start < 2) {
+                continue;
+            }
+            int bucket = Domains.hash32(lower, start, i) & bucketMask;
+            if (contains(visited, visitedCount, bucket)) {
+                continue;
+            }
+            if (visitedCount < MAX_VISITED_BUCKETS) {
+                visited[visitedCount++] = bucket;
+            }
+            int base = bucketsOffset + bucket * BUCKET_SIZE;
+            int count = buffer.getInt(base + 4);
+            if (count == 0) {
+                continue;
+            }
+            int result = matchRules(bucketIdsOffset, buffer.getInt(base), count, request, type);
+            if (result == ALLOW) {
+                return ALLOW;
+            }
+            blocked |= result == BLOCK;
+        }
+
+        int result = matchRules(genericOffset, 0, genericCount, request, type);
+        if (result == ALLOW) {
+            return ALLOW;
+        }
+        return blocked || result == BLOCK ? BLOCK : NO_MATCH;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在子节点中二分查找标签
+     *
+     * @return 子节点下标，没有时返回-1
+     */
+    private int findChild(int node, long hash) {
+        int base = trieOffset + node * NODE_SIZE;
+        int low = buffer.getInt(base + 8);
+        int high = low + buffer.getInt(base + 12) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = buffer.getLong(trieOffset + mid * NODE_SIZE);
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 检查一组规则，遇到例外规则立即返回
+     */
+    private int matchRules(int idsOffset, int start, int count, Request request, int type) {
+        int result = NO_MATCH;
+        for (int i = 0; i < count; i++) {
+            int rule = buffer.getInt(idsOffset + (start + i) * 4);
+            int base = rulesOffset + rule * RULE_SIZE;
+            int flags = buffer.getInt(base);
+            boolean exception = (flags & Filter.FLAG_EXCEPTION) != 0;
+            if (!exception && result == BLOCK) {
+                // 已经拦截，只需再找例外规则
+                continue;
+            }
+            if (matches(base, flags, request, type)) {
+                if (exception) {
+                    return ALLOW;
+                }
+                result = BLOCK;
+            }
+        }
+        return result;
+    }
+
+    private boolean matches(int base, int flags, Request request, int type) {
+        if ((buffer.getInt(base + 4) & type) == 0) {
+            return false;
+        }
+        if ((flags & Filter.FLAG_THIRD_PARTY) != 0 && !request.thirdParty) {
+            return false;
+        }
+        if ((flags & Filter.FLAG_FIRST_PARTY) != 0 && request.thirdParty) {
+            return false;
+        }
+        if ((flags & Filter.FLAG_HOST) == 0
+                && !matchPattern(flags, stringsOffset + buffer.getInt(base + 8), buffer.getInt(base + 12), request)) {
+            return false;
+        }
+        int domainCount = buffer.getInt(base + 20);
+        return domainCount == 0 || matchDomains(buffer.getInt(base + 16), domainCount, request);
+    }
+
+    /**
+     * domain= 选项：页面域名或其上级域名命中排除项时不匹配；有包含项时必须命中其中之一
+     */
+    private boolean matchDomains(int start, int count, Request request) {
+        long[] suffixes = request.documentSuffixHashes();
+        boolean hasInclude = false;
+        boolean included = false;
+        for (int i = 0; i < count; i++) {
+            int base = domainsOffset + (start + i) * DOMAIN_SIZE;
+            long hash = buffer.getLong(base);
+            boolean include = buffer.getInt(base + 8) != 0;
+            hasInclude |= include;
+            for (long suffix : suffixes) {
+                if (suffix == hash) {
+                    if (!include) {
+                        return false;
+                    }
+                    included = true;
+                    break;
+                }
+            }
+        }
+        return !hasInclude || included;
+    }
+
+    private boolean matchPattern(int flags, int pattern, int length, Request request) {
+        byte[] text = (flags & Filter.FLAG_MATCH_CASE) != 0 ? request.original : request.lower;
+        boolean anchorEnd = (flags & Filter.FLAG_ANCHOR_END) != 0;
+        if ((flags & Filter.FLAG_ANCHOR_START) != 0) {
+            return glob(pattern, length, text, 0, anchorEnd);
+        }
+        if ((flags & Filter.FLAG_ANCHOR_DOMAIN) != 0) {
+            // 从域名开头或任意一级域名的开头匹配
+            if (glob(pattern, length, text, request.hostStart, anchorEnd)) {
+                return true;
+            }
+            for (int i = request.hostStart; i < request.hostEnd; i++) {
+                if (text[i] == '.' && glob(pattern, length, text, i + 1, anchorEnd)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        byte first = buffer.get(pattern);
+        for (int i = 0; i < text.length; i++) {
+            if ((first == '^' || text[i] == first) && glob(pattern, length, text, i, anchorEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从text的from位置开始匹配模式，* 匹配任意字符串，^ 匹配一个分隔符或URL结尾
+     */
+    private boolean glob(int pattern, int length, byte[] text, int from, boolean anchorEnd) {
+        int p = 0;
+        int t = from;
+        int starP = -1;
+        int starT = -1;
+        while (true) {
+            if (p < length) {
+                byte c = buffer.get(pattern + p);
+                if (c == '*') {
+                    starP = ++p;
+                    starT = t;
+                    continue;
+                }
+                if (t < text.length && (c == '^' ? isSeparator(text[t]) : c == text[t])) {
+                    p++;
+                    t++;
+                    continue;
+                }
+                if (t == text.length && c == '^' && onlyStars(pattern, p + 1, length)) {
+                    return true;
+                }
+            } else if (!anchorEnd || t == text.length) {
+                return true;
+            }
+            if (starP < 0 || starT >= text.length) {
+                return false;
+            }
+            t = ++starT;
+            p = starP;
+        }
+    }
+
+    private boolean onlyStars(int pattern, int from, int length) {
+        for (int i = from; i < length; i++) {
+            if (buffer.get(pattern + i) != '*') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSeparator(byte c) {
+        return !((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '.' || c == '%');
+    }
+
+    /**
+     * 一次匹配用到的请求信息
+     */
+    private static final class Request {
+        byte[] original;
+        byte[] lower;
+        String host;
+        int hostStart;
+        int hostEnd;
+        String documentHost;
+        boolean thirdParty;
+        private long[] documentSuffixHashes;
+
+        static Request parse(String url, String documentUrl) {
+            int scheme = url.indexOf("://");
+            if (scheme <= 0) {
+                return null;
+            }
+            Request request = new Request();
+            int length = url.length();
+            request.original = new byte[length];
+            request.lower = new byte[length];
+            for (int i = 0; i < length; i++) {
+                char c = url.charAt(i);
+                byte b = c < 0x80 ? (byte) c : (byte) '?';
+                request.original[i] = b;
+                request.lower[i] = c >= 'A' && c <= 'Z' ? (byte) (c + ('a' - 'A')) : b;
+            }
+            int hostStart = scheme + 3;
+            int hostEnd = hostEnd(url, hostStart);
+            int at = url.lastIndexOf('@', hostEnd - 1);
+            if (at >= hostStart) {
+                hostStart = at + 1;
+            }
+            int port = url.lastIndexOf(':', hostEnd - 1);
+            if (port >= hostStart && url.indexOf(']', hostStart) < 0) {
+                hostEnd = port;
+            }
+            if (hostEnd <= hostStart) {
+                return null;
+            }
+            request.hostStart = hostStart;
+            request.hostEnd = hostEnd;
+            request.host = new String(request.lower, hostStart, hostEnd - hostStart, StandardCharsets.ISO_8859_1);
+            request.documentHost = documentHost(documentUrl);
+            request.thirdParty = request.documentHost != null
+                    && !Domains.registrable(request.host).equals(Domains.registrable(request.documentHost));
+            return request;
+        }
+
+        private static int hostEnd(String url, int from) {
+            for (int i = from; i < url.length(); i++) {
+                char c = url.charAt(i);
+                if (c == '/' || c == '?' || c == '#') {
+                    return i;
+                }
+            }
+            return url.length();
+        }
+
+        private static String documentHost(String documentUrl) {
+            if (documentUrl == null) {
+                return null;
+            }
+            int scheme = documentUrl.indexOf("://");
+            if (scheme <= 0) {
+                return null;
+            }
+            int start = scheme + 3;
+            int end = hostEnd(documentUrl, start);
+            int at = documentUrl.lastIndexOf('@', end - 1);
+            if (at >= start) {
+                start = at + 1;
+            }
+            int port = documentUrl.lastIndexOf(':', end - 1);
+            if (port >= start && documentUrl.indexOf(']', start) < 0) {
+                end = port;
+            }
+            return end > start ? documentUrl.substring(start, end).toLowerCase(Locale.ROOT) : null;
+        }
+
+        /**
+         * 页面域名及各级上级域名的哈希，a.example.com 对应 a.example.com、example.com、com
+         */
+        long[] documentSuffixHashes() {
+            if (documentSuffixHashes == null) {
+                if (documentHost == null) {
+                    documentSuffixHashes = new long[0];
+                } else {
+                    int count = 1;
+                    for (int i = 0; i < documentHost.length(); i++) {
+                        if (documentHost.charAt(i) == '.') {
+                            count++;
+                        }
+                    }
+                    long[] hashes = new long[count];
+                    int start = 0;
+                    for (int i = 0; i < count; i++) {
+                        hashes[i] = Domains.hash64(documentHost, start, documentHost.length());
+                        start = documentHost.indexOf('.', start) + 1;
+                    }
+                    documentSuffixHashes = hashes;
+                }
+            }
+            return documentSuffixHashes;
+        }
+    }
+}
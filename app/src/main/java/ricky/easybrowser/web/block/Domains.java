@@ -0,0 +1,95 @@
+package ricky.easybrowser.web.block;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 域名相关的辅助方法，编译和匹配时使用同一套哈希
+ */
+final class Domains {
+
+    private static final long FNV64_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV64_PRIME = 0x100000001b3L;
+    private static final int FNV32_OFFSET = 0x811c9dc5;
+    private static final int FNV32_PRIME = 0x01000193;
+
+    /**
+     * 常见的二级公共后缀。没有打包完整的公共后缀列表，判断第三方时以此近似可注册域名
+     */
+    private static final Set<String> SECOND_LEVEL_SUFFIXES = new HashSet<>(Arrays.asList(
+            "com.cn", "net.cn", "org.cn", "gov.cn", "edu.cn", "ac.cn",
+            "com.hk", "com.tw", "org.tw", "com.sg", "com.my",
+            "co.uk", "org.uk", "ac.uk", "gov.uk", "me.uk",
+            "co.jp", "ne.jp", "or.jp", "ac.jp", "co.kr", "or.kr",
+            "com.au", "net.au", "org.au", "co.nz", "co.in", "co.id", "co.th",
+            "com.br", "com.ar", "com.mx", "com.tr", "com.ru", "com.ua",
+            "github.io", "blogspot.com", "appspot.com", "herokuapp.com", "cloudfront.net"));
+
+    private Domains() {
+    }
+
+    /**
+     * @return 可注册域名，如 a.b.example.com.cn 返回 example.com.cn
+     */
+    static String registrable(String host) {
+        int last = host.lastIndexOf('.');
+        if (last <= 0 || isIpv4(host)) {
+            return host;
+        }
+        int second = host.lastIndexOf('.', last - 1);
+        if (second < 0) {
+            return host;
+        }
+        if (SECOND_LEVEL_SUFFIXES.contains(host.substring(second + 1))) {
+            int third = host.lastIndexOf('.', second - 1);
+            return host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+
+    private static boolean isIpv4(String host) {
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 字符串[start, end)的64位FNV-1a哈希，字符应已是小写
+     */
+    static long hash64(CharSequence text, int start, int end) {
+        long hash = FNV64_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV64_PRIME;
+        }
+        return hash;
+    }
+
+    static long hash64(CharSequence text) {
+        return hash64(text, 0, text.length());
+    }
+
+    /**
+     * 分词用的32位FNV-1a哈希
+     */
+    static int hash32(byte[] bytes, int start, int end) {
+        int hash = FNV32_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV32_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 分词字符：小写字母、数字和%。URL按连续的分词字符切分，规则按其中一个完整的词建立索引
+     */
+    static boolean isTokenChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '%';
+    }
+}
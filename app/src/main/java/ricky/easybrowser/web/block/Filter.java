@@ -0,0 +1,166 @@
+package ricky.easybrowser.web.block;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 一条解析后的Adblock Plus格式网络过滤规则，只在编译时使用。
+ * <p>
+ * 支持 ||域名锚定、|首尾锚定、* 通配、^ 分隔符、@@ 例外规则，以及 third-party、资源类型、domain=、match-case 选项。
+ * 元素隐藏、正则规则和WebView无法实现的选项(popup、csp、redirect等)直接跳过
+ */
+final class Filter {
+
+    static final int FLAG_EXCEPTION = 1;
+    static final int FLAG_MATCH_CASE = 1 << 1;
+    static final int FLAG_ANCHOR_START = 1 << 2;
+    static final int FLAG_ANCHOR_DOMAIN = 1 << 3;
+    static final int FLAG_ANCHOR_END = 1 << 4;
+    static final int FLAG_THIRD_PARTY = 1 << 5;
+    static final int FLAG_FIRST_PARTY = 1 << 6;
+    /**
+     * 编译时设置，表示规则放在域名树中，匹配时不再检查模式
+     */
+    static final int FLAG_HOST = 1 << 7;
+
+    int flags;
+    int typeMask;
+    /**
+     * 去掉锚点和首尾*后的模式，未指定match-case时为小写
+     */
+    String pattern;
+    final List<String> includeDomains = new ArrayList<>();
+    final List<String> excludeDomains = new ArrayList<>();
+
+    private Filter() {
+    }
+
+    boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * 形如 ||ads.example.com^ 的规则只按域名匹配，放入域名树
+     *
+     * @return 规则对应的域名，不是纯域名规则时返回null
+     */
+    String hostOnly() {
+        if (!has(FLAG_ANCHOR_DOMAIN) || has(FLAG_ANCHOR_END) || pattern.length() < 2
+                || pattern.charAt(pattern.length() - 1) != '^') {
+            return null;
+        }
+        String host = pattern.substring(0, pattern.length() - 1);
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9') && c != '.' && c != '-' && c != '_') {
+                return null;
+            }
+        }
+        return host.startsWith(".") || host.endsWith(".") ? null : host;
+    }
+
+    /**
+     * 解析一行规则
+     *
+     * @return 注释、元素隐藏规则及不支持的规则返回null
+     */
+    static Filter parse(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.charAt(0) == '!' || line.charAt(0) == '[') {
+            return null;
+        }
+        if (line.contains("##") || line.contains("#@#") || line.contains("#?#") || line.contains("#$#")) {
+            return null;
+        }
+        Filter filter = new Filter();
+        if (line.startsWith("@@")) {
+            filter.flags |= FLAG_EXCEPTION;
+            line = line.substring(2);
+        }
+        String text = line;
+        int dollar = line.lastIndexOf('$');
+        if (dollar >= 0 && !isRegex(line)) {
+            text = line.substring(0, dollar);
+            if (!filter.parseOptions(line.substring(dollar + 1))) {
+                return null;
+            }
+        } else {
+            filter.typeMask = ResourceType.DEFAULT_MASK;
+        }
+        if (isRegex(text)) {
+            return null;
+        }
+        if (text.startsWith("||")) {
+            filter.flags |= FLAG_ANCHOR_DOMAIN;
+            text = text.substring(2);
+        } else if (text.startsWith("|")) {
+            filter.flags |= FLAG_ANCHOR_START;
+            text = text.substring(1);
+        }
+        if (text.endsWith("|")) {
+            filter.flags |= FLAG_ANCHOR_END;
+            text = text.substring(0, text.length() - 1);
+        }
+        while (text.startsWith("*")) {
+            text = text.substring(1);
+            filter.flags &= ~(FLAG_ANCHOR_START | FLAG_ANCHOR_DOMAIN);
+        }
+        while (text.endsWith("*")) {
+            text = text.substring(0, text.length() - 1);
+            filter.flags &= ~FLAG_ANCHOR_END;
+        }
+        if (text.isEmpty()) {
+            // 匹配所有请求，只有限定了站点时才有意义，这里不支持
+            return null;
+        }
+        filter.pattern = filter.has(FLAG_MATCH_CASE) ? text : text.toLowerCase(Locale.ROOT);
+        return filter;
+    }
+
+    private static boolean isRegex(String text) {
+        return text.length() > 1 && text.charAt(0) == '/' && text.charAt(text.length() - 1) == '/';
+    }
+
+    /**
+     * @return 含有不支持的选项时返回false，整条规则跳过
+     */
+    private boolean parseOptions(String options) {
+        int include = 0;
+        int exclude = 0;
+        for (String option : options.split(",")) {
+            option = option.trim().toLowerCase(Locale.ROOT);
+            boolean negated = option.startsWith("~");
+            String name = negated ? option.substring(1) : option;
+            int type = ResourceType.fromOption(name);
+            if (type != 0) {
+                if (negated) {
+                    exclude |= type;
+                } else {
+                    include |= type;
+                }
+            } else if ("third-party".equals(name) || "3p".equals(name)) {
+                flags |= negated ? FLAG_FIRST_PARTY : FLAG_THIRD_PARTY;
+            } else if ("first-party".equals(name) || "1p".equals(name)) {
+                flags |= negated ? FLAG_THIRD_PARTY : FLAG_FIRST_PARTY;
+            } else if ("match-case".equals(name)) {
+                flags |= FLAG_MATCH_CASE;
+            } else if (name.startsWith("domain=")) {
+                for (String domain : name.substring("domain=".length()).split("\\|")) {
+                    if (domain.startsWith("~")) {
+                        excludeDomains.add(domain.substring(1));
+                    } else if (!domain.isEmpty()) {
+                        includeDomains.add(domain);
+                    }
+                }
+            } else if (!"important".equals(name) && !"collapse".equals(name)) {
+                return false;
+            }
+        }
+        if (has(FLAG_FIRST_PARTY) && has(FLAG_THIRD_PARTY)) {
+            return false;
+        }
+        typeMask = (include != 0 ? include : ResourceType.DEFAULT_MASK) & ~exclude;
+        return typeMask != 0;
+    }
+}
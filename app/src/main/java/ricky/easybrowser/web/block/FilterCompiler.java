@@ -0,0 +1,365 @@
+package ricky.easybrowser.web.block;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 把文本格式的过滤列表编译为 {@link ContentBlocker} 直接映射使用的二进制文件，
+ * 启动时不再逐行解析，也不需要在Java堆上建立数万个规则对象。
+ * <p>
+ * 文件布局(大端序)：
+ * <pre>
+ * 头部      见 H_* 常量，记录各段的偏移和数量
+ * 规则      每条24字节：flags、类型掩码、模式偏移、模式长度、domain=起始下标、domain=数量
+ * 字符串池  所有模式的字节
+ * 站点      每项12字节：域名哈希、是否包含(1)或排除(0)
+ * 域名树    每个节点24字节：标签哈希、首个子节点、子节点数、规则起始下标、规则数。
+ *           按层序排列，同一节点的子节点连续且按哈希排序，查找时二分
+ * 域名规则  域名树节点引用的规则编号
+ * 分词桶    每个桶8字节：规则起始下标、规则数，按词哈希 &amp; (桶数-1) 定位
+ * 分词规则  分词桶引用的规则编号
+ * 通用规则  找不到可用词、每次都要检查的规则编号
+ * </pre>
+ * 纯域名规则(||host^)放入按标签倒序建立的域名树，其余规则选一个出现次数最少的完整词放入对应的桶，
+ * 匹配时只检查URL中各个词对应桶里的规则
+ */
+public final class FilterCompiler {
+
+    static final int MAGIC = 0x45424c4b;
+    static final int VERSION = 1;
+
+    static final int H_MAGIC = 0;
+    static final int H_VERSION = 4;
+    static final int H_FILE_SIZE = 8;
+    static final int H_RULE_COUNT = 12;
+    static final int H_RULES = 16;
+    static final int H_STRINGS = 20;
+    static final int H_DOMAINS = 24;
+    static final int H_TRIE = 28;
+    static final int H_TRIE_COUNT = 32;
+    static final int H_HOST_IDS = 36;
+    static final int H_BUCKETS = 40;
+    static final int H_BUCKET_COUNT = 44;
+    static final int H_BUCKET_IDS = 48;
+    static final int H_GENERIC = 52;
+    static final int H_GENERIC_COUNT = 56;
+    static final int H_SKIPPED = 60;
+    static final int HEADER_SIZE = 64;
+
+    static final int RULE_SIZE = 24;
+    static final int DOMAIN_SIZE = 12;
+    static final int NODE_SIZE = 24;
+    static final int BUCKET_SIZE = 8;
+
+    /**
+     * 几乎每个URL都有的词，选作索引会让对应的桶在每次匹配时都被检查
+     */
+    private static final Set<String> COMMON_TOKENS = new HashSet<>(Arrays.asList(
+            "http", "https", "www", "com", "net", "org", "cn", "html", "js", "css", "php",
+            "jpg", "png", "gif", "static", "cdn", "img", "images", "min"));
+    private static final int COMMON_TOKEN_PENALTY = 1000;
+
+    /**
+     * 编译结果统计
+     */
+    public static final class Stats {
+        int rules;
+        int skipped;
+        int hostRules;
+        int tokenRules;
+        int genericRules;
+
+        public int getRules() {
+            return rules;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getHostRules() {
+            return hostRules;
+        }
+
+        public int getTokenRules() {
+            return tokenRules;
+        }
+
+        public int getGenericRules() {
+            return genericRules;
+        }
+
+        @Override
+        public String toString() {
+            return "rules: " + rules + " (host: " + hostRules + ", token: " + tokenRules
+                    + ", generic: " + genericRules + "), skipped: " + skipped;
+        }
+    }
+
+    private static final class Node {
+        final TreeMap<Long, Node> children = new TreeMap<>();
+        final List<Integer> rules = new ArrayList<>();
+        final long hash;
+        int firstChild;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+    }
+
+    private FilterCompiler() {
+    }
+
+    /**
+     * 编译过滤列表并写入文件。先写临时文件再重命名，正在映射旧文件的 {@link ContentBlocker} 不受影响
+     */
+    public static Stats compile(BufferedReader reader, File out) throws IOException {
+        Stats stats = new Stats();
+        byte[] data = compile(reader, stats);
+        File temp = new File(out.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            fos.write(data);
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!temp.renameTo(out)) {
+            temp.delete();
+            throw new IOException("rename failed: " + out);
+        }
+        return stats;
+    }
+
+    static byte[] compile(BufferedReader reader, Stats stats) throws IOException {
+        List<Filter> filters = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            Filter filter = Filter.parse(line);
+            if (filter != null) {
+                filters.add(filter);
+            } else if (!line.trim().isEmpty() && line.charAt(0) != '!' && line.charAt(0) != '[') {
+                stats.skipped++;
+            }
+        }
+        stats.rules = filters.size();
+
+        Node root = new Node(0);
+        Map<Integer, List<Integer>> tokenRules = new HashMap<>();
+        Map<Integer, Integer> tokenUse = new HashMap<>();
+        List<Integer> generic = new ArrayList<>();
+        for (int id = 0; id < filters.size(); id++) {
+            Filter filter = filters.get(id);
+            String host = filter.hostOnly();
+            if (host != null) {
+                filter.flags |= Filter.FLAG_HOST;
+                insertHost(root, host).rules.add(id);
+                stats.hostRules++;
+                continue;
+            }
+            int token = bestToken(filter, tokenUse);
+            if (token == 0) {
+                generic.add(id);
+                stats.genericRules++;
+                continue;
+            }
+            Integer used = tokenUse.get(token);
+            tokenUse.put(token, used == null ? 1 : used + 1);
+            List<Integer> ids = tokenRules.get(token);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                tokenRules.put(token, ids);
+            }
+            ids.add(id);
+            stats.tokenRules++;
+        }
+
+        // 规则和字符串池、站点
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        ByteBuffer rules = ByteBuffer.allocate(filters.size() * RULE_SIZE);
+        List<long[]> domains = new ArrayList<>();
+        for (Filter filter : filters) {
+            byte[] pattern = filter.pattern.getBytes(StandardCharsets.UTF_8);
+            rules.putInt(filter.flags);
+            rules.putInt(filter.typeMask);
+            rules.putInt(strings.size());
+            rules.putInt(pattern.length);
+            rules.putInt(domains.size());
+            rules.putInt(filter.includeDomains.size() + filter.excludeDomains.size());
+            strings.write(pattern, 0, pattern.length);
+            for (String domain : filter.includeDomains) {
+                domains.add(new long[]{Domains.hash64(domain), 1});
+            }
+            for (String domain : filter.excludeDomains) {
+                domains.add(new long[]{Domains.hash64(domain), 0});
+            }
+        }
+
+        // 域名树按层序展开
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            node.firstChild = nodes.size();
+            nodes.addAll(node.children.values());
+        }
+
+        int bucketCount = 16;
+        while (bucketCount < tokenRules.size() * 2) {
+            bucketCount <<= 1;
+        }
+        List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<Integer>());
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : tokenRules.entrySet()) {
+            buckets.get(entry.getKey() & (bucketCount - 1)).addAll(entry.getValue());
+        }
+        int bucketIdCount = stats.tokenRules;
+
+        int rulesOffset = HEADER_SIZE;
+        int stringsOffset = rulesOffset + rules.capacity();
+        int domainsOffset = stringsOffset + strings.size();
+        int trieOffset = domainsOffset + domains.size() * DOMAIN_SIZE;
+        int hostIdsOffset = trieOffset + nodes.size() * NODE_SIZE;
+        int bucketsOffset = hostIdsOffset + stats.hostRules * 4;
+        int bucketIdsOffset = bucketsOffset + bucketCount * BUCKET_SIZE;
+        int genericOffset = bucketIdsOffset + bucketIdCount * 4;
+        int fileSize = genericOffset + generic.size() * 4;
+
+        ByteBuffer out = ByteBuffer.allocate(fileSize);
+        out.putInt(H_MAGIC, MAGIC);
+        out.putInt(H_VERSION, VERSION);
+        out.putInt(H_FILE_SIZE, fileSize);
+        out.putInt(H_RULE_COUNT, filters.size());
+        out.putInt(H_RULES, rulesOffset);
+        out.putInt(H_STRINGS, stringsOffset);
+        out.putInt(H_DOMAINS, domainsOffset);
+        out.putInt(H_TRIE, trieOffset);
+        out.putInt(H_TRIE_COUNT, nodes.size());
+        out.putInt(H_HOST_IDS, hostIdsOffset);
+        out.putInt(H_BUCKETS, bucketsOffset);
+        out.putInt(H_BUCKET_COUNT, bucketCount);
+        out.putInt(H_BUCKET_IDS, bucketIdsOffset);
+        out.putInt(H_GENERIC, genericOffset);
+        out.putInt(H_GENERIC_COUNT, generic.size());
+        out.putInt(H_SKIPPED, stats.skipped);
+
+        out.position(rulesOffset);
+        out.put(rules.array());
+        out.put(strings.toByteArray());
+        for (long[] domain : domains) {
+            out.putLong(domain[0]);
+            out.putInt((int) domain[1]);
+        }
+        int hostIdStart = 0;
+        for (Node node : nodes) {
+            out.putLong(node.hash);
+            out.putInt(node.firstChild);
+            out.putInt(node.children.size());
+            out.putInt(hostIdStart);
+            out.putInt(node.rules.size());
+            hostIdStart += node.rules.size();
+        }
+        for (Node node : nodes) {
+            for (int id : node.rules) {
+                out.putInt(id);
+            }
+        }
+        int bucketIdStart = 0;
+        for (List<Integer> bucket : buckets) {
+            out.putInt(bucketIdStart);
+            out.putInt(bucket.size());
+            bucketIdStart += bucket.size();
+        }
+        for (List<Integer> bucket : buckets) {
+            for (int id : bucket) {
+                out.putInt(id);
+            }
+        }
+        for (int id : generic) {
+            out.putInt(id);
+        }
+        return out.array();
+    }
+
+    /**
+     * 按标签从右到左插入，ads.example.com 的路径为 com → example → ads
+     */
+    private static Node insertHost(Node root, String host) {
+        Node node = root;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            long hash = Domains.hash64(host, dot + 1, end);
+            Node child = node.children.get(hash);
+            if (child == null) {
+                child = new Node(hash);
+                node.children.put(hash, child);
+            }
+            node = child;
+            end = dot;
+        }
+        return node;
+    }
+
+    /**
+     * 模式中两侧都是分隔符或锚点的完整词才能用作索引，* 旁边的词可能只是URL中某个词的一部分
+     *
+     * @return 选中词的哈希，没有可用的词时返回0
+     */
+    private static int bestToken(Filter filter, Map<Integer, Integer> tokenUse) {
+        byte[] pattern = filter.pattern.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        boolean anchoredStart = filter.has(Filter.FLAG_ANCHOR_START) || filter.has(Filter.FLAG_ANCHOR_DOMAIN);
+        boolean anchoredEnd = filter.has(Filter.FLAG_ANCHOR_END);
+        int best = 0;
+        int bestScore = Integer.MAX_VALUE;
+        int bestLength = 0;
+        int i = 0;
+        while (i < pattern.length) {
+            if (!Domains.isTokenChar(pattern[i])) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < pattern.length && Domains.isTokenChar(pattern[i])) {
+                i++;
+            }
+            boolean leftBound = start == 0 ? anchoredStart : pattern[start - 1] != '*';
+            boolean rightBound = i == pattern.length ? anchoredEnd : pattern[i] != '*';
+            int length = i - start;
+            if (!leftBound || !rightBound || length < 2) {
+                continue;
+            }
+            int hash = Domains.hash32(pattern, start, i);
+            if (hash == 0) {
+                continue;
+            }
+            Integer used = tokenUse.get(hash);
+            int score = used == null ? 0 : used;
+            if (COMMON_TOKENS.contains(new String(pattern, start, length, StandardCharsets.ISO_8859_1))) {
+                score += COMMON_TOKEN_PENALTY;
+            }
+            if (score < bestScore || (score == bestScore && length > bestLength)) {
+                best = hash;
+                bestScore = score;
+                bestLength = length;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,150 @@
+package ricky.easybrowser.web.block;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 请求的资源类型，按位表示以便规则用掩码匹配。
+ * <p>
+ * WebView拦截请求时不提供资源类型，依次根据Sec-Fetch-Dest、Accept请求头及地址的扩展名推断
+ */
+public final class ResourceType {
+
+    public static final int OTHER = 1;
+    public static final int SCRIPT = 1 << 1;
+    public static final int IMAGE = 1 << 2;
+    public static final int STYLESHEET = 1 << 3;
+    public static final int XMLHTTPREQUEST = 1 << 4;
+    public static final int SUBDOCUMENT = 1 << 5;
+    public static final int FONT = 1 << 6;
+    public static final int MEDIA = 1 << 7;
+    public static final int OBJECT = 1 << 8;
+    public static final int PING = 1 << 9;
+    public static final int WEBSOCKET = 1 << 10;
+    public static final int DOCUMENT = 1 << 11;
+
+    /**
+     * 没有指定类型的规则匹配除主文档外的所有类型
+     */
+    public static final int DEFAULT_MASK = (DOCUMENT << 1) - 1 & ~DOCUMENT;
+
+    private static final Map<String, Integer> OPTION_NAMES = new HashMap<>();
+    private static final Map<String, Integer> FETCH_DESTS = new HashMap<>();
+    private static final Map<String, Integer> EXTENSIONS = new HashMap<>();
+
+    static {
+        OPTION_NAMES.put("other", OTHER);
+        OPTION_NAMES.put("script", SCRIPT);
+        OPTION_NAMES.put("image", IMAGE);
+        OPTION_NAMES.put("stylesheet", STYLESHEET);
+        OPTION_NAMES.put("css", STYLESHEET);
+        OPTION_NAMES.put("xmlhttprequest", XMLHTTPREQUEST);
+        OPTION_NAMES.put("xhr", XMLHTTPREQUEST);
+        OPTION_NAMES.put("subdocument", SUBDOCUMENT);
+        OPTION_NAMES.put("frame", SUBDOCUMENT);
+        OPTION_NAMES.put("font", FONT);
+        OPTION_NAMES.put("media", MEDIA);
+        OPTION_NAMES.put("object", OBJECT);
+        OPTION_NAMES.put("object-subrequest", OBJECT);
+        OPTION_NAMES.put("ping", PING);
+        OPTION_NAMES.put("beacon", PING);
+        OPTION_NAMES.put("websocket", WEBSOCKET);
+
+        FETCH_DESTS.put("script", SCRIPT);
+        FETCH_DESTS.put("worker", SCRIPT);
+        FETCH_DESTS.put("sharedworker", SCRIPT);
+        FETCH_DESTS.put("serviceworker", SCRIPT);
+        FETCH_DESTS.put("image", IMAGE);
+        FETCH_DESTS.put("style", STYLESHEET);
+        FETCH_DESTS.put("font", FONT);
+        FETCH_DESTS.put("iframe", SUBDOCUMENT);
+        FETCH_DESTS.put("frame", SUBDOCUMENT);
+        FETCH_DESTS.put("audio", MEDIA);
+        FETCH_DESTS.put("video", MEDIA);
+        FETCH_DESTS.put("track", MEDIA);
+        FETCH_DESTS.put("object", OBJECT);
+        FETCH_DESTS.put("embed", OBJECT);
+        FETCH_DESTS.put("empty", XMLHTTPREQUEST);
+        FETCH_DESTS.put("document", DOCUMENT);
+
+        EXTENSIONS.put("js", SCRIPT);
+        EXTENSIONS.put("mjs", SCRIPT);
+        EXTENSIONS.put("css", STYLESHEET);
+        for (String image : new String[]{"png", "jpg", "jpeg", "gif", "webp", "avif", "svg", "ico", "bmp", "apng"}) {
+            EXTENSIONS.put(image, IMAGE);
+        }
+        for (String font : new String[]{"woff", "woff2", "ttf", "otf", "eot"}) {
+            EXTENSIONS.put(font, FONT);
+        }
+        for (String media : new String[]{"mp4", "webm", "mp3", "m4a", "ogg", "m3u8", "ts", "wav", "flac"}) {
+            EXTENSIONS.put(media, MEDIA);
+        }
+        EXTENSIONS.put("html", SUBDOCUMENT);
+        EXTENSIONS.put("htm", SUBDOCUMENT);
+    }
+
+    private ResourceType() {
+    }
+
+    /**
+     * 规则选项中的类型名，不认识时返回0
+     */
+    static int fromOption(String name) {
+        Integer type = OPTION_NAMES.get(name);
+        return type == null ? 0 : type;
+    }
+
+    /**
+     * 推断请求的资源类型
+     *
+     * @param fetchDest Sec-Fetch-Dest请求头，可以为null
+     * @param accept    Accept请求头，可以为null
+     */
+    public static int detect(String url, String fetchDest, String accept, boolean mainFrame) {
+        if (mainFrame) {
+            return DOCUMENT;
+        }
+        if (fetchDest != null) {
+            Integer type = FETCH_DESTS.get(fetchDest.trim().toLowerCase(Locale.ROOT));
+            if (type != null) {
+                return type;
+            }
+        }
+        if (accept != null) {
+            String lower = accept.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("image/")) {
+                return IMAGE;
+            }
+            if (lower.startsWith("text/css")) {
+                return STYLESHEET;
+            }
+            if (lower.startsWith("text/html")) {
+                return SUBDOCUMENT;
+            }
+        }
+        Integer type = EXTENSIONS.get(extension(url));
+        return type == null ? OTHER : type;
+    }
+
+    /**
+     * 地址路径的扩展名(小写)，没有时返回空字符串
+     */
+    public static String extension(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int slash = url.lastIndexOf('/', end - 1);
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot <= slash || dot == end - 1) {
+            return "";
+        }
+        return url.substring(dot + 1, end).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,98 @@
+package ricky.easybrowser.web.cache;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 解析Cache-Control及Pragma头中与私有缓存相关的指令，不认识的指令忽略
+ */
+final class CacheControl {
+
+    static final long UNSET = -1;
+
+    boolean noStore;
+    boolean noCache;
+    boolean mustRevalidate;
+    long maxAgeSeconds = UNSET;
+    long maxStaleSeconds = UNSET;
+    long staleIfErrorSeconds = UNSET;
+
+    private CacheControl() {
+    }
+
+    /**
+     * @param cacheControl 所有Cache-Control头的值，可以为null
+     * @param pragma       所有Pragma头的值，可以为null
+     */
+    static CacheControl parse(List<String> cacheControl, List<String> pragma) {
+        CacheControl result = new CacheControl();
+        if (cacheControl != null) {
+            for (String value : cacheControl) {
+                result.parseValue(value);
+            }
+        }
+        if (pragma != null && cacheControl == null) {
+            for (String value : pragma) {
+                if (value.toLowerCase(Locale.ROOT).contains("no-cache")) {
+                    result.noCache = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void parseValue(String value) {
+        for (String directive : value.split(",")) {
+            String item = directive.trim().toLowerCase(Locale.ROOT);
+            if (item.isEmpty()) {
+                continue;
+            }
+            String name = item;
+            String argument = null;
+            int eq = item.indexOf('=');
+            if (eq >= 0) {
+                name = item.substring(0, eq).trim();
+                argument = item.substring(eq + 1).trim();
+                if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                    argument = argument.substring(1, argument.length() - 1);
+                }
+            }
+            switch (name) {
+                case "no-store":
+                    noStore = true;
+                    break;
+                case "no-cache":
+                    noCache = true;
+                    break;
+                case "must-revalidate":
+                case "proxy-revalidate":
+                    mustRevalidate = true;
+                    break;
+                case "max-age":
+                    maxAgeSeconds = parseSeconds(argument);
+                    break;
+                case "max-stale":
+                    // 没有参数时接受任意过期时间
+                    maxStaleSeconds = argument == null ? Long.MAX_VALUE : parseSeconds(argument);
+                    break;
+                case "stale-if-error":
+                    staleIfErrorSeconds = parseSeconds(argument);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static long parseSeconds(String argument) {
+        if (argument == null) {
+            return UNSET;
+        }
+        try {
+            long seconds = Long.parseLong(argument);
+            return seconds < 0 ? 0 : seconds;
+        } catch (NumberFormatException e) {
+            return UNSET;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ricky.easybrowser.web.cache;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存的一条响应：状态行、响应头及磁盘上的响应体文件。响应头名称统一为小写
+ */
+final class CacheEntry {
+
+    final String url;
+    int status;
+    String reason;
+    final Map<String, List<String>> headers;
+    /**
+     * 发出请求及收到响应的时间，用于计算缓存年龄
+     */
+    long requestTime;
+    long responseTime;
+    long bodyLength;
+    /**
+     * 响应体文件，读取时由缓存填充
+     */
+    File bodyFile;
+
+    CacheEntry(String url, int status, String reason, Map<String, List<String>> headers,
+               long requestTime, long responseTime) {
+        this.url = url;
+        this.status = status;
+        this.reason = reason;
+        this.headers = headers;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+    }
+
+    String header(String name) {
+        return firstHeader(headers, name);
+    }
+
+    static String firstHeader(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -0,0 +1,498 @@
+package ricky.easybrowser.web.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按LRU淘汰的HTTP响应磁盘存储。
+ * <p>
+ * 每条响应保存为两个文件：元数据(地址、状态行及响应头)与响应体，文件名为地址的64位哈希。
+ * 所有条目的哈希、响应体大小及最近访问序号记录在内存映射的索引文件中，开放寻址的定长槽位，
+ * 查找、访问记录及淘汰都不需要读取元数据文件，写入由系统负责落盘。
+ * <p>
+ * 新的响应先写入临时文件，完整写入后再改名并登记到索引，读取方打开的旧文件不受替换或淘汰影响。
+ * 启动时删除索引中没有登记的文件，索引损坏时清空目录。线程安全
+ */
+final class DiskHttpCache implements Closeable {
+
+    private static final int MAGIC = 0x45484331;
+    private static final int VERSION = 1;
+    private static final int META_MAGIC = 0x45484d31;
+
+    private static final String INDEX_FILE = "index";
+    private static final String META_SUFFIX = ".m";
+    private static final String BODY_SUFFIX = ".b";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int HEADER_SIZE = 32;
+    private static final int OFFSET_COUNT = 8;
+    private static final int OFFSET_TOTAL_BYTES = 16;
+    private static final int OFFSET_CLOCK = 24;
+
+    /**
+     * 槽位：哈希(8) + 占用字节数(8) + 最近访问序号(8)
+     */
+    private static final int SLOT_SIZE = 24;
+    private static final int SLOT_COUNT = 8192;
+    private static final int MAX_ENTRIES = SLOT_COUNT * 3 / 4;
+
+    private final File dir;
+    private final long maxBytes;
+    private final RandomAccessFile indexFile;
+    private final FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private final AtomicLong tempSequence = new AtomicLong();
+
+    DiskHttpCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can not create dir: " + dir);
+        }
+        File file = new File(dir, INDEX_FILE);
+        long expectedLength = HEADER_SIZE + (long) SLOT_COUNT * SLOT_SIZE;
+        boolean valid = file.length() == expectedLength;
+        indexFile = new RandomAccessFile(file, "rw");
+        indexFile.setLength(expectedLength);
+        indexChannel = indexFile.getChannel();
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, expectedLength);
+        if (!valid || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            reset();
+        }
+        removeOrphans();
+    }
+
+    /**
+     * 单条响应允许的最大字节数
+     */
+    long maxEntryBytes() {
+        return maxBytes / 8;
+    }
+
+    /**
+     * 读取缓存的响应并记录访问，没有或文件已损坏时返回null
+     */
+    synchronized CacheEntry get(String url) {
+        long hash = hash(url);
+        int slot = find(hash);
+        if (slot < 0) {
+            return null;
+        }
+        CacheEntry entry = readMeta(metaFile(hash), url);
+        File body = bodyFile(hash);
+        if (entry == null || !body.exists() || body.length() != entry.bodyLength) {
+            removeSlot(slot);
+            deleteFiles(hash);
+            return null;
+        }
+        entry.bodyFile = body;
+        index.putLong(slotOffset(slot) + 16, nextClock());
+        return entry;
+    }
+
+    /**
+     * 开始写入一条响应，响应体写完后调用 {@link Editor#commit()}
+     */
+    Editor edit(CacheEntry entry) throws IOException {
+        return new Editor(entry);
+    }
+
+    /**
+     * 重新验证后更新响应头及时间，响应体不变
+     */
+    synchronized void update(CacheEntry entry) {
+        long hash = hash(entry.url);
+        if (find(hash) < 0) {
+            return;
+        }
+        File temp = tempFile(hash);
+        try {
+            writeMeta(temp, entry);
+            if (!temp.renameTo(metaFile(hash))) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        }
+    }
+
+    synchronized void remove(String url) {
+        long hash = hash(url);
+        int slot = find(hash);
+        if (slot >= 0) {
+            removeSlot(slot);
+        }
+        deleteFiles(hash);
+    }
+
+    synchronized void clear() {
+        reset();
+    }
+
+    synchronized int count() {
+        return index.getInt(OFFSET_COUNT);
+    }
+
+    synchronized long size() {
+        return index.getLong(OFFSET_TOTAL_BYTES);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.force();
+        indexChannel.close();
+        indexFile.close();
+    }
+
+    /**
+     * 写入中的响应，提交前对读取方不可见
+     */
+    final class Editor {
+        private final CacheEntry entry;
+        private final long hash;
+        private final File tempBody;
+        private final OutputStream out;
+        private long written;
+        private boolean done;
+
+        private Editor(CacheEntry entry) throws IOException {
+            this.entry = entry;
+            this.hash = hash(entry.url);
+            this.tempBody = tempFile(hash);
+            this.out = new BufferedOutputStream(new FileOutputStream(tempBody));
+        }
+
+        /**
+         * 写入响应体，超过单条上限时返回false，之后只能放弃
+         */
+        boolean write(byte[] buffer, int offset, int count) throws IOException {
+            written += count;
+            if (written > maxEntryBytes()) {
+                return false;
+            }
+            out.write(buffer, offset, count);
+            return true;
+        }
+
+        void commit() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            out.close();
+            entry.bodyLength = written;
+            File tempMeta = tempFile(hash);
+            try {
+                writeMeta(tempMeta, entry);
+                install(hash, tempMeta, tempBody, written);
+            } finally {
+                tempMeta.delete();
+                tempBody.delete();
+            }
+        }
+
+        void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            tempBody.delete();
+        }
+    }
+
+    private synchronized void install(long hash, File tempMeta, File tempBody, long bodyBytes) throws IOException {
+        int slot = find(hash);
+        if (slot < 0 && count() >= MAX_ENTRIES) {
+            evictOne();
+            slot = find(hash);
+        }
+        if (!tempBody.renameTo(bodyFile(hash)) || !tempMeta.renameTo(metaFile(hash))) {
+            if (slot >= 0) {
+                removeSlot(slot);
+            }
+            deleteFiles(hash);
+            throw new IOException("can not install cache entry");
+        }
+        long totalBytes = index.getLong(OFFSET_TOTAL_BYTES);
+        if (slot >= 0) {
+            totalBytes -= index.getLong(slotOffset(slot) + 8);
+        } else {
+            slot = -slot - 1;
+            index.putLong(slotOffset(slot), hash);
+            index.putInt(OFFSET_COUNT, count() + 1);
+        }
+        index.putLong(slotOffset(slot) + 8, bodyBytes);
+        index.putLong(slotOffset(slot) + 16, nextClock());
+        index.putLong(OFFSET_TOTAL_BYTES, totalBytes + bodyBytes);
+        while (index.getLong(OFFSET_TOTAL_BYTES) > maxBytes && count() > 1) {
+            evictOne();
+        }
+    }
+
+    /**
+     * 淘汰最久未访问的条目
+     */
+    private void evictOne() {
+        int victim = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            int offset = slotOffset(i);
+            if (index.getLong(offset) != 0 && index.getLong(offset + 16) < oldest) {
+                oldest = index.getLong(offset + 16);
+                victim = i;
+            }
+        }
+        if (victim >= 0) {
+            long hash = index.getLong(slotOffset(victim));
+            removeSlot(victim);
+            deleteFiles(hash);
+        }
+    }
+
+    /**
+     * @return 命中时返回槽位，否则返回 -(插入位置) - 1
+     */
+    private int find(long hash) {
+        int mask = SLOT_COUNT - 1;
+        int i = home(hash);
+        while (true) {
+            long current = index.getLong(slotOffset(i));
+            if (current == 0) {
+                return -i - 1;
+            }
+            if (current == hash) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * 删除槽位，并把之后同一探测链上的槽位前移，不留删除标记
+     */
+    private void removeSlot(int slot) {
+        int mask = SLOT_COUNT - 1;
+        long bytes = index.getLong(slotOffset(slot) + 8);
+        index.putLong(OFFSET_TOTAL_BYTES, index.getLong(OFFSET_TOTAL_BYTES) - bytes);
+        index.putInt(OFFSET_COUNT, count() - 1);
+        int hole = slot;
+        clearSlot(hole);
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            long hash = index.getLong(slotOffset(i));
+            if (hash == 0) {
+                return;
+            }
+            int home = home(hash);
+            boolean reachable = hole <= i ? (home > hole && home <= i) : (home > hole || home <= i);
+            if (!reachable) {
+                copySlot(i, hole);
+                clearSlot(i);
+                hole = i;
+            }
+        }
+    }
+
+    private void copySlot(int from, int to) {
+        int src = slotOffset(from);
+        int dst = slotOffset(to);
+        index.putLong(dst, index.getLong(src));
+        index.putLong(dst + 8, index.getLong(src + 8));
+        index.putLong(dst + 16, index.getLong(src + 16));
+    }
+
+    private void clearSlot(int slot) {
+        int offset = slotOffset(slot);
+        index.putLong(offset, 0);
+        index.putLong(offset + 8, 0);
+        index.putLong(offset + 16, 0);
+    }
+
+    private long nextClock() {
+        long clock = index.getLong(OFFSET_CLOCK) + 1;
+        index.putLong(OFFSET_CLOCK, clock);
+        return clock;
+    }
+
+    private void reset() {
+        for (int i = 0; i < HEADER_SIZE + SLOT_COUNT * SLOT_SIZE; i += 8) {
+            index.putLong(i, 0);
+        }
+        index.putInt(0, MAGIC);
+        index.putInt(4, VERSION);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!INDEX_FILE.equals(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除临时文件及索引中没有登记的文件
+     */
+    private void removeOrphans() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (INDEX_FILE.equals(name)) {
+                continue;
+            }
+            int dot = name.indexOf('.');
+            boolean known = false;
+            if (dot > 0 && !name.endsWith(TEMP_SUFFIX)) {
+                try {
+                    known = find(Long.parseUnsignedLong(name.substring(0, dot), 16)) >= 0;
+                } catch (NumberFormatException e) {
+                    known = false;
+                }
+            }
+            if (!known) {
+                file.delete();
+            }
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int home(long hash) {
+        long mixed = hash * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 40) & (SLOT_COUNT - 1);
+    }
+
+    /**
+     * 地址的64位FNV-1a哈希，0保留为空槽位
+     */
+    static long hash(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private File metaFile(long hash) {
+        return new File(dir, Long.toHexString(hash) + META_SUFFIX);
+    }
+
+    private File bodyFile(long hash) {
+        return new File(dir, Long.toHexString(hash) + BODY_SUFFIX);
+    }
+
+    private File tempFile(long hash) {
+        return new File(dir, Long.toHexString(hash) + "." + tempSequence.incrementAndGet() + TEMP_SUFFIX);
+    }
+
+    private void deleteFiles(long hash) {
+        metaFile(hash).delete();
+        bodyFile(hash).delete();
+    }
+
+    private static void writeMeta(File file, CacheEntry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(META_MAGIC);
+            out.writeUTF(entry.url);
+            out.writeInt(entry.status);
+            out.writeUTF(entry.reason == null ? "" : entry.reason);
+            out.writeLong(entry.requestTime);
+            out.writeLong(entry.responseTime);
+            out.writeLong(entry.bodyLength);
+            int count = 0;
+            for (List<String> values : entry.headers.values()) {
+                count += values.size();
+            }
+            out.writeInt(count);
+            for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+                for (String value : header.getValue()) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(value);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param url 期望的地址，与文件中的不一致(哈希冲突)时返回null
+     */
+    private static CacheEntry readMeta(File file, String url) {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != META_MAGIC) {
+                return null;
+            }
+            String storedUrl = in.readUTF();
+            if (!storedUrl.equals(url)) {
+                return null;
+            }
+            int status = in.readInt();
+            String reason = in.readUTF();
+            long requestTime = in.readLong();
+            long responseTime = in.readLong();
+            long bodyLength = in.readLong();
+            int count = in.readInt();
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String value = in.readUTF();
+                List<String> values = headers.get(name);
+                if (values == null) {
+                    values = new ArrayList<>();
+                    headers.put(name, values);
+                }
+                values.add(value);
+            }
+            CacheEntry entry = new CacheEntry(storedUrl, status, reason, headers, requestTime, responseTime);
+            entry.bodyLength = bodyLength;
+            return entry;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,742 @@
+package ricky.easybrowser.web.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import ricky.easybrowser.web.net.HttpClient;
+
+/**
+ * 应用层HTTP响应缓存，供WebView拦截子资源请求时使用。
+ * <p>
+ * 只处理没有Range的GET请求。新鲜的缓存直接从磁盘读取；过期但有ETag或Last-Modified时发送条件请求，
+ * 服务器返回304则更新响应头后仍从磁盘读取；其余情况从网络读取，边返回给WebView边写入缓存，
+ * 完整读完后才登记为有效条目。新鲜度按Cache-Control、Expires及Last-Modified的启发式规则计算。
+ * <p>
+ * 离线模式下只读缓存，过期的条目也会返回；在线时网络出错且条目允许时同样返回过期的条目。
+ * 重定向及无法处理的请求返回null，由WebView自行加载。WebResourceResponse不能携带3xx状态码，
+ * 因此返回过重定向的地址会被记住一段时间，期间直接交给WebView，由WebView请求并跟随重定向，不再先请求一次。
+ * 网络请求通过 {@link HttpClient} 发出，复用其连接池
+ */
+public class HttpCache {
+
+    /**
+     * 响应的来源
+     */
+    public enum Source {
+        /**
+         * 新鲜的缓存，没有访问网络
+         */
+        CACHE,
+        /**
+         * 服务器返回304后从缓存读取
+         */
+        REVALIDATED,
+        /**
+         * 离线或网络出错时返回的过期缓存
+         */
+        STALE,
+        NETWORK
+    }
+
+    /**
+     * 拦截结果，响应头已去掉逐跳头及Content-Encoding，响应体为解压后的数据。
+     * 解压后长度已知时(缓存命中或未压缩的网络响应)重新带上Content-Length
+     */
+    public static final class Response {
+        private final int status;
+        private final String reason;
+        private final Map<String, String> headers;
+        private final List<String> setCookies;
+        private final String mimeType;
+        private final String charset;
+        private final InputStream body;
+        private final Source source;
+
+        private Response(int status, String reason, Map<String, List<String>> rawHeaders,
+                         List<String> setCookies, InputStream body, long contentLength, Source source) {
+            this.status = status;
+            this.reason = reason == null || reason.isEmpty() ? "OK" : reason;
+            this.headers = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : rawHeaders.entrySet()) {
+                if (!DROPPED_HEADERS.contains(entry.getKey())) {
+                    headers.put(entry.getKey(), join(entry.getValue()));
+                }
+            }
+            if (contentLength >= 0) {
+                headers.put("content-length", String.valueOf(contentLength));
+            }
+            this.setCookies = setCookies == null ? Collections.<String>emptyList() : setCookies;
+            String contentType = CacheEntry.firstHeader(rawHeaders, "content-type");
+            String mime = null;
+            String encoding = null;
+            if (contentType != null) {
+                String[] parts = contentType.split(";");
+                mime = parts[0].trim();
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                        encoding = param.substring("charset=".length()).replace("\"", "").trim();
+                    }
+                }
+            }
+            this.mimeType = mime == null || mime.isEmpty() ? null : mime;
+            this.charset = encoding;
+            this.body = body;
+            this.source = source;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * 网络响应中的Set-Cookie，缓存的响应不包含
+         */
+        public List<String> getSetCookies() {
+            return setCookies;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getCharset() {
+            return charset;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+    }
+
+    private static final int[] CACHEABLE_STATUS = {200, 203, 404, 410};
+    private static final long HEURISTIC_MAX_MS = 24L * 60 * 60 * 1000;
+    private static final int DRAIN_LIMIT = 64 * 1024;
+    /**
+     * 记住的重定向地址数量上限，以及永久重定向(301、308)和其他重定向的记忆时间
+     */
+    private static final int MAX_REDIRECTS = 256;
+    private static final long PERMANENT_REDIRECT_MS = 24L * 60 * 60 * 1000;
+    private static final long TEMPORARY_REDIRECT_MS = 10L * 60 * 1000;
+
+    /**
+     * 不保存也不传给WebView的响应头
+     */
+    private static final Set<String> DROPPED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "te", "trailer", "upgrade",
+            "content-encoding", "content-length", "set-cookie"));
+
+    /**
+     * 由缓存自行设置，不转发WebView给出的值
+     */
+    private static final Set<String> OWNED_REQUEST_HEADERS = new HashSet<>(Arrays.asList(
+            "accept-encoding", "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "if-range"));
+
+    private final DiskHttpCache disk;
+    private final HttpClient client;
+    private volatile boolean offline;
+    /**
+     * 返回过重定向的地址及记忆的截止时间，按访问顺序淘汰
+     */
+    private final Map<String, Long> redirects = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_REDIRECTS;
+        }
+    };
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong bypassCount = new AtomicLong();
+    private final AtomicLong networkBytes = new AtomicLong();
+    private final AtomicLong cacheBytes = new AtomicLong();
+
+    /**
+     * @param dir      缓存目录，只能由一个实例使用
+     * @param maxBytes 响应体总大小上限，单条响应不超过上限的1/8
+     */
+    public HttpCache(File dir, long maxBytes) throws IOException {
+        this(dir, maxBytes, new HttpClient());
+    }
+
+    /**
+     * @param client 访问网络使用的客户端，可以和其他调用方共享
+     */
+    public HttpCache(File dir, long maxBytes, HttpClient client) throws IOException {
+        this.disk = new DiskHttpCache(dir, maxBytes);
+        this.client = client;
+    }
+
+    /**
+     * 离线模式下不访问网络，只返回缓存(包括过期的)
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * 加载请求，可在任意线程调用
+     *
+     * @param requestHeaders WebView的请求头，调用方负责加入Cookie
+     * @return 响应，不处理时返回null
+     */
+    public Response fetch(String method, String url, Map<String, String> requestHeaders) {
+        if (!"GET".equalsIgnoreCase(method)
+                || !(url.startsWith("http://") || url.startsWith("https://"))
+                || requestHeader(requestHeaders, "range") != null) {
+            bypassCount.incrementAndGet();
+            return null;
+        }
+        if (!offline && isKnownRedirect(url, System.currentTimeMillis())) {
+            bypassCount.incrementAndGet();
+            return null;
+        }
+        CacheControl requestControl = CacheControl.parse(
+                asList(requestHeader(requestHeaders, "cache-control")),
+                asList(requestHeader(requestHeaders, "pragma")));
+        CacheEntry entry = requestControl.noStore ? null : disk.get(url);
+        if (offline) {
+            Response stale = entry == null ? null : fromCache(entry, Source.STALE);
+            if (stale == null) {
+                missCount.incrementAndGet();
+            }
+            return stale;
+        }
+        if (entry != null && isFresh(entry, requestControl, System.currentTimeMillis())) {
+            Response cached = fromCache(entry, Source.CACHE);
+            if (cached != null) {
+                return cached;
+            }
+            entry = null;
+        }
+        try {
+            return fromNetwork(url, requestHeaders, entry, requestControl);
+        } catch (HttpClient.HostBusyException e) {
+            // 主机请求过多时交给WebView加载，不算网络出错
+            bypassCount.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            if (entry != null && allowsStaleOnError(entry, System.currentTimeMillis())) {
+                return fromCache(entry, Source.STALE);
+            }
+            return null;
+        }
+    }
+
+    private Response fromCache(CacheEntry entry, Source source) {
+        InputStream in;
+        try {
+            in = new FileInputStream(entry.bodyFile);
+        } catch (IOException e) {
+            // 条目刚被淘汰
+            return null;
+        }
+        switch (source) {
+            case CACHE:
+                hitCount.incrementAndGet();
+                break;
+            case REVALIDATED:
+                revalidatedCount.incrementAndGet();
+                break;
+            default:
+                staleHitCount.incrementAndGet();
+                break;
+        }
+        return new Response(entry.status, entry.reason, entry.headers, null,
+                new CountingInputStream(in, cacheBytes), entry.bodyLength, source);
+    }
+
+    private Response fromNetwork(String url, Map<String, String> requestHeaders, CacheEntry entry,
+                                 CacheControl requestControl) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                if (header.getKey() != null && header.getValue() != null
+                        && !OWNED_REQUEST_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    headers.put(header.getKey(), header.getValue());
+                }
+            }
+        }
+        headers.put("Accept-Encoding", "gzip");
+        if (entry != null) {
+            String etag = entry.header("etag");
+            String lastModified = entry.header("last-modified");
+            if (etag != null) {
+                headers.put("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                headers.put("If-Modified-Since", lastModified);
+            }
+        }
+
+        long requestTime = System.currentTimeMillis();
+        HttpClient.Response response = client.execute("GET", url, headers);
+        long responseTime = System.currentTimeMillis();
+        int status = response.getStatus();
+        Map<String, List<String>> responseHeaders = response.getHeaders();
+
+        if (status == 304 && entry != null) {
+            response.close();
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                if (!DROPPED_HEADERS.contains(header.getKey())) {
+                    entry.headers.put(header.getKey(), header.getValue());
+                }
+            }
+            entry.requestTime = requestTime;
+            entry.responseTime = responseTime;
+            disk.update(entry);
+            return fromCache(entry, Source.REVALIDATED);
+        }
+        if (status >= 300 && status < 400) {
+            // 交给WebView处理重定向，地址栏及Cookie才能保持正确。记住该地址，之后不再拦截
+            rememberRedirect(url, status, responseTime);
+            drain(response);
+            bypassCount.incrementAndGet();
+            return null;
+        }
+
+        missCount.incrementAndGet();
+        InputStream body = new CountingInputStream(response.getBody(), networkBytes);
+        String contentEncoding = response.getHeader("content-encoding");
+        long expectedLength = -1;
+        try {
+            if ("gzip".equalsIgnoreCase(contentEncoding)) {
+                body = new GZIPInputStream(body);
+            } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+                body = new InflaterInputStream(body);
+            } else if (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding)) {
+                expectedLength = parseLong(response.getHeader("content-length"));
+            }
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+
+        CacheControl responseControl = CacheControl.parse(responseHeaders.get("cache-control"),
+                responseHeaders.get("pragma"));
+        if (!requestControl.noStore
+                && isCacheable(status, responseHeaders, responseControl, requestHeaders, expectedLength)) {
+            Map<String, List<String>> stored = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                if (!DROPPED_HEADERS.contains(header.getKey())) {
+                    stored.put(header.getKey(), header.getValue());
+                }
+            }
+            CacheEntry newEntry = new CacheEntry(url, status, response.getReason(), stored,
+                    requestTime, responseTime);
+            try {
+                body = new TeeInputStream(body, disk.edit(newEntry), expectedLength);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (entry != null) {
+            disk.remove(url);
+        }
+        return new Response(status, response.getReason(), responseHeaders, responseHeaders.get("set-cookie"),
+                body, expectedLength, Source.NETWORK);
+    }
+
+    private boolean isKnownRedirect(String url, long now) {
+        synchronized (redirects) {
+            Long until = redirects.get(url);
+            if (until == null) {
+                return false;
+            }
+            if (until <= now) {
+                redirects.remove(url);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private void rememberRedirect(String url, int status, long now) {
+        long lifetime = status == 301 || status == 308 ? PERMANENT_REDIRECT_MS : TEMPORARY_REDIRECT_MS;
+        synchronized (redirects) {
+            redirects.put(url, now + lifetime);
+        }
+    }
+
+    private boolean isCacheable(int status, Map<String, List<String>> headers, CacheControl responseControl,
+                                Map<String, String> requestHeaders, long expectedLength) {
+        if (Arrays.binarySearch(CACHEABLE_STATUS, status) < 0 || responseControl.noStore) {
+            return false;
+        }
+        if (requestHeader(requestHeaders, "authorization") != null) {
+            return false;
+        }
+        List<String> vary = headers.get("vary");
+        if (vary != null) {
+            for (String value : vary) {
+                for (String name : value.split(",")) {
+                    String trimmed = name.trim();
+                    if (!trimmed.isEmpty() && !"accept-encoding".equalsIgnoreCase(trimmed)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        if (expectedLength > disk.maxEntryBytes()) {
+            return false;
+        }
+        return responseControl.maxAgeSeconds != CacheControl.UNSET
+                || headers.containsKey("expires")
+                || headers.containsKey("etag")
+                || headers.containsKey("last-modified");
+    }
+
+    private boolean isFresh(CacheEntry entry, CacheControl requestControl, long now) {
+        CacheControl responseControl = parseControl(entry);
+        if (responseControl.noCache || requestControl.noCache) {
+            return false;
+        }
+        long lifetime = freshnessLifetime(entry, responseControl);
+        if (requestControl.maxAgeSeconds != CacheControl.UNSET) {
+            lifetime = Math.min(lifetime, toMillis(requestControl.maxAgeSeconds));
+        }
+        long maxStale = 0;
+        if (!responseControl.mustRevalidate && requestControl.maxStaleSeconds != CacheControl.UNSET) {
+            maxStale = toMillis(requestControl.maxStaleSeconds);
+        }
+        return currentAge(entry, now) < saturatedAdd(lifetime, maxStale);
+    }
+
+    private boolean allowsStaleOnError(CacheEntry entry, long now) {
+        CacheControl responseControl = parseControl(entry);
+        if (responseControl.staleIfErrorSeconds != CacheControl.UNSET) {
+            return currentAge(entry, now) <= saturatedAdd(freshnessLifetime(entry, responseControl),
+                    toMillis(responseControl.staleIfErrorSeconds));
+        }
+        return !responseControl.mustRevalidate && !responseControl.noCache;
+    }
+
+    private static CacheControl parseControl(CacheEntry entry) {
+        return CacheControl.parse(entry.headers.get("cache-control"), entry.headers.get("pragma"));
+    }
+
+    /**
+     * 依次按max-age、Expires、Last-Modified(距Date的10%，最多一天)计算有效期
+     */
+    private static long freshnessLifetime(CacheEntry entry, CacheControl responseControl) {
+        if (responseControl.maxAgeSeconds != CacheControl.UNSET) {
+            return toMillis(responseControl.maxAgeSeconds);
+        }
+        long date = parseDate(entry.header("date"));
+        long served = date > 0 ? date : entry.responseTime;
+        long expires = parseDate(entry.header("expires"));
+        if (entry.headers.containsKey("expires")) {
+            return expires > served ? expires - served : 0;
+        }
+        long lastModified = parseDate(entry.header("last-modified"));
+        if (lastModified > 0 && served > lastModified && !entry.url.contains("?")) {
+            return Math.min((served - lastModified) / 10, HEURISTIC_MAX_MS);
+        }
+        return 0;
+    }
+
+    /**
+     * RFC 7234 4.2.3 中的年龄计算
+     */
+    private static long currentAge(CacheEntry entry, long now) {
+        long date = parseDate(entry.header("date"));
+        long apparentAge = date > 0 ? Math.max(0, entry.responseTime - date) : 0;
+        long ageHeader = parseLong(entry.header("age"));
+        long receivedAge = ageHeader > 0 ? Math.max(apparentAge, toMillis(ageHeader)) : apparentAge;
+        long responseDelay = entry.responseTime - entry.requestTime;
+        long residentTime = now - entry.responseTime;
+        return receivedAge + responseDelay + residentTime;
+    }
+
+    /**
+     * 清空缓存，已返回给WebView的响应体不受影响
+     */
+    public void clear() {
+        disk.clear();
+        synchronized (redirects) {
+            redirects.clear();
+        }
+    }
+
+    public void close() throws IOException {
+        disk.close();
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getBypassCount() {
+        return bypassCount.get();
+    }
+
+    /**
+     * 从网络读取的字节数(压缩后)
+     */
+    public long getNetworkBytes() {
+        return networkBytes.get();
+    }
+
+    /**
+     * 从缓存读取并返回给WebView的字节数
+     */
+    public long getCacheBytes() {
+        return cacheBytes.get();
+    }
+
+    public int getEntryCount() {
+        return disk.count();
+    }
+
+    public long getSize() {
+        return disk.size();
+    }
+
+    private static String requestHeader(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static List<String> asList(String value) {
+        return value == null ? null : Collections.singletonList(value);
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder builder = new StringBuilder();
+        for (String value : values) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long toMillis(long seconds) {
+        return seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : seconds * 1000;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    static String formatDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(time);
+    }
+
+    /**
+     * 读完较小的响应体，连接才能放回连接池
+     */
+    private static void drain(HttpClient.Response response) {
+        try {
+            InputStream in = response.getBody();
+            byte[] buffer = new byte[1024];
+            int total = 0;
+            int count;
+            while (total < DRAIN_LIMIT && (count = in.read(buffer)) != -1) {
+                total += count;
+            }
+        } catch (IOException e) {
+            // 连接会被关闭
+        }
+        response.close();
+    }
+
+    /**
+     * 统计读取的字节数
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                counter.addAndGet(count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 把读取的响应体同时写入缓存，完整读完后提交，提前关闭或出错时放弃
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+        private final DiskHttpCache.Editor editor;
+        private final long expectedLength;
+        private long written;
+        private boolean writing = true;
+
+        TeeInputStream(InputStream in, DiskHttpCache.Editor editor, long expectedLength) {
+            super(in);
+            this.editor = editor;
+            this.expectedLength = expectedLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count;
+            try {
+                count = super.read(b, off, len);
+            } catch (IOException e) {
+                stopWriting();
+                throw e;
+            }
+            if (count == -1) {
+                finish();
+            } else if (writing && count > 0) {
+                written += count;
+                try {
+                    if (!editor.write(b, off, count)) {
+                        stopWriting();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    stopWriting();
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // 跳过的数据无法写入缓存
+            stopWriting();
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            stopWriting();
+            super.close();
+        }
+
+        private void finish() {
+            if (!writing) {
+                return;
+            }
+            writing = false;
+            if (expectedLength >= 0 && written != expectedLength) {
+                editor.abort();
+                return;
+            }
+            try {
+                editor.commit();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void stopWriting() {
+            if (writing) {
+                writing = false;
+                editor.abort();
+            }
+        }
+    }
+}
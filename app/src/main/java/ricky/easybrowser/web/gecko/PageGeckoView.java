@@ -2,12 +2,16 @@ package ricky.easybrowser.web.gecko;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Bundle;
 import android.util.AttributeSet;
 import android.widget.LinearLayout;
 
 import androidx.annotation.Nullable;
 
 import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
 
 public class PageGeckoView extends LinearLayout implements IWebView {
 
@@ -74,13 +78,90 @@ public class PageGeckoView extends LinearLayout implements IWebView {
 
     }
 
+    @Override
+    public void pauseMedia() {
+
+    }
+
+    @Override
+    public void setTimersPaused(boolean paused) {
+
+    }
+
+    @Override
+    public boolean clearCache() {
+        return false;
+    }
+
     @Override
     public void onDestroy() {
 
     }
 
     @Override
-    public Bitmap capturePreview() {
+    public boolean capturePreview(Bitmap target) {
+        return false;
+    }
+
+    @Override
+    public void saveState(Bundle outState) {
+
+    }
+
+    @Override
+    public boolean restoreState(Bundle savedState) {
+        return false;
+    }
+
+    @Override
+    public void setBackgroundPriority(boolean background) {
+
+    }
+
+    @Override
+    public void collectMemoryStats(TabMemoryStats stats) {
+
+    }
+
+    @Override
+    public void collectSignals(TabSignals signals) {
+
+    }
+
+    @Override
+    public String getTitle() {
         return null;
     }
+
+    @Override
+    public String getUrl() {
+        return null;
+    }
+
+    @Override
+    public int getProgress() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLoading() {
+        return false;
+    }
+
+    @Nullable
+    @Override
+    public Bitmap getFavicon() {
+        return null;
+    }
+
+    @Override
+    public int getBlockedCount() {
+        // GeckoView的请求不经过shouldInterceptRequest
+        return 0;
+    }
+
+    @Override
+    public void renderState(TabState state) {
+
+    }
 }
@@ -6,9 +6,9 @@ import android.animation.ObjectAnimator;
 import android.app.Activity;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.Bundle;
 import android.util.AttributeSet;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
@@ -30,17 +30,27 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.core.widget.ContentLoadingProgressBar;
 
-import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import ricky.easybrowser.EasyApplication;
 import ricky.easybrowser.R;
 import ricky.easybrowser.common.BrowserConst;
 import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
 import ricky.easybrowser.entity.dao.History;
 import ricky.easybrowser.contract.IBrowser;
 import ricky.easybrowser.utils.EasyLog;
-import ricky.easybrowser.utils.SharedPreferencesUtils;
 import ricky.easybrowser.utils.StringUtils;
 import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.web.ContentBlockerManager;
+import ricky.easybrowser.web.HttpCacheInterceptor;
+import ricky.easybrowser.web.ImagePolicy;
+import ricky.easybrowser.web.PageSignalBridge;
+import ricky.easybrowser.web.WebPageStateHelper;
+import ricky.easybrowser.web.WebViewLifecycle;
 import ricky.easybrowser.web.webkit.AddressBar;
 import ricky.easybrowser.web.webkit.WebNavListener;
 import ricky.easybrowser.widget.BrowserNavBar;
@@ -48,6 +58,52 @@ import ricky.easybrowser.widget.BrowserNavBar;
 public class PageWebView extends FrameLayout implements IWebView {
 
     private EasyWebView webView;
+    /**
+     * 当前页面加载的子资源数，页面开始加载时清零
+     */
+    private int resourceCount;
+
+    /**
+     * 当前页面拦截的请求数，在WebView的IO线程累加，页面开始加载时清零
+     */
+    private final AtomicInteger blockedCount = new AtomicInteger();
+    /**
+     * 已投递到主线程、尚未执行的状态刷新，连续拦截时只刷新一次
+     */
+    private final AtomicBoolean blockedNotifyPending = new AtomicBoolean();
+    private final Runnable blockedNotifier = new Runnable() {
+        @Override
+        public void run() {
+            blockedNotifyPending.set(false);
+            notifyStateChange();
+        }
+    };
+    /**
+     * 当前页面地址，供IO线程判断第三方请求
+     */
+    private volatile String pageUrl;
+
+    private final ImagePolicy.OnNoPicModeChangeListener noPicModeListener = new ImagePolicy.OnNoPicModeChangeListener() {
+        @Override
+        public void onNoPicModeChange(boolean noPicMode) {
+            // 开启后新的图片请求直接返回占位图，关闭时重新加载已替换的图片
+            if (!noPicMode && webView != null) {
+                webView.evaluateJavascript(ImagePolicy.RELOAD_IMAGES_SCRIPT, null);
+            }
+        }
+    };
+
+    private final PageSignalBridge signalBridge = new PageSignalBridge();
+
+    /**
+     * 页面是否正在加载，onPageStarted到onPageFinished之间为true
+     */
+    private boolean loading;
+    @Nullable
+    private Bitmap favicon;
+
+    private final WebPageStateHelper stateHelper = new WebPageStateHelper();
+
     private RelativeLayout webLinear;
 
     private AddressBar addressBar;
@@ -63,7 +119,6 @@ public class PageWebView extends FrameLayout implements IWebView {
 
     private Context mContext;
 
-    private boolean noPicMode;
 
     private int orgAddressBarHeight = 0;
     private int orgBrowserNavBarHeight = 0;
@@ -89,6 +144,7 @@ public class PageWebView extends FrameLayout implements IWebView {
         mContext = context;
         LayoutInflater.from(context).inflate(R.layout.fragment_web_page_v1, this);
         initViews();
+        ((EasyApplication) context.getApplicationContext()).getImagePolicy().addListener(noPicModeListener);
     }
 
     private void initViews() {
@@ -161,7 +217,20 @@ public class PageWebView extends FrameLayout implements IWebView {
                     progressBar.show();
                 }
                 progressBar.setProgress(newProgress);
+                notifyStateChange();
+            }
 
+            @Override
+            public void onReceivedTitle(WebView view, String title) {
+                super.onReceivedTitle(view, title);
+                notifyStateChange();
+            }
+
+            @Override
+            public void onReceivedIcon(WebView view, Bitmap icon) {
+                super.onReceivedIcon(view, icon);
+                favicon = icon;
+                notifyStateChange();
             }
         });
         webView.setWebViewClient(new WebViewClient() {
@@ -171,17 +240,42 @@ public class PageWebView extends FrameLayout implements IWebView {
             }
 
             @Override
-            public void onPageStarted(WebView view, String url, Bitmap favicon) {
-                super.onPageStarted(view, url, favicon);
+            public void onPageStarted(WebView view, String url, Bitmap icon) {
+                super.onPageStarted(view, url, icon);
+                resourceCount = 0;
+                blockedCount.set(0);
+                pageUrl = url;
+                signalBridge.reset();
+                loading = true;
+                favicon = icon;
+                notifyStateChange();
+                HttpCacheInterceptor interceptor =
+                        ((EasyApplication) mContext.getApplicationContext()).getHttpCacheInterceptor();
+                if (interceptor != null) {
+                    interceptor.onPageStarted(url);
+                }
+            }
+
+            @Override
+            public void onLoadResource(WebView view, String url) {
+                super.onLoadResource(view, url);
+                resourceCount++;
+            }
+
+            @Override
+            public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+                super.doUpdateVisitedHistory(view, url, isReload);
+                notifyStateChange();
             }
 
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
-                webAddress.setText(url);
-                if (onWebInteractListener != null) {
-                    onWebInteractListener.onPageTitleChange(TabInfo.create("", view.getTitle()));
-                }
+                signalBridge.inject(view);
+                ((EasyApplication) mContext.getApplicationContext()).getWebCacheManager().probe(view, url);
+                stateHelper.onPageFinished(view);
+                loading = false;
+                notifyStateChange();
 
                 boolean isBrowserController = mContext instanceof IBrowser;
                 if (!isBrowserController) {
@@ -204,32 +298,28 @@ public class PageWebView extends FrameLayout implements IWebView {
             @Nullable
             @Override
             public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
-                try {
-                    String targetPath = request.getUrl().getPath();
-                    if (StringUtils.isEmpty(targetPath)) {
-                        return super.shouldInterceptRequest(view, request);
-                    }
-                    if (noPicMode && isPicResources(targetPath)) {
-                        InputStream placeHolderIS = mContext.getAssets().open("emptyplaceholder.png");
-                        return new WebResourceResponse("image/png", "UTF-8", placeHolderIS);
+                EasyApplication application = (EasyApplication) mContext.getApplicationContext();
+                ContentBlockerManager blockerManager = application.getContentBlockerManager();
+                if (blockerManager != null && blockerManager.shouldBlock(request, pageUrl)) {
+                    onRequestBlocked();
+                    return ContentBlockerManager.blockedResponse();
+                }
+                ImagePolicy imagePolicy = application.getImagePolicy();
+                WebResourceResponse placeholder = imagePolicy.intercept(request);
+                if (placeholder != null) {
+                    return placeholder;
+                }
+                HttpCacheInterceptor interceptor = application.getHttpCacheInterceptor();
+                if (interceptor != null) {
+                    WebResourceResponse response = interceptor.intercept(request, pageUrl);
+                    if (response != null) {
+                        return response;
                     }
-                } catch (Exception e) {
-
                 }
-
                 return super.shouldInterceptRequest(view, request);
             }
-
-            private boolean isPicResources(String path) {
-                if (path.endsWith(".jpg")
-                        || path.endsWith(".jpeg")
-                        || path.endsWith(".png")
-                        || path.endsWith(".gif")) {
-                    return true;
-                }
-                return false;
-            }
         });
+        signalBridge.attach(webView);
         webView.setOnLongClickListener(new OnLongClickListener() {
             @Override
             public boolean onLongClick(View v) {
@@ -263,11 +353,13 @@ public class PageWebView extends FrameLayout implements IWebView {
             @Override
             public void onScrollUp() {
                 hideAddressBar();
+                notifyScrolled();
             }
 
             @Override
             public void onScrollDown() {
                 showAddressBar();
+                notifyScrolled();
             }
         });
     }
@@ -281,10 +373,6 @@ public class PageWebView extends FrameLayout implements IWebView {
 
     @Override
     public void loadUrl(String url) {
-        SharedPreferences sp = SharedPreferencesUtils.getSettingSP(getContext());
-        if (sp != null) {
-            noPicMode = sp.getBoolean(SharedPreferencesUtils.KEY_NO_PIC_MODE, false);
-        }
         webView.loadUrl(url);
     }
 
@@ -325,32 +413,150 @@ public class PageWebView extends FrameLayout implements IWebView {
 
     @Override
     public void onResume() {
-        webView.onResume();
-        webView.resumeTimers();
+        if (webView != null) {
+            webView.onResume();
+        }
     }
 
     @Override
     public void onPause() {
-        webView.onPause();
-        webView.pauseTimers();
+        if (webView != null) {
+            webView.onPause();
+        }
+    }
+
+    @Override
+    public void pauseMedia() {
+        if (webView != null) {
+            webView.evaluateJavascript(WebViewLifecycle.PAUSE_MEDIA_SCRIPT, null);
+        }
+    }
+
+    @Override
+    public void setTimersPaused(boolean paused) {
+        if (webView == null) {
+            return;
+        }
+        if (paused) {
+            webView.pauseTimers();
+        } else {
+            webView.resumeTimers();
+        }
+    }
+
+    @Override
+    public boolean clearCache() {
+        if (webView == null) {
+            return false;
+        }
+        webView.clearCache(true);
+        return true;
     }
 
     @Override
     public void onDestroy() {
+        WebViewLifecycle.getInstance().forget(this);
+        ((EasyApplication) mContext.getApplicationContext()).getImagePolicy().removeListener(noPicModeListener);
         webView.stopLoading();
         webView.getSettings().setJavaScriptEnabled(false);
         webView.clearHistory();
-        webView.clearCache(true);
         webView.loadUrl("about:blank");
-        webView.pauseTimers();
         webView.removeAllViews();
         webView.destroy();
         webView = null;
     }
 
     @Override
-    public Bitmap capturePreview() {
-        return null;
+    public boolean capturePreview(Bitmap target) {
+        return false;
+    }
+
+    @Override
+    public void saveState(Bundle outState) {
+        stateHelper.saveState(webView, outState);
+    }
+
+    @Override
+    public boolean restoreState(Bundle savedState) {
+        if (!stateHelper.restoreState(webView, savedState)) {
+            return false;
+        }
+        notifyStateChange();
+        return true;
+    }
+
+    private void notifyScrolled() {
+        if (onWebInteractListener != null && stateHelper.onScrolled()) {
+            onWebInteractListener.onPageScrolled();
+        }
+    }
+
+    @Override
+    public void collectSignals(TabSignals signals) {
+        signalBridge.collect(signals);
+    }
+
+    @Override
+    public String getTitle() {
+        return webView == null ? null : webView.getTitle();
+    }
+
+    @Override
+    public String getUrl() {
+        return webView == null ? null : webView.getUrl();
+    }
+
+    @Override
+    public int getProgress() {
+        return webView == null ? 0 : webView.getProgress();
+    }
+
+    @Override
+    public boolean isLoading() {
+        return loading;
+    }
+
+    @Nullable
+    @Override
+    public Bitmap getFavicon() {
+        return favicon;
+    }
+
+    @Override
+    public int getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    @Override
+    public void renderState(TabState state) {
+        String url = state.getUrl();
+        if (url != null && !url.contentEquals(webAddress.getText())) {
+            webAddress.setText(url);
+        }
+        browserNavBar.setNavigationState(state.canGoBack(), state.canGoForward());
+    }
+
+    private void notifyStateChange() {
+        if (onWebInteractListener != null) {
+            onWebInteractListener.onPageStateChange(TabInfo.NO_ID);
+        }
+    }
+
+    private void onRequestBlocked() {
+        blockedCount.incrementAndGet();
+        if (blockedNotifyPending.compareAndSet(false, true)) {
+            post(blockedNotifier);
+        }
+    }
+
+    @Override
+    public void setBackgroundPriority(boolean background) {
+        WebPageStateHelper.setBackgroundPriority(webView, background);
+    }
+
+    @Override
+    public void collectMemoryStats(TabMemoryStats stats) {
+        WebPageStateHelper.collectMemoryStats(webView, resourceCount, stats);
     }
 
     /**
@@ -423,7 +629,6 @@ public class PageWebView extends FrameLayout implements IWebView {
             return;
         }
         TabInfo tabInfo = TabInfo.create(
-                System.currentTimeMillis() + "",
                 mContext.getResources().getString(R.string.new_tab_welcome),
                 uri);
         tabController.onTabCreate(tabInfo, backStage);
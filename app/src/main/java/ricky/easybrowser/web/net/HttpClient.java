@@ -0,0 +1,852 @@
+package ricky.easybrowser.web.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 浏览器自己的HTTP/1.1客户端，由拦截的请求共享。
+ * <p>
+ * 同一主机(协议、域名、端口)的连接在响应体读完后放回连接池，在服务器Keep-Alive允许的时间内复用；
+ * 复用的连接已被服务器关闭时自动换新连接重试一次。每个主机同时进行的请求数有上限，
+ * 达到上限时等待一小段时间，仍然没有空闲名额时抛出 {@link HostBusyException}，由调用方交回WebView加载。
+ * <p>
+ * {@link #preconnect(String)} 提前完成DNS、TCP及TLS握手，建立的连接放入连接池供之后的请求使用。
+ * 响应体直接从连接上读取，不在内存中缓冲。
+ * <p>
+ * 只支持没有请求体的GET及HEAD请求；系统配置了代理时不处理，抛出IOException
+ */
+public class HttpClient {
+
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 6;
+    public static final long DEFAULT_KEEP_ALIVE_MS = 60 * 1000;
+
+    /**
+     * 不转发调用方给出的值，由客户端控制连接
+     */
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList(
+            "host", "connection", "keep-alive", "proxy-connection", "transfer-encoding", "te", "trailer",
+            "upgrade", "content-length"));
+
+    /**
+     * 某个主机当前没有空闲的请求名额
+     */
+    public static class HostBusyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HostBusyException(String route) {
+            super("too many requests to " + route);
+        }
+    }
+
+    /**
+     * 响应。响应体读完或关闭后连接才会释放，必须关闭
+     */
+    public static final class Response {
+        private final int status;
+        private final String reason;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        private Response(int status, String reason, Map<String, List<String>> headers, InputStream body) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * 响应头，名称为小写
+         */
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        public void close() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // 连接已关闭
+            }
+        }
+    }
+
+    private final int maxRequestsPerHost;
+    private final long keepAliveMs;
+    private int connectTimeoutMs = 15000;
+    private int readTimeoutMs = 30000;
+    private long hostWaitMs = 1000;
+
+    private final SSLSocketFactory sslSocketFactory;
+    private final HostnameVerifier hostnameVerifier;
+
+    private final Map<String, ArrayDeque<HttpConnection>> idleConnections = new HashMap<>();
+    private final Map<String, Semaphore> hostPermits = new HashMap<>();
+    private final Set<String> pendingPreconnects = new HashSet<>();
+    /**
+     * 尚未读完或关闭的响应体，用于回收被调用方遗弃的响应体占用的名额
+     */
+    private final Set<ConnectionBody> openBodies = new HashSet<>();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong busyCount = new AtomicLong();
+    private final AtomicLong abandonedCount = new AtomicLong();
+    private final AtomicLong preconnectCount = new AtomicLong();
+    private final AtomicLong preconnectHitCount = new AtomicLong();
+    private final AtomicLong ttfbCount = new AtomicLong();
+    private final AtomicLong ttfbTotalNanos = new AtomicLong();
+    private volatile long lastTtfbNanos;
+    private final AtomicLong connectTotalNanos = new AtomicLong();
+
+    public HttpClient() {
+        this(DEFAULT_MAX_REQUESTS_PER_HOST, DEFAULT_KEEP_ALIVE_MS);
+    }
+
+    public HttpClient(int maxRequestsPerHost, long keepAliveMs) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.keepAliveMs = keepAliveMs;
+        this.sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        this.hostnameVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+    }
+
+    public void setTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * 主机请求数达到上限时最多等待的时间
+     */
+    public void setHostWaitMs(long hostWaitMs) {
+        this.hostWaitMs = hostWaitMs;
+    }
+
+    /**
+     * 发出请求并读取状态行及响应头，可在任意线程调用
+     *
+     * @param headers 请求头，连接相关的头会被忽略
+     */
+    public Response execute(String method, String url, Map<String, String> headers) throws IOException {
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            throw new IllegalArgumentException("unsupported method: " + method);
+        }
+        URL target = new URL(url);
+        checkDirect(target);
+        String route = route(target);
+        Semaphore permits = permitsFor(route);
+        boolean acquired = permits.tryAcquire();
+        if (!acquired) {
+            reapAbandonedBodies();
+        }
+        try {
+            acquired = acquired || permits.tryAcquire(hostWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        }
+        if (!acquired) {
+            busyCount.incrementAndGet();
+            throw new HostBusyException(route);
+        }
+        requestCount.incrementAndGet();
+        try {
+            HttpConnection connection = takeIdle(route);
+            if (connection != null) {
+                try {
+                    return exchange(connection, permits, method, target, headers);
+                } catch (IOException e) {
+                    // 空闲时被服务器关闭的连接，换新连接重试
+                    connection.close();
+                    retryCount.incrementAndGet();
+                }
+            }
+            connection = connect(route, target);
+            try {
+                return exchange(connection, permits, method, target, headers);
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 提前建立到地址所在主机的连接。已有空闲连接或正在预连接时直接返回，会阻塞当前线程
+     *
+     * @return 是否建立了新的连接
+     */
+    public boolean preconnect(String url) {
+        String route;
+        URL target;
+        try {
+            target = new URL(url);
+            if (!"http".equals(target.getProtocol()) && !"https".equals(target.getProtocol())) {
+                return false;
+            }
+            checkDirect(target);
+            route = route(target);
+        } catch (IOException e) {
+            return false;
+        }
+        synchronized (this) {
+            ArrayDeque<HttpConnection> idle = idleConnections.get(route);
+            if ((idle != null && !idle.isEmpty()) || !pendingPreconnects.add(route)) {
+                return false;
+            }
+        }
+        try {
+            HttpConnection connection = connect(route, target);
+            connection.preconnected = true;
+            connection.expiresAt = System.currentTimeMillis() + keepAliveMs;
+            preconnectCount.incrementAndGet();
+            recycle(connection);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            synchronized (this) {
+                pendingPreconnects.remove(route);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 关闭所有空闲连接
+     */
+    public void evictAll() {
+        synchronized (this) {
+            for (ArrayDeque<HttpConnection> idle : idleConnections.values()) {
+                for (HttpConnection connection : idle) {
+                    connection.close();
+                }
+            }
+            idleConnections.clear();
+        }
+    }
+
+    private Response exchange(HttpConnection connection, Semaphore permits, String method, URL target,
+                              Map<String, String> headers) throws IOException {
+        connection.socket.setSoTimeout(readTimeoutMs);
+        long start = System.nanoTime();
+        writeRequest(connection.out, method, target, headers);
+
+        String statusLine;
+        int status;
+        do {
+            statusLine = connection.readLine();
+            status = parseStatus(statusLine);
+            if (status >= 100 && status < 200) {
+                // 跳过100 Continue、103 Early Hints等中间响应
+                readHeaders(connection);
+            }
+        } while (status >= 100 && status < 200);
+        long ttfb = System.nanoTime() - start;
+        lastTtfbNanos = ttfb;
+        ttfbTotalNanos.addAndGet(ttfb);
+        ttfbCount.incrementAndGet();
+
+        if (connection.useCount > 0 || connection.preconnected) {
+            reuseCount.incrementAndGet();
+        }
+        if (connection.preconnected) {
+            preconnectHitCount.incrementAndGet();
+            connection.preconnected = false;
+        }
+        connection.useCount++;
+
+        Map<String, List<String>> responseHeaders = readHeaders(connection);
+        boolean keepAlive = isKeepAlive(statusLine, responseHeaders);
+        connection.expiresAt = System.currentTimeMillis() + keepAliveTimeout(responseHeaders);
+        int space = statusLine.indexOf(' ', statusLine.indexOf(' ') + 1);
+        String reason = space < 0 ? "" : statusLine.substring(space + 1).trim();
+
+        ConnectionBody body;
+        String transferEncoding = first(responseHeaders, "transfer-encoding");
+        String contentLength = first(responseHeaders, "content-length");
+        if ("HEAD".equals(method) || status == 204 || status == 304) {
+            body = new FixedLengthBody(connection, permits, keepAlive, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+            body = new ChunkedBody(connection, permits, keepAlive);
+        } else if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("invalid content-length: " + contentLength);
+            }
+            body = new FixedLengthBody(connection, permits, keepAlive, length);
+        } else {
+            body = new UntilCloseBody(connection, permits);
+        }
+        return new Response(status, reason, responseHeaders, body);
+    }
+
+    private static void writeRequest(OutputStream out, String method, URL target, Map<String, String> headers)
+            throws IOException {
+        StringBuilder request = new StringBuilder();
+        String file = target.getFile();
+        request.append(method).append(' ').append(file.isEmpty() ? "/" : file).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(hostHeader(target)).append("\r\n");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getKey() == null || header.getValue() == null
+                        || CONNECTION_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        request.append("Connection: keep-alive\r\n\r\n");
+        out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private static int parseStatus(String statusLine) throws IOException {
+        if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+            throw new IOException("unexpected status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new IOException("unexpected status line: " + statusLine);
+        }
+    }
+
+    private static Map<String, List<String>> readHeaders(HttpConnection connection) throws IOException {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        String line;
+        while (!(line = connection.readLine()).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<>();
+                headers.put(name, values);
+            }
+            values.add(line.substring(colon + 1).trim());
+        }
+        return headers;
+    }
+
+    private static boolean isKeepAlive(String statusLine, Map<String, List<String>> headers) {
+        String connection = first(headers, "connection");
+        if (connection != null && connection.toLowerCase(Locale.ROOT).contains("close")) {
+            return false;
+        }
+        if (statusLine.startsWith("HTTP/1.0")) {
+            return connection != null && connection.toLowerCase(Locale.ROOT).contains("keep-alive");
+        }
+        return true;
+    }
+
+    /**
+     * 服务器通过Keep-Alive: timeout=N给出的空闲时间，提前一秒过期以免和服务器关闭连接同时发生
+     */
+    private long keepAliveTimeout(Map<String, List<String>> headers) {
+        String keepAlive = first(headers, "keep-alive");
+        if (keepAlive == null) {
+            return keepAliveMs;
+        }
+        for (String param : keepAlive.split(",")) {
+            String trimmed = param.trim().toLowerCase(Locale.ROOT);
+            if (trimmed.startsWith("timeout=")) {
+                try {
+                    long seconds = Long.parseLong(trimmed.substring("timeout=".length()).trim());
+                    return Math.min(keepAliveMs, Math.max(0, seconds - 1) * 1000);
+                } catch (NumberFormatException e) {
+                    return keepAliveMs;
+                }
+            }
+        }
+        return keepAliveMs;
+    }
+
+    private HttpConnection connect(String route, URL target) throws IOException {
+        long start = System.nanoTime();
+        String host = socketHost(target);
+        int port = port(target);
+        IOException lastError = null;
+        Socket socket = null;
+        for (InetAddress address : InetAddress.getAllByName(host)) {
+            Socket candidate = new Socket();
+            try {
+                candidate.setTcpNoDelay(true);
+                candidate.connect(new InetSocketAddress(address, port), connectTimeoutMs);
+                socket = candidate;
+                break;
+            } catch (IOException e) {
+                lastError = e;
+                candidate.close();
+            }
+        }
+        if (socket == null) {
+            throw lastError != null ? lastError : new IOException("no address for " + host);
+        }
+        if ("https".equals(target.getProtocol())) {
+            try {
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true);
+                sslSocket.setSoTimeout(connectTimeoutMs);
+                sslSocket.startHandshake();
+                if (!hostnameVerifier.verify(host, sslSocket.getSession())) {
+                    sslSocket.close();
+                    throw new SSLPeerUnverifiedException("hostname not verified: " + host);
+                }
+                socket = sslSocket;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+        connectionCount.incrementAndGet();
+        connectTotalNanos.addAndGet(System.nanoTime() - start);
+        return new HttpConnection(route, socket);
+    }
+
+    /**
+     * 取出空闲连接，正在预连接时等待预连接完成
+     */
+    private synchronized HttpConnection takeIdle(String route) throws IOException {
+        long deadline = System.currentTimeMillis() + connectTimeoutMs;
+        HttpConnection connection = pollIdle(route);
+        while (connection == null && pendingPreconnects.contains(route)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+            connection = pollIdle(route);
+        }
+        return connection;
+    }
+
+    private HttpConnection pollIdle(String route) {
+        long now = System.currentTimeMillis();
+        ArrayDeque<HttpConnection> idle = idleConnections.get(route);
+        while (idle != null && !idle.isEmpty()) {
+            // 优先使用最近放回的连接
+            HttpConnection connection = idle.pollLast();
+            if (connection.expiresAt > now && !connection.isClosed()) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private void recycle(HttpConnection connection) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Map.Entry<String, ArrayDeque<HttpConnection>>> routes = idleConnections.entrySet().iterator();
+            while (routes.hasNext()) {
+                ArrayDeque<HttpConnection> idle = routes.next().getValue();
+                Iterator<HttpConnection> iterator = idle.iterator();
+                while (iterator.hasNext()) {
+                    HttpConnection candidate = iterator.next();
+                    if (candidate.expiresAt <= now) {
+                        candidate.close();
+                        iterator.remove();
+                    }
+                }
+                if (idle.isEmpty()) {
+                    routes.remove();
+                }
+            }
+            ArrayDeque<HttpConnection> idle = idleConnections.get(connection.route);
+            if (idle == null) {
+                idle = new ArrayDeque<>();
+                idleConnections.put(connection.route, idle);
+            }
+            idle.addLast(connection);
+            if (idle.size() > maxRequestsPerHost) {
+                idle.pollFirst().close();
+            }
+        }
+    }
+
+    /**
+     * 关闭超过读取超时时间仍未读取的响应体，释放其连接及名额。
+     * 调用方没有读完也没有关闭响应体时(如WebView放弃了请求)，名额不会自行归还
+     */
+    private void reapAbandonedBodies() {
+        long deadline = System.currentTimeMillis() - readTimeoutMs;
+        List<ConnectionBody> abandoned = new ArrayList<>();
+        synchronized (this) {
+            for (ConnectionBody body : openBodies) {
+                if (body.lastReadTime < deadline) {
+                    abandoned.add(body);
+                }
+            }
+        }
+        for (ConnectionBody body : abandoned) {
+            // 在锁外关闭，release会再次获取客户端的锁
+            body.close();
+            abandonedCount.incrementAndGet();
+        }
+    }
+
+    private synchronized void trackBody(ConnectionBody body, boolean open) {
+        if (open) {
+            openBodies.add(body);
+        } else {
+            openBodies.remove(body);
+        }
+    }
+
+    private synchronized Semaphore permitsFor(String route) {
+        Semaphore permits = hostPermits.get(route);
+        if (permits == null) {
+            permits = new Semaphore(maxRequestsPerHost);
+            hostPermits.put(route, permits);
+        }
+        return permits;
+    }
+
+    /**
+     * 系统配置了代理时交给WebView处理
+     */
+    private static void checkDirect(URL target) throws IOException {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) {
+            return;
+        }
+        try {
+            for (Proxy proxy : selector.select(target.toURI())) {
+                if (proxy.type() != Proxy.Type.DIRECT) {
+                    throw new IOException("proxy not supported");
+                }
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("invalid url: " + target);
+        }
+    }
+
+    private static String route(URL target) throws IOException {
+        String protocol = target.getProtocol();
+        if (!"http".equals(protocol) && !"https".equals(protocol)) {
+            throw new IOException("unsupported protocol: " + protocol);
+        }
+        return protocol + "://" + target.getHost().toLowerCase(Locale.ROOT) + ":" + port(target);
+    }
+
+    private static int port(URL target) {
+        return target.getPort() != -1 ? target.getPort() : target.getDefaultPort();
+    }
+
+    private static String socketHost(URL target) {
+        String host = target.getHost();
+        if (host.startsWith("[") && host.endsWith("]")) {
+            return host.substring(1, host.length() - 1);
+        }
+        return host;
+    }
+
+    private static String hostHeader(URL target) {
+        if (target.getPort() == -1 || target.getPort() == target.getDefaultPort()) {
+            return target.getHost();
+        }
+        return target.getHost() + ":" + target.getPort();
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 新建的连接数，包括预连接
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * 使用已有连接(包括预连接)的请求数
+     */
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    /**
+     * 复用的连接已失效后重试的次数
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * 因主机请求数达到上限而放弃的请求数
+     */
+    public long getBusyCount() {
+        return busyCount.get();
+    }
+
+    /**
+     * 超时未读取而被回收的响应体数
+     */
+    public long getAbandonedCount() {
+        return abandonedCount.get();
+    }
+
+    public long getPreconnectCount() {
+        return preconnectCount.get();
+    }
+
+    /**
+     * 被请求用到的预连接数
+     */
+    public long getPreconnectHitCount() {
+        return preconnectHitCount.get();
+    }
+
+    /**
+     * 从写出请求到读到状态行的时间
+     */
+    public long getLastTtfbNanos() {
+        return lastTtfbNanos;
+    }
+
+    public long getAverageTtfbNanos() {
+        long count = ttfbCount.get();
+        return count == 0 ? 0 : ttfbTotalNanos.get() / count;
+    }
+
+    /**
+     * 新建连接(DNS、TCP及TLS)的平均耗时
+     */
+    public long getAverageConnectNanos() {
+        long count = connectionCount.get();
+        return count == 0 ? 0 : connectTotalNanos.get() / count;
+    }
+
+    public synchronized int getIdleConnectionCount() {
+        int count = 0;
+        for (ArrayDeque<HttpConnection> idle : idleConnections.values()) {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    /**
+     * 直接从连接上读取的响应体，读完后把连接放回连接池，提前关闭时断开连接。
+     * 超过读取超时时间没有读取的响应体视为被遗弃，在主机名额用完时由 {@link #reapAbandonedBodies()} 关闭
+     */
+    private abstract class ConnectionBody extends InputStream {
+        final HttpConnection connection;
+        private final Semaphore permits;
+        private final boolean keepAlive;
+        private volatile boolean released;
+        /**
+         * 创建或最近一次读取的时间
+         */
+        volatile long lastReadTime = System.currentTimeMillis();
+
+        ConnectionBody(HttpConnection connection, Semaphore permits, boolean keepAlive) {
+            this.connection = connection;
+            this.permits = permits;
+            this.keepAlive = keepAlive;
+            trackBody(this, true);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                return -1;
+            }
+            lastReadTime = System.currentTimeMillis();
+            try {
+                int count = readBody(b, off, len);
+                if (count == -1) {
+                    release(keepAlive);
+                }
+                return count;
+            } catch (IOException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            release(false);
+        }
+
+        abstract int readBody(byte[] b, int off, int len) throws IOException;
+
+        /**
+         * 响应体为空时在创建后立即释放。回收遗弃的响应体时可能在其他线程调用
+         */
+        final synchronized void release(boolean reusable) {
+            if (released) {
+                return;
+            }
+            released = true;
+            trackBody(this, false);
+            if (reusable) {
+                recycle(connection);
+            } else {
+                connection.close();
+            }
+            permits.release();
+        }
+    }
+
+    private final class FixedLengthBody extends ConnectionBody {
+        private long remaining;
+
+        FixedLengthBody(HttpConnection connection, Semaphore permits, boolean keepAlive, long length) {
+            super(connection, permits, keepAlive);
+            this.remaining = length;
+            if (length == 0) {
+                release(keepAlive);
+            }
+        }
+
+        @Override
+        int readBody(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = connection.in.read(b, off, (int) Math.min(len, remaining));
+            if (count == -1) {
+                throw new IOException("unexpected end of body");
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(remaining, connection.in.available());
+        }
+    }
+
+    private final class ChunkedBody extends ConnectionBody {
+        private long chunkRemaining = -1;
+        private boolean finished;
+
+        ChunkedBody(HttpConnection connection, Semaphore permits, boolean keepAlive) {
+            super(connection, permits, keepAlive);
+        }
+
+        @Override
+        int readBody(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (chunkRemaining <= 0) {
+                if (chunkRemaining == 0) {
+                    // 上一块数据后的CRLF
+                    connection.readLine();
+                }
+                String sizeLine = connection.readLine();
+                int semicolon = sizeLine.indexOf(';');
+                String size = (semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim();
+                try {
+                    chunkRemaining = Long.parseLong(size, 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("invalid chunk size: " + sizeLine);
+                }
+                if (chunkRemaining == 0) {
+                    // 忽略trailer
+                    while (!connection.readLine().isEmpty()) {
+                        // skip
+                    }
+                    finished = true;
+                    return -1;
+                }
+            }
+            int count = connection.in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (count == -1) {
+                throw new IOException("unexpected end of chunk");
+            }
+            chunkRemaining -= count;
+            return count;
+        }
+    }
+
+    /**
+     * 没有长度信息，读到服务器关闭连接为止
+     */
+    private final class UntilCloseBody extends ConnectionBody {
+
+        UntilCloseBody(HttpConnection connection, Semaphore permits) {
+            super(connection, permits, false);
+        }
+
+        @Override
+        int readBody(byte[] b, int off, int len) throws IOException {
+            return connection.in.read(b, off, len);
+        }
+    }
+}
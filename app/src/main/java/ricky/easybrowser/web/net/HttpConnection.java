@@ -0,0 +1,73 @@
+package ricky.easybrowser.web.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * 到某个主机的一条HTTP/1.1连接，同一时间只处理一个请求
+ */
+final class HttpConnection {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    final String route;
+    final Socket socket;
+    final InputStream in;
+    final OutputStream out;
+    /**
+     * 由预连接建立，尚未处理过请求
+     */
+    boolean preconnected;
+    int useCount;
+    /**
+     * 空闲后可以复用到的时间，由服务器的Keep-Alive决定
+     */
+    long expiresAt;
+
+    HttpConnection(String route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 4096);
+    }
+
+    /**
+     * 读取一行，去掉行尾的CRLF，按ISO-8859-1解码
+     */
+    String readLine() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("connection closed");
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                builder.append((char) b);
+            }
+            if (builder.length() > MAX_LINE_LENGTH) {
+                throw new IOException("line too long");
+            }
+        }
+        return builder.toString();
+    }
+
+    boolean isClosed() {
+        return socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown();
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 已经不可用
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ricky.easybrowser.web.net;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 记录每个站点的页面加载过哪些其他来源的子资源，再次打开该站点时用于预连接。
+ * <p>
+ * 子资源请求的Referer为所在页面，按Referer的域名归类。每个站点只保留最近用到的几个来源，
+ * 站点数量超出上限时丢弃最久未访问的站点。线程安全
+ */
+public class PreconnectPredictor {
+
+    private static final int MAX_SITES = 200;
+    private static final int MAX_ORIGINS_PER_SITE = 6;
+
+    private final Map<String, LinkedHashSet<String>> origins =
+            new LinkedHashMap<String, LinkedHashSet<String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LinkedHashSet<String>> eldest) {
+                    return size() > MAX_SITES;
+                }
+            };
+
+    /**
+     * 记录一次子资源请求
+     *
+     * @param referer 请求的Referer，没有时忽略
+     */
+    public synchronized void record(String referer, String url) {
+        String site = host(referer);
+        String origin = origin(url);
+        if (site == null || origin == null || origin.equals(origin(referer))) {
+            return;
+        }
+        LinkedHashSet<String> siteOrigins = origins.get(site);
+        if (siteOrigins == null) {
+            siteOrigins = new LinkedHashSet<>();
+            origins.put(site, siteOrigins);
+        }
+        // 重新插入，保持最近用到的在末尾
+        siteOrigins.remove(origin);
+        siteOrigins.add(origin);
+        if (siteOrigins.size() > MAX_ORIGINS_PER_SITE) {
+            Iterator<String> iterator = siteOrigins.iterator();
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return 打开该页面时可能用到的其他来源，如 https://cdn.example.com
+     */
+    public synchronized List<String> predict(String pageUrl) {
+        String site = host(pageUrl);
+        LinkedHashSet<String> siteOrigins = site == null ? null : origins.get(site);
+        return siteOrigins == null ? new ArrayList<String>() : new ArrayList<>(siteOrigins);
+    }
+
+    private static String host(String url) {
+        URI uri = parse(url);
+        return uri == null || uri.getHost() == null ? null : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    private static String origin(String url) {
+        URI uri = parse(url);
+        if (uri == null || uri.getHost() == null) {
+            return null;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            return null;
+        }
+        String origin = scheme + "://" + uri.getHost().toLowerCase(Locale.ROOT);
+        return uri.getPort() == -1 ? origin : origin + ":" + uri.getPort();
+    }
+
+    private static URI parse(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url);
+            return uri.getScheme() == null ? null : uri;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package ricky.easybrowser.web.webkit;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.os.Bundle;
@@ -12,7 +11,6 @@ import android.view.View;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
-import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.ImageView;
@@ -22,14 +20,26 @@ import android.widget.TextView;
 import androidx.annotation.Nullable;
 import androidx.core.widget.ContentLoadingProgressBar;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ricky.easybrowser.EasyApplication;
 import ricky.easybrowser.R;
 import ricky.easybrowser.common.BrowserConst;
 import ricky.easybrowser.entity.bo.TabInfo;
+import ricky.easybrowser.entity.bo.TabMemoryStats;
+import ricky.easybrowser.entity.bo.TabSignals;
+import ricky.easybrowser.entity.bo.TabState;
 import ricky.easybrowser.entity.dao.History;
 import ricky.easybrowser.contract.IBrowser;
-import ricky.easybrowser.utils.EasyViewUtils;
-import ricky.easybrowser.utils.SharedPreferencesUtils;
+import ricky.easybrowser.utils.ContextUtils;
 import ricky.easybrowser.contract.IWebView;
+import ricky.easybrowser.web.ContentBlockerManager;
+import ricky.easybrowser.web.HttpCacheInterceptor;
+import ricky.easybrowser.web.ImagePolicy;
+import ricky.easybrowser.web.PageSignalBridge;
+import ricky.easybrowser.web.WebPageStateHelper;
+import ricky.easybrowser.web.WebViewLifecycle;
 import ricky.easybrowser.widget.BrowserNavBar;
 
 public class PageNestedWebView extends LinearLayout implements IWebView {
@@ -49,11 +59,53 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
     private OnWebInteractListener onWebInteractListener;
     private WebViewClickHandler handler;
 
-    SharedPreferences sp;
-    private boolean noPicMode;
-
     private String hitResultExtra = null;
 
+    /**
+     * 当前页面加载的子资源数，页面开始加载时清零
+     */
+    private int resourceCount;
+
+    /**
+     * 当前页面拦截的请求数，在WebView的IO线程累加，页面开始加载时清零
+     */
+    private final AtomicInteger blockedCount = new AtomicInteger();
+    /**
+     * 已投递到主线程、尚未执行的状态刷新，连续拦截时只刷新一次
+     */
+    private final AtomicBoolean blockedNotifyPending = new AtomicBoolean();
+    private final Runnable blockedNotifier = new Runnable() {
+        @Override
+        public void run() {
+            blockedNotifyPending.set(false);
+            notifyStateChange();
+        }
+    };
+    /**
+     * 当前页面地址，供IO线程判断第三方请求
+     */
+    private volatile String pageUrl;
+
+    private final ImagePolicy.OnNoPicModeChangeListener noPicModeListener = new ImagePolicy.OnNoPicModeChangeListener() {
+        @Override
+        public void onNoPicModeChange(boolean noPicMode) {
+            // 开启后新的图片请求直接返回占位图，关闭时重新加载已替换的图片
+            if (!noPicMode && webView != null) {
+                webView.evaluateJavascript(ImagePolicy.RELOAD_IMAGES_SCRIPT, null);
+            }
+        }
+    };
+
+    private final PageSignalBridge signalBridge = new PageSignalBridge();
+
+    /**
+     * 页面是否正在加载，onPageStarted到onPageFinished之间为true
+     */
+    private boolean loading;
+    @Nullable
+    private Bitmap favicon;
+    private final WebPageStateHelper stateHelper = new WebPageStateHelper();
+
     public PageNestedWebView(Context context) {
         this(context, null);
     }
@@ -68,6 +120,7 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
         LayoutInflater.from(context).inflate(R.layout.fragment_web_page_v2, this);
         initViews();
         handler = new WebViewClickHandler(this);
+        ((EasyApplication) context.getApplicationContext()).getImagePolicy().addListener(noPicModeListener);
     }
 
     private void initViews() {
@@ -89,7 +142,10 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
             @Override
             public void onClick(View v) {
                 // 地址栏弹窗
-                IBrowser browser = (IBrowser) mContext;
+                IBrowser browser = ContextUtils.findBrowser(mContext);
+                if (browser == null) {
+                    return;
+                }
                 IBrowser.INavController navController = (IBrowser.INavController)
                         browser.provideBrowserComponent(BrowserConst.NAVIGATION_COMPONENT);
                 if (webAddress.getText() != null) {
@@ -110,6 +166,15 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
         webView.setWebChromeClient(new MyWebChromeClient());
         webView.setWebViewClient(new MyWebViewClient());
         webView.setOnLongClickListener(new MyWebLongClickListener());
+        signalBridge.attach(webView);
+        webView.setOnScrollChangeListener(new OnScrollChangeListener() {
+            @Override
+            public void onScrollChange(View v, int scrollX, int scrollY, int oldScrollX, int oldScrollY) {
+                if (onWebInteractListener != null && stateHelper.onScrolled()) {
+                    onWebInteractListener.onPageScrolled();
+                }
+            }
+        });
     }
 
     private void loadUrl() {
@@ -121,7 +186,6 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
 
     @Override
     public void loadUrl(String url) {
-        updateWebSettings();
         webView.loadUrl(url);
     }
 
@@ -162,24 +226,54 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
 
     @Override
     public void onResume() {
-        webView.onResume();
-        webView.resumeTimers();
+        if (webView != null) {
+            webView.onResume();
+        }
     }
 
     @Override
     public void onPause() {
-        webView.onPause();
-        webView.pauseTimers();
+        if (webView != null) {
+            webView.onPause();
+        }
+    }
+
+    @Override
+    public void pauseMedia() {
+        if (webView != null) {
+            webView.evaluateJavascript(WebViewLifecycle.PAUSE_MEDIA_SCRIPT, null);
+        }
+    }
+
+    @Override
+    public void setTimersPaused(boolean paused) {
+        if (webView == null) {
+            return;
+        }
+        if (paused) {
+            webView.pauseTimers();
+        } else {
+            webView.resumeTimers();
+        }
+    }
+
+    @Override
+    public boolean clearCache() {
+        if (webView == null) {
+            return false;
+        }
+        webView.clearCache(true);
+        return true;
     }
 
     @Override
     public void onDestroy() {
+        WebViewLifecycle.getInstance().forget(this);
+        ((EasyApplication) mContext.getApplicationContext()).getImagePolicy().removeListener(noPicModeListener);
         webView.stopLoading();
         webView.getSettings().setJavaScriptEnabled(false);
         webView.clearHistory();
-        webView.clearCache(true);
         webView.loadUrl("about:blank");
-        webView.pauseTimers();
         webView.removeAllViews();
         webView.destroy();
         webView = null;
@@ -187,42 +281,106 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
     }
 
     @Override
-    public Bitmap capturePreview() {
+    public boolean capturePreview(Bitmap target) {
+        if (webView == null || webView.getWidth() <= 0 || webView.getHeight() <= 0) {
+            return false;
+        }
+        Canvas canvas = new Canvas(target);
+
+        int left = webView.getScrollX();
+        int top = webView.getScrollY();
+        canvas.translate(-left, -top);
+
+        float scaleX = (float) target.getWidth() / webView.getWidth();
+        float scaleY = (float) target.getHeight() / webView.getHeight();
+        canvas.scale(scaleX, scaleY, left, top);
+
+        webView.draw(canvas);
+
+        canvas.setBitmap(null);
+        return true;
+    }
+
+    @Override
+    public void saveState(Bundle outState) {
+        stateHelper.saveState(webView, outState);
+    }
+
+    @Override
+    public boolean restoreState(Bundle savedState) {
+        if (!stateHelper.restoreState(webView, savedState)) {
+            return false;
+        }
+        notifyStateChange();
+        return true;
+    }
 
-        int width = (int) EasyViewUtils.dp2px(mContext, 90);
-        int height = (int) EasyViewUtils.dp2px(mContext, 160);
+    @Override
+    public void collectSignals(TabSignals signals) {
+        signalBridge.collect(signals);
+    }
 
-        if (width > 0 && height > 0) {
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-            Canvas canvas = new Canvas(bitmap);
+    @Override
+    public String getTitle() {
+        return webView == null ? null : webView.getTitle();
+    }
 
-            int left = webView.getScrollX();
-            int top = webView.getScrollY();
-            canvas.translate(-left, -top);
+    @Override
+    public String getUrl() {
+        return webView == null ? null : webView.getUrl();
+    }
+
+    @Override
+    public int getProgress() {
+        return webView == null ? 0 : webView.getProgress();
+    }
 
-            float scaleX = (float) width / webView.getWidth();
-            float scaleY = (float) height / webView.getHeight();
-            canvas.scale(scaleX, scaleY, left, top);
+    @Override
+    public boolean isLoading() {
+        return loading;
+    }
 
-            webView.draw(canvas);
+    @Nullable
+    @Override
+    public Bitmap getFavicon() {
+        return favicon;
+    }
 
-            canvas.setBitmap(null);
+    @Override
+    public int getBlockedCount() {
+        return blockedCount.get();
+    }
 
-            return bitmap;
+    @Override
+    public void renderState(TabState state) {
+        String url = state.getUrl();
+        if (url != null && !url.contentEquals(webAddress.getText())) {
+            webAddress.setText(url);
         }
-        return null;
+        browserNavBar.setNavigationState(state.canGoBack(), state.canGoForward());
     }
 
-    private void updateWebSettings() {
-        if (sp == null) {
-            sp = SharedPreferencesUtils.getSettingSP(getContext());
+    private void notifyStateChange() {
+        if (onWebInteractListener != null) {
+            onWebInteractListener.onPageStateChange(TabInfo.NO_ID);
         }
-        WebSettings webSettings = webView.getSettings();
-        if (sp != null && webSettings != null) {
-            noPicMode = sp.getBoolean(SharedPreferencesUtils.KEY_NO_PIC_MODE, false);
-            webView.getSettings().setBlockNetworkImage(noPicMode);
+    }
+
+    private void onRequestBlocked() {
+        blockedCount.incrementAndGet();
+        if (blockedNotifyPending.compareAndSet(false, true)) {
+            post(blockedNotifier);
         }
+    }
 
+    @Override
+    public void setBackgroundPriority(boolean background) {
+        WebPageStateHelper.setBackgroundPriority(webView, background);
+    }
+
+    @Override
+    public void collectMemoryStats(TabMemoryStats stats) {
+        WebPageStateHelper.collectMemoryStats(webView, resourceCount, stats);
     }
 
     class MyWebChromeClient extends WebChromeClient {
@@ -239,7 +397,20 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
                 progressBar.show();
             }
             progressBar.setProgress(newProgress);
+            notifyStateChange();
+        }
 
+        @Override
+        public void onReceivedTitle(WebView view, String title) {
+            super.onReceivedTitle(view, title);
+            notifyStateChange();
+        }
+
+        @Override
+        public void onReceivedIcon(WebView view, Bitmap icon) {
+            super.onReceivedIcon(view, icon);
+            favicon = icon;
+            notifyStateChange();
         }
     }
 
@@ -250,29 +421,38 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
         }
 
         @Override
-        public void onPageStarted(WebView view, String url, Bitmap favicon) {
-            webAddress.setText(url);
-            if (onWebInteractListener != null) {
-                onWebInteractListener.onPageTitleChange(TabInfo.create("", url));
+        public void onPageStarted(WebView view, String url, Bitmap icon) {
+            resourceCount = 0;
+            blockedCount.set(0);
+            pageUrl = url;
+            signalBridge.reset();
+            loading = true;
+            favicon = icon;
+            notifyStateChange();
+            HttpCacheInterceptor interceptor =
+                    ((EasyApplication) mContext.getApplicationContext()).getHttpCacheInterceptor();
+            if (interceptor != null) {
+                interceptor.onPageStarted(url);
             }
-            super.onPageStarted(view, url, favicon);
+            super.onPageStarted(view, url, icon);
         }
 
         @Override
         public void onPageFinished(WebView view, String url) {
             super.onPageFinished(view, url);
-            if (onWebInteractListener != null) {
-                onWebInteractListener.onPageTitleChange(TabInfo.create("", view.getTitle()));
-            }
-
-            boolean isBrowserController = mContext instanceof IBrowser;
-            if (!isBrowserController) {
+            signalBridge.inject(view);
+            ((EasyApplication) mContext.getApplicationContext()).getWebCacheManager().probe(view, url);
+            stateHelper.onPageFinished(view);
+            loading = false;
+            notifyStateChange();
+
+            IBrowser browser = ContextUtils.findBrowser(mContext);
+            if (browser == null) {
                 return;
             }
             // FIXME 通过进度 == 100 判断，避免网页重定向生成多条无效历史记录
             // https://stackoverflow.com/questions/3149216/how-to-listen-for-a-webview-finishing-loading-a-url
             if (webView.getProgress() == 100) {
-                IBrowser browser = (IBrowser) mContext;
                 IBrowser.IHistoryController historyController = (IBrowser.IHistoryController)
                         browser.provideBrowserComponent(BrowserConst.HISTORY_COMPONENT);
                 History history = new History();
@@ -283,11 +463,39 @@ public class PageNestedWebView extends LinearLayout implements IWebView {
             }
         }
 
+        @Override
+        public void onLoadResource(WebView view, String url) {
+            super.onLoadResource(view, url);
+            resourceCount++;
+        }
+
+        @Override
+        public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+            super.doUpdateVisitedHistory(view, url, isReload);
+            notifyStateChange();
+        }
+
         @Nullable
         @Override
         public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
-            // TODO
-            //WebkitManagerKt.captureWebSiteFavicon(view.getContext(), request);
+            EasyApplication application = (EasyApplication) mContext.getApplicationContext();
+            ContentBlockerManager blockerManager = application.getContentBlockerManager();
+            if (blockerManager != null && blockerManager.shouldBlock(request, pageUrl)) {
+                onRequestBlocked();
+                return ContentBlockerManager.blockedResponse();
+            }
+            ImagePolicy imagePolicy = application.getImagePolicy();
+            WebResourceResponse placeholder = imagePolicy.intercept(request);
+            if (placeholder != null) {
+                return placeholder;
+            }
+            HttpCacheInterceptor interceptor = application.getHttpCacheInterceptor();
+            if (interceptor != null) {
+                WebResourceResponse response = interceptor.intercept(request, pageUrl);
+                if (response != null) {
+                    return response;
+                }
+            }
             return super.shouldInterceptRequest(view, request);
         }
     }
@@ -5,6 +5,7 @@ import android.view.View
 import ricky.easybrowser.R
 import ricky.easybrowser.common.BrowserConst
 import ricky.easybrowser.contract.IBrowser
+import ricky.easybrowser.utils.ContextUtils
 import ricky.easybrowser.widget.BrowserNavBar
 
 class WebNavListener(context: Context?): BrowserNavBar.OnNavClickListener {
@@ -12,11 +13,7 @@ class WebNavListener(context: Context?): BrowserNavBar.OnNavClickListener {
     var mContext = context
 
     override fun onItemClick(itemView: View) {
-        val isBrowserController = mContext is IBrowser
-        if (!isBrowserController) {
-            return
-        }
-        val browser = mContext as IBrowser
+        val browser = ContextUtils.findBrowser(mContext) ?: return
         val navController = browser.provideBrowserComponent(BrowserConst.NAVIGATION_COMPONENT)
                 as IBrowser.INavController
         when (itemView.id) {
@@ -27,4 +24,16 @@ class WebNavListener(context: Context?): BrowserNavBar.OnNavClickListener {
             R.id.nav_setting -> navController.showSetting()
         }
     }
+
+    override fun onItemLongClick(itemView: View): Boolean {
+        val browser = ContextUtils.findBrowser(mContext) ?: return false
+        if (itemView.id != R.id.nav_show_tabs) {
+            return false
+        }
+        val navController = browser.provideBrowserComponent(BrowserConst.NAVIGATION_COMPONENT)
+                as IBrowser.INavController
+        // 长按标签页按钮重新打开最近关闭的标签页
+        navController.reopenClosedTab()
+        return true
+    }
 }
\ No newline at end of file
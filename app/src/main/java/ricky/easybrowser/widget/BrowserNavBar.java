@@ -19,6 +19,8 @@ public class BrowserNavBar extends FrameLayout {
     ImageView navTab;
     ImageView navSetting;
 
+    private static final float DISABLED_ALPHA = 0.4f;
+
     private OnNavClickListener navListener;
 
     public BrowserNavBar(Context context) {
@@ -46,6 +48,12 @@ public class BrowserNavBar extends FrameLayout {
         navHome.setOnClickListener(clickListener);
         navTab = findViewById(R.id.nav_show_tabs);
         navTab.setOnClickListener(clickListener);
+        navTab.setOnLongClickListener(new OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                return navListener != null && navListener.onItemLongClick(v);
+            }
+        });
         navSetting = findViewById(R.id.nav_setting);
         navSetting.setOnClickListener(clickListener);
 
@@ -55,6 +63,22 @@ public class BrowserNavBar extends FrameLayout {
         super(context, attrs, defStyleAttr);
     }
 
+    /**
+     * 按页面的前进后退状态刷新按钮
+     */
+    public void setNavigationState(boolean canGoBack, boolean canGoForward) {
+        setButtonEnabled(navBack, canGoBack);
+        setButtonEnabled(navForward, canGoForward);
+    }
+
+    private static void setButtonEnabled(ImageView button, boolean enabled) {
+        if (button.isEnabled() == enabled) {
+            return;
+        }
+        button.setEnabled(enabled);
+        button.setAlpha(enabled ? 1f : DISABLED_ALPHA);
+    }
+
     public OnNavClickListener getNavListener() {
         return navListener;
     }
@@ -65,5 +89,10 @@ public class BrowserNavBar extends FrameLayout {
 
     public interface OnNavClickListener {
         void onItemClick(View itemView);
+
+        /**
+         * @return 已处理时返回true
+         */
+        boolean onItemLongClick(View itemView);
     }
 }
@@ -0,0 +1,96 @@
+package ricky.easybrowser.page.browser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ricky.easybrowser.entity.bo.TabInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TabRegistryTest {
+
+    private TabRegistry registry;
+    private TabInfo[] tabs;
+
+    @Before
+    public void setUp() {
+        registry = new TabRegistry();
+        tabs = new TabInfo[6];
+        for (int i = 0; i < tabs.length; i++) {
+            tabs[i] = TabInfo.create(100 + i, "tab" + i);
+            registry.add(tabs[i]);
+        }
+    }
+
+    @Test
+    public void addReturnsExistingInstance() {
+        TabInfo copy = TabInfo.create(102, "copy");
+        assertSame(tabs[2], registry.add(copy));
+        assertEquals(6, registry.size());
+        assertSame(tabs[2], registry.get(102));
+        assertNull(registry.get(TabInfo.NO_ID));
+    }
+
+    @Test
+    public void removeKeepsOrderAndIndex() {
+        assertTrue(registry.remove(TabInfo.create(101, null)));
+        assertFalse(registry.remove(TabInfo.create(101, null)));
+        assertTrue(registry.remove(tabs[3]));
+        assertEquals(4, registry.size());
+        assertNull(registry.get(101));
+        // 移除后按id查找仍然有效，按位置读取时才整理
+        assertSame(tabs[4], registry.get(104));
+        assertEquals(2, registry.indexOf(tabs[4]));
+        assertEquals(-1, registry.indexOf(101));
+        assertSame(tabs[5], registry.getAt(3));
+        assertEquals(Arrays.asList(tabs[0], tabs[2], tabs[4], tabs[5]), registry.asList());
+    }
+
+    @Test
+    public void removeAllAndReAdd() {
+        List<TabInfo> targets = Arrays.asList(tabs[0], tabs[5], TabInfo.create(999, null), null);
+        assertEquals(2, registry.removeAll(targets));
+        registry.add(tabs[0]);
+        assertEquals(Arrays.asList(tabs[1], tabs[2], tabs[3], tabs[4], tabs[0]), registry.asList());
+        assertEquals(4, registry.indexOf(100));
+    }
+
+    @Test
+    public void removeAllFindsNeighborOfAnchor() {
+        // 之前已关闭、尚未整理的槽位被跳过
+        registry.remove(tabs[2]);
+        assertSame(tabs[1], registry.removeAll(Arrays.asList(tabs[3], tabs[4]), tabs[4]));
+        // 锚点之前没有剩余时取之后的
+        assertSame(tabs[5], registry.removeAll(Arrays.asList(tabs[0], tabs[1]), tabs[0]));
+        assertNull(registry.removeAll(Arrays.asList(tabs[5]), tabs[5]));
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void removingCurrentClearsIt() {
+        registry.setCurrent(TabInfo.create(103, "copy"));
+        assertSame(tabs[3], registry.getCurrent());
+        registry.remove(tabs[2]);
+        assertSame(tabs[3], registry.getCurrent());
+        registry.remove(tabs[3]);
+        assertNull(registry.getCurrent());
+    }
+
+    @Test
+    public void listViewFollowsChanges() {
+        List<TabInfo> view = registry.asList();
+        registry.remove(tabs[1]);
+        assertEquals(5, view.size());
+        assertSame(tabs[2], view.get(1));
+        registry.clear();
+        assertTrue(view.isEmpty());
+        assertTrue(registry.isEmpty());
+    }
+}
@@ -0,0 +1,94 @@
+package ricky.easybrowser.page.browser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TabSearchIndexTest {
+
+    private TabSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TabSearchIndex();
+    }
+
+    @Test
+    public void exactMatchBeatsPrefixAcrossFields() {
+        // 地址中的完整词高于标题中的前缀
+        index.put(1, "Newsletter archive", "https://example.org/home");
+        index.put(2, "Home", "https://example.org/news");
+        assertArrayEquals(new long[]{2, 1}, index.query("news", 0));
+    }
+
+    @Test
+    public void exactBeatsPrefixBeatsSubstring() {
+        index.put(1, "Weather report", "https://forecast.example.com/");
+        index.put(2, "Reporter notes", "https://notes.example.com/");
+        index.put(3, "Daily", "https://example.com/misreported");
+        assertArrayEquals(new long[]{1, 2, 3}, index.query("report", 0));
+        assertArrayEquals(new long[]{3}, index.query("sreport", 0));
+    }
+
+    @Test
+    public void titleBeatsHostBeatsUrl() {
+        index.put(1, "Docs", "https://example.com/github");
+        index.put(2, "Docs", "https://github.com/");
+        index.put(3, "GitHub", "https://example.com/");
+        assertArrayEquals(new long[]{3, 2, 1}, index.query("github", 0));
+    }
+
+    @Test
+    public void allTermsMustMatch() {
+        index.put(1, "Android developers", "https://developer.android.com/");
+        index.put(2, "Android news", "https://news.example.com/");
+        assertArrayEquals(new long[]{1}, index.query("android dev", 0));
+        assertEquals(0, index.query("android missing", 0).length);
+    }
+
+    @Test
+    public void recentlyUsedWinsTies() {
+        index.put(1, "Mail", "https://a.example.com/");
+        index.put(2, "Mail", "https://b.example.com/");
+        index.touch(1);
+        assertArrayEquals(new long[]{1, 2}, index.query("mail", 0));
+    }
+
+    @Test
+    public void updateAndRemoveRefreshIndex() {
+        index.put(1, "Old title", "https://example.com/");
+        index.put(1, "New title", "https://example.com/");
+        assertEquals(0, index.query("old", 0).length);
+        assertArrayEquals(new long[]{1}, index.query("new", 0));
+        index.remove(1);
+        assertEquals(0, index.query("new", 0).length);
+        assertEquals(0, index.query("itle", 0).length);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void queryStaysFastWithManyTabs() {
+        for (int i = 0; i < 2000; i++) {
+            index.put(i + 1, "Article " + i + " about topic" + (i % 50),
+                    "https://site" + (i % 200) + ".example.com/path/" + i);
+        }
+        String[] queries = {"article", "topic1", "site12", "opic", "xample", "article 19", "missing"};
+        // 预热
+        for (String query : queries) {
+            index.query(query, 0);
+        }
+        int rounds = 20;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String query : queries) {
+                index.query(query, 0);
+            }
+        }
+        long averageMicros = (System.nanoTime() - start) / 1000 / (rounds * queries.length);
+        // 宽松的上限，只用于发现退化为逐个扫描全文的实现
+        assertTrue("average query took " + averageMicros + "us", averageMicros < 20000);
+    }
+}
@@ -0,0 +1,188 @@
+package ricky.easybrowser.page.browser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+import ricky.easybrowser.entity.bo.TabInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TabSessionJournalTest {
+
+    private static final long SESSION_ID = 20201018L;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("session", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * 写文件在单一后台线程中顺序执行，排在其后的任务完成时之前的写入都已完成
+     */
+    private static void awaitWrites() {
+        Observable.just(Boolean.TRUE).subscribeOn(Schedulers.single()).blockingFirst();
+    }
+
+    private File journalFile() {
+        return new File(dir, SESSION_ID + ".journal");
+    }
+
+    private TabSessionJournal reopen() {
+        awaitWrites();
+        TabSessionJournal journal = TabSessionJournal.open(dir, SESSION_ID);
+        awaitWrites();
+        return journal;
+    }
+
+    private static TabSessionJournal withTwoTabs(File dir) {
+        TabSessionJournal journal = TabSessionJournal.open(dir, SESSION_ID);
+        journal.appendCreate(TabInfo.create(1, "one"));
+        journal.appendCreate(TabInfo.create(2, "two"));
+        return journal;
+    }
+
+    @Test
+    public void recordsAreReplayed() {
+        TabSessionJournal journal = withTwoTabs(dir);
+        journal.appendCreate(TabInfo.create(3, "three"));
+        journal.appendTitle(1, "first");
+        journal.appendUrl(2, "https://example.com/two");
+        journal.appendSelect(2);
+        journal.appendClose(3);
+
+        TabSessionJournal restored = reopen();
+        assertEquals(Arrays.asList(1L, 2L), restored.getTabIds());
+        assertEquals("first", restored.getTitle(1));
+        assertNull(restored.getUrl(1));
+        assertEquals("two", restored.getTitle(2));
+        assertEquals("https://example.com/two", restored.getUrl(2));
+        assertEquals(2, restored.getCurrentId());
+    }
+
+    @Test
+    public void closingSelectedTabClearsSelection() {
+        TabSessionJournal journal = withTwoTabs(dir);
+        journal.appendSelect(1);
+        journal.appendClose(1);
+
+        TabSessionJournal restored = reopen();
+        assertEquals(Arrays.asList(2L), restored.getTabIds());
+        assertEquals(TabInfo.NO_ID, restored.getCurrentId());
+    }
+
+    @Test
+    public void tornLastRecordIsDropped() throws IOException {
+        TabSessionJournal journal = withTwoTabs(dir);
+        awaitWrites();
+        long intact = journalFile().length();
+        journal.appendTitle(2, "half written");
+        awaitWrites();
+        truncate(journalFile(), intact + 5);
+
+        TabSessionJournal restored = reopen();
+        assertEquals(Arrays.asList(1L, 2L), restored.getTabIds());
+        assertEquals("two", restored.getTitle(2));
+
+        // 重写后追加的记录不会接在不完整的记录之后
+        restored.appendCreate(TabInfo.create(3, "three"));
+        assertEquals(Arrays.asList(1L, 2L, 3L), reopen().getTabIds());
+    }
+
+    @Test
+    public void recordWithBadChecksumStopsReplay() throws IOException {
+        TabSessionJournal journal = withTwoTabs(dir);
+        awaitWrites();
+        long intact = journalFile().length();
+        journal.appendTitle(1, "changed");
+        journal.appendSelect(1);
+        awaitWrites();
+        // 改动标题记录负载中的一个字节(4字节长度之后，跳过类型及标签页id)
+        flipByte(journalFile(), intact + 4 + 10);
+
+        TabSessionJournal restored = reopen();
+        assertEquals(Arrays.asList(1L, 2L), restored.getTabIds());
+        assertEquals("one", restored.getTitle(1));
+        assertEquals(TabInfo.NO_ID, restored.getCurrentId());
+    }
+
+    @Test
+    public void invalidHeaderIsRewritten() throws IOException {
+        TabSessionJournal journal = withTwoTabs(dir);
+        awaitWrites();
+        flipByte(journalFile(), 0);
+
+        TabSessionJournal restored = reopen();
+        assertTrue(restored.getTabIds().isEmpty());
+
+        restored.appendCreate(TabInfo.create(3, "three"));
+        restored.appendSelect(3);
+        TabSessionJournal again = reopen();
+        assertEquals(Arrays.asList(3L), again.getTabIds());
+        assertEquals(3, again.getCurrentId());
+    }
+
+    @Test
+    public void compactionKeepsCurrentState() {
+        TabSessionJournal journal = withTwoTabs(dir);
+        journal.appendSelect(1);
+        for (int i = 0; i < 200; i++) {
+            journal.appendTitle(2, "title " + i);
+        }
+        awaitWrites();
+        // 未压缩时200条标题记录远超此长度
+        assertTrue(journalFile().length() < 1024);
+        assertFalse(new File(dir, SESSION_ID + ".journal.tmp").exists());
+
+        TabSessionJournal restored = reopen();
+        assertEquals(Arrays.asList(1L, 2L), restored.getTabIds());
+        assertEquals("title 199", restored.getTitle(2));
+        assertEquals(1, restored.getCurrentId());
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xff);
+        } finally {
+            raf.close();
+        }
+    }
+}
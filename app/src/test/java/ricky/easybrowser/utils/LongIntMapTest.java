@@ -0,0 +1,79 @@
+package ricky.easybrowser.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongIntMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongIntMap map = new LongIntMap(-1);
+        map.put(1L, 10);
+        map.put(-5L, 20);
+        map.put(1L, 11);
+        assertEquals(2, map.size());
+        assertEquals(11, map.get(1L));
+        assertEquals(20, map.get(-5L));
+        assertEquals(-1, map.get(2L));
+        assertEquals(11, map.remove(1L));
+        assertEquals(-1, map.remove(1L));
+        assertFalse(map.containsKey(1L));
+        assertEquals(1, map.keys().length);
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        LongIntMap map = new LongIntMap(2, -1);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            // 小范围的键制造大量冲突，检验删除后探测链仍然完整
+            long key = random.nextInt(300) * 64L;
+            if (random.nextInt(3) == 0) {
+                Integer prev = expected.remove(key);
+                assertEquals(prev == null ? -1 : prev, map.remove(key));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(expected.size(), map.keys().length);
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(0L));
+    }
+
+    @Test
+    public void anyKeyDrainsAllKeys() {
+        LongIntMap map = new LongIntMap(-1);
+        assertEquals(LongIntMap.EMPTY_KEY, map.anyKey());
+        for (long i = 1; i <= 20; i++) {
+            map.put(i * 31, 0);
+        }
+        long sum = 0;
+        long key;
+        while ((key = map.anyKey()) != LongIntMap.EMPTY_KEY) {
+            sum += key;
+            map.remove(key);
+        }
+        assertEquals(31L * 210, sum);
+        assertEquals(0, map.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyKeyIsRejected() {
+        new LongIntMap(-1).put(LongIntMap.EMPTY_KEY, 1);
+    }
+}
@@ -0,0 +1,103 @@
+package ricky.easybrowser.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongLruCacheTest {
+
+    /**
+     * 值的长度作为条目大小，记录所有移除回调
+     */
+    private static class RecordingCache extends LongLruCache<String> {
+        final List<String> removed = new ArrayList<>();
+
+        RecordingCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected int sizeOf(long key, String value) {
+            return value.length();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, long key, String oldValue, String newValue) {
+            removed.add((evicted ? "evict:" : "remove:") + key + "=" + oldValue);
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        RecordingCache cache = new RecordingCache(6);
+        cache.put(1, "aa");
+        cache.put(2, "bb");
+        cache.put(3, "cc");
+        assertEquals("aa", cache.get(1));
+        cache.put(4, "dd");
+        assertNull(cache.peek(2));
+        assertEquals(6, cache.size());
+        assertArrayEquals(new long[]{3, 1, 4}, cache.keys());
+        assertEquals("[evict:2=bb]", cache.removed.toString());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void replaceAndResize() {
+        RecordingCache cache = new RecordingCache(10);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        assertEquals("a", cache.put(1, "aaaa"));
+        assertEquals(5, cache.size());
+        assertEquals(4, cache.entrySize(1));
+        cache.resize(4);
+        assertArrayEquals(new long[]{1}, cache.keys());
+        assertEquals("[remove:1=a, evict:2=b]", cache.removed.toString());
+        cache.evictAll();
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void victimSelectionCanBeOverridden() {
+        LongLruCache<String> cache = new LongLruCache<String>(2) {
+            @Override
+            protected long selectVictim() {
+                // 键1固定不淘汰
+                long[] keys = keys();
+                for (long key : keys) {
+                    if (key != 1) {
+                        return key;
+                    }
+                }
+                return NO_VICTIM;
+            }
+        };
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        assertArrayEquals(new long[]{1, 3}, cache.keys());
+        cache.resize(1);
+        assertArrayEquals(new long[]{1}, cache.keys());
+    }
+
+    @Test
+    public void manyKeysSurviveTableGrowth() {
+        LongLruCache<Long> cache = new LongLruCache<>(1000);
+        for (long i = 0; i < 1000; i++) {
+            cache.put(i * 1024, i);
+        }
+        for (long i = 0; i < 1000; i++) {
+            assertEquals(i, (long) cache.peek(i * 1024));
+        }
+        assertNull(cache.remove(5));
+        assertEquals(3L, (long) cache.remove(3 * 1024));
+        assertEquals(999, cache.count());
+    }
+}
@@ -0,0 +1,144 @@
+package ricky.easybrowser.web.block;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用与EasyList规模相当的5万条规则测量编译、加载和单次匹配耗时。
+ * <p>
+ * 规则按EasyList的大致构成生成：多数为 ||host^ 域名规则，其余为路径片段、带选项的规则和少量例外规则。
+ * 默认只检查规则编译和匹配结果；计时及其上限只在指定 {@code -Deasybrowser.benchmark=true} 时执行，
+ * 避免在较慢或繁忙的机器上误报。上限定得很宽松，只用于发现数量级的退化，具体数值看输出
+ */
+public class ContentBlockerBenchmarkTest {
+
+    static final String BENCHMARK_PROPERTY = "easybrowser.benchmark";
+
+    private static final int RULES = 50000;
+    private static final int REQUESTS = 20000;
+    private static final int ROUNDS = 5;
+
+    private static final String[] WORDS = {"ad", "ads", "banner", "track", "pixel", "analytics", "promo",
+            "sponsor", "popup", "click", "stat", "beacon", "metrics", "affiliate", "widget", "tag", "counter",
+            "media", "video", "img", "static", "assets", "lib", "api", "event", "log", "collect", "sync"};
+    private static final String[] TLDS = {"com", "net", "org", "cn", "io", "co.uk", "com.cn", "de", "ru", "jp"};
+    private static final String[] OPTIONS = {"$third-party", "$script,third-party", "$image", "$~xmlhttprequest",
+            "$domain=news.example.com|~m.news.example.com", "$script,domain=video.example.org", "$subdocument"};
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String domain(Random random) {
+        return word(random) + random.nextInt(5000) + "." + TLDS[random.nextInt(TLDS.length)];
+    }
+
+    static String generateRules(Random random, List<String> blockedHosts) {
+        StringBuilder builder = new StringBuilder(RULES * 32);
+        builder.append("[Adblock Plus 2.0]\n! Title: synthetic\n");
+        for (int i = 0; i < RULES; i++) {
+            int kind = random.nextInt(100);
+            if (kind < 55) {
+                String host = domain(random);
+                blockedHosts.add(host);
+                builder.append("||").append(host).append('^');
+                if (random.nextInt(4) == 0) {
+                    builder.append(OPTIONS[random.nextInt(OPTIONS.length)]);
+                }
+            } else if (kind < 75) {
+                builder.append('/').append(word(random)).append(random.nextInt(1000)).append('/')
+                        .append(word(random)).append('_');
+            } else if (kind < 85) {
+                builder.append('-').append(word(random)).append('-').append(random.nextInt(1000)).append('x')
+                        .append(random.nextInt(1000)).append('.');
+            } else if (kind < 93) {
+                builder.append("||").append(domain(random)).append("^*/").append(word(random))
+                        .append(random.nextInt(100)).append('/').append(OPTIONS[random.nextInt(OPTIONS.length)]);
+            } else if (kind < 97) {
+                builder.append("@@||").append(domain(random)).append("^$script");
+            } else {
+                builder.append(domain(random)).append("##.").append(word(random)).append("-box");
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    static List<String> generateUrls(Random random, List<String> blockedHosts) {
+        List<String> urls = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            String host = random.nextInt(10) == 0
+                    ? "cdn." + blockedHosts.get(random.nextInt(blockedHosts.size()))
+                    : domain(random);
+            StringBuilder url = new StringBuilder("https://").append(host);
+            int depth = 1 + random.nextInt(4);
+            for (int d = 0; d < depth; d++) {
+                url.append('/').append(word(random));
+                if (random.nextBoolean()) {
+                    url.append(random.nextInt(1000));
+                }
+            }
+            url.append(random.nextBoolean() ? ".js" : "_" + random.nextInt(100) + ".png");
+            if (random.nextInt(3) == 0) {
+                url.append("?v=").append(random.nextInt(100000)).append("&ref=").append(word(random));
+            }
+            urls.add(url.toString());
+        }
+        return urls;
+    }
+
+    @Test
+    public void matchFiftyThousandRules() throws IOException {
+        Random random = new Random(20201018);
+        List<String> blockedHosts = new ArrayList<>();
+        String rules = generateRules(random, blockedHosts);
+        List<String> urls = generateUrls(random, blockedHosts);
+        File file = File.createTempFile("filters", ".bin");
+        try {
+            long start = System.nanoTime();
+            FilterCompiler.Stats stats = FilterCompiler.compile(new BufferedReader(new StringReader(rules)), file);
+            long compileNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ContentBlocker blocker = ContentBlocker.open(file);
+            long openNanos = System.nanoTime() - start;
+
+            int[] types = {ResourceType.SCRIPT, ResourceType.IMAGE, ResourceType.XMLHTTPREQUEST};
+            // 同时作为计时前的预热
+            int blocked = 0;
+            for (int i = 0; i < urls.size(); i++) {
+                blocked += blocker.match(urls.get(i), "https://news.example.com/", types[i % 3]) == ContentBlocker.BLOCK ? 1 : 0;
+            }
+            assertTrue(stats.getRules() > RULES * 9 / 10);
+            assertTrue(blocked > urls.size() / 20);
+            if (!Boolean.getBoolean(BENCHMARK_PROPERTY)) {
+                return;
+            }
+
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                start = System.nanoTime();
+                for (int i = 0; i < urls.size(); i++) {
+                    blocker.match(urls.get(i), "https://news.example.com/", types[i % 3]);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            long nanosPerMatch = best / urls.size();
+            System.out.println("ContentBlocker " + stats + ", file: " + file.length() / 1024 + "KB, compile: "
+                    + compileNanos / 1000000 + "ms, open: " + openNanos / 1000 + "us, match: " + nanosPerMatch
+                    + "ns/op, blocked: " + blocked + "/" + urls.size());
+            assertTrue("match took " + nanosPerMatch + "ns", nanosPerMatch < 50000);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ricky.easybrowser.web.block;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ContentBlockerTest {
+
+    private static final String PAGE = "https://news.example.com/index.html";
+
+    private static final String RULES = "[Adblock Plus 2.0]\n"
+            + "! comment\n"
+            + "||ads.example.net^\n"
+            + "||tracker.example.org^$third-party\n"
+            + "@@||good.ads.example.net^\n"
+            + "/banner/*/img^\n"
+            + "-ad-300x250.\n"
+            + "|https://pixel.\n"
+            + ".swf|\n"
+            + "||cdn.example.com/ads/$script\n"
+            + "/popunder.$script,domain=news.example.com|~safe.news.example.com\n"
+            + "&adtype=$~image\n"
+            + "/AdFrame/*$match-case\n"
+            + "@@/banner/*/img^$domain=partner.example.com\n"
+            + "example.com##.ad-box\n"
+            + "/^https?:\\/\\/regex\\./\n"
+            + "||popup.example.net^$popup\n";
+
+    private File file;
+    private ContentBlocker blocker;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("filters", ".bin");
+        FilterCompiler.Stats stats = FilterCompiler.compile(new BufferedReader(new StringReader(RULES)), file);
+        assertEquals(12, stats.getRules());
+        assertEquals(3, stats.getSkipped());
+        assertEquals(3, stats.getHostRules());
+        blocker = ContentBlocker.open(file);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private int match(String url, int type) {
+        return blocker.match(url, PAGE, type);
+    }
+
+    @Test
+    public void hostRulesMatchSubdomains() {
+        assertEquals(ContentBlocker.BLOCK, match("https://ads.example.net/x.js", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.BLOCK, match("https://a.b.ads.example.net:8080/x", ResourceType.OTHER));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://badads.example.net/x.js", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://example.net/ads.example.net", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.ALLOW, match("https://good.ads.example.net/x.js", ResourceType.SCRIPT));
+    }
+
+    @Test
+    public void thirdPartyOption() {
+        assertEquals(ContentBlocker.BLOCK, match("https://tracker.example.org/t.gif", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.NO_MATCH, blocker.match("https://tracker.example.org/t.gif",
+                "https://www.example.org/", ResourceType.IMAGE));
+    }
+
+    @Test
+    public void wildcardsAndSeparators() {
+        assertEquals(ContentBlocker.BLOCK, match("https://x.com/banner/728/img?id=1", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.BLOCK, match("https://x.com/banner/a/b/img", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://x.com/banner/728/imgs", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.BLOCK, match("https://x.com/static/top-ad-300x250.png", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.BLOCK, match("https://x.com/STATIC/TOP-AD-300X250.PNG", ResourceType.IMAGE));
+    }
+
+    @Test
+    public void anchors() {
+        assertEquals(ContentBlocker.BLOCK, match("https://pixel.x.com/p", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://x.com/?u=https://pixel.x.com", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.BLOCK, match("https://x.com/movie.swf", ResourceType.OBJECT));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://x.com/movie.swf?a=1", ResourceType.OBJECT));
+    }
+
+    @Test
+    public void typeOptions() {
+        assertEquals(ContentBlocker.BLOCK, match("https://cdn.example.com/ads/a.js", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://cdn.example.com/ads/a.png", ResourceType.IMAGE));
+        assertEquals(ContentBlocker.BLOCK, match("https://x.com/q?a=1&adtype=2", ResourceType.XMLHTTPREQUEST));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://x.com/q?a=1&adtype=2", ResourceType.IMAGE));
+        // 没有类型选项的规则不拦截主文档
+        assertEquals(ContentBlocker.NO_MATCH, match("https://ads.example.net/", ResourceType.DOCUMENT));
+    }
+
+    @Test
+    public void domainOption() {
+        String url = "https://x.com/js/popunder.js";
+        assertEquals(ContentBlocker.BLOCK, blocker.match(url, PAGE, ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.BLOCK, blocker.match(url, "https://m.news.example.com/", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.NO_MATCH, blocker.match(url, "https://safe.news.example.com/", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.NO_MATCH, blocker.match(url, "https://other.com/", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.NO_MATCH, blocker.match(url, null, ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.ALLOW, blocker.match("https://x.com/banner/1/img",
+                "https://partner.example.com/", ResourceType.IMAGE));
+    }
+
+    @Test
+    public void matchCase() {
+        assertEquals(ContentBlocker.BLOCK, match("https://x.com/AdFrame/1", ResourceType.SUBDOCUMENT));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://x.com/adframe/1", ResourceType.SUBDOCUMENT));
+    }
+
+    @Test
+    public void unsupportedRulesAreSkipped() {
+        assertEquals(ContentBlocker.NO_MATCH, match("https://regex.x.com/", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.NO_MATCH, match("https://popup.example.net/", ResourceType.SCRIPT));
+        assertEquals(ContentBlocker.NO_MATCH, match("data:image/png;base64,AAAA", ResourceType.IMAGE));
+    }
+
+    @Test
+    public void corruptFileIsRejected() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3, 4});
+        out.close();
+        try {
+            ContentBlocker.open(file);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // 格式不对时重新下载编译
+        }
+    }
+
+    @Test
+    public void resourceTypeDetection() {
+        assertEquals(ResourceType.DOCUMENT, ResourceType.detect("https://x.com/", null, null, true));
+        assertEquals(ResourceType.SCRIPT, ResourceType.detect("https://x.com/a", "script", "*/*", false));
+        assertEquals(ResourceType.IMAGE, ResourceType.detect("https://x.com/a", null, "image/avif,image/webp,*/*", false));
+        assertEquals(ResourceType.STYLESHEET, ResourceType.detect("https://x.com/a", null, "text/css,*/*;q=0.1", false));
+        assertEquals(ResourceType.IMAGE, ResourceType.detect("https://x.com/a.WEBP?x=1", null, "*/*", false));
+        assertEquals(ResourceType.FONT, ResourceType.detect("https://x.com/f.woff2#x", null, null, false));
+        assertEquals(ResourceType.OTHER, ResourceType.detect("https://x.com/a.b/c", null, null, false));
+        assertEquals("", ResourceType.extension("https://x.com/a."));
+    }
+}
@@ -0,0 +1,327 @@
+package ricky.easybrowser.web.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 针对本地HTTP服务器验证缓存命中、重新验证、离线及淘汰
+ */
+public class HttpCacheTest {
+
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    private HttpServer server;
+    private String baseUrl;
+    private File dir;
+    private HttpCache cache;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile String lastIfNoneMatch;
+    private volatile String lastIfModifiedSince;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        dir = Files.createTempDirectory("http-cache").toFile();
+        cache = new HttpCache(dir, MAX_BYTES);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cache.close();
+        server.stop(0);
+        deleteRecursively(dir);
+    }
+
+    /**
+     * 按路径决定响应：/fresh 有max-age，/etag 及 /modified 需要重新验证，
+     * /nostore 不允许缓存，/gzip 压缩传输，/size/N 返回N字节，/redirect 重定向到 /fresh
+     */
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        lastIfModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        byte[] body = ("body of " + path).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        if (path.startsWith("/fresh")) {
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+        } else if (path.startsWith("/etag")) {
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(lastIfNoneMatch)) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        } else if (path.startsWith("/modified")) {
+            String lastModified = HttpCache.formatDate(System.currentTimeMillis() - 60 * 60 * 1000);
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+            exchange.getResponseHeaders().add("Last-Modified", lastModified);
+            if (lastIfModifiedSince != null) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        } else if (path.startsWith("/nostore")) {
+            exchange.getResponseHeaders().add("Cache-Control", "no-store");
+        } else if (path.startsWith("/gzip")) {
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(body);
+            gzip.close();
+            body = compressed.toByteArray();
+        } else if (path.startsWith("/redirect")) {
+            exchange.getResponseHeaders().add("Location", "/fresh");
+            exchange.sendResponseHeaders(302, -1);
+            return;
+        } else if (path.startsWith("/size/")) {
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            body = new byte[Integer.parseInt(path.substring("/size/".length(), path.lastIndexOf('/')))];
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private HttpCache.Response get(String path) {
+        return get(path, Collections.<String, String>emptyMap());
+    }
+
+    private HttpCache.Response get(String path, Map<String, String> headers) {
+        return cache.fetch("GET", baseUrl + path, headers);
+    }
+
+    private static String readBody(HttpCache.Response response) throws IOException {
+        InputStream in = response.getBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void freshResponseIsServedWithoutNetwork() throws IOException {
+        HttpCache.Response first = get("/fresh");
+        assertEquals(HttpCache.Source.NETWORK, first.getSource());
+        assertEquals("text/plain", first.getMimeType());
+        assertEquals("utf-8", first.getCharset());
+        assertEquals("body of /fresh", readBody(first));
+
+        HttpCache.Response second = get("/fresh");
+        assertEquals(HttpCache.Source.CACHE, second.getSource());
+        assertEquals(200, second.getStatus());
+        assertEquals("body of /fresh", readBody(second));
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals("body of /fresh".length(), cache.getCacheBytes());
+    }
+
+    @Test
+    public void etagIsRevalidated() throws IOException {
+        readBody(get("/etag"));
+        HttpCache.Response second = get("/etag");
+        assertEquals(HttpCache.Source.REVALIDATED, second.getSource());
+        assertEquals("body of /etag", readBody(second));
+        assertEquals("\"v1\"", lastIfNoneMatch);
+        assertEquals(1, notModified.get());
+        assertEquals(1, cache.getRevalidatedCount());
+    }
+
+    @Test
+    public void lastModifiedIsRevalidated() throws IOException {
+        readBody(get("/modified"));
+        HttpCache.Response second = get("/modified");
+        assertEquals(HttpCache.Source.REVALIDATED, second.getSource());
+        assertEquals("body of /modified", readBody(second));
+        assertNotNull(lastIfModifiedSince);
+    }
+
+    @Test
+    public void reloadForcesRevalidation() throws IOException {
+        readBody(get("/fresh"));
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "no-cache");
+        HttpCache.Response reload = get("/fresh", headers);
+        assertEquals(HttpCache.Source.NETWORK, reload.getSource());
+        readBody(reload);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void noStoreIsNotCached() throws IOException {
+        readBody(get("/nostore"));
+        HttpCache.Response second = get("/nostore");
+        assertEquals(HttpCache.Source.NETWORK, second.getSource());
+        readBody(second);
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void gzipBodyIsDecodedAndCached() throws IOException {
+        HttpCache.Response first = get("/gzip");
+        assertEquals("body of /gzip", readBody(first));
+        assertTrue(!first.getHeaders().containsKey("content-encoding"));
+        // 压缩后的长度不再适用，解压后的长度要等缓存命中才知道
+        assertTrue(!first.getHeaders().containsKey("content-length"));
+        HttpCache.Response second = get("/gzip");
+        assertEquals(HttpCache.Source.CACHE, second.getSource());
+        assertEquals(String.valueOf("body of /gzip".length()), second.getHeaders().get("content-length"));
+        assertEquals("body of /gzip", readBody(second));
+    }
+
+    @Test
+    public void offlineServesStaleEntries() throws IOException {
+        readBody(get("/etag"));
+        cache.setOffline(true);
+        HttpCache.Response stale = get("/etag");
+        assertEquals(HttpCache.Source.STALE, stale.getSource());
+        assertEquals("body of /etag", readBody(stale));
+        assertNull(get("/fresh"));
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getStaleHitCount());
+    }
+
+    @Test
+    public void networkErrorServesStaleEntries() throws IOException {
+        readBody(get("/modified"));
+        readBody(get("/etag"));
+        server.stop(0);
+        HttpCache.Response stale = get("/modified");
+        assertEquals(HttpCache.Source.STALE, stale.getSource());
+        assertEquals("body of /modified", readBody(stale));
+        // no-cache的响应必须验证成功才能使用
+        assertNull(get("/etag"));
+    }
+
+    @Test
+    public void partialBodyIsNotCommitted() throws IOException {
+        HttpCache.Response response = get("/size/4096/a");
+        response.getBody().read(new byte[100]);
+        response.getBody().close();
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(HttpCache.Source.NETWORK, get("/size/4096/a").getSource());
+    }
+
+    @Test
+    public void unsupportedRequestsAreBypassed() {
+        assertNull(cache.fetch("POST", baseUrl + "/fresh", Collections.<String, String>emptyMap()));
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Range", "bytes=0-10");
+        assertNull(get("/fresh", headers));
+        assertNull(cache.fetch("GET", "data:text/plain,hello", null));
+        assertEquals(3, cache.getBypassCount());
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws IOException {
+        cache.close();
+        // 单条上限为总量的1/8，10条2KB的响应正好占满
+        cache = new HttpCache(dir, 20 * 1024);
+        for (int i = 0; i < 10; i++) {
+            readBody(get("/size/2048/" + i));
+        }
+        assertEquals(10, cache.getEntryCount());
+        assertEquals(HttpCache.Source.CACHE, get("/size/2048/0").getSource());
+
+        readBody(get("/size/2048/10"));
+        assertEquals(10, cache.getEntryCount());
+        assertEquals(20 * 1024, cache.getSize());
+        assertEquals(HttpCache.Source.CACHE, get("/size/2048/0").getSource());
+        assertEquals(HttpCache.Source.NETWORK, get("/size/2048/1").getSource());
+    }
+
+    @Test
+    public void oversizedResponseIsNotCached() throws IOException {
+        readBody(get("/size/200000/big"));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void indexSurvivesReopen() throws IOException {
+        readBody(get("/fresh"));
+        readBody(get("/etag"));
+        cache.close();
+        cache = new HttpCache(dir, MAX_BYTES);
+        assertEquals(2, cache.getEntryCount());
+        HttpCache.Response response = get("/fresh");
+        assertEquals(HttpCache.Source.CACHE, response.getSource());
+        assertEquals("body of /fresh", readBody(response));
+    }
+
+    @Test
+    public void redirectIsLeftToWebViewWithoutRefetching() {
+        assertNull(get("/redirect"));
+        assertEquals(1, requests.get());
+        // 记住的重定向不再先请求一次
+        assertNull(get("/redirect"));
+        assertEquals(1, requests.get());
+        assertEquals(2, cache.getBypassCount());
+    }
+
+    @Test
+    public void clearRemovesEntries() throws IOException {
+        readBody(get("/fresh"));
+        cache.clear();
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(HttpCache.Source.NETWORK, get("/fresh").getSource());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
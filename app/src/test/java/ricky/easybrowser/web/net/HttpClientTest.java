@@ -0,0 +1,255 @@
+package ricky.easybrowser.web.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 针对本地HTTP服务器验证连接复用、分块传输、预连接、主机并发上限及TTFB统计
+ */
+public class HttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private HttpClient client;
+
+    /**
+     * 服务器看到的客户端端口，每个端口对应一条连接
+     */
+    private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = new HttpClient(2, HttpClient.DEFAULT_KEEP_ALIVE_MS);
+        client.setHostWaitMs(50);
+    }
+
+    @After
+    public void tearDown() {
+        client.evictAll();
+        server.stop(0);
+    }
+
+    /**
+     * /chunked 分块传输，/slow 延迟100ms响应，/304 返回304，其余返回固定长度的响应体
+     */
+    private void respond(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = ("body of " + path).getBytes(StandardCharsets.UTF_8);
+        if (path.startsWith("/304")) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        if (path.startsWith("/slow")) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (path.startsWith("/big")) {
+            body = new byte[256 * 1024];
+        }
+        exchange.sendResponseHeaders(200, path.startsWith("/chunked") ? 0 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private HttpClient.Response get(String path) throws IOException {
+        return client.execute("GET", baseUrl + path, Collections.<String, String>emptyMap());
+    }
+
+    private static String readBody(HttpClient.Response response) throws IOException {
+        InputStream in = response.getBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void keepAliveConnectionIsReused() throws IOException {
+        assertEquals("body of /a", readBody(get("/a")));
+        assertEquals("body of /b", readBody(get("/b")));
+        assertEquals("body of /c", readBody(get("/c")));
+        assertEquals(1, client.getConnectionCount());
+        assertEquals(2, client.getReuseCount());
+        assertEquals(1, clientPorts.size());
+        assertEquals(1, client.getIdleConnectionCount());
+    }
+
+    @Test
+    public void chunkedBodyIsDecoded() throws IOException {
+        HttpClient.Response response = get("/chunked");
+        assertEquals("chunked", response.getHeader("transfer-encoding"));
+        assertEquals("body of /chunked", readBody(response));
+        assertEquals("body of /after", readBody(get("/after")));
+        assertEquals(1, client.getConnectionCount());
+    }
+
+    @Test
+    public void notModifiedHasNoBody() throws IOException {
+        HttpClient.Response response = get("/304");
+        assertEquals(304, response.getStatus());
+        assertEquals(-1, response.getBody().read());
+        // 测试服务器在304后关闭连接，之后的请求换新连接重试
+        assertEquals("body of /a", readBody(get("/a")));
+    }
+
+    @Test
+    public void partiallyReadBodyClosesConnection() throws IOException {
+        HttpClient.Response response = get("/big");
+        response.getBody().read(new byte[100]);
+        response.close();
+        assertEquals(0, client.getIdleConnectionCount());
+        readBody(get("/a"));
+        assertEquals(2, client.getConnectionCount());
+    }
+
+    @Test
+    public void preconnectedConnectionIsUsed() throws IOException {
+        assertTrue(client.preconnect(baseUrl));
+        // 已有空闲连接时不再建立
+        assertTrue(!client.preconnect(baseUrl + "/other"));
+        assertEquals("body of /a", readBody(get("/a")));
+        assertEquals(1, client.getConnectionCount());
+        assertEquals(1, client.getPreconnectCount());
+        assertEquals(1, client.getPreconnectHitCount());
+    }
+
+    @Test
+    public void requestsPerHostAreLimited() throws IOException {
+        HttpClient.Response first = get("/a");
+        HttpClient.Response second = get("/b");
+        try {
+            get("/c");
+            fail("expected HostBusyException");
+        } catch (HttpClient.HostBusyException e) {
+            assertEquals(1, client.getBusyCount());
+        }
+        readBody(first);
+        assertEquals("body of /c", readBody(get("/c")));
+        second.close();
+    }
+
+    @Test
+    public void abandonedBodiesAreReaped() throws Exception {
+        client.setTimeouts(15000, 200);
+        // 既不读完也不关闭的响应体
+        get("/a");
+        get("/b");
+        Thread.sleep(300);
+        assertEquals("body of /c", readBody(get("/c")));
+        assertEquals(2, client.getAbandonedCount());
+        assertEquals(0, client.getBusyCount());
+    }
+
+    @Test
+    public void ttfbIsMeasured() throws IOException {
+        readBody(get("/slow"));
+        assertTrue(client.getLastTtfbNanos() >= 90L * 1000 * 1000);
+        assertTrue(client.getAverageTtfbNanos() > 0);
+    }
+
+    @Test
+    public void closedIdleConnectionIsRetried() throws Exception {
+        // 声明Keep-Alive但响应后立即关闭连接的服务器
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final AtomicInteger accepted = new AtomicInteger();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        accepted.incrementAndGet();
+                        InputStream in = socket.getInputStream();
+                        int matched = 0;
+                        while (matched < 4) {
+                            int b = in.read();
+                            if (b == -1) {
+                                break;
+                            }
+                            matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+                        }
+                        socket.getOutputStream().write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n"
+                                + "Keep-Alive: timeout=60\r\n\r\nok").getBytes(StandardCharsets.ISO_8859_1));
+                        socket.close();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        thread.start();
+        try {
+            String url = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+            Map<String, String> headers = Collections.emptyMap();
+            assertEquals("ok", readBody(client.execute("GET", url, headers)));
+            Thread.sleep(50);
+            assertEquals("ok", readBody(client.execute("GET", url, headers)));
+            assertEquals(1, client.getRetryCount());
+            assertEquals(2, accepted.get());
+        } finally {
+            serverSocket.close();
+            thread.join(1000);
+        }
+    }
+
+    @Test
+    public void unsupportedRequestsAreRejected() throws IOException {
+        try {
+            client.execute("POST", baseUrl + "/a", null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, client.getRequestCount());
+        }
+        try {
+            client.execute("GET", "ftp://127.0.0.1/a", null);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals(0, client.getRequestCount());
+        }
+    }
+}
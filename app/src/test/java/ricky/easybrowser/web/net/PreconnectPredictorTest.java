@@ -0,0 +1,38 @@
+package ricky.easybrowser.web.net;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PreconnectPredictorTest {
+
+    @Test
+    public void crossOriginSubresourcesArePredicted() {
+        PreconnectPredictor predictor = new PreconnectPredictor();
+        predictor.record("https://news.example.com/index.html", "https://cdn.example.net/app.js");
+        predictor.record("https://news.example.com/index.html", "https://img.example.net:8443/a.png");
+        predictor.record("https://news.example.com/index.html", "https://news.example.com/style.css");
+        predictor.record(null, "https://ads.example.org/x.js");
+
+        List<String> origins = predictor.predict("https://news.example.com/other?id=1");
+        assertEquals(Arrays.asList("https://cdn.example.net", "https://img.example.net:8443"), origins);
+        assertTrue(predictor.predict("https://unknown.example.com/").isEmpty());
+    }
+
+    @Test
+    public void recentOriginsAreKept() {
+        PreconnectPredictor predictor = new PreconnectPredictor();
+        for (int i = 0; i < 10; i++) {
+            predictor.record("https://site.example.com/", "https://cdn" + i + ".example.net/a.js");
+        }
+        predictor.record("https://site.example.com/", "https://cdn5.example.net/b.js");
+        List<String> origins = predictor.predict("https://site.example.com/");
+        assertEquals(6, origins.size());
+        assertEquals("https://cdn5.example.net", origins.get(origins.size() - 1));
+        assertTrue(!origins.contains("https://cdn0.example.net"));
+    }
+}